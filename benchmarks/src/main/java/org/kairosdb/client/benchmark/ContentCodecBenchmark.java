@@ -0,0 +1,116 @@
+package org.kairosdb.client.benchmark;
+
+import org.kairosdb.client.ContentCodec;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU cost of compressing pushed metrics and decompressing query responses with each codec. The size of
+ * the compressed data, the bytes on the wire, is printed when a trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentCodecBenchmark
+{
+	@Param({"gzip-1", "gzip-6", "deflate-6", "snappy"})
+	private String codecName;
+
+	private ContentCodec codec;
+	private byte[] metrics;
+	private byte[] queryResponse;
+	private byte[] compressedQueryResponse;
+	private final byte[] readBuffer = new byte[8192];
+
+	@Setup
+	public void setup() throws IOException
+	{
+		codec = createCodec(codecName);
+
+		MetricBuilder builder = MetricBuilder.getInstance();
+		for (int i = 0; i < 10; i++)
+		{
+			Metric metric = builder.addMetric("benchmark.metric" + i).addTag("host", "server" + i);
+			for (int j = 0; j < 1000; j++)
+			{
+				metric.addDataPoint(1_500_000_000_000L + j * 1000L, j * 1.25);
+			}
+		}
+		metrics = builder.build().getBytes(StandardCharsets.UTF_8);
+		queryResponse = QueryResponseBenchmark.createResponse(1, 10_000).getBytes(StandardCharsets.UTF_8);
+		compressedQueryResponse = encode(queryResponse);
+
+		System.out.printf("%n%s: metrics %d -> %d bytes, query response %d -> %d bytes%n", codecName,
+				metrics.length, encode(metrics).length, queryResponse.length, compressedQueryResponse.length);
+	}
+
+	@Benchmark
+	public int encodeMetrics() throws IOException
+	{
+		return encode(metrics).length;
+	}
+
+	@Benchmark
+	public long decodeQueryResponse() throws IOException
+	{
+		long count = 0;
+		try (InputStream in = codec.decode(new ByteArrayInputStream(compressedQueryResponse)))
+		{
+			int read;
+			while ((read = in.read(readBuffer)) != -1)
+			{
+				count += read;
+			}
+		}
+		return count;
+	}
+
+	private byte[] encode(byte[] data) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+		try (OutputStream encoder = codec.encode(out))
+		{
+			encoder.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	private static ContentCodec createCodec(String name)
+	{
+		switch (name)
+		{
+			case "gzip-1":
+				return ContentCodec.gzip(1);
+			case "gzip-6":
+				return ContentCodec.gzip(6);
+			case "deflate-6":
+				return ContentCodec.deflate(6);
+			case "snappy":
+				return ContentCodec.snappy();
+			default:
+				throw new IllegalArgumentException("Unknown codec " + name);
+		}
+	}
+}
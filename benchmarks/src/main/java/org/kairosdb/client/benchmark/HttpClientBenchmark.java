@@ -0,0 +1,112 @@
+package org.kairosdb.client.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.kairosdb.client.HttpClient;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.response.QueryResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures complete requests made by the HttpClient against an in-process HTTP server. The server discards pushed
+ * data points and answers queries with a canned response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class HttpClientBenchmark
+{
+	private HttpServer server;
+	private HttpClient client;
+	private MetricBuilder metricBuilder;
+	private QueryBuilder queryBuilder;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		byte[] queryResponse = QueryResponseBenchmark.createResponse(1, 1000).getBytes(StandardCharsets.UTF_8);
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/api/v1/datapoints", exchange -> respond(exchange, 204, null));
+		server.createContext("/api/v1/datapoints/query", exchange -> respond(exchange, 200, queryResponse));
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+
+		client = new HttpClient("http://localhost:" + server.getAddress().getPort());
+
+		metricBuilder = MetricBuilder.getInstance();
+		Metric metric = metricBuilder.addMetric("benchmark.metric").addTag("host", "server1");
+		for (int i = 0; i < 1000; i++)
+		{
+			metric.addDataPoint(1_500_000_000_000L + i * 1000L, i * 1.25);
+		}
+
+		queryBuilder = QueryBuilder.getInstance();
+		queryBuilder.setStart(1, TimeUnit.HOURS).addMetric("benchmark.metric");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		client.close();
+		server.stop(0);
+	}
+
+	@Benchmark
+	public void pushMetrics()
+	{
+		client.pushMetrics(metricBuilder);
+	}
+
+	@Benchmark
+	public QueryResponse query()
+	{
+		return client.query(queryBuilder);
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException
+	{
+		try (InputStream in = exchange.getRequestBody())
+		{
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		if (body == null)
+		{
+			exchange.sendResponseHeaders(status, -1);
+		}
+		else
+		{
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(body);
+			}
+		}
+		exchange.close();
+	}
+}
@@ -0,0 +1,86 @@
+package org.kairosdb.client.benchmark;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.kairosdb.client.DataPointTypeRegistry;
+import org.kairosdb.client.JsonMapper;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.response.DefaultJsonResponseHandler;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.ResponseHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+
+/**
+ * Measures the per-request cost of parsing a small query response. <code>newMapper</code> creates a mapper for every
+ * request as the client used to; <code>sharedMapper</code> and <code>handleResponse</code> use the mapper shared
+ * per type registry.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMapperBenchmark
+{
+	private static final String RESPONSE = "{\"queries\":[{\"sample_size\":3,\"results\":[{\"name\":\"metric1\"," +
+			"\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"tags\":{\"host\":[\"server1\"]}," +
+			"\"values\":[[1362034800000,1],[1362034801000,2],[1362034802000,3]]}]}]}";
+
+	private DataPointTypeRegistry typeRegistry;
+	private HttpPost request;
+
+	@Setup
+	public void setup()
+	{
+		typeRegistry = new DataPointTypeRegistry();
+		request = new HttpPost("http://localhost:8080/api/v1/datapoints/query");
+	}
+
+	@Benchmark
+	public QueryResponse newMapper()
+	{
+		return new JsonMapper(typeRegistry).fromJson(RESPONSE, QueryResponse.class);
+	}
+
+	@Benchmark
+	public QueryResponse sharedMapper()
+	{
+		return JsonMapper.getInstance(typeRegistry).fromJson(RESPONSE, QueryResponse.class);
+	}
+
+	@Benchmark
+	public QueryResponse handleResponse()
+	{
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setHeader(CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
+		response.setEntity(new StringEntity(RESPONSE, ContentType.APPLICATION_JSON));
+
+		return new DefaultJsonResponseHandler<>(QueryResponse.class, typeRegistry).handle(request, new ResponseHelper(response));
+	}
+
+	@Benchmark
+	public String buildQuery()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance();
+		builder.setStart(1, TimeUnit.HOURS)
+				.addMetric("metric1")
+				.addTag("host", "server1");
+		return builder.build();
+	}
+}
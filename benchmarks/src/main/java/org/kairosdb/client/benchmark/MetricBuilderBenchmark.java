@@ -0,0 +1,127 @@
+package org.kairosdb.client.benchmark;
+
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding data points to a MetricBuilder and serializing it, both to a string and streamed to a writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricBuilderBenchmark
+{
+	@Param({"10", "100"})
+	private int metrics;
+
+	@Param({"100", "1000"})
+	private int dataPointsPerMetric;
+
+	private MetricBuilder builder;
+	private MetricBuilder reusedBuilder;
+
+	@Setup
+	public void setup()
+	{
+		builder = fill(MetricBuilder.getInstance());
+		reusedBuilder = fill(MetricBuilder.getInstance());
+	}
+
+	@Benchmark
+	public MetricBuilder addDataPoints()
+	{
+		return fill(MetricBuilder.getInstance());
+	}
+
+	@Benchmark
+	public MetricBuilder addDataPointsAfterReset()
+	{
+		reusedBuilder.reset();
+		for (Metric metric : reusedBuilder.getMetrics())
+		{
+			addDataPoints(metric);
+		}
+		return reusedBuilder;
+	}
+
+	@Benchmark
+	public String build()
+	{
+		return builder.build();
+	}
+
+	@Benchmark
+	public long write() throws IOException
+	{
+		CountingWriter writer = new CountingWriter();
+		builder.write(writer);
+		return writer.count;
+	}
+
+	private MetricBuilder fill(MetricBuilder builder)
+	{
+		for (int i = 0; i < metrics; i++)
+		{
+			Metric metric = builder.addMetric("benchmark.metric" + i)
+					.addTag("host", "server" + (i % 10))
+					.addTag("datacenter", "dc1");
+			addDataPoints(metric);
+		}
+		return builder;
+	}
+
+	private void addDataPoints(Metric metric)
+	{
+		long timestamp = 1_500_000_000_000L;
+		for (int j = 0; j < dataPointsPerMetric; j++)
+		{
+			if ((j & 1) == 0)
+			{
+				metric.addDataPoint(timestamp + j * 1000L, j);
+			}
+			else
+			{
+				metric.addDataPoint(timestamp + j * 1000L, j * 1.5);
+			}
+		}
+	}
+
+	private static class CountingWriter extends Writer
+	{
+		private long count;
+
+		@Override
+		public void write(char[] buffer, int offset, int length)
+		{
+			count += length;
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package org.kairosdb.client.benchmark;
+
+import org.kairosdb.client.builder.AggregatorFactory;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.QueryMetric;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.builder.grouper.TagGrouper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures creating and serializing a query with aggregators, group-bys and tags.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBuilderBenchmark
+{
+	@Param({"1", "20"})
+	private int metrics;
+
+	@Benchmark
+	public String build()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance();
+		builder.setStart(2, TimeUnit.DAYS).setEnd(1, TimeUnit.HOURS);
+		for (int i = 0; i < metrics; i++)
+		{
+			QueryMetric metric = builder.addMetric("benchmark.metric" + i)
+					.addTag("host", "server1", "server2")
+					.addTag("datacenter", "dc1")
+					.addGrouper(new TagGrouper("host"))
+					.addAggregator(AggregatorFactory.createAverageAggregator(5, TimeUnit.MINUTES))
+					.addAggregator(AggregatorFactory.createMaxAggregator(1, TimeUnit.HOURS));
+			metric.setLimit(10000);
+			metric.setOrder(QueryMetric.Order.DESCENDING);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,144 @@
+package org.kairosdb.client.benchmark;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.kairosdb.client.DataPointTypeRegistry;
+import org.kairosdb.client.response.DefaultJsonResponseHandler;
+import org.kairosdb.client.response.GroupResult;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryResultCallback;
+import org.kairosdb.client.response.ResponseHelper;
+import org.kairosdb.client.response.StreamingQueryHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+
+/**
+ * Measures parsing large query responses, both into a QueryResponse and streamed through a StreamingQueryHandler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class QueryResponseBenchmark
+{
+	private static final int RESULTS = 4;
+
+	@Param({"10000", "250000"})
+	private int dataPointsPerResult;
+
+	private byte[] response;
+	private DataPointTypeRegistry typeRegistry;
+	private HttpPost request;
+
+	@Setup
+	public void setup()
+	{
+		typeRegistry = new DataPointTypeRegistry();
+		request = new HttpPost("http://localhost:8080/api/v1/datapoints/query");
+		response = createResponse(RESULTS, dataPointsPerResult).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public QueryResponse defaultHandler()
+	{
+		return new DefaultJsonResponseHandler<>(QueryResponse.class, typeRegistry).handle(request, createResponse());
+	}
+
+	@Benchmark
+	public void streamingHandler(Blackhole blackhole)
+	{
+		new StreamingQueryHandler(new BlackholeCallback(blackhole), typeRegistry).handle(request, createResponse());
+	}
+
+	private ResponseHelper createResponse()
+	{
+		BasicHttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		httpResponse.setHeader(CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
+		httpResponse.setEntity(new ByteArrayEntity(response, ContentType.APPLICATION_JSON));
+		return new ResponseHelper(httpResponse);
+	}
+
+	static String createResponse(int results, int dataPointsPerResult)
+	{
+		StringBuilder json = new StringBuilder("{\"queries\":[{\"sample_size\":")
+				.append((long) results * dataPointsPerResult)
+				.append(",\"results\":[");
+		long timestamp = 1_500_000_000_000L;
+		for (int i = 0; i < results; i++)
+		{
+			if (i > 0)
+				json.append(',');
+			json.append("{\"name\":\"benchmark.metric\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],")
+					.append("\"tags\":{\"host\":[\"server").append(i).append("\"]},\"values\":[");
+			for (int j = 0; j < dataPointsPerResult; j++)
+			{
+				if (j > 0)
+					json.append(',');
+				json.append('[').append(timestamp + j * 1000L).append(',');
+				if ((j & 1) == 0)
+					json.append(j);
+				else
+					json.append(j * 1.25);
+				json.append(']');
+			}
+			json.append("]}");
+		}
+		return json.append("]}]}").toString();
+	}
+
+	private static class BlackholeCallback implements QueryResultCallback
+	{
+		private final Blackhole blackhole;
+
+		private BlackholeCallback(Blackhole blackhole)
+		{
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void startResult(String name, Map<String, List<String>> tags, List<GroupResult> groupResults)
+		{
+			blackhole.consume(name);
+		}
+
+		@Override
+		public void dataPoint(long timestamp, Object value)
+		{
+			blackhole.consume(value);
+		}
+
+		@Override
+		public void dataPoint(long timestamp, long value)
+		{
+			blackhole.consume(value);
+		}
+
+		@Override
+		public void dataPoint(long timestamp, double value)
+		{
+			blackhole.consume(value);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.kairosdb.client.benchmark;
+
+import org.kairosdb.client.TelnetClient;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures formatting and sending put lines with the TelnetClient to a local server that discards them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TelnetClientBenchmark
+{
+	private static final int METRICS = 10;
+	private static final int DATA_POINTS_PER_METRIC = 100;
+
+	private ServerSocket serverSocket;
+	private Thread drainThread;
+	private TelnetClient client;
+	private MetricBuilder builder;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		drainThread = new Thread(this::drain, "telnet-benchmark-server");
+		drainThread.setDaemon(true);
+		drainThread.start();
+
+		client = new TelnetClient(serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort());
+
+		builder = MetricBuilder.getInstance();
+		long timestamp = 1_500_000_000_000L;
+		for (int i = 0; i < METRICS; i++)
+		{
+			Metric metric = builder.addMetric("benchmark.metric" + i)
+					.addTag("host", "server" + i)
+					.addTag("datacenter", "dc1");
+			for (int j = 0; j < DATA_POINTS_PER_METRIC; j++)
+			{
+				if ((j & 1) == 0)
+					metric.addDataPoint(timestamp + j * 1000L, j);
+				else
+					metric.addDataPoint(timestamp + j * 1000L, j * 1.25);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		client.shutdown();
+		serverSocket.close();
+	}
+
+	@Benchmark
+	public void putMetrics()
+	{
+		client.putMetrics(builder);
+	}
+
+	private void drain()
+	{
+		byte[] buffer = new byte[64 * 1024];
+		try (Socket socket = serverSocket.accept(); InputStream in = socket.getInputStream())
+		{
+			//noinspection StatementWithEmptyBody
+			while (in.read(buffer) != -1)
+			{
+			}
+		}
+		catch (IOException ignored)
+		{
+			// Benchmark finished
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.kairosdb.client;
+
+import org.kairosdb.client.builder.*;
+import org.kairosdb.client.response.JsonResponseHandler;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryTagResponse;
+import org.kairosdb.client.response.UnexpectedResponseException;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link Client}. Every operation returns immediately with a future that is completed
+ * once the server has responded. Failures, including {@link UnexpectedResponseException}, complete the future
+ * exceptionally instead of being thrown to the caller.
+ */
+public interface AsyncClient extends Closeable
+{
+	/**
+	 * Create a new roll-up.
+	 * @param builder roll-up builder
+	 * @return future completed with the newly created roll-up task
+	 */
+	CompletableFuture<RollupTask> createRollupTask(RollupBuilder builder);
+
+	/**
+	 * Delete the roll-up.
+	 * @param id identifier of the roll-up
+	 * @return future completed when the roll-up has been deleted
+	 */
+	CompletableFuture<Void> deleteRollupTask(String id);
+
+	/**
+	 * Returns a list of all roll-up tasks.
+	 * @return future completed with the list of roll-up tasks
+	 */
+	CompletableFuture<List<RollupTask>> getRollupTasks();
+
+	/**
+	 * Returns the roll-up.
+	 * @param id roll-up identifier
+	 * @return future completed with the roll-up or null if no roll-ups match the specified identifier
+	 */
+	CompletableFuture<RollupTask> getRollupTask(String id);
+
+	/**
+	 * Returns a list of all metric names.
+	 *
+	 * @return future completed with the list of all metric names
+	 */
+	CompletableFuture<List<String>> getMetricNames();
+
+	/**
+	 * Returns status of Kairos Instance.
+	 *
+	 * @return future completed with the status of Kairos instance
+	 */
+	CompletableFuture<List<String>> getStatus();
+
+	/**
+	 * Returns a status code fo 204 if all is healthy.
+	 *
+	 * @return future completed with the status code
+	 */
+	CompletableFuture<Integer> getStatusCheck();
+
+	/**
+	 * Queries KairosDB using the query built by the builder.
+	 *
+	 * @param builder query builder
+	 * @param handler response handler
+	 * @return future completed with the value returned by the handler
+	 */
+	<T> CompletableFuture<T> query(QueryBuilder builder, JsonResponseHandler<T> handler);
+
+	/**
+	 * Queries KairosDB using the query built by the builder.
+	 *
+	 * @param builder query builder
+	 * @return future completed with the query response
+	 */
+	CompletableFuture<QueryResponse> query(QueryBuilder builder);
+
+	/**
+	 * Queries KairosDB tags using the query built by the builder.
+	 *
+	 * @param builder query tag builder
+	 * @return future completed with the query response
+	 */
+	CompletableFuture<QueryTagResponse> queryTags(QueryTagBuilder builder);
+
+	/**
+	 * Queries KairosDB tags using the query built by the builder.
+	 *
+	 * @param builder query tag builder
+	 * @param handler response handler
+	 * @return future completed with the value returned by the handler
+	 */
+	<T> CompletableFuture<T> queryTags(QueryTagBuilder builder, JsonResponseHandler<T> handler);
+
+	/**
+	 * Sends metrics from the builder to the KairosDB server. The JSON is built on the calling thread so the builder
+	 * may be reused as soon as this method returns.
+	 *
+	 * @param builder metrics builder
+	 * @return future completed when the server has accepted the metrics
+	 */
+	CompletableFuture<Void> pushMetrics(MetricBuilder builder);
+
+	/**
+	 * Deletes a metric. This is the metric and all its data points.
+	 *
+	 * @param name the metric to delete
+	 * @return future completed when the metric has been deleted
+	 */
+	CompletableFuture<Void> deleteMetric(String name);
+
+	/**
+	 * Deletes data in KairosDB using the query built by the builder.
+	 *
+	 * @param builder query builder
+	 * @return future completed when the data has been deleted
+	 */
+	CompletableFuture<Void> delete(QueryBuilder builder);
+
+	/**
+	 * Returns the version string for the KairosDB server.
+	 * @return future completed with the KairosDB version
+	 */
+	CompletableFuture<String> getVersion();
+
+	/**
+	 * Registers a new custom data type. The assumption is that this data type already exists on the server. The
+	 * dataPointValueClass is used to serialize and deserialize the custom type. This is simply a POJO.
+	 *
+	 * @param groupType           type used to deserialize the json on the client
+	 * @param dataPointValueClass class that is the value of a data point
+	 */
+	void registerCustomDataType(String groupType, Class dataPointValueClass);
+
+	/**
+	 * Returns the data point value class for the given group type or null if one is not registered for the group type
+	 *
+	 * @param groupType group type
+	 * @return data point class associated with the group type
+	 */
+	Class getDataPointValueClass(String groupType);
+}
@@ -0,0 +1,351 @@
+package org.kairosdb.client;
+
+import com.google.common.reflect.TypeToken;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.kairosdb.client.builder.*;
+import org.kairosdb.client.response.DefaultJsonResponseHandler;
+import org.kairosdb.client.response.JsonResponseHandler;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryTagResponse;
+import org.kairosdb.client.response.ResponseHelper;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.RequestFactory.*;
+import static org.kairosdb.client.util.Exceptions.propagate;
+import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+
+/**
+ * Non-blocking HTTP implementation of a client. Requests are multiplexed over a small number of I/O threads so a
+ * single caller can keep many requests in flight.
+ * <br>
+ * <br>
+ * Responses are handled by the same {@link JsonResponseHandler} implementations as the {@link HttpClient}. Handlers
+ * run on an I/O dispatcher thread, so expensive processing of the result should be moved to another executor using
+ * the <code>*Async</code> methods of the returned future.
+ */
+public class AsyncHttpClient implements AsyncClient
+{
+	private final CloseableHttpAsyncClient client;
+	private final RequestFactory requestFactory;
+	private final DataPointTypeRegistry typeRegistry;
+	private final Compression compression;
+
+	/**
+	 * Creates a client to talk to the host on the specified port.
+	 *
+	 * @param url url to the KairosDB server
+	 * @throws MalformedURLException if url is malformed
+	 */
+	public AsyncHttpClient(String url) throws MalformedURLException
+	{
+		this(KairosClientConfig.builder().build(), url);
+	}
+
+	/**
+	 * Creates a client to talk to the host on the specified port with the given connection settings.
+	 *
+	 * @param config connection settings
+	 * @param url    url to the KairosDB server
+	 * @throws MalformedURLException if the url is malformed
+	 */
+	public AsyncHttpClient(KairosClientConfig config, String url) throws MalformedURLException
+	{
+		this(requireNonNull(config, "config must not be null").createHttpAsyncClientBuilder().build(), url, config.createCompression());
+	}
+
+	/**
+	 * Creates a client to talk to the host on the specified port. This version
+	 * of the constructor exposes the HttpAsyncClientBuilder that can be used to set
+	 * various properties on the client.
+	 *
+	 * @param builder client builder.
+	 * @param url     url to the KairosDB server
+	 * @throws MalformedURLException if the url is malformed
+	 */
+	public AsyncHttpClient(HttpAsyncClientBuilder builder, String url) throws MalformedURLException
+	{
+		this(requireNonNull(builder, "builder must not be null").build(), url);
+	}
+
+	/**
+	 * Creates a client that uses the given asynchronous HTTP client. The client is started if it is not already
+	 * running.
+	 *
+	 * @param client asynchronous HTTP client
+	 * @param url    url to the KairosDB server
+	 * @throws MalformedURLException if the url is malformed
+	 */
+	public AsyncHttpClient(CloseableHttpAsyncClient client, String url) throws MalformedURLException
+	{
+		this(client, url, Compression.DEFAULT);
+	}
+
+	private AsyncHttpClient(CloseableHttpAsyncClient client, String url, Compression compression) throws MalformedURLException
+	{
+		requestFactory = new RequestFactory(url);
+		this.client = requireNonNull(client, "client must not be null");
+		this.compression = compression;
+		requestFactory.setAcceptEncoding(compression.getAcceptEncoding());
+		typeRegistry = new DataPointTypeRegistry();
+
+		if (!client.isRunning())
+		{
+			client.start();
+		}
+	}
+
+	@Override
+	public void registerCustomDataType(String groupType, Class dataPointClass)
+	{
+		checkNotNullOrEmpty(groupType, "groupType may not be null or empty");
+		requireNonNull(dataPointClass, "dataPointClass may not be null");
+		typeRegistry.registerCustomDataType(groupType, dataPointClass);
+	}
+
+	@Override
+	public Class getDataPointValueClass(String groupType)
+	{
+		return typeRegistry.getDataPointValueClass(groupType);
+	}
+
+	@SuppressWarnings("unused")
+	public DataPointTypeRegistry getTypeRegistry()
+	{
+		return typeRegistry;
+	}
+
+	@Override
+	public CompletableFuture<RollupTask> createRollupTask(RollupBuilder builder)
+	{
+		DefaultJsonResponseHandler<HttpClient.RollupTaskResponse> responseHandler = new DefaultJsonResponseHandler<>(HttpClient.RollupTaskResponse.class, typeRegistry);
+		CompletableFuture<HttpClient.RollupTaskResponse> future = postData(PATH_ROLLUPS, () -> builder.build(), responseHandler);
+
+		return future.thenCompose(rollupTaskResponse -> {
+			checkNotNullOrEmpty(rollupTaskResponse.getId(), "No task id was returned in the rollup-task");
+			return getRollupTask(rollupTaskResponse.getId());
+		});
+	}
+
+	@Override
+	public CompletableFuture<List<RollupTask>> getRollupTasks()
+	{
+		Type type = new TypeToken<List<RollupTask>>(){}.getType();
+		return queryData(PATH_ROLLUPS, new DefaultJsonResponseHandler<List<RollupTask>>(type, typeRegistry));
+	}
+
+	@Override
+	public CompletableFuture<RollupTask> getRollupTask(String id)
+	{
+		return queryData(PATH_ROLLUPS + id, new DefaultJsonResponseHandler<>(RollupTask.class, typeRegistry));
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteRollupTask(String id)
+	{
+		return delete(PATH_ROLLUPS + id, new DefaultJsonResponseHandler<>(Void.class, typeRegistry));
+	}
+
+	@Override
+	public CompletableFuture<List<String>> getMetricNames()
+	{
+		CompletableFuture<HttpClient.Results> future = queryData(PATH_METRIC_NAMES, new DefaultJsonResponseHandler<>(HttpClient.Results.class, typeRegistry));
+		return future.thenApply(results -> results.results);
+	}
+
+	@Override
+	public CompletableFuture<List<String>> getStatus()
+	{
+		Type type = new TypeToken<List<String>>(){}.getType();
+		return queryData(PATH_STATUS, new DefaultJsonResponseHandler<List<String>>(type, typeRegistry));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getStatusCheck()
+	{
+		return queryData(PATH_CHECK, new JsonResponseHandler<Integer>()
+		{
+			@Override
+			public Integer handleException(HttpUriRequest request, Exception exception) throws RuntimeException
+			{
+				throw propagate(request, exception);
+			}
+
+			@Override
+			public Integer handle(HttpUriRequest request, ResponseHelper response) throws RuntimeException
+			{
+				return response.getStatusCode();
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> getVersion()
+	{
+		CompletableFuture<HttpClient.Version> future = queryData(PATH_VERSION, new DefaultJsonResponseHandler<>(HttpClient.Version.class, typeRegistry));
+		return future.thenApply(version -> version.version);
+	}
+
+	@Override
+	public <T> CompletableFuture<T> query(QueryBuilder builder, JsonResponseHandler<T> handler)
+	{
+		return postData(PATH_QUERY, () -> builder.build(), handler);
+	}
+
+	@Override
+	public CompletableFuture<QueryResponse> query(QueryBuilder builder)
+	{
+		return postData(PATH_QUERY, () -> builder.build(), new DefaultJsonResponseHandler<>(QueryResponse.class, typeRegistry));
+	}
+
+	@Override
+	public CompletableFuture<QueryTagResponse> queryTags(QueryTagBuilder builder)
+	{
+		return postData(PATH_QUERY_TAGS, () -> builder.build(), new DefaultJsonResponseHandler<>(QueryTagResponse.class, typeRegistry));
+	}
+
+	@Override
+	public <T> CompletableFuture<T> queryTags(QueryTagBuilder builder, JsonResponseHandler<T> handler)
+	{
+		return postData(PATH_QUERY_TAGS, () -> builder.build(), handler);
+	}
+
+	@Override
+	public CompletableFuture<Void> pushMetrics(MetricBuilder builder)
+	{
+		// Serialized before returning so the caller may reuse the builder
+		HttpEntity entity;
+		try
+		{
+			builder.validate();
+			entity = new MetricBuilderEntity(builder, compression.isEnabled(builder) ? compression.getCodec() : null)
+					.toBufferedEntity();
+		}
+		catch (IOException e)
+		{
+			return CompletableFuture.failedFuture(new RuntimeException("Unable to serialize metrics", e));
+		}
+		catch (RuntimeException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+		return execute(requestFactory.createPost(PATH_DATAPOINTS, entity), new DefaultJsonResponseHandler<>(Void.class, typeRegistry));
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteMetric(String name)
+	{
+		return delete(PATH_METRIC + name, new DefaultJsonResponseHandler<>(Void.class, typeRegistry));
+	}
+
+	@Override
+	public CompletableFuture<Void> delete(QueryBuilder builder)
+	{
+		return postData(PATH_DELETE, () -> builder.build(), new DefaultJsonResponseHandler<>(Void.class, typeRegistry));
+	}
+
+	private <T> CompletableFuture<T> postData(String path, Supplier<String> json, JsonResponseHandler<T> responseHandler)
+	{
+		// Builders validate while they serialize, their errors complete the future like any other failure
+		String body;
+		try
+		{
+			body = json.get();
+		}
+		catch (RuntimeException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+		return execute(requestFactory.createPost(path, body), responseHandler);
+	}
+
+	private <T> CompletableFuture<T> queryData(String path, JsonResponseHandler<T> responseHandler)
+	{
+		return execute(requestFactory.createGet(path), responseHandler);
+	}
+
+	private <T> CompletableFuture<T> delete(String path, JsonResponseHandler<T> responseHandler)
+	{
+		return execute(requestFactory.createDelete(path), responseHandler);
+	}
+
+	private <T> CompletableFuture<T> execute(HttpUriRequest request, JsonResponseHandler<T> responseHandler)
+	{
+		CompletableFuture<T> future = new CompletableFuture<>();
+		FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>()
+		{
+			@Override
+			public void completed(HttpResponse response)
+			{
+				try
+				{
+					compression.decode(response);
+					future.complete(responseHandler.handle(request, new ResponseHelper(response)));
+				}
+				catch (RuntimeException e)
+				{
+					future.completeExceptionally(e);
+				}
+			}
+
+			@Override
+			public void failed(Exception exception)
+			{
+				try
+				{
+					future.complete(responseHandler.handleException(request, exception));
+				}
+				catch (RuntimeException e)
+				{
+					future.completeExceptionally(e);
+				}
+			}
+
+			@Override
+			public void cancelled()
+			{
+				future.cancel(false);
+			}
+		};
+
+		Future<HttpResponse> httpFuture;
+		try
+		{
+			httpFuture = client.execute(request, callback);
+		}
+		catch (RuntimeException e)
+		{
+			// For example when the client has been closed
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		// Cancelling the returned future aborts the underlying request
+		future.whenComplete((result, throwable) -> {
+			if (future.isCancelled() && httpFuture != null)
+			{
+				httpFuture.cancel(true);
+			}
+		});
+
+		return future;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		client.close();
+	}
+}
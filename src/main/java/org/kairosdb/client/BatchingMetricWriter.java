@@ -0,0 +1,700 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableMap;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Exceptions.reportUncaught;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+import static org.kairosdb.client.util.Preconditions.checkState;
+
+/**
+ * Accumulates data points in a bounded buffer and pushes them to KairosDB in batches from a background thread.
+ * <br>
+ * <br>
+ * A batch is sent when the number of buffered data points or their estimated JSON size reaches its threshold, or
+ * when the oldest buffered data point has waited for the linger time. Closing the writer sends all buffered data
+ * points before returning. The wrapped client is not closed by the writer.
+ * <br>
+ * <br>
+ * Because batches are sent in the background, failures cannot be thrown to the caller. They are passed to the error
+ * handler together with the batch that failed.
+ */
+public class BatchingMetricWriter implements Closeable
+{
+	/**
+	 * What happens when a data point is added while the buffer is full.
+	 */
+	public enum OverflowPolicy
+	{
+		/**
+		 * The caller waits until the background thread has made room in the buffer.
+		 */
+		BLOCK,
+		/**
+		 * The oldest buffered data point is discarded.
+		 */
+		DROP_OLDEST,
+		/**
+		 * An IllegalStateException is thrown and the data point is discarded.
+		 */
+		FAIL
+	}
+
+	// Rough JSON size of "[timestamp,value]," for a numeric data point
+	private static final int ESTIMATED_DATA_POINT_BYTES = 32;
+
+	private final Client client;
+	private final int maxBatchPoints;
+	private final long maxBatchBytes;
+	private final int maxBufferedPoints;
+	private final long lingerNanos;
+	private final OverflowPolicy overflowPolicy;
+	private final boolean compression;
+	private final BiConsumer<MetricBuilder, RuntimeException> errorHandler;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition flushed = lock.newCondition();
+	private final ArrayDeque<PendingDataPoint> buffer = new ArrayDeque<>();
+	private final Thread flusher;
+
+	private long bufferedBytes;
+	private boolean closed;
+
+	// Sequence numbers used by flush(): data points added, taken out of the buffer and handled by the flusher
+	private long added;
+	private long removed;
+	private long completed;
+	private long flushTarget;
+
+	private long sentDataPoints;
+	private long droppedDataPoints;
+	private long failedBatches;
+
+	private BatchingMetricWriter(Builder builder)
+	{
+		client = builder.client;
+		maxBatchPoints = builder.maxBatchPoints;
+		maxBatchBytes = builder.maxBatchBytes;
+		maxBufferedPoints = builder.maxBufferedPoints;
+		lingerNanos = builder.lingerNanos;
+		overflowPolicy = builder.overflowPolicy;
+		compression = builder.compression;
+		errorHandler = builder.errorHandler;
+
+		flusher = new Thread(this::run, "kairosdb-batching-writer");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Returns a builder for a writer that pushes to the given client.
+	 *
+	 * @param client client used to push batches
+	 * @return writer builder
+	 */
+	public static Builder builder(Client client)
+	{
+		return new Builder(client);
+	}
+
+	/**
+	 * Adds a data point for the series identified by the metric name and tags.
+	 *
+	 * @param name      metric name
+	 * @param tags      tags of the series. At least one tag is required.
+	 * @param timestamp when the measurement occurred
+	 * @param value     the measurement value
+	 */
+	public void add(String name, Map<String, String> tags, long timestamp, long value)
+	{
+		add(new Series(name, tags, null, 0), timestamp, value);
+	}
+
+	/**
+	 * Adds a data point for the series identified by the metric name and tags.
+	 *
+	 * @param name      metric name
+	 * @param tags      tags of the series. At least one tag is required.
+	 * @param timestamp when the measurement occurred
+	 * @param value     the measurement value
+	 */
+	public void add(String name, Map<String, String> tags, long timestamp, double value)
+	{
+		add(new Series(name, tags, null, 0), timestamp, value);
+	}
+
+	/**
+	 * Adds all data points of the metric. The metric is copied so it may be reused once this method returns.
+	 *
+	 * @param metric metric to add
+	 */
+	public void add(Metric metric)
+	{
+		requireNonNull(metric, "metric cannot be null");
+		Series series = new Series(metric.getName(), metric.getTags(), metric.getType(), metric.getTtl());
+		for (DataPoint dataPoint : metric.getDataPoints())
+		{
+			add(series, dataPoint.getTimestamp(), dataPoint.getValue());
+		}
+	}
+
+	/**
+	 * Sends all buffered data points and waits until they have been pushed.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void flush() throws InterruptedException
+	{
+		lock.lock();
+		try
+		{
+			checkState(!closed, "Writer is closed");
+			long target = added;
+			flushTarget = Math.max(flushTarget, target);
+			notEmpty.signal();
+			while (completed < target)
+			{
+				flushed.await();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends all buffered data points and stops the background thread.
+	 */
+	@Override
+	public void close()
+	{
+		lock.lock();
+		try
+		{
+			if (closed)
+				return;
+			closed = true;
+			notEmpty.signal();
+			notFull.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		boolean interrupted = false;
+		while (flusher.isAlive())
+		{
+			try
+			{
+				flusher.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of data points that are waiting to be sent.
+	 *
+	 * @return number of buffered data points
+	 */
+	public int getBufferedDataPoints()
+	{
+		lock.lock();
+		try
+		{
+			return buffer.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of data points that were pushed successfully.
+	 *
+	 * @return number of data points sent
+	 */
+	public long getSentDataPoints()
+	{
+		lock.lock();
+		try
+		{
+			return sentDataPoints;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of data points discarded because the buffer was full.
+	 *
+	 * @return number of dropped data points
+	 */
+	public long getDroppedDataPoints()
+	{
+		lock.lock();
+		try
+		{
+			return droppedDataPoints;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of batches that could not be pushed.
+	 *
+	 * @return number of failed batches
+	 */
+	public long getFailedBatches()
+	{
+		lock.lock();
+		try
+		{
+			return failedBatches;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void add(Series series, long timestamp, Object value)
+	{
+		PendingDataPoint dataPoint = new PendingDataPoint(series, timestamp, value);
+
+		lock.lock();
+		try
+		{
+			checkState(!closed, "Writer is closed");
+			while (buffer.size() >= maxBufferedPoints)
+			{
+				switch (overflowPolicy)
+				{
+					case BLOCK:
+						notFull.awaitUninterruptibly();
+						checkState(!closed, "Writer is closed");
+						break;
+					case DROP_OLDEST:
+						PendingDataPoint dropped = buffer.removeFirst();
+						bufferedBytes -= dropped.estimatedSize();
+						droppedDataPoints++;
+						removed++;
+						break;
+					case FAIL:
+						droppedDataPoints++;
+						throw new IllegalStateException("Buffer is full (" + maxBufferedPoints + " data points)");
+				}
+			}
+
+			boolean wasEmpty = buffer.isEmpty();
+			buffer.addLast(dataPoint);
+			bufferedBytes += dataPoint.estimatedSize();
+			added++;
+
+			// Wake the flusher so it starts the linger timer or sends a full batch
+			if (wasEmpty || batchIsFull())
+			{
+				notEmpty.signal();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private boolean batchIsFull()
+	{
+		return buffer.size() >= maxBatchPoints || bufferedBytes >= maxBatchBytes;
+	}
+
+	private void run()
+	{
+		while (true)
+		{
+			List<PendingDataPoint> batch;
+			long batchEnd;
+			boolean lastBatch;
+
+			lock.lock();
+			try
+			{
+				while (!closed && flushTarget <= completed && !batchIsFull())
+				{
+					if (buffer.isEmpty())
+					{
+						notEmpty.awaitUninterruptibly();
+					}
+					else
+					{
+						// The linger time runs from when the oldest data point still buffered was added
+						long remaining = lingerNanos - (System.nanoTime() - buffer.peekFirst().addedNanos);
+						if (remaining <= 0)
+							break;
+						try
+						{
+							notEmpty.awaitNanos(remaining);
+						}
+						catch (InterruptedException ignored)
+						{
+							// Only close() stops the flusher
+						}
+					}
+				}
+
+				batch = drainBatch();
+				batchEnd = removed;
+				lastBatch = closed && buffer.isEmpty();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			try
+			{
+				send(batch);
+			}
+			finally
+			{
+				lock.lock();
+				try
+				{
+					completed = batchEnd;
+					flushed.signalAll();
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+
+			if (lastBatch)
+			{
+				return;
+			}
+		}
+	}
+
+	private List<PendingDataPoint> drainBatch()
+	{
+		List<PendingDataPoint> batch = new ArrayList<>(Math.min(buffer.size(), maxBatchPoints));
+		long batchBytes = 0;
+		while (!buffer.isEmpty() && batch.size() < maxBatchPoints && batchBytes < maxBatchBytes)
+		{
+			PendingDataPoint dataPoint = buffer.removeFirst();
+			batch.add(dataPoint);
+			batchBytes += dataPoint.estimatedSize();
+		}
+		bufferedBytes -= batchBytes;
+		removed += batch.size();
+		notFull.signalAll();
+
+		return batch;
+	}
+
+	private void send(List<PendingDataPoint> batch)
+	{
+		if (batch.isEmpty())
+			return;
+
+		MetricBuilder builder = MetricBuilder.getInstance();
+		builder.setCompression(compression);
+		Map<Series, Metric> metrics = new LinkedHashMap<>();
+		for (PendingDataPoint dataPoint : batch)
+		{
+			Metric metric = metrics.computeIfAbsent(dataPoint.series, series -> series.addTo(builder));
+			dataPoint.addTo(metric);
+		}
+
+		try
+		{
+			client.pushMetrics(builder);
+			lock.lock();
+			try
+			{
+				sentDataPoints += batch.size();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+		catch (Throwable e)
+		{
+			lock.lock();
+			try
+			{
+				failedBatches++;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			handleError(builder, e);
+		}
+	}
+
+	/**
+	 * Passes a failed push to the error handler. Errors and exceptions thrown by the handler are reported to the
+	 * uncaught exception handler, so the flusher keeps running.
+	 */
+	private void handleError(MetricBuilder builder, Throwable exception)
+	{
+		try
+		{
+			if (exception instanceof RuntimeException)
+				errorHandler.accept(builder, (RuntimeException) exception);
+			else
+				reportUncaught(exception);
+		}
+		catch (Throwable e)
+		{
+			reportUncaught(e);
+		}
+	}
+
+	private static class Series
+	{
+		private final String name;
+		private final Map<String, String> tags;
+		private final String type;
+		private final int ttl;
+		private final int estimatedSize;
+
+		private Series(String name, Map<String, String> tags, String type, int ttl)
+		{
+			this.name = checkNotNullOrEmpty(name, "name cannot be null or empty");
+			this.tags = ImmutableMap.copyOf(requireNonNull(tags, "tags cannot be null"));
+			checkArgument(!tags.isEmpty(), name + " must contain at least one tag.");
+			this.type = type;
+			this.ttl = ttl;
+
+			int size = name.length();
+			for (Map.Entry<String, String> tag : this.tags.entrySet())
+			{
+				size += tag.getKey().length() + tag.getValue().length();
+			}
+			estimatedSize = size;
+		}
+
+		private Metric addTo(MetricBuilder builder)
+		{
+			Metric metric = type == null ? builder.addMetric(name) : builder.addMetric(name, type);
+			metric.addTags(tags);
+			if (ttl > 0)
+			{
+				metric.addTtl(ttl);
+			}
+			return metric;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Series series = (Series) o;
+			return ttl == series.ttl && name.equals(series.name) && tags.equals(series.tags) && Objects.equals(type, series.type);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(name, tags, type, ttl);
+		}
+	}
+
+	private static class PendingDataPoint
+	{
+		private final Series series;
+		private final long timestamp;
+		private final Object value;
+		private final long addedNanos;
+
+		private PendingDataPoint(Series series, long timestamp, Object value)
+		{
+			this.series = series;
+			this.timestamp = timestamp;
+			this.value = value;
+			addedNanos = System.nanoTime();
+		}
+
+		private long estimatedSize()
+		{
+			// The series name and tags are only written once per batch, count a share of them
+			long size = ESTIMATED_DATA_POINT_BYTES + series.estimatedSize / 8;
+			if (value instanceof String)
+			{
+				size += ((String) value).length();
+			}
+			return size;
+		}
+
+		private void addTo(Metric metric)
+		{
+			if (value instanceof Long || value instanceof Integer)
+			{
+				metric.addDataPoint(timestamp, ((Number) value).longValue());
+			}
+			else if (value instanceof Double || value instanceof Float)
+			{
+				metric.addDataPoint(timestamp, ((Number) value).doubleValue());
+			}
+			else
+			{
+				metric.addDataPoint(timestamp, value);
+			}
+		}
+	}
+
+	/**
+	 * Configures a {@link BatchingMetricWriter}.
+	 */
+	public static class Builder
+	{
+		private final Client client;
+		private int maxBatchPoints = 10_000;
+		private long maxBatchBytes = 1024 * 1024;
+		private int maxBufferedPoints = 100_000;
+		private long lingerNanos = TimeUnit.SECONDS.toNanos(1);
+		private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+		private boolean compression;
+		private BiConsumer<MetricBuilder, RuntimeException> errorHandler = (builder, exception) -> {};
+
+		private Builder(Client client)
+		{
+			this.client = requireNonNull(client, "client cannot be null");
+		}
+
+		/**
+		 * Maximum number of data points sent in one request. The default is 10,000.
+		 *
+		 * @param maxBatchPoints maximum data points per request
+		 * @return the builder
+		 */
+		public Builder setMaxBatchPoints(int maxBatchPoints)
+		{
+			checkArgument(maxBatchPoints > 0, "maxBatchPoints must be greater than 0");
+			this.maxBatchPoints = maxBatchPoints;
+			return this;
+		}
+
+		/**
+		 * Maximum estimated size of the JSON sent in one request. The default is 1 MB.
+		 *
+		 * @param maxBatchBytes maximum estimated bytes per request
+		 * @return the builder
+		 */
+		public Builder setMaxBatchBytes(long maxBatchBytes)
+		{
+			checkArgument(maxBatchBytes > 0, "maxBatchBytes must be greater than 0");
+			this.maxBatchBytes = maxBatchBytes;
+			return this;
+		}
+
+		/**
+		 * Maximum number of data points held in memory before the overflow policy applies. The default is 100,000.
+		 *
+		 * @param maxBufferedPoints buffer capacity in data points
+		 * @return the builder
+		 */
+		public Builder setMaxBufferedPoints(int maxBufferedPoints)
+		{
+			checkArgument(maxBufferedPoints > 0, "maxBufferedPoints must be greater than 0");
+			this.maxBufferedPoints = maxBufferedPoints;
+			return this;
+		}
+
+		/**
+		 * How long a data point may wait in the buffer before a partial batch is sent. The default is one second.
+		 *
+		 * @param linger linger time
+		 * @param unit   unit of the linger time
+		 * @return the builder
+		 */
+		public Builder setLinger(long linger, TimeUnit unit)
+		{
+			checkArgument(linger >= 0, "linger cannot be negative");
+			this.lingerNanos = requireNonNull(unit, "unit cannot be null").toNanos(linger);
+			return this;
+		}
+
+		/**
+		 * What to do when the buffer is full. The default is to block.
+		 *
+		 * @param overflowPolicy overflow policy
+		 * @return the builder
+		 */
+		public Builder setOverflowPolicy(OverflowPolicy overflowPolicy)
+		{
+			this.overflowPolicy = requireNonNull(overflowPolicy, "overflowPolicy cannot be null");
+			return this;
+		}
+
+		/**
+		 * Compress the batches sent to the server. Off by default.
+		 *
+		 * @param compression compress batches
+		 * @return the builder
+		 */
+		public Builder setCompression(boolean compression)
+		{
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * Called from the background thread with the batch and the exception when a batch could not be pushed.
+		 * Exceptions thrown by the handler, and errors thrown by the push, are passed to the uncaught exception
+		 * handler of the background thread, which keeps running.
+		 *
+		 * @param errorHandler error handler
+		 * @return the builder
+		 */
+		public Builder setErrorHandler(BiConsumer<MetricBuilder, RuntimeException> errorHandler)
+		{
+			this.errorHandler = requireNonNull(errorHandler, "errorHandler cannot be null");
+			return this;
+		}
+
+		public BatchingMetricWriter build()
+		{
+			checkArgument(maxBatchPoints <= maxBufferedPoints, "maxBatchPoints cannot be greater than maxBufferedPoints");
+			return new BatchingMetricWriter(this);
+		}
+	}
+}
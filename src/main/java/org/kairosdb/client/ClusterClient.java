@@ -0,0 +1,589 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.QueryTagBuilder;
+import org.kairosdb.client.builder.RollupBuilder;
+import org.kairosdb.client.builder.RollupTask;
+import org.kairosdb.client.instrumentation.ClientInstrumentation;
+import org.kairosdb.client.response.JsonResponseHandler;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryTagResponse;
+import org.kairosdb.client.response.ResponseHelper;
+import org.kairosdb.client.response.UnexpectedResponseException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+import static org.kairosdb.client.util.Exceptions.getCause;
+import static org.kairosdb.client.util.Exceptions.isServerFailure;
+import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+
+/**
+ * Client that spreads requests over several KairosDB nodes. Each request goes to the less busy of two randomly chosen
+ * healthy nodes, measured by the number of requests in flight, so a slow node receives fewer requests.
+ * <br>
+ * <br>
+ * A node is taken out of rotation when a request to it fails with an I/O error or a 5xx response, and is put back
+ * once a background health check against the <code>/api/v1/health/check</code> endpoint succeeds. If no node is
+ * healthy, requests are sent to any node.
+ * <br>
+ * <br>
+ * Idempotent requests that fail because of the node are retried on another node: queries, reads and deletes. Pushing
+ * metrics and creating roll-up tasks are only retried when the connection was refused, since the node may already
+ * have processed the request. Queries with a custom response handler are only retried if the handler has not been
+ * called yet.
+ */
+public class ClusterClient implements Client
+{
+	private static final Predicate<RuntimeException> ALWAYS = exception -> true;
+	private static final Predicate<RuntimeException> NEVER = exception -> false;
+
+	private final List<Node> nodes;
+	private final CloseableHttpClient httpClient;
+	private final int maxAttempts;
+	private final ScheduledExecutorService healthChecker;
+
+	private ClusterClient(Builder builder) throws MalformedURLException
+	{
+		httpClient = builder.httpClientBuilder != null
+				? builder.httpClientBuilder.build()
+				: builder.config.createHttpClientBuilder().build();
+		List<Node> nodes = new ArrayList<>();
+		try
+		{
+			for (String url : builder.urls)
+			{
+				HttpClient client = new HttpClient(httpClient, url);
+				if (builder.httpClientBuilder == null)
+				{
+					client.configure(builder.config);
+				}
+				nodes.add(new Node(url, client));
+			}
+		}
+		catch (MalformedURLException e)
+		{
+			closeQuietly(httpClient);
+			throw e;
+		}
+		this.nodes = ImmutableList.copyOf(nodes);
+		maxAttempts = Math.min(builder.maxAttempts, nodes.size());
+
+		if (builder.healthCheckIntervalMillis > 0)
+		{
+			healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "kairosdb-cluster-health-check");
+				thread.setDaemon(true);
+				return thread;
+			});
+			healthChecker.scheduleWithFixedDelay(this::checkHealth, builder.healthCheckIntervalMillis,
+					builder.healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+		else
+		{
+			healthChecker = null;
+		}
+	}
+
+	/**
+	 * Returns a builder for a client that talks to the given KairosDB nodes.
+	 *
+	 * @param urls urls of the KairosDB nodes
+	 * @return client builder
+	 */
+	public static Builder builder(List<String> urls)
+	{
+		return new Builder(urls);
+	}
+
+	/**
+	 * Sets the instrumentation that receives the measurements of every request made to any node.
+	 *
+	 * @param instrumentation instrumentation to use
+	 */
+	public void setInstrumentation(ClientInstrumentation instrumentation)
+	{
+		for (Node node : nodes)
+		{
+			node.client.setInstrumentation(instrumentation);
+		}
+	}
+
+	/**
+	 * Sets the limiter that controls how fast metrics are pushed. The limiter is shared by all nodes, so its limits
+	 * apply to the cluster as a whole.
+	 *
+	 * @param ingestLimiter limiter to use
+	 */
+	public void setIngestLimiter(IngestLimiter ingestLimiter)
+	{
+		requireNonNull(ingestLimiter, "ingestLimiter cannot be null");
+		for (Node node : nodes)
+		{
+			node.client.setIngestLimiter(ingestLimiter);
+		}
+	}
+
+	/**
+	 * Returns the urls of the nodes that currently receive requests.
+	 *
+	 * @return urls of the healthy nodes
+	 */
+	public List<String> getHealthyNodes()
+	{
+		List<String> healthy = new ArrayList<>();
+		for (Node node : nodes)
+		{
+			if (node.healthy)
+			{
+				healthy.add(node.url);
+			}
+		}
+		return healthy;
+	}
+
+	/**
+	 * Checks the health of every node now instead of waiting for the next scheduled check.
+	 */
+	public void checkHealth()
+	{
+		for (Node node : nodes)
+		{
+			try
+			{
+				int status = node.client.getStatusCheck();
+				node.healthy = status >= 200 && status < 300;
+			}
+			catch (RuntimeException e)
+			{
+				node.healthy = false;
+			}
+		}
+	}
+
+	@Override
+	public RollupTask createRollupTask(RollupBuilder builder)
+	{
+		return execute(client -> client.createRollupTask(builder), NEVER);
+	}
+
+	@Override
+	public void deleteRollupTask(String id)
+	{
+		execute(client -> {
+			client.deleteRollupTask(id);
+			return null;
+		}, ALWAYS);
+	}
+
+	@Override
+	public List<RollupTask> getRollupTasks()
+	{
+		return execute(HttpClient::getRollupTasks, ALWAYS);
+	}
+
+	@Override
+	public RollupTask getRollupTask(String id)
+	{
+		return execute(client -> client.getRollupTask(id), ALWAYS);
+	}
+
+	@Override
+	public List<String> getMetricNames()
+	{
+		return execute(HttpClient::getMetricNames, ALWAYS);
+	}
+
+	@Override
+	public List<String> getStatus()
+	{
+		return execute(HttpClient::getStatus, ALWAYS);
+	}
+
+	/**
+	 * Returns the status of one of the nodes. Use {@link #getHealthyNodes()} for the status of the cluster.
+	 */
+	@Override
+	public int getStatusCheck()
+	{
+		return execute(HttpClient::getStatusCheck, ALWAYS);
+	}
+
+	@Override
+	public <T> T query(QueryBuilder builder, JsonResponseHandler<T> handler)
+	{
+		return executeWithHandler(handler, (client, trackingHandler) -> client.query(builder, trackingHandler));
+	}
+
+	@Override
+	public QueryResponse query(QueryBuilder builder)
+	{
+		return execute(client -> client.query(builder), ALWAYS);
+	}
+
+	@Override
+	public QueryTagResponse queryTags(QueryTagBuilder builder)
+	{
+		return execute(client -> client.queryTags(builder), ALWAYS);
+	}
+
+	@Override
+	public <T> T queryTags(QueryTagBuilder builder, JsonResponseHandler<T> handler)
+	{
+		return executeWithHandler(handler, (client, trackingHandler) -> client.queryTags(builder, trackingHandler));
+	}
+
+	@Override
+	public void pushMetrics(MetricBuilder builder)
+	{
+		execute(client -> {
+			client.pushMetrics(builder);
+			return null;
+		}, NEVER);
+	}
+
+	/**
+	 * Pushes metrics that have already been serialized to JSON, such as the output of {@link MetricBuilder#build()}.
+	 *
+	 * @param json JSON in UTF-8
+	 * @throws UnexpectedResponseException if the operation fails
+	 */
+	public void pushMetrics(byte[] json)
+	{
+		execute(client -> {
+			client.pushMetrics(json);
+			return null;
+		}, NEVER);
+	}
+
+	@Override
+	public void deleteMetric(String name)
+	{
+		execute(client -> {
+			client.deleteMetric(name);
+			return null;
+		}, ALWAYS);
+	}
+
+	@Override
+	public void delete(QueryBuilder builder)
+	{
+		execute(client -> {
+			client.delete(builder);
+			return null;
+		}, ALWAYS);
+	}
+
+	@Override
+	public String getVersion()
+	{
+		return execute(HttpClient::getVersion, ALWAYS);
+	}
+
+	@Override
+	public void registerCustomDataType(String groupType, Class dataPointValueClass)
+	{
+		for (Node node : nodes)
+		{
+			node.client.registerCustomDataType(groupType, dataPointValueClass);
+		}
+	}
+
+	@Override
+	public Class getDataPointValueClass(String groupType)
+	{
+		return nodes.get(0).client.getDataPointValueClass(groupType);
+	}
+
+	@SuppressWarnings("unused")
+	public DataPointTypeRegistry getTypeRegistry()
+	{
+		return nodes.get(0).client.getTypeRegistry();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (healthChecker != null)
+		{
+			healthChecker.shutdownNow();
+		}
+		for (Node node : nodes)
+		{
+			node.client.closeRetrier();
+		}
+		httpClient.close();
+	}
+
+	private <T> T executeWithHandler(JsonResponseHandler<T> handler, HandlerRequest<T> request)
+	{
+		requireNonNull(handler, "handler cannot be null");
+		TrackingHandler<T> trackingHandler = new TrackingHandler<>(handler);
+		return execute(client -> {
+			trackingHandler.called = false;
+			return request.execute(client, trackingHandler);
+		}, exception -> !trackingHandler.called);
+	}
+
+	/**
+	 * Sends the request to a node and retries on other nodes if the node failed. Requests are retried if the
+	 * connection was refused or the retryable predicate accepts the failure.
+	 */
+	private <T> T execute(Function<HttpClient, T> request, Predicate<RuntimeException> retryable)
+	{
+		boolean[] tried = new boolean[nodes.size()];
+		RuntimeException failure = null;
+		for (int attempt = 0; attempt < maxAttempts; attempt++)
+		{
+			int index = selectNode(tried);
+			tried[index] = true;
+			Node node = nodes.get(index);
+			node.outstanding.incrementAndGet();
+			try
+			{
+				return request.apply(node.client);
+			}
+			catch (RuntimeException e)
+			{
+				if (!isServerFailure(e))
+					throw e;
+
+				node.healthy = false;
+				if (failure == null)
+				{
+					failure = e;
+				}
+				else
+				{
+					failure.addSuppressed(e);
+				}
+				if (!retryable.test(e) && !isConnectFailure(e))
+					throw failure;
+			}
+			finally
+			{
+				node.outstanding.decrementAndGet();
+			}
+		}
+		throw failure;
+	}
+
+	/**
+	 * Picks the node with fewer outstanding requests out of two random nodes that are healthy and have not been tried
+	 * yet. Falls back to untried unhealthy nodes if no healthy node is left.
+	 */
+	private int selectNode(boolean[] tried)
+	{
+		int first = -1;
+		int second = -1;
+		int candidates = 0;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int pass = 0; pass < 2 && candidates == 0; pass++)
+		{
+			boolean requireHealthy = pass == 0;
+			for (int i = 0; i < nodes.size(); i++)
+			{
+				if (tried[i] || (requireHealthy && !nodes.get(i).healthy))
+					continue;
+
+				// Reservoir sampling of two distinct candidates
+				candidates++;
+				if (candidates == 1)
+				{
+					first = i;
+				}
+				else if (candidates == 2)
+				{
+					second = i;
+				}
+				else if (random.nextInt(candidates) < 2)
+				{
+					if (random.nextBoolean())
+						first = i;
+					else
+						second = i;
+				}
+			}
+		}
+
+		if (second == -1)
+			return first;
+
+		// Break ties randomly so idle nodes share the load
+		int firstOutstanding = nodes.get(first).outstanding.get();
+		int secondOutstanding = nodes.get(second).outstanding.get();
+		if (firstOutstanding == secondOutstanding)
+			return random.nextBoolean() ? first : second;
+		return firstOutstanding < secondOutstanding ? first : second;
+	}
+
+	private static boolean isConnectFailure(RuntimeException e)
+	{
+		return getCause(e, ConnectException.class) != null;
+	}
+
+	private static void closeQuietly(CloseableHttpClient client)
+	{
+		try
+		{
+			client.close();
+		}
+		catch (IOException ignored)
+		{
+			// Already failing
+		}
+	}
+
+	private interface HandlerRequest<T>
+	{
+		T execute(HttpClient client, JsonResponseHandler<T> handler);
+	}
+
+	/**
+	 * Records whether a custom handler has been given the response, after which the request must not be retried as
+	 * the handler may already have processed part of it.
+	 */
+	private static class TrackingHandler<T> implements JsonResponseHandler<T>
+	{
+		private final JsonResponseHandler<T> delegate;
+		private boolean called;
+
+		private TrackingHandler(JsonResponseHandler<T> delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		@Override
+		public T handle(HttpUriRequest request, ResponseHelper response) throws RuntimeException
+		{
+			called = true;
+			return delegate.handle(request, response);
+		}
+
+		@Override
+		public T handleException(HttpUriRequest request, Exception exception) throws RuntimeException
+		{
+			return delegate.handleException(request, exception);
+		}
+	}
+
+	private static class Node
+	{
+		private final String url;
+		private final HttpClient client;
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private volatile boolean healthy = true;
+
+		private Node(String url, HttpClient client)
+		{
+			this.url = url;
+			this.client = client;
+		}
+	}
+
+	/**
+	 * Configures a {@link ClusterClient}.
+	 */
+	public static class Builder
+	{
+		private final List<String> urls;
+		private KairosClientConfig config = KairosClientConfig.builder().build();
+		private HttpClientBuilder httpClientBuilder;
+		private long healthCheckIntervalMillis = 10_000;
+		private int maxAttempts = 3;
+
+		private Builder(List<String> urls)
+		{
+			requireNonNull(urls, "urls cannot be null");
+			checkArgument(!urls.isEmpty(), "urls cannot be empty");
+			for (String url : urls)
+			{
+				checkNotNullOrEmpty(url, "url cannot be null or empty");
+			}
+			this.urls = ImmutableList.copyOf(urls);
+		}
+
+		/**
+		 * Connection settings of the HTTP client shared by all nodes. The connection limit per route applies to each
+		 * node. Replaces any builder set with {@link #setHttpClientBuilder(HttpClientBuilder)}.
+		 *
+		 * @param config connection settings
+		 * @return the builder
+		 */
+		public Builder setConfig(KairosClientConfig config)
+		{
+			this.config = requireNonNull(config, "config cannot be null");
+			this.httpClientBuilder = null;
+			return this;
+		}
+
+		/**
+		 * Builder of the HTTP client shared by all nodes, for settings that {@link KairosClientConfig} does not cover.
+		 * Replaces the config set with {@link #setConfig(KairosClientConfig)}.
+		 *
+		 * @param httpClientBuilder HTTP client builder
+		 * @return the builder
+		 */
+		public Builder setHttpClientBuilder(HttpClientBuilder httpClientBuilder)
+		{
+			this.httpClientBuilder = requireNonNull(httpClientBuilder, "httpClientBuilder cannot be null");
+			return this;
+		}
+
+		/**
+		 * How often the health of the nodes is checked. Zero disables the health check, in which case nodes that
+		 * failed are only used again when no healthy node is left. The default is 10 seconds.
+		 *
+		 * @param interval time between health checks
+		 * @param unit     unit of the interval
+		 * @return the builder
+		 */
+		public Builder setHealthCheckInterval(long interval, TimeUnit unit)
+		{
+			checkArgument(interval >= 0, "interval cannot be negative");
+			this.healthCheckIntervalMillis = requireNonNull(unit, "unit cannot be null").toMillis(interval);
+			return this;
+		}
+
+		/**
+		 * Maximum number of nodes a request is sent to before giving up. The default is 3.
+		 *
+		 * @param maxAttempts maximum attempts per request
+		 * @return the builder
+		 */
+		public Builder setMaxAttempts(int maxAttempts)
+		{
+			checkArgument(maxAttempts > 0, "maxAttempts must be greater than 0");
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Creates the client.
+		 *
+		 * @return the client
+		 * @throws MalformedURLException if one of the urls is malformed
+		 */
+		public ClusterClient build() throws MalformedURLException
+		{
+			return new ClusterClient(this);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package org.kairosdb.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DecompressingEntity;
+import org.apache.http.client.entity.InputStreamFactory;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Decides whether pushed metrics are compressed and with which codec, and which codecs responses may be compressed
+ * with.
+ */
+class Compression
+{
+	static final Compression DEFAULT = new Compression(ContentCodec.gzip(), 0, List.of(ContentCodec.gzip(), ContentCodec.deflate()));
+
+	// Rough JSON size of "[timestamp,value]," for a numeric data point and of the fields around a metric
+	private static final int ESTIMATED_DATA_POINT_BYTES = 32;
+	private static final int ESTIMATED_METRIC_BYTES = 64;
+
+	private final ContentCodec codec;
+	private final long threshold;
+	private final Map<String, ContentCodec> acceptedCodecs = new LinkedHashMap<>();
+	private final String acceptEncoding;
+
+	Compression(ContentCodec codec, long threshold, List<ContentCodec> acceptedCodecs)
+	{
+		this.codec = codec;
+		this.threshold = threshold;
+		for (ContentCodec acceptedCodec : acceptedCodecs)
+		{
+			this.acceptedCodecs.putIfAbsent(acceptedCodec.getEncoding().toLowerCase(Locale.ROOT), acceptedCodec);
+		}
+		acceptEncoding = String.join(", ", this.acceptedCodecs.keySet());
+	}
+
+	/**
+	 * Returns the codec pushed metrics are compressed with.
+	 */
+	ContentCodec getCodec()
+	{
+		return codec;
+	}
+
+	/**
+	 * Returns true if the builder asks for compression or its estimated JSON size reaches the threshold.
+	 */
+	boolean isEnabled(MetricBuilder builder)
+	{
+		return builder.isCompressionEnabled() || (threshold > 0 && estimateSize(builder) >= threshold);
+	}
+
+	/**
+	 * Returns the value of the Accept-Encoding header sent with every request.
+	 */
+	String getAcceptEncoding()
+	{
+		return acceptEncoding;
+	}
+
+	/**
+	 * Returns the decoders of the accepted codecs by content coding, for
+	 * {@link org.apache.http.impl.client.HttpClientBuilder#setContentDecoderRegistry(Map)}.
+	 */
+	Map<String, InputStreamFactory> createDecoderRegistry()
+	{
+		return acceptedCodecs.entrySet().stream()
+				.collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue()::decode, (a, b) -> a, LinkedHashMap::new));
+	}
+
+	/**
+	 * Replaces the entity of a response compressed with an accepted codec by one that decompresses it. The blocking
+	 * client does this in the HTTP client with the decoder registry, the asynchronous client cannot.
+	 */
+	void decode(HttpResponse response)
+	{
+		HttpEntity entity = response.getEntity();
+		Header encoding = entity != null ? entity.getContentEncoding() : null;
+		if (encoding == null)
+			return;
+
+		ContentCodec responseCodec = acceptedCodecs.get(encoding.getValue().trim().toLowerCase(Locale.ROOT));
+		if (responseCodec != null)
+		{
+			response.setEntity(new DecompressingEntity(entity, responseCodec::decode));
+			response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+			response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+		}
+	}
+
+	static long estimateSize(MetricBuilder builder)
+	{
+		long size = 0;
+		for (Metric metric : builder.getMetrics())
+		{
+			size += ESTIMATED_METRIC_BYTES + metric.getName().length()
+					+ (long) metric.getDataPointCount() * ESTIMATED_DATA_POINT_BYTES;
+			for (Map.Entry<String, String> tag : metric.getTags().entrySet())
+			{
+				size += tag.getKey().length() + tag.getValue().length() + 6;
+			}
+		}
+		return size;
+	}
+}
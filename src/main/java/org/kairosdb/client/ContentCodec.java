@@ -0,0 +1,98 @@
+package org.kairosdb.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses request bodies and decompresses response bodies for an HTTP content coding such as gzip.
+ * <pre>
+ *     KairosClientConfig config = KairosClientConfig.builder()
+ *         .setCompressionCodec(ContentCodec.snappy())
+ *         .setAcceptedCodecs(ContentCodec.snappy(), ContentCodec.gzip())
+ *         .build();
+ * </pre>
+ * KairosDB itself accepts and returns gzip. The other codecs are meant for servers or proxies in front of KairosDB
+ * that support them.
+ */
+public interface ContentCodec
+{
+	/**
+	 * Returns the content coding used in the Content-Encoding and Accept-Encoding headers.
+	 *
+	 * @return content coding
+	 */
+	String getEncoding();
+
+	/**
+	 * Returns a stream that compresses what is written to it into the given stream. Closing the returned stream
+	 * finishes the compressed data but does not close the given stream.
+	 *
+	 * @param out stream that receives the compressed data
+	 * @return compressing stream
+	 * @throws IOException if writing to the stream fails
+	 */
+	OutputStream encode(OutputStream out) throws IOException;
+
+	/**
+	 * Returns a stream that decompresses the data read from the given stream.
+	 *
+	 * @param in stream of compressed data
+	 * @return decompressing stream
+	 * @throws IOException if reading from the stream fails
+	 */
+	InputStream decode(InputStream in) throws IOException;
+
+	/**
+	 * Gzip with the default compression level of 6.
+	 *
+	 * @return gzip codec
+	 */
+	static ContentCodec gzip()
+	{
+		return gzip(GzipCodec.DEFAULT_LEVEL);
+	}
+
+	/**
+	 * Gzip with a compression level from 1 for the fastest compression to 9 for the smallest output.
+	 *
+	 * @param level compression level
+	 * @return gzip codec
+	 */
+	static ContentCodec gzip(int level)
+	{
+		return new GzipCodec(level);
+	}
+
+	/**
+	 * Zlib-wrapped deflate, the HTTP "deflate" coding, with the default compression level of 6.
+	 *
+	 * @return deflate codec
+	 */
+	static ContentCodec deflate()
+	{
+		return deflate(GzipCodec.DEFAULT_LEVEL);
+	}
+
+	/**
+	 * Zlib-wrapped deflate with a compression level from 1 for the fastest compression to 9 for the smallest output.
+	 *
+	 * @param level compression level
+	 * @return deflate codec
+	 */
+	static ContentCodec deflate(int level)
+	{
+		return new DeflateCodec(level);
+	}
+
+	/**
+	 * Snappy framing format with the "x-snappy-framed" coding. Compresses several times faster than gzip at the
+	 * cost of larger output. Implemented in Java, no native library is needed.
+	 *
+	 * @return snappy codec
+	 */
+	static ContentCodec snappy()
+	{
+		return SnappyCodec.INSTANCE;
+	}
+}
@@ -1,13 +1,18 @@
 package org.kairosdb.client;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.kairosdb.client.util.Preconditions.checkArgument;
 
+/**
+ * Maps the group types returned by KairosDB to the classes data point values are deserialized into. Types may be
+ * registered while queries are being parsed.
+ */
 public class DataPointTypeRegistry
 {
-	private Map<String, Class> customGroupTypes = new HashMap<String, Class>();
+	private final Map<String, Class> customGroupTypes = new ConcurrentHashMap<String, Class>();
+	private volatile JsonMapper jsonMapper;
 
 	public DataPointTypeRegistry()
 	{
@@ -17,9 +22,7 @@ public class DataPointTypeRegistry
 
 	public void registerCustomDataType(String groupType, Class dataPointClass)
 	{
-		checkArgument(!customGroupTypes.containsKey(groupType), "Type has already been registered");
-
-		customGroupTypes.put(groupType, dataPointClass);
+		checkArgument(customGroupTypes.putIfAbsent(groupType, dataPointClass) == null, "Type has already been registered");
 	}
 
 	public Class getDataPointValueClass(String groupType)
@@ -28,5 +31,24 @@ public class DataPointTypeRegistry
 		return valueClass == null? Number.class : valueClass;
 	}
 
-
+	/**
+	 * Returns the mapper that parses responses with this registry, see {@link JsonMapper#getInstance}.
+	 */
+	JsonMapper getJsonMapper()
+	{
+		JsonMapper mapper = jsonMapper;
+		if (mapper == null)
+		{
+			synchronized (this)
+			{
+				mapper = jsonMapper;
+				if (mapper == null)
+				{
+					mapper = new JsonMapper(this);
+					jsonMapper = mapper;
+				}
+			}
+		}
+		return mapper;
+	}
 }
@@ -0,0 +1,50 @@
+package org.kairosdb.client;
+
+import org.apache.http.client.entity.DeflateInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * HTTP "deflate" content coding, which is deflate data in the zlib format. Responses with raw deflate data, which
+ * some servers send instead, are decoded as well.
+ */
+class DeflateCodec implements ContentCodec
+{
+	static final String ENCODING = "deflate";
+
+	private final int level;
+
+	DeflateCodec(int level)
+	{
+		checkArgument(level >= 1 && level <= 9, "level must be between 1 and 9");
+		this.level = level;
+	}
+
+	@Override
+	public String getEncoding()
+	{
+		return ENCODING;
+	}
+
+	@Override
+	public OutputStream encode(OutputStream out)
+	{
+		return new DeflateOutputStream(out, level, false);
+	}
+
+	@Override
+	public InputStream decode(InputStream in) throws IOException
+	{
+		return new DeflateInputStream(in);
+	}
+
+	@Override
+	public String toString()
+	{
+		return ENCODING + "(" + level + ")";
+	}
+}
@@ -0,0 +1,105 @@
+package org.kairosdb.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Writes deflate data with a {@link Deflater} that is reused by later streams of the same thread. A new Deflater
+ * allocates the native zlib state, which costs more than compressing a small request, and the streams of the JDK
+ * always create their own.
+ * <br>
+ * <br>
+ * Closing the stream finishes the compressed data and hands the Deflater back to the thread, but leaves the
+ * underlying stream open. It must be closed also when writing failed.
+ */
+class DeflateOutputStream extends DeflaterOutputStream
+{
+	private static final int BUFFER_SIZE = 8192;
+
+	// One Deflater per format, compression level and thread, taken out while a stream uses it
+	private static final ThreadLocal<Deflater[][]> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater[2][Deflater.BEST_COMPRESSION + 1]);
+
+	private final int level;
+	private final boolean nowrap;
+	private boolean closed;
+
+	/**
+	 * @param nowrap true for raw deflate data, false for the zlib format
+	 */
+	DeflateOutputStream(OutputStream out, int level, boolean nowrap)
+	{
+		super(out, acquire(level, nowrap), BUFFER_SIZE);
+		this.level = level;
+		this.nowrap = nowrap;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		ensureOpen();
+		super.write(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		ensureOpen();
+		super.flush();
+	}
+
+	@Override
+	public void finish() throws IOException
+	{
+		ensureOpen();
+		super.finish();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		try
+		{
+			finish();
+		}
+		finally
+		{
+			closed = true;
+			release();
+		}
+	}
+
+	void ensureOpen() throws IOException
+	{
+		// The Deflater may already be in use by another stream of this thread
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+
+	private void release()
+	{
+		def.reset();
+
+		Deflater[] deflaters = DEFLATERS.get()[nowrap ? 1 : 0];
+		if (deflaters[level] == null)
+			deflaters[level] = def;
+		else
+			def.end();
+	}
+
+	private static Deflater acquire(int level, boolean nowrap)
+	{
+		checkArgument(level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION, "level must be between 0 and 9");
+		Deflater[] deflaters = DEFLATERS.get()[nowrap ? 1 : 0];
+		Deflater deflater = deflaters[level];
+		if (deflater == null)
+			return new Deflater(level, nowrap);
+		deflaters[level] = null;
+		return deflater;
+	}
+}
@@ -0,0 +1,49 @@
+package org.kairosdb.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Gzip content coding. Compression reuses the Deflater of the calling thread, see {@link DeflateOutputStream}.
+ */
+class GzipCodec implements ContentCodec
+{
+	static final String ENCODING = "gzip";
+	static final int DEFAULT_LEVEL = 6;
+
+	private final int level;
+
+	GzipCodec(int level)
+	{
+		checkArgument(level >= 1 && level <= 9, "level must be between 1 and 9");
+		this.level = level;
+	}
+
+	@Override
+	public String getEncoding()
+	{
+		return ENCODING;
+	}
+
+	@Override
+	public OutputStream encode(OutputStream out) throws IOException
+	{
+		return new GzipOutputStream(out, level);
+	}
+
+	@Override
+	public InputStream decode(InputStream in) throws IOException
+	{
+		return new GZIPInputStream(in);
+	}
+
+	@Override
+	public String toString()
+	{
+		return ENCODING + "(" + level + ")";
+	}
+}
@@ -0,0 +1,50 @@
+package org.kairosdb.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip data with a reused {@link Deflater}, see {@link DeflateOutputStream}. The output is the same as that of
+ * {@link java.util.zip.GZIPOutputStream}.
+ */
+class GzipOutputStream extends DeflateOutputStream
+{
+	// Magic number, deflate, no flags or modification time, unknown OS
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final CRC32 crc = new CRC32();
+
+	GzipOutputStream(OutputStream out, int level) throws IOException
+	{
+		super(out, level, true);
+		out.write(HEADER);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		super.write(b, off, len);
+		crc.update(b, off, len);
+	}
+
+	@Override
+	public void finish() throws IOException
+	{
+		ensureOpen();
+		if (def.finished())
+			return;
+		super.finish();
+		writeIntLE((int) crc.getValue());
+		writeIntLE((int) def.getBytesRead());
+	}
+
+	private void writeIntLE(int value) throws IOException
+	{
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+}
@@ -16,16 +16,20 @@
 package org.kairosdb.client;
 
 import com.google.common.reflect.TypeToken;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.entity.EntityBuilder;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.StandardHttpRequestRetryHandler;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.kairosdb.client.builder.*;
+import org.kairosdb.client.instrumentation.ClientInstrumentation;
+import org.kairosdb.client.instrumentation.RequestEvent;
 import org.kairosdb.client.response.DefaultJsonResponseHandler;
 import org.kairosdb.client.response.JsonResponseHandler;
 import org.kairosdb.client.response.QueryResponse;
@@ -34,54 +38,57 @@ import org.kairosdb.client.response.ResponseHelper;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.net.ConnectException;
 import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
-import static org.apache.http.HttpHeaders.*;
 import static org.apache.http.entity.ContentType.APPLICATION_JSON;
-import static org.apache.http.entity.ContentType.TEXT_PLAIN;
+import static org.kairosdb.client.RequestFactory.*;
 import static org.kairosdb.client.util.Exceptions.propagate;
 import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+import static org.kairosdb.client.util.Preconditions.checkState;
 
 /**
  * HTTP implementation of a client.
  */
 public class HttpClient implements Client
 {
-	private static final String GZIP = "gzip";
-
-	private static final String PATH_ROLLUPS = "/api/v1/rollups/";
-	private static final String PATH_METRIC_NAMES = "/api/v1/metricnames";
-	private static final String PATH_STATUS = "/api/v1/health/status";
-	private static final String PATH_CHECK = "/api/v1/health/check";
-	private static final String PATH_VERSION = "/api/v1/version";
-	private static final String PATH_QUERY = "/api/v1/datapoints/query";
-	private static final String PATH_QUERY_TAGS = "/api/v1/datapoints/query/tags";
-	private static final String PATH_DELETE = "/api/v1/datapoints/delete";
-	private static final String PATH_DATAPOINTS = "/api/v1/datapoints";
-	private static final String PATH_METRIC = "/api/v1/metric/";
-
 	private final CloseableHttpClient client;
-	private final String url;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final RequestFactory requestFactory;
 	private final DataPointTypeRegistry typeRegistry;
+	private volatile ClientInstrumentation instrumentation = ClientInstrumentation.NOOP;
+	private volatile RequestRetrier retrier;
+	private volatile IngestLimiter ingestLimiter;
+	private volatile Compression compression = Compression.DEFAULT;
 
 	/**
-	 * Creates a client to talk to the host on the specified port.
+	 * Creates a client to talk to the host on the specified port using the default {@link KairosClientConfig}.
 	 *
 	 * @param url url to the KairosDB server
 	 * @throws MalformedURLException if url is malformed
 	 */
 	public HttpClient(String url) throws MalformedURLException
 	{
-		this(HttpClientBuilder.create()
-						.setRetryHandler(new StandardHttpRequestRetryHandler()),
-				url);
+		this(KairosClientConfig.builder().build(), url);
+	}
+
+	/**
+	 * Creates a client to talk to the host on the specified port with the given connection settings.
+	 *
+	 * @param config connection settings
+	 * @param url    url to the KairosDB server
+	 * @throws MalformedURLException if the url is malformed
+	 */
+	public HttpClient(KairosClientConfig config, String url) throws MalformedURLException
+	{
+		requestFactory = new RequestFactory(url);
+		requireNonNull(config, "config must not be null");
+		connectionManager = config.createConnectionManager();
+		client = config.createHttpClientBuilder(connectionManager).build();
+		typeRegistry = new DataPointTypeRegistry();
+		configure(config);
 	}
 
 	/**
@@ -95,21 +102,19 @@ public class HttpClient implements Client
 	 */
 	public HttpClient(HttpClientBuilder builder, String url) throws MalformedURLException
 	{
-		checkNotNullOrEmpty(url, "url cannot be null");
+		requestFactory = new RequestFactory(url);
 		requireNonNull(builder, "builder must not be null");
-		this.url = url;
-		new URL(url); // validate url
 		client = builder.build();
+		connectionManager = null;
 		typeRegistry = new DataPointTypeRegistry();
 	}
 
 	public HttpClient(CloseableHttpClient client, String url) throws MalformedURLException
 	{
-		checkNotNullOrEmpty(url, "url cannot be null");
+		requestFactory = new RequestFactory(url);
 		requireNonNull(client, "client must not be null");
-		this.url = url;
-		new URL(url); // validate url
 		this.client = client;
+		connectionManager = null;
 		typeRegistry = new DataPointTypeRegistry();
 	}
 
@@ -132,12 +137,75 @@ public class HttpClient implements Client
 		return typeRegistry;
 	}
 
+	/**
+	 * Returns the number of leased, idle and pending connections and the pool limits. Only available if the client
+	 * was created with a {@link KairosClientConfig}.
+	 *
+	 * @return connection pool statistics
+	 * @throws IllegalStateException if the client was created from an HttpClientBuilder or CloseableHttpClient
+	 */
+	public PoolStats getConnectionPoolStats()
+	{
+		checkState(connectionManager != null, "Connection pool statistics are only available for clients created with a KairosClientConfig");
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * Sets the instrumentation that receives the measurements of every request made by the client. By default
+	 * nothing is recorded.
+	 *
+	 * @param instrumentation instrumentation to use
+	 */
+	public void setInstrumentation(ClientInstrumentation instrumentation)
+	{
+		this.instrumentation = requireNonNull(instrumentation, "instrumentation cannot be null");
+	}
+
+	/**
+	 * Sets the policy for retrying failed requests. The client gets its own retry budget, which starts full. By
+	 * default only the retries of the underlying HTTP client are made, without backoff.
+	 *
+	 * @param retryPolicy retry policy to use
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		RequestRetrier previous = retrier;
+		retrier = new RequestRetrier(requireNonNull(retryPolicy, "retryPolicy cannot be null"));
+		if (previous != null)
+		{
+			previous.close();
+		}
+	}
+
+	/**
+	 * Sets the limiter that controls how fast metrics are pushed. By default pushes are not limited.
+	 *
+	 * @param ingestLimiter limiter to use
+	 */
+	public void setIngestLimiter(IngestLimiter ingestLimiter)
+	{
+		this.ingestLimiter = requireNonNull(ingestLimiter, "ingestLimiter cannot be null");
+	}
+
+	/**
+	 * Applies the settings of the config that are handled by this client rather than by the HTTP client.
+	 */
+	void configure(KairosClientConfig config)
+	{
+		compression = config.createCompression();
+		requestFactory.setAcceptEncoding(compression.getAcceptEncoding());
+		if (config.getRetryPolicy() != null)
+		{
+			setRetryPolicy(config.getRetryPolicy());
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public RollupTask createRollupTask(RollupBuilder builder)
 	{
 		DefaultJsonResponseHandler<RollupTaskResponse> responseHandler = new DefaultJsonResponseHandler<>(RollupTaskResponse.class, typeRegistry);
-		RollupTaskResponse rollupTaskResponse = (RollupTaskResponse) postData(PATH_ROLLUPS, builder.build(), responseHandler);
+		RollupTaskResponse rollupTaskResponse = (RollupTaskResponse) postData(PATH_ROLLUPS, builder::build, responseHandler);
 
 		checkNotNullOrEmpty(rollupTaskResponse.id, "No task id was returned in the rollup-task");
 		return getRollupTask(rollupTaskResponse.id);
@@ -155,14 +223,14 @@ public class HttpClient implements Client
 	@Override
 	public RollupTask getRollupTask(String id)
 	{
-		return (RollupTask)queryData(PATH_ROLLUPS + id, new DefaultJsonResponseHandler<RollupTask>(RollupTask.class, typeRegistry));
+		return (RollupTask)queryData(PATH_ROLLUPS, id, new DefaultJsonResponseHandler<RollupTask>(RollupTask.class, typeRegistry));
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public void deleteRollupTask(String id)
 	{
-		delete(PATH_ROLLUPS + id,  new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry));
+		delete(PATH_ROLLUPS, id, new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -211,7 +279,7 @@ public class HttpClient implements Client
 	@Override
 	public <T> T query(QueryBuilder builder, JsonResponseHandler<T> handler)
 	{
-		return postData(PATH_QUERY, builder.build(), handler);
+		return postData(PATH_QUERY, builder::build, handler);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -219,7 +287,7 @@ public class HttpClient implements Client
 	public QueryResponse query(QueryBuilder builder)
 	{
 		DefaultJsonResponseHandler<QueryResponse> responseHandler = new DefaultJsonResponseHandler<>(QueryResponse.class, typeRegistry);
-		return (QueryResponse)postData(PATH_QUERY, builder.build(), responseHandler);
+		return (QueryResponse)postData(PATH_QUERY, builder::build, responseHandler);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -227,123 +295,201 @@ public class HttpClient implements Client
 	public QueryTagResponse queryTags(QueryTagBuilder builder)
 	{
 		DefaultJsonResponseHandler<QueryTagResponse> responseHandler = new DefaultJsonResponseHandler<>(QueryTagResponse.class, typeRegistry);
-		return (QueryTagResponse)postData(PATH_QUERY_TAGS, builder.build(), responseHandler);
+		return (QueryTagResponse)postData(PATH_QUERY_TAGS, builder::build, responseHandler);
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T queryTags(QueryTagBuilder builder, JsonResponseHandler<T> handler)
 	{
-		return postData(PATH_QUERY_TAGS, builder.build(), handler);
+		return postData(PATH_QUERY_TAGS, builder::build, handler);
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public void pushMetrics(MetricBuilder builder)
 	{
-		postData(PATH_DATAPOINTS, builder.build(), new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry), builder.isCompressionEnabled());
+		builder.validate();
+		Compression compression = this.compression;
+		MetricBuilderEntity entity = new MetricBuilderEntity(builder, compression.isEnabled(builder) ? compression.getCodec() : null);
+		int dataPoints = countDataPoints(builder);
+		RequestEvent.Builder event = RequestEvent.builder(PATH_DATAPOINTS, HttpPost.METHOD_NAME)
+				.setDataPoints(dataPoints);
+		push(requestFactory.createPost(PATH_DATAPOINTS, entity), dataPoints, event);
+	}
+
+	/**
+	 * Pushes metrics that have already been serialized to JSON, such as the output of {@link MetricBuilder#build()}.
+	 *
+	 * @param json JSON in UTF-8
+	 * @throws UnexpectedResponseException if the operation fails
+	 */
+	@SuppressWarnings("unchecked")
+	public void pushMetrics(byte[] json)
+	{
+		requireNonNull(json, "json cannot be null");
+		RequestEvent.Builder event = RequestEvent.builder(PATH_DATAPOINTS, HttpPost.METHOD_NAME)
+				.setRequestBytes(json.length, json.length);
+		HttpPost post = requestFactory.createPost(PATH_DATAPOINTS, new ByteArrayEntity(json, APPLICATION_JSON));
+		push(post, 0, event);
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public void deleteMetric(String name)
 	{
-		delete(PATH_METRIC + name,  new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry));
+		delete(PATH_METRIC, name, new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry));
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public void delete(QueryBuilder builder)
 	{
-		postData(PATH_DELETE, builder.build(), new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry));
+		postData(PATH_DELETE, builder::build, new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry));
 	}
 
-	private <T> T postData(String path, String json, JsonResponseHandler<T> responseHandler)
-	{
-		return this.postData(path, json, responseHandler, false);
-	}
-
-	private <T> T postData(String path, String json, JsonResponseHandler<T> responseHandler, boolean compressed)
+	/**
+	 * Pushes data points once the ingest limiter allows it and reports the outcome to the limiter.
+	 */
+	@SuppressWarnings("unchecked")
+	private void push(HttpPost post, int dataPoints, RequestEvent.Builder event)
 	{
-		HttpPost post = new HttpPost(createURI(path));
-
-		EntityBuilder entityBuilder = EntityBuilder.create()
-				.setContentType(APPLICATION_JSON)
-				.setText(json);
+		IngestLimiter limiter = ingestLimiter;
+		if (limiter == null)
+		{
+			execute(post, new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry), event, System.nanoTime());
+			return;
+		}
 
-		if (compressed)
+		long start = limiter.acquire(dataPoints);
+		RuntimeException failure = null;
+		try
+		{
+			execute(post, new DefaultJsonResponseHandler<Void>(Void.class, typeRegistry), event, System.nanoTime());
+		}
+		catch (RuntimeException e)
 		{
-			entityBuilder.gzipCompress();
-			post.addHeader(CONTENT_ENCODING, GZIP);
+			failure = e;
+			throw e;
 		}
-		else
+		finally
 		{
-			post.addHeader(CONTENT_TYPE, APPLICATION_JSON.toString());
+			limiter.release(start, failure);
 		}
-		post.setEntity(entityBuilder.build());
+	}
+
+	private <T> T postData(String path, Supplier<String> json, JsonResponseHandler<T> responseHandler)
+	{
+		long start = System.nanoTime();
+		HttpPost post = requestFactory.createPost(path, json.get());
+		long length = post.getEntity().getContentLength();
+		RequestEvent.Builder event = RequestEvent.builder(path, HttpPost.METHOD_NAME)
+				.setSerializationNanos(System.nanoTime() - start)
+				.setRequestBytes(length, length);
 
-		return execute(post, responseHandler);
+		return execute(post, responseHandler, event, start);
 	}
 
-	@SuppressWarnings("unchecked")
 	private <T> T queryData(String path, JsonResponseHandler<T> responseHandler)
 	{
-		HttpGet get = new HttpGet(createURI(path));
-		get.addHeader(ACCEPT, APPLICATION_JSON.toString());
-		get.addHeader(ACCEPT_ENCODING, "gzip");
+		return queryData(path, "", responseHandler);
+	}
 
-		return execute(get, responseHandler);
+	private <T> T queryData(String path, String id, JsonResponseHandler<T> responseHandler)
+	{
+		return execute(requestFactory.createGet(path + id), responseHandler,
+				RequestEvent.builder(path, HttpGet.METHOD_NAME), System.nanoTime());
 	}
 
 	@SuppressWarnings("UnusedReturnValue")
-	private <T> T delete(String path, JsonResponseHandler<T> responseHandler)
+	private <T> T delete(String path, String id, JsonResponseHandler<T> responseHandler)
 	{
-		HttpDelete delete = new HttpDelete(createURI(path));
-		delete.addHeader(ACCEPT, APPLICATION_JSON.toString());
-
-		return execute(delete, responseHandler);
+		return execute(requestFactory.createDelete(path + id), responseHandler,
+				RequestEvent.builder(path, HttpDelete.METHOD_NAME), System.nanoTime());
 	}
 
-	private URI createURI(String path)
+	private <T> T execute(HttpUriRequest request, JsonResponseHandler<T> responseHandler, RequestEvent.Builder event, long start)
 	{
+		ResponseHelper responseHelper = null;
 		try
 		{
-			return new URI(url + path);
+			RequestRetrier retrier = this.retrier;
+			HttpResponse response = retrier != null ? retrier.execute(client, request, event) : client.execute(request);
+			event.setStatusCode(response.getStatusLine().getStatusCode());
+			responseHelper = new ResponseHelper(response);
+			return responseHandler.handle(request, responseHelper);
+		}
+		catch (IOException e)
+		{
+			event.setFailure(e);
+			return responseHandler.handleException(request, e);
 		}
-		catch (URISyntaxException e)
+		catch (RuntimeException e)
 		{
-			throw new IllegalArgumentException("Invalid URI", e);
+			event.setFailure(e);
+			throw e;
+		}
+		finally
+		{
+			completeRequest(request, responseHelper, event, start);
 		}
 	}
 
-	private <T> T execute(HttpUriRequest request, JsonResponseHandler<T> responseHandler)
+	private void completeRequest(HttpUriRequest request, ResponseHelper response, RequestEvent.Builder event, long start)
 	{
-		try
+		event.setTotalNanos(System.nanoTime() - start);
+		if (response != null)
 		{
-			HttpResponse response = client.execute(request);
-			return responseHandler.handle(request, new ResponseHelper(response));
+			event.setResponseBytes(response.getBytesRead());
 		}
-		catch (IOException e)
+		if (request instanceof HttpEntityEnclosingRequest
+				&& ((HttpEntityEnclosingRequest) request).getEntity() instanceof MetricBuilderEntity)
 		{
-			return responseHandler.handleException(request, e);
+			// Metrics are serialized while they are sent, the entity knows how much was written
+			MetricBuilderEntity entity = (MetricBuilderEntity) ((HttpEntityEnclosingRequest) request).getEntity();
+			event.setRequestBytes(entity.getBytesWritten(), entity.getBytesWrittenOnWire())
+					.setSerializationNanos(entity.getWriteNanos());
 		}
+		instrumentation.requestCompleted(event.build());
+	}
+
+	private static int countDataPoints(MetricBuilder builder)
+	{
+		int count = 0;
+		for (Metric metric : builder.getMetrics())
+		{
+			count += metric.getDataPointCount();
+		}
+		return count;
 	}
 
 	@Override
 	public void close() throws IOException
 	{
+		closeRetrier();
 		client.close();
 	}
 
+	/**
+	 * Stops the threads of hedged requests without closing the HTTP client, which may be shared with other clients.
+	 */
+	void closeRetrier()
+	{
+		RequestRetrier retrier = this.retrier;
+		if (retrier != null)
+		{
+			retrier.close();
+		}
+	}
 
 	@SuppressWarnings("unused")
-	private class Results
+	static class Results
 	{
-		private List<String> results;
+		List<String> results;
 	}
 
 	@SuppressWarnings("unused")
-	class RollupTaskResponse
+	static class RollupTaskResponse
 	{
 		private String id;
 		private String name;
@@ -356,14 +502,14 @@ public class HttpClient implements Client
 	}
 
 	@SuppressWarnings("unused")
-	private class Attributes
+	private static class Attributes
 	{
 		private String url;
 	}
 
 	@SuppressWarnings("unused")
-	private class Version
+	static class Version
 	{
-		private String version;
+		String version;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,290 @@
+package org.kairosdb.client;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.kairosdb.client.response.UnexpectedResponseException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Exceptions.isServerFailure;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Limits how fast metrics are pushed so bursts of pushes do not overload KairosDB.
+ * <pre>
+ *     IngestLimiter limiter = IngestLimiter.builder()
+ *         .setMaxDataPointsPerSecond(500_000)
+ *         .setLatencyThreshold(2, TimeUnit.SECONDS)
+ *         .build();
+ *     client.setIngestLimiter(limiter);
+ * </pre>
+ * The number of concurrent pushes is limited by a limit that adapts to the cluster with additive increase and
+ * multiplicative decrease. Every successful push that used most of the limit raises it by a fraction, so it grows by
+ * about one per round trip. A push that is rejected with a 5xx or 429 status, fails with an I/O error or takes longer
+ * than the latency threshold lowers the limit by the backoff ratio. Pushes that started before the last decrease do
+ * not lower it again, so a single overload does not collapse the limit. Pushes over the limit wait until a push
+ * completes.
+ * <br>
+ * <br>
+ * The number of data points pushed per second can also be capped. Pushes wait until the rate allows their data
+ * points. Pushes of serialized JSON only count towards the concurrency limit, as their data points are not known.
+ * <br>
+ * <br>
+ * A limiter can be shared by clients that push to the same cluster, so that they share the limits.
+ */
+public class IngestLimiter
+{
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final long latencyThresholdNanos;
+	private final RateLimiter rateLimiter;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+
+	private double limit;
+	private int inFlight;
+	private long lastDecreaseNanos;
+	private long decreases;
+
+	private IngestLimiter(Builder builder)
+	{
+		minLimit = builder.minLimit;
+		maxLimit = builder.maxLimit;
+		backoffRatio = builder.backoffRatio;
+		latencyThresholdNanos = builder.latencyThresholdNanos;
+		rateLimiter = builder.maxDataPointsPerSecond > 0 ? RateLimiter.create(builder.maxDataPointsPerSecond) : null;
+		limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+		lastDecreaseNanos = System.nanoTime();
+	}
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	/**
+	 * Returns the current number of concurrent pushes allowed.
+	 *
+	 * @return concurrency limit
+	 */
+	public int getLimit()
+	{
+		lock.lock();
+		try
+		{
+			return (int) limit;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of pushes in progress.
+	 *
+	 * @return pushes in progress
+	 */
+	public int getInFlight()
+	{
+		lock.lock();
+		try
+		{
+			return inFlight;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns how many times the limit was lowered because KairosDB was overloaded.
+	 *
+	 * @return number of decreases
+	 */
+	public long getDecreaseCount()
+	{
+		lock.lock();
+		try
+		{
+			return decreases;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until the data points may be pushed and a push is allowed to start.
+	 *
+	 * @param dataPoints number of data points in the push, 0 if unknown
+	 * @return start time of the push, to be passed to {@link #release(long, RuntimeException)}
+	 */
+	long acquire(int dataPoints)
+	{
+		if (rateLimiter != null && dataPoints > 0)
+			rateLimiter.acquire(dataPoints);
+
+		lock.lock();
+		try
+		{
+			while (inFlight >= (int) limit)
+			{
+				available.await();
+			}
+			inFlight++;
+			return System.nanoTime();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting to push metrics", e);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records the outcome of a push and lets the next push start.
+	 *
+	 * @param startNanos start time returned by {@link #acquire(int)}
+	 * @param failure    exception the push failed with or null if it succeeded
+	 */
+	void release(long startNanos, RuntimeException failure)
+	{
+		long now = System.nanoTime();
+		boolean overloaded = (failure != null && isOverload(failure))
+				|| (latencyThresholdNanos > 0 && now - startNanos > latencyThresholdNanos);
+
+		lock.lock();
+		try
+		{
+			if (overloaded)
+			{
+				// Pushes sent before the last decrease saw the old limit
+				if (startNanos - lastDecreaseNanos >= 0)
+				{
+					limit = Math.max(minLimit, limit * backoffRatio);
+					lastDecreaseNanos = now;
+					decreases++;
+				}
+			}
+			else if (failure == null && inFlight * 2 >= limit)
+			{
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			inFlight--;
+			available.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private static boolean isOverload(RuntimeException failure)
+	{
+		return isServerFailure(failure) || (failure instanceof UnexpectedResponseException
+				&& ((UnexpectedResponseException) failure).getStatusCode() == 429);
+	}
+
+	/**
+	 * Builds an {@link IngestLimiter}.
+	 */
+	public static class Builder
+	{
+		private int initialLimit = 8;
+		private int minLimit = 1;
+		private int maxLimit = 256;
+		private double backoffRatio = 0.9;
+		private long latencyThresholdNanos;
+		private double maxDataPointsPerSecond;
+
+		private Builder()
+		{
+		}
+
+		/**
+		 * Concurrency limit before any push has completed. The default is 8.
+		 *
+		 * @param initialLimit initial number of concurrent pushes
+		 * @return the builder
+		 */
+		public Builder setInitialLimit(int initialLimit)
+		{
+			checkArgument(initialLimit > 0, "initialLimit must be greater than 0");
+			this.initialLimit = initialLimit;
+			return this;
+		}
+
+		/**
+		 * Range the concurrency limit stays within. The defaults are 1 and 256.
+		 *
+		 * @param minLimit lowest limit
+		 * @param maxLimit highest limit
+		 * @return the builder
+		 */
+		public Builder setLimitRange(int minLimit, int maxLimit)
+		{
+			checkArgument(minLimit > 0, "minLimit must be greater than 0");
+			checkArgument(maxLimit >= minLimit, "maxLimit must not be less than minLimit");
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			return this;
+		}
+
+		/**
+		 * Factor the limit is multiplied by when KairosDB is overloaded. The default is 0.9.
+		 *
+		 * @param backoffRatio factor between 0 and 1
+		 * @return the builder
+		 */
+		public Builder setBackoffRatio(double backoffRatio)
+		{
+			checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1");
+			this.backoffRatio = backoffRatio;
+			return this;
+		}
+
+		/**
+		 * Pushes that take longer than this are treated as a sign of overload. Zero disables the threshold, which is
+		 * the default, so only failures lower the limit.
+		 *
+		 * @param threshold push latency
+		 * @param unit      unit of the latency
+		 * @return the builder
+		 */
+		public Builder setLatencyThreshold(long threshold, TimeUnit unit)
+		{
+			checkArgument(threshold >= 0, "threshold cannot be negative");
+			this.latencyThresholdNanos = requireNonNull(unit, "unit cannot be null").toNanos(threshold);
+			return this;
+		}
+
+		/**
+		 * Maximum number of data points pushed per second. By default the rate is not limited.
+		 *
+		 * @param maxDataPointsPerSecond data points per second
+		 * @return the builder
+		 */
+		public Builder setMaxDataPointsPerSecond(double maxDataPointsPerSecond)
+		{
+			checkArgument(maxDataPointsPerSecond > 0, "maxDataPointsPerSecond must be greater than 0");
+			this.maxDataPointsPerSecond = maxDataPointsPerSecond;
+			return this;
+		}
+
+		public IngestLimiter build()
+		{
+			return new IngestLimiter(this);
+		}
+	}
+}
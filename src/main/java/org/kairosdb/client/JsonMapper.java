@@ -3,6 +3,7 @@ package org.kairosdb.client;
 import com.google.common.collect.ListMultimap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 import org.kairosdb.client.builder.Aggregator;
 import org.kairosdb.client.builder.Grouper;
 import org.kairosdb.client.deserializer.AggregatorDeserializer;
@@ -18,9 +19,28 @@ import java.io.Reader;
 import java.lang.reflect.Type;
 import java.util.TimeZone;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Parses the JSON returned by KairosDB. A mapper is thread-safe and can be shared; {@link #getInstance} returns the
+ * same mapper for every caller that uses the same type registry so the Gson instance and its type adapters are only
+ * created once per client. The mapper is held by its registry and is released together with it. Custom data types
+ * registered after the mapper was created are picked up as the registry is consulted on every parse.
+ */
 public class JsonMapper
 {
-	private Gson mapper;
+	private final Gson mapper;
+
+	/**
+	 * Returns the shared mapper for the type registry.
+	 *
+	 * @param typeRegistry registry used to look up the value class of custom data types
+	 * @return JSON mapper
+	 */
+	public static JsonMapper getInstance(DataPointTypeRegistry typeRegistry)
+	{
+		return requireNonNull(typeRegistry, "typeRegistry must not be null").getJsonMapper();
+	}
 
 	public JsonMapper(DataPointTypeRegistry typeRegistry)
 	{
@@ -45,4 +65,12 @@ public class JsonMapper
 		return mapper.fromJson(json, typeOfT);
 	}
 
+	/**
+	 * Reads the next JSON value from the reader.
+	 */
+	public <T> T fromJson(JsonReader reader, Type typeOfT)
+	{
+		return mapper.fromJson(reader, typeOfT);
+	}
+
 }
@@ -0,0 +1,564 @@
+package org.kairosdb.client;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.StandardHttpRequestRetryHandler;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Connection settings for the HTTP clients. The defaults are meant for production use: up to
+ * {@value #DEFAULT_MAX_CONNECTIONS_PER_ROUTE} concurrent connections to each KairosDB host, bounded timeouts, Nagle's
+ * algorithm disabled and idle connections closed by a background thread.
+ * <pre>
+ *     KairosClientConfig config = KairosClientConfig.builder()
+ *         .setMaxConnectionsPerRoute(50)
+ *         .setSocketTimeout(2, TimeUnit.MINUTES)
+ *         .build();
+ *     HttpClient client = new HttpClient(config, "http://localhost:8080");
+ * </pre>
+ * Sizes are in bytes, a buffer size of 0 leaves the operating system default.
+ */
+public class KairosClientConfig
+{
+	static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 100;
+	static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+	private final int maxConnectionsPerRoute;
+	private final int maxConnections;
+	private final long connectTimeoutMillis;
+	private final long socketTimeoutMillis;
+	private final long connectionRequestTimeoutMillis;
+	private final long keepAliveMillis;
+	private final long idleConnectionTimeoutMillis;
+	private final long validateAfterInactivityMillis;
+	private final boolean tcpNoDelay;
+	private final int sendBufferSize;
+	private final int receiveBufferSize;
+	private final int connectionBufferSize;
+	private final RetryPolicy retryPolicy;
+	private final int compressionLevel;
+	private final long compressionThreshold;
+	private final ContentCodec compressionCodec;
+	private final List<ContentCodec> acceptedCodecs;
+
+	private KairosClientConfig(Builder builder)
+	{
+		maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+		maxConnections = builder.maxConnections;
+		connectTimeoutMillis = builder.connectTimeoutMillis;
+		socketTimeoutMillis = builder.socketTimeoutMillis;
+		connectionRequestTimeoutMillis = builder.connectionRequestTimeoutMillis;
+		keepAliveMillis = builder.keepAliveMillis;
+		idleConnectionTimeoutMillis = builder.idleConnectionTimeoutMillis;
+		validateAfterInactivityMillis = builder.validateAfterInactivityMillis;
+		tcpNoDelay = builder.tcpNoDelay;
+		sendBufferSize = builder.sendBufferSize;
+		receiveBufferSize = builder.receiveBufferSize;
+		connectionBufferSize = builder.connectionBufferSize;
+		retryPolicy = builder.retryPolicy;
+		compressionLevel = builder.compressionLevel;
+		compressionThreshold = builder.compressionThreshold;
+		compressionCodec = builder.compressionCodec != null ? builder.compressionCodec : ContentCodec.gzip(compressionLevel);
+		acceptedCodecs = builder.acceptedCodecs;
+	}
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	/**
+	 * Returns a builder for a blocking HTTP client with these settings. The builder can be customized further and
+	 * passed to {@link HttpClient#HttpClient(HttpClientBuilder, String)}.
+	 *
+	 * @return HTTP client builder
+	 */
+	public HttpClientBuilder createHttpClientBuilder()
+	{
+		return createHttpClientBuilder(createConnectionManager());
+	}
+
+	/**
+	 * Returns a builder for a non-blocking HTTP client with these settings. Idle connections of the non-blocking
+	 * client are not evicted in the background; they are closed when the keep-alive duration expires.
+	 *
+	 * @return asynchronous HTTP client builder
+	 */
+	public HttpAsyncClientBuilder createHttpAsyncClientBuilder()
+	{
+		return HttpAsyncClientBuilder.create()
+				.setMaxConnPerRoute(maxConnectionsPerRoute)
+				.setMaxConnTotal(maxConnections)
+				.setDefaultRequestConfig(createRequestConfig())
+				.setDefaultIOReactorConfig(IOReactorConfig.custom()
+						.setConnectTimeout(toIntMillis(connectTimeoutMillis))
+						.setSoTimeout(toIntMillis(socketTimeoutMillis))
+						.setTcpNoDelay(tcpNoDelay)
+						.setSndBufSize(sendBufferSize)
+						.setRcvBufSize(receiveBufferSize)
+						.build())
+				.setDefaultConnectionConfig(createConnectionConfig())
+				.setKeepAliveStrategy(createKeepAliveStrategy());
+	}
+
+	PoolingHttpClientConnectionManager createConnectionManager()
+	{
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		connectionManager.setValidateAfterInactivity(toIntMillis(validateAfterInactivityMillis));
+		connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+				.setSoTimeout(toIntMillis(socketTimeoutMillis))
+				.setTcpNoDelay(tcpNoDelay)
+				.setSndBufSize(sendBufferSize)
+				.setRcvBufSize(receiveBufferSize)
+				.build());
+		connectionManager.setDefaultConnectionConfig(createConnectionConfig());
+		return connectionManager;
+	}
+
+	HttpClientBuilder createHttpClientBuilder(PoolingHttpClientConnectionManager connectionManager)
+	{
+		HttpClientBuilder builder = HttpClientBuilder.create()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(createRequestConfig())
+				.setKeepAliveStrategy(createKeepAliveStrategy())
+				.setContentDecoderRegistry(createCompression().createDecoderRegistry());
+		if (retryPolicy != null)
+		{
+			// Retries are made by the client according to the policy
+			builder.disableAutomaticRetries();
+		}
+		else
+		{
+			builder.setRetryHandler(new StandardHttpRequestRetryHandler());
+		}
+		if (idleConnectionTimeoutMillis > 0)
+		{
+			// Starts a daemon thread that closes expired and idle connections until the client is closed
+			builder.evictExpiredConnections()
+					.evictIdleConnections(idleConnectionTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		return builder;
+	}
+
+	Compression createCompression()
+	{
+		return new Compression(compressionCodec, compressionThreshold, acceptedCodecs);
+	}
+
+	private RequestConfig createRequestConfig()
+	{
+		return RequestConfig.custom()
+				.setConnectTimeout(toIntMillis(connectTimeoutMillis))
+				.setSocketTimeout(toIntMillis(socketTimeoutMillis))
+				.setConnectionRequestTimeout(toIntMillis(connectionRequestTimeoutMillis))
+				.build();
+	}
+
+	private ConnectionConfig createConnectionConfig()
+	{
+		return ConnectionConfig.custom()
+				.setBufferSize(connectionBufferSize)
+				.build();
+	}
+
+	/**
+	 * Keeps connections alive as long as the server allows, but no longer than the configured duration.
+	 */
+	private ConnectionKeepAliveStrategy createKeepAliveStrategy()
+	{
+		long keepAlive = keepAliveMillis;
+		return (response, context) -> {
+			long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+		};
+	}
+
+	private static int toIntMillis(long millis)
+	{
+		return (int) Math.min(Integer.MAX_VALUE, millis);
+	}
+
+	public int getMaxConnectionsPerRoute()
+	{
+		return maxConnectionsPerRoute;
+	}
+
+	public int getMaxConnections()
+	{
+		return maxConnections;
+	}
+
+	public long getConnectTimeoutMillis()
+	{
+		return connectTimeoutMillis;
+	}
+
+	public long getSocketTimeoutMillis()
+	{
+		return socketTimeoutMillis;
+	}
+
+	public long getConnectionRequestTimeoutMillis()
+	{
+		return connectionRequestTimeoutMillis;
+	}
+
+	public long getKeepAliveMillis()
+	{
+		return keepAliveMillis;
+	}
+
+	public long getIdleConnectionTimeoutMillis()
+	{
+		return idleConnectionTimeoutMillis;
+	}
+
+	public long getValidateAfterInactivityMillis()
+	{
+		return validateAfterInactivityMillis;
+	}
+
+	public boolean isTcpNoDelay()
+	{
+		return tcpNoDelay;
+	}
+
+	public int getSendBufferSize()
+	{
+		return sendBufferSize;
+	}
+
+	public int getReceiveBufferSize()
+	{
+		return receiveBufferSize;
+	}
+
+	public int getConnectionBufferSize()
+	{
+		return connectionBufferSize;
+	}
+
+	/**
+	 * Returns the policy for retrying failed requests.
+	 *
+	 * @return retry policy or null if only the retries of the underlying HTTP client are made
+	 */
+	public RetryPolicy getRetryPolicy()
+	{
+		return retryPolicy;
+	}
+
+	public int getCompressionLevel()
+	{
+		return compressionLevel;
+	}
+
+	/**
+	 * Returns the estimated JSON size from which pushed metrics are compressed.
+	 *
+	 * @return size in bytes, 0 if compression is only used when the metric builder asks for it
+	 */
+	public long getCompressionThreshold()
+	{
+		return compressionThreshold;
+	}
+
+	public ContentCodec getCompressionCodec()
+	{
+		return compressionCodec;
+	}
+
+	public List<ContentCodec> getAcceptedCodecs()
+	{
+		return acceptedCodecs;
+	}
+
+	/**
+	 * Builds a {@link KairosClientConfig}.
+	 */
+	public static class Builder
+	{
+		private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+		private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+		private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+		private long socketTimeoutMillis = TimeUnit.SECONDS.toMillis(60);
+		private long connectionRequestTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+		private long keepAliveMillis = TimeUnit.SECONDS.toMillis(60);
+		private long idleConnectionTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+		private long validateAfterInactivityMillis = TimeUnit.SECONDS.toMillis(2);
+		private boolean tcpNoDelay = true;
+		private int sendBufferSize;
+		private int receiveBufferSize;
+		private int connectionBufferSize = 64 * 1024;
+		private RetryPolicy retryPolicy;
+		private int compressionLevel = GzipCodec.DEFAULT_LEVEL;
+		private long compressionThreshold;
+		private ContentCodec compressionCodec;
+		private List<ContentCodec> acceptedCodecs = List.of(ContentCodec.gzip(), ContentCodec.deflate());
+
+		private Builder()
+		{
+		}
+
+		/**
+		 * Maximum number of connections to a single KairosDB host. The default is 100.
+		 *
+		 * @param maxConnectionsPerRoute maximum connections per host
+		 * @return the builder
+		 */
+		public Builder setMaxConnectionsPerRoute(int maxConnectionsPerRoute)
+		{
+			checkArgument(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute must be greater than 0");
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+			return this;
+		}
+
+		/**
+		 * Maximum number of connections to all hosts. The default is 200.
+		 *
+		 * @param maxConnections maximum connections
+		 * @return the builder
+		 */
+		public Builder setMaxConnections(int maxConnections)
+		{
+			checkArgument(maxConnections > 0, "maxConnections must be greater than 0");
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * How long to wait for a connection to be established. The default is 10 seconds.
+		 *
+		 * @param timeout connect timeout
+		 * @param unit    unit of the timeout
+		 * @return the builder
+		 */
+		public Builder setConnectTimeout(long timeout, TimeUnit unit)
+		{
+			connectTimeoutMillis = toMillis(timeout, unit);
+			return this;
+		}
+
+		/**
+		 * How long to wait for data from the server before a request fails. The default is 60 seconds.
+		 *
+		 * @param timeout socket timeout
+		 * @param unit    unit of the timeout
+		 * @return the builder
+		 */
+		public Builder setSocketTimeout(long timeout, TimeUnit unit)
+		{
+			socketTimeoutMillis = toMillis(timeout, unit);
+			return this;
+		}
+
+		/**
+		 * How long to wait for a connection from the pool when all connections are in use. The default is 10 seconds.
+		 *
+		 * @param timeout connection request timeout
+		 * @param unit    unit of the timeout
+		 * @return the builder
+		 */
+		public Builder setConnectionRequestTimeout(long timeout, TimeUnit unit)
+		{
+			connectionRequestTimeoutMillis = toMillis(timeout, unit);
+			return this;
+		}
+
+		/**
+		 * How long a connection is kept for reuse when the server does not say how long it keeps it open. A shorter
+		 * duration sent by the server takes precedence. The default is 60 seconds.
+		 *
+		 * @param keepAlive keep-alive duration
+		 * @param unit      unit of the duration
+		 * @return the builder
+		 */
+		public Builder setKeepAlive(long keepAlive, TimeUnit unit)
+		{
+			keepAliveMillis = toMillis(keepAlive, unit);
+			return this;
+		}
+
+		/**
+		 * Connections idle for longer than this are closed by a background thread. Zero disables the thread. The
+		 * default is 30 seconds.
+		 *
+		 * @param timeout idle time before a connection is closed
+		 * @param unit    unit of the timeout
+		 * @return the builder
+		 */
+		public Builder setIdleConnectionTimeout(long timeout, TimeUnit unit)
+		{
+			idleConnectionTimeoutMillis = toMillis(timeout, unit);
+			return this;
+		}
+
+		/**
+		 * Pooled connections idle for longer than this are checked before they are reused, so requests are not sent
+		 * over connections the server has already closed. The default is 2 seconds.
+		 *
+		 * @param inactivity idle time before a connection is checked
+		 * @param unit       unit of the time
+		 * @return the builder
+		 */
+		public Builder setValidateAfterInactivity(long inactivity, TimeUnit unit)
+		{
+			validateAfterInactivityMillis = toMillis(inactivity, unit);
+			return this;
+		}
+
+		/**
+		 * Whether Nagle's algorithm is disabled. The default is true, so small requests are sent immediately.
+		 *
+		 * @param tcpNoDelay true to disable Nagle's algorithm
+		 * @return the builder
+		 */
+		public Builder setTcpNoDelay(boolean tcpNoDelay)
+		{
+			this.tcpNoDelay = tcpNoDelay;
+			return this;
+		}
+
+		/**
+		 * Size of the socket send buffer. The default of 0 uses the operating system default.
+		 *
+		 * @param sendBufferSize send buffer size in bytes
+		 * @return the builder
+		 */
+		public Builder setSendBufferSize(int sendBufferSize)
+		{
+			checkArgument(sendBufferSize >= 0, "sendBufferSize cannot be negative");
+			this.sendBufferSize = sendBufferSize;
+			return this;
+		}
+
+		/**
+		 * Size of the socket receive buffer. The default of 0 uses the operating system default.
+		 *
+		 * @param receiveBufferSize receive buffer size in bytes
+		 * @return the builder
+		 */
+		public Builder setReceiveBufferSize(int receiveBufferSize)
+		{
+			checkArgument(receiveBufferSize >= 0, "receiveBufferSize cannot be negative");
+			this.receiveBufferSize = receiveBufferSize;
+			return this;
+		}
+
+		/**
+		 * Size of the buffer the HTTP client reads and writes each connection through. The default is 64 KB.
+		 *
+		 * @param connectionBufferSize buffer size in bytes
+		 * @return the builder
+		 */
+		public Builder setConnectionBufferSize(int connectionBufferSize)
+		{
+			checkArgument(connectionBufferSize > 0, "connectionBufferSize must be greater than 0");
+			this.connectionBufferSize = connectionBufferSize;
+			return this;
+		}
+
+		/**
+		 * Policy for retrying failed requests with backoff, a retry budget and hedged queries. It replaces the default
+		 * retry handler of the HTTP client, which immediately retries requests that failed with an I/O error. The
+		 * builders returned by {@link #createHttpClientBuilder()} and {@link #createHttpAsyncClientBuilder()} do not
+		 * apply the policy; set it on the client with {@link HttpClient#setRetryPolicy(RetryPolicy)}.
+		 *
+		 * @param retryPolicy retry policy
+		 * @return the builder
+		 */
+		public Builder setRetryPolicy(RetryPolicy retryPolicy)
+		{
+			this.retryPolicy = requireNonNull(retryPolicy, "retryPolicy cannot be null");
+			return this;
+		}
+
+		/**
+		 * Gzip level of pushed metrics, from 1 for the fastest compression to 9 for the smallest requests. The default
+		 * is 6. Not used if a codec is set with {@link #setCompressionCodec(ContentCodec)}.
+		 *
+		 * @param compressionLevel compression level
+		 * @return the builder
+		 */
+		public Builder setCompressionLevel(int compressionLevel)
+		{
+			checkArgument(compressionLevel >= 1 && compressionLevel <= 9, "compressionLevel must be between 1 and 9");
+			this.compressionLevel = compressionLevel;
+			return this;
+		}
+
+		/**
+		 * Pushed metrics whose estimated JSON size reaches the threshold are compressed even if compression is not
+		 * enabled on the {@link org.kairosdb.client.builder.MetricBuilder}. The size is estimated from the number of
+		 * data points and the length of the names and tags. The default of 0 only compresses metrics when the
+		 * builder asks for it.
+		 *
+		 * @param compressionThreshold estimated size in bytes
+		 * @return the builder
+		 */
+		public Builder setCompressionThreshold(long compressionThreshold)
+		{
+			checkArgument(compressionThreshold >= 0, "compressionThreshold cannot be negative");
+			this.compressionThreshold = compressionThreshold;
+			return this;
+		}
+
+		/**
+		 * Codec pushed metrics are compressed with. The default is gzip with the level set by
+		 * {@link #setCompressionLevel(int)}. KairosDB only accepts gzip, other codecs need a server or proxy that
+		 * supports them.
+		 *
+		 * @param compressionCodec codec for pushed metrics
+		 * @return the builder
+		 */
+		public Builder setCompressionCodec(ContentCodec compressionCodec)
+		{
+			this.compressionCodec = requireNonNull(compressionCodec, "compressionCodec cannot be null");
+			return this;
+		}
+
+		/**
+		 * Codecs responses may be compressed with, in order of preference. They are sent in the Accept-Encoding header
+		 * of every request and used to decompress responses. The default is gzip and deflate.
+		 *
+		 * @param acceptedCodecs codecs for responses
+		 * @return the builder
+		 */
+		public Builder setAcceptedCodecs(ContentCodec... acceptedCodecs)
+		{
+			checkArgument(acceptedCodecs.length > 0, "acceptedCodecs cannot be empty");
+			for (ContentCodec acceptedCodec : acceptedCodecs)
+			{
+				requireNonNull(acceptedCodec, "acceptedCodecs cannot contain null");
+			}
+			this.acceptedCodecs = List.of(acceptedCodecs);
+			return this;
+		}
+
+		public KairosClientConfig build()
+		{
+			checkArgument(maxConnectionsPerRoute <= maxConnections, "maxConnectionsPerRoute cannot be greater than maxConnections");
+			return new KairosClientConfig(this);
+		}
+
+		private static long toMillis(long duration, TimeUnit unit)
+		{
+			checkArgument(duration >= 0, "duration cannot be negative");
+			return requireNonNull(unit, "unit cannot be null").toMillis(duration);
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package org.kairosdb.client;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.kairosdb.client.builder.QueryTagBuilder;
+import org.kairosdb.client.response.QueryTagResponse;
+import org.kairosdb.client.response.TagQueryResult;
+import org.kairosdb.client.response.TagResult;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Exceptions.reportUncaught;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+
+/**
+ * Keeps metric names and the tags of metrics in memory for lookups such as autocompletion, which would otherwise
+ * request the complete list of metric names from KairosDB for every key stroke.
+ * <br>
+ * <br>
+ * Metric names are held in a sorted array. Prefix searches use a binary search and substring searches scan the array.
+ * The names are loaded when they are first needed and reloaded on a background thread at the refresh interval. The tag
+ * names and values of a metric are loaded the first time they are asked for, kept for a limited number of metrics, and
+ * reloaded in the background when they are older than the refresh interval. While data is reloaded, lookups keep
+ * returning the previous data. If a reload fails, the previous data is kept and the error is passed to the error
+ * handler.
+ */
+public class MetadataCache implements Closeable
+{
+	private final Client client;
+	private final org.kairosdb.client.builder.TimeUnit tagLookbackUnit;
+	private final int tagLookback;
+	private final Consumer<RuntimeException> errorHandler;
+	private final ScheduledExecutorService scheduler;
+	private final LoadingCache<String, TagIndex> tags;
+	private final Object loadLock = new Object();
+
+	private volatile String[] metricNames;
+
+	private MetadataCache(Builder builder)
+	{
+		client = builder.client;
+		tagLookback = builder.tagLookback;
+		tagLookbackUnit = builder.tagLookbackUnit;
+		errorHandler = builder.errorHandler;
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "kairosdb-metadata-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		tags = CacheBuilder.newBuilder()
+				.maximumSize(builder.maxTagMetrics)
+				.refreshAfterWrite(Duration.ofNanos(builder.refreshIntervalNanos))
+				.build(new TagLoader());
+
+		scheduler.scheduleWithFixedDelay(this::refreshInBackground,
+				builder.refreshIntervalNanos, builder.refreshIntervalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns a builder for a cache that reads metadata with the given client.
+	 *
+	 * @param client client used to read metric names and tags
+	 * @return cache builder
+	 */
+	public static Builder builder(Client client)
+	{
+		return new Builder(client);
+	}
+
+	/**
+	 * Returns all metric names in sorted order.
+	 *
+	 * @return metric names
+	 */
+	public List<String> getMetricNames()
+	{
+		return Collections.unmodifiableList(Arrays.asList(getNames()));
+	}
+
+	/**
+	 * Returns the metric names that start with the prefix, in sorted order.
+	 *
+	 * @param prefix prefix of the names
+	 * @param limit  maximum number of names returned
+	 * @return matching metric names
+	 */
+	public List<String> findMetricNames(String prefix, int limit)
+	{
+		requireNonNull(prefix, "prefix cannot be null");
+		checkArgument(limit > 0, "limit must be greater than 0");
+		return findByPrefix(getNames(), prefix, limit);
+	}
+
+	/**
+	 * Returns the metric names that contain the text, in sorted order.
+	 *
+	 * @param text  text contained in the names
+	 * @param limit maximum number of names returned
+	 * @return matching metric names
+	 */
+	public List<String> findMetricNamesContaining(String text, int limit)
+	{
+		requireNonNull(text, "text cannot be null");
+		checkArgument(limit > 0, "limit must be greater than 0");
+
+		List<String> matches = new ArrayList<>();
+		for (String name : getNames())
+		{
+			if (name.contains(text))
+			{
+				matches.add(name);
+				if (matches.size() == limit)
+					break;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns the tag names of the metric in sorted order.
+	 *
+	 * @param metricName metric name
+	 * @return tag names
+	 */
+	public List<String> getTagNames(String metricName)
+	{
+		return Collections.unmodifiableList(Arrays.asList(getTags(metricName).names));
+	}
+
+	/**
+	 * Returns the values of a tag of the metric that start with the prefix, in sorted order.
+	 *
+	 * @param metricName metric name
+	 * @param tagName    tag name
+	 * @param prefix     prefix of the values
+	 * @param limit      maximum number of values returned
+	 * @return matching tag values
+	 */
+	public List<String> findTagValues(String metricName, String tagName, String prefix, int limit)
+	{
+		requireNonNull(tagName, "tagName cannot be null");
+		requireNonNull(prefix, "prefix cannot be null");
+		checkArgument(limit > 0, "limit must be greater than 0");
+
+		String[] values = getTags(metricName).values.get(tagName);
+		if (values == null)
+			return Collections.emptyList();
+		return findByPrefix(values, prefix, limit);
+	}
+
+	/**
+	 * Reloads the metric names and waits for them to be loaded. Tags are reloaded the next time they are asked for.
+	 */
+	public void refresh()
+	{
+		String[] names = loadMetricNames();
+		synchronized (loadLock)
+		{
+			metricNames = names;
+		}
+		tags.invalidateAll();
+	}
+
+	/**
+	 * Stops the background refresh. The client is not closed.
+	 */
+	@Override
+	public void close()
+	{
+		scheduler.shutdownNow();
+	}
+
+	private String[] getNames()
+	{
+		String[] names = metricNames;
+		if (names == null)
+		{
+			synchronized (loadLock)
+			{
+				if (metricNames == null)
+					metricNames = loadMetricNames();
+				names = metricNames;
+			}
+		}
+		return names;
+	}
+
+	private TagIndex getTags(String metricName)
+	{
+		checkNotNullOrEmpty(metricName, "metricName cannot be null or empty");
+		try
+		{
+			return tags.getUnchecked(metricName);
+		}
+		catch (UncheckedExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	private void refreshInBackground()
+	{
+		try
+		{
+			String[] names = loadMetricNames();
+			synchronized (loadLock)
+			{
+				metricNames = names;
+			}
+		}
+		catch (Throwable e)
+		{
+			// A failure must not end the scheduled refreshes
+			handleError(e);
+		}
+	}
+
+	private void handleError(Throwable exception)
+	{
+		try
+		{
+			if (exception instanceof RuntimeException)
+				errorHandler.accept((RuntimeException) exception);
+			else
+				reportUncaught(exception);
+		}
+		catch (Throwable e)
+		{
+			reportUncaught(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private String[] loadMetricNames()
+	{
+		Collection<String> names = (Collection<String>) client.getMetricNames();
+		String[] sorted = names.toArray(new String[0]);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private TagIndex loadTags(String metricName)
+	{
+		QueryTagBuilder builder = QueryTagBuilder.getInstance().setStart(tagLookback, tagLookbackUnit);
+		builder.addMetric(metricName);
+
+		QueryTagResponse response = client.queryTags(builder);
+		Map<String, TreeSet<String>> values = new TreeMap<>();
+		for (TagQueryResult query : response.getQueries())
+		{
+			for (TagResult result : query.getResults())
+			{
+				for (Map.Entry<String, List<String>> tag : result.getTags().entrySet())
+				{
+					values.computeIfAbsent(tag.getKey(), k -> new TreeSet<>()).addAll(tag.getValue());
+				}
+			}
+		}
+		return new TagIndex(values);
+	}
+
+	private static List<String> findByPrefix(String[] sorted, String prefix, int limit)
+	{
+		int index = Arrays.binarySearch(sorted, prefix);
+		if (index < 0)
+			index = -index - 1;
+
+		List<String> matches = new ArrayList<>();
+		while (index < sorted.length && matches.size() < limit && sorted[index].startsWith(prefix))
+		{
+			matches.add(sorted[index++]);
+		}
+		return matches;
+	}
+
+	private class TagLoader extends CacheLoader<String, TagIndex>
+	{
+		@Override
+		public TagIndex load(String metricName)
+		{
+			return loadTags(metricName);
+		}
+
+		@Override
+		public ListenableFuture<TagIndex> reload(String metricName, TagIndex previous)
+		{
+			ListenableFutureTask<TagIndex> task = ListenableFutureTask.create(() -> {
+				try
+				{
+					return loadTags(metricName);
+				}
+				catch (RuntimeException e)
+				{
+					handleError(e);
+					return previous;
+				}
+			});
+			scheduler.execute(task);
+			return task;
+		}
+	}
+
+	private static class TagIndex
+	{
+		private final String[] names;
+		private final Map<String, String[]> values;
+
+		private TagIndex(Map<String, TreeSet<String>> tags)
+		{
+			names = tags.keySet().toArray(new String[0]);
+			values = new HashMap<>();
+			for (Map.Entry<String, TreeSet<String>> tag : tags.entrySet())
+			{
+				values.put(tag.getKey(), tag.getValue().toArray(new String[0]));
+			}
+		}
+	}
+
+	/**
+	 * Configures a {@link MetadataCache}.
+	 */
+	public static class Builder
+	{
+		private final Client client;
+		private long refreshIntervalNanos = TimeUnit.MINUTES.toNanos(5);
+		private long maxTagMetrics = 10_000;
+		private int tagLookback = 1;
+		private org.kairosdb.client.builder.TimeUnit tagLookbackUnit = org.kairosdb.client.builder.TimeUnit.DAYS;
+		private Consumer<RuntimeException> errorHandler = exception -> {};
+
+		private Builder(Client client)
+		{
+			this.client = requireNonNull(client, "client cannot be null");
+		}
+
+		/**
+		 * How often metric names and tags are reloaded. The default is 5 minutes.
+		 *
+		 * @param refreshInterval time between reloads
+		 * @param unit            unit of the time
+		 * @return the builder
+		 */
+		public Builder setRefreshInterval(long refreshInterval, TimeUnit unit)
+		{
+			checkArgument(refreshInterval > 0, "refreshInterval must be greater than 0");
+			requireNonNull(unit, "unit cannot be null");
+			this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+			return this;
+		}
+
+		/**
+		 * Maximum number of metrics whose tags are kept. The default is 10,000.
+		 *
+		 * @param maxTagMetrics maximum number of metrics
+		 * @return the builder
+		 */
+		public Builder setMaxTagMetrics(long maxTagMetrics)
+		{
+			checkArgument(maxTagMetrics > 0, "maxTagMetrics must be greater than 0");
+			this.maxTagMetrics = maxTagMetrics;
+			return this;
+		}
+
+		/**
+		 * How far back tags are read. Only tags of data points in this time range are returned. The default is 1 day.
+		 *
+		 * @param duration relative time value
+		 * @param unit     unit of time
+		 * @return the builder
+		 */
+		public Builder setTagLookback(int duration, org.kairosdb.client.builder.TimeUnit unit)
+		{
+			checkArgument(duration > 0, "duration must be greater than 0");
+			this.tagLookbackUnit = requireNonNull(unit, "unit cannot be null");
+			this.tagLookback = duration;
+			return this;
+		}
+
+		/**
+		 * Receives the errors of reloads. The default ignores them. Exceptions thrown by the handler are passed to the
+		 * uncaught exception handler of the refresh thread.
+		 *
+		 * @param errorHandler error handler
+		 * @return the builder
+		 */
+		public Builder setErrorHandler(Consumer<RuntimeException> errorHandler)
+		{
+			this.errorHandler = requireNonNull(errorHandler, "errorHandler cannot be null");
+			return this;
+		}
+
+		public MetadataCache build()
+		{
+			return new MetadataCache(this);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.kairosdb.client;
+
+import com.google.common.io.CountingOutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
+
+/**
+ * Request body that serializes the metrics of a {@link MetricBuilder} while it is being sent. The JSON is written
+ * straight onto the connection, optionally through a {@link ContentCodec}, using chunked transfer encoding. Memory
+ * used by the request therefore does not grow with the number of data points.
+ * <br>
+ * <br>
+ * The entity is repeatable so the request can be retried. The builder must not be modified until the request
+ * has completed.
+ */
+class MetricBuilderEntity extends AbstractHttpEntity
+{
+	private final MetricBuilder builder;
+	private final ContentCodec codec;
+	private long bytesWritten;
+	private long bytesWrittenOnWire;
+	private long writeNanos;
+
+	/**
+	 * @param codec codec the metrics are compressed with or null to send them uncompressed
+	 */
+	MetricBuilderEntity(MetricBuilder builder, ContentCodec codec)
+	{
+		this.builder = requireNonNull(builder, "builder cannot be null");
+		this.codec = codec;
+		setContentType(APPLICATION_JSON.toString());
+		setChunked(true);
+		if (codec != null)
+		{
+			setContentEncoding(codec.getEncoding());
+		}
+	}
+
+	@Override
+	public boolean isRepeatable()
+	{
+		return true;
+	}
+
+	@Override
+	public long getContentLength()
+	{
+		return -1;
+	}
+
+	/**
+	 * Returns the serialized (and compressed) content. This buffers the whole request in memory and is only
+	 * used by callers that cannot write to an output stream.
+	 */
+	@Override
+	public InputStream getContent() throws IOException
+	{
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		writeTo(buffer);
+		return new ByteArrayInputStream(buffer.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException
+	{
+		requireNonNull(outputStream, "outputStream cannot be null");
+		long start = System.nanoTime();
+
+		CountingOutputStream wireStream = new CountingOutputStream(outputStream);
+		// Closing the codec's stream finishes the compressed data but leaves the connection's stream open
+		try (OutputStream encodingStream = codec != null ? codec.encode(wireStream) : null)
+		{
+			CountingOutputStream contentStream = new CountingOutputStream(encodingStream != null ? encodingStream : wireStream);
+			Writer writer = new OutputStreamWriter(contentStream, StandardCharsets.UTF_8);
+			builder.write(writer);
+			writer.flush();
+			bytesWritten = contentStream.getCount();
+		}
+		outputStream.flush();
+
+		bytesWrittenOnWire = wireStream.getCount();
+		writeNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Serializes the metrics into an entity of known length, for clients that send the body after the builder may
+	 * have been modified.
+	 */
+	HttpEntity toBufferedEntity() throws IOException
+	{
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		writeTo(buffer);
+		ByteArrayEntity entity = new ByteArrayEntity(buffer.toByteArray(), APPLICATION_JSON);
+		entity.setContentEncoding(getContentEncoding());
+		return entity;
+	}
+
+	/**
+	 * Returns the size of the JSON written by the last call to {@link #writeTo(OutputStream)}.
+	 */
+	long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/**
+	 * Returns the number of bytes written to the output stream by the last call to {@link #writeTo(OutputStream)},
+	 * after compression.
+	 */
+	long getBytesWrittenOnWire()
+	{
+		return bytesWrittenOnWire;
+	}
+
+	/**
+	 * Returns the time the last call to {@link #writeTo(OutputStream)} took in nanoseconds.
+	 */
+	long getWriteNanos()
+	{
+		return writeNanos;
+	}
+
+	@Override
+	public boolean isStreaming()
+	{
+		return false;
+	}
+}
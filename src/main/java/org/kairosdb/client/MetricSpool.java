@@ -0,0 +1,817 @@
+package org.kairosdb.client;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Exceptions.isServerFailure;
+import static org.kairosdb.client.util.Exceptions.reportUncaught;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+import static org.kairosdb.client.util.Preconditions.checkState;
+
+/**
+ * Pushes metrics to KairosDB and keeps them on disk while KairosDB cannot be reached. Metrics that fail to be pushed
+ * because of the server or the connection to it are appended to the spool, and a background thread replays them in
+ * the order they were added once the server recovers. While the spool holds metrics, new metrics are appended behind
+ * them rather than sent directly, so the order is kept.
+ * <br>
+ * <br>
+ * The spool is a directory of memory-mapped segment files of a fixed size. Each payload is stored with its length and
+ * a CRC32 checksum, and each segment records how far it has been replayed. Segments are deleted once all of their
+ * payloads have been sent. When the spool is opened again after the process stopped, replay resumes where it left
+ * off; a payload that was being written when the process stopped fails its checksum and is skipped together with the
+ * rest of its segment. The replay position is only written to disk when a segment is sealed or the spool is closed,
+ * so after a crash some payloads may be sent twice.
+ * <br>
+ * <br>
+ * Payloads that KairosDB rejects with a 4xx status are not retried: when pushed they are thrown to the caller, when
+ * replayed they are dropped and passed to the error handler.
+ */
+public class MetricSpool implements Closeable
+{
+	private static final String SEGMENT_PREFIX = "spool-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final int MAGIC = 0x4B535031;
+	private static final int ACK_OFFSET = 8;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private final Path directory;
+	private final Consumer<byte[]> sender;
+	private final int segmentSize;
+	private final long maxSpoolBytes;
+	private final boolean syncOnWrite;
+	private final RateLimiter replayLimiter;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final Consumer<RuntimeException> errorHandler;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+	private final Thread drainer;
+
+	private long nextSequence;
+	private long spoolBytes;
+	private long pendingPayloads;
+	private boolean closed;
+
+	private long spooledPayloads;
+	private long replayedPayloads;
+	private long droppedPayloads;
+	private long rejectedPayloads;
+	private long corruptSegments;
+
+	private MetricSpool(Builder builder) throws IOException
+	{
+		directory = builder.directory;
+		sender = builder.sender;
+		segmentSize = builder.segmentSize;
+		maxSpoolBytes = builder.maxSpoolBytes;
+		syncOnWrite = builder.syncOnWrite;
+		replayLimiter = builder.replayBytesPerSecond > 0 ? RateLimiter.create(builder.replayBytesPerSecond) : null;
+		initialBackoffNanos = builder.initialBackoffNanos;
+		maxBackoffNanos = builder.maxBackoffNanos;
+		errorHandler = builder.errorHandler;
+
+		recover();
+
+		drainer = new Thread(this::drain, "kairosdb-spool-drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * Returns a builder for a spool in the given directory that sends payloads with the given function, usually
+	 * {@code client::pushMetrics} of an {@link HttpClient} or {@link ClusterClient}.
+	 *
+	 * @param directory directory of the segment files, created if it does not exist
+	 * @param sender    pushes a JSON payload to KairosDB
+	 * @return spool builder
+	 */
+	public static Builder builder(Path directory, Consumer<byte[]> sender)
+	{
+		return new Builder(directory, sender);
+	}
+
+	/**
+	 * Pushes the metrics of the builder to KairosDB or, if KairosDB cannot be reached or the spool already holds
+	 * metrics, appends them to the spool. The builder can be modified once this method returns.
+	 *
+	 * @param builder metrics to push
+	 * @throws IllegalStateException if the metrics do not fit within the disk quota of the spool
+	 */
+	public void pushMetrics(MetricBuilder builder)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		push(builder.build().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Pushes metrics that have already been serialized to JSON or, if KairosDB cannot be reached or the spool already
+	 * holds metrics, appends them to the spool.
+	 *
+	 * @param json JSON in UTF-8
+	 * @throws IllegalStateException if the metrics do not fit within the disk quota of the spool
+	 */
+	public void push(byte[] json)
+	{
+		requireNonNull(json, "json cannot be null");
+
+		boolean empty;
+		lock.lock();
+		try
+		{
+			checkState(!closed, "Spool is closed");
+			empty = pendingPayloads == 0;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		if (empty)
+		{
+			try
+			{
+				sender.accept(json);
+				return;
+			}
+			catch (RuntimeException e)
+			{
+				if (!isServerFailure(e))
+					throw e;
+				append(json, e);
+				return;
+			}
+		}
+		append(json, null);
+	}
+
+	/**
+	 * Returns the number of payloads waiting to be replayed.
+	 *
+	 * @return pending payloads
+	 */
+	public long getPendingPayloads()
+	{
+		lock.lock();
+		try
+		{
+			return pendingPayloads;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the disk space used by the segment files.
+	 *
+	 * @return size of the spool in bytes
+	 */
+	public long getSpoolBytes()
+	{
+		lock.lock();
+		try
+		{
+			return spoolBytes;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of payloads appended to the spool since it was opened.
+	 *
+	 * @return spooled payloads
+	 */
+	public long getSpooledPayloads()
+	{
+		lock.lock();
+		try
+		{
+			return spooledPayloads;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of payloads sent from the spool since it was opened.
+	 *
+	 * @return replayed payloads
+	 */
+	public long getReplayedPayloads()
+	{
+		lock.lock();
+		try
+		{
+			return replayedPayloads;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of spooled payloads that KairosDB rejected during replay.
+	 *
+	 * @return dropped payloads
+	 */
+	public long getDroppedPayloads()
+	{
+		lock.lock();
+		try
+		{
+			return droppedPayloads;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of payloads that could not be spooled because the disk quota was reached.
+	 *
+	 * @return rejected payloads
+	 */
+	public long getRejectedPayloads()
+	{
+		lock.lock();
+		try
+		{
+			return rejectedPayloads;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of segment files found corrupted when the spool was opened. Payloads after the corrupted
+	 * part of a segment are lost.
+	 *
+	 * @return corrupt segments
+	 */
+	public long getCorruptSegments()
+	{
+		lock.lock();
+		try
+		{
+			return corruptSegments;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the replay and writes the replay position to disk. Payloads that have not been replayed stay in the spool
+	 * and are replayed when it is opened again.
+	 */
+	@Override
+	public void close()
+	{
+		lock.lock();
+		try
+		{
+			if (closed)
+				return;
+			closed = true;
+			notEmpty.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		try
+		{
+			drainer.join(TimeUnit.SECONDS.toMillis(5));
+			if (drainer.isAlive())
+			{
+				drainer.interrupt();
+				drainer.join();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		lock.lock();
+		try
+		{
+			for (Segment segment : segments)
+			{
+				segment.buffer.force();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void append(byte[] json, RuntimeException failure)
+	{
+		lock.lock();
+		try
+		{
+			checkState(!closed, "Spool is closed");
+
+			int recordSize = RECORD_HEADER_SIZE + json.length;
+			Segment tail = segments.peekLast();
+			if (tail == null || tail.sealed || tail.writePosition + recordSize > tail.capacity())
+			{
+				int size = Math.max(segmentSize, HEADER_SIZE + recordSize);
+				if (spoolBytes + size > maxSpoolBytes)
+				{
+					rejectedPayloads++;
+					throw new IllegalStateException("Spool has reached its quota of " + maxSpoolBytes + " bytes", failure);
+				}
+				if (tail != null)
+					tail.seal();
+
+				tail = Segment.create(directory.resolve(segmentName(nextSequence++)), size);
+				segments.add(tail);
+				spoolBytes += size;
+			}
+
+			tail.append(json, syncOnWrite);
+			pendingPayloads++;
+			spooledPayloads++;
+			notEmpty.signal();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Unable to write to spool " + directory, e);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void drain()
+	{
+		long backoffNanos = initialBackoffNanos;
+		while (true)
+		{
+			Segment segment;
+			byte[] payload;
+			lock.lock();
+			try
+			{
+				while (!closed && pendingPayloads == 0)
+				{
+					notEmpty.await();
+				}
+				if (closed)
+					return;
+
+				segment = nextUnsentSegment();
+				payload = segment.read(segment.ackPosition);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			if (replayLimiter != null)
+				replayLimiter.acquire(Math.max(1, payload.length));
+
+			try
+			{
+				sender.accept(payload);
+				acknowledge(segment, payload, false);
+				backoffNanos = initialBackoffNanos;
+			}
+			catch (Throwable e)
+			{
+				handleError(e);
+				if (e instanceof RuntimeException && !isServerFailure(e))
+				{
+					acknowledge(segment, payload, true);
+					continue;
+				}
+
+				lock.lock();
+				try
+				{
+					if (!closed)
+						notEmpty.awaitNanos(backoffNanos);
+				}
+				catch (InterruptedException ie)
+				{
+					return;
+				}
+				finally
+				{
+					lock.unlock();
+				}
+				backoffNanos = Math.min(backoffNanos * 2, maxBackoffNanos);
+			}
+		}
+	}
+
+	/**
+	 * Returns the oldest segment with payloads to replay, deleting the segments before it that have been replayed.
+	 */
+	private Segment nextUnsentSegment()
+	{
+		Segment segment = segments.peekFirst();
+		while (segment.ackPosition == segment.writePosition)
+		{
+			removeHead();
+			segment = segments.peekFirst();
+		}
+		return segment;
+	}
+
+	private void acknowledge(Segment segment, byte[] payload, boolean dropped)
+	{
+		lock.lock();
+		try
+		{
+			segment.acknowledge(segment.ackPosition + RECORD_HEADER_SIZE + payload.length);
+			pendingPayloads--;
+			if (dropped)
+				droppedPayloads++;
+			else
+				replayedPayloads++;
+
+			if (segment.sealed && segment.ackPosition == segment.writePosition && segments.peekFirst() == segment)
+				removeHead();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void removeHead()
+	{
+		Segment segment = segments.removeFirst();
+		spoolBytes -= segment.capacity();
+		try
+		{
+			Files.deleteIfExists(segment.path);
+		}
+		catch (IOException e)
+		{
+			handleError(new UncheckedIOException("Unable to delete spool segment " + segment.path, e));
+		}
+	}
+
+	/**
+	 * Passes a replay error to the error handler. Errors that are not runtime exceptions and exceptions thrown by the
+	 * handler go to the uncaught exception handler of the thread, so they cannot end the replay.
+	 */
+	private void handleError(Throwable exception)
+	{
+		try
+		{
+			if (exception instanceof RuntimeException)
+				errorHandler.accept((RuntimeException) exception);
+			else
+				reportUncaught(exception);
+		}
+		catch (Throwable e)
+		{
+			reportUncaught(e);
+		}
+	}
+
+	private void recover() throws IOException
+	{
+		Files.createDirectories(directory);
+
+		List<Long> sequences = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+		{
+			for (Path file : files)
+			{
+				String name = file.getFileName().toString();
+				try
+				{
+					sequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+				}
+				catch (NumberFormatException e)
+				{
+					// Not a segment file
+				}
+			}
+		}
+		sequences.sort(null);
+
+		for (long sequence : sequences)
+		{
+			nextSequence = sequence + 1;
+			Path path = directory.resolve(segmentName(sequence));
+			Segment segment = Segment.open(path);
+			if (segment == null)
+			{
+				corruptSegments++;
+				errorHandler.accept(new IllegalStateException("Ignoring spool segment with an invalid header: " + path));
+				continue;
+			}
+			if (segment.corrupt)
+			{
+				corruptSegments++;
+				errorHandler.accept(new IllegalStateException("Spool segment " + path + " is corrupt after position " + segment.writePosition));
+			}
+
+			if (segment.pendingPayloads == 0)
+			{
+				Files.delete(path);
+				continue;
+			}
+			segments.add(segment);
+			spoolBytes += segment.capacity();
+			pendingPayloads += segment.pendingPayloads;
+		}
+	}
+
+	private static String segmentName(long sequence)
+	{
+		return String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+	}
+
+	private static class Segment
+	{
+		private final Path path;
+		private final MappedByteBuffer buffer;
+		private int writePosition;
+		private int ackPosition;
+		private boolean sealed;
+		private boolean corrupt;
+		private int pendingPayloads;
+
+		private Segment(Path path, MappedByteBuffer buffer)
+		{
+			this.path = path;
+			this.buffer = buffer;
+		}
+
+		private static Segment create(Path path, int size) throws IOException
+		{
+			MappedByteBuffer buffer;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+
+			Segment segment = new Segment(path, buffer);
+			buffer.putInt(0, MAGIC);
+			buffer.putLong(ACK_OFFSET, HEADER_SIZE);
+			segment.writePosition = HEADER_SIZE;
+			segment.ackPosition = HEADER_SIZE;
+			return segment;
+		}
+
+		/**
+		 * Maps an existing segment and finds the end of its valid payloads. Returns null if the file is not a segment.
+		 */
+		private static Segment open(Path path) throws IOException
+		{
+			MappedByteBuffer buffer;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+					return null;
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+			}
+
+			long ackPosition = buffer.getLong(ACK_OFFSET);
+			if (buffer.getInt(0) != MAGIC || ackPosition < HEADER_SIZE || ackPosition > buffer.capacity())
+				return null;
+
+			Segment segment = new Segment(path, buffer);
+			segment.ackPosition = (int) ackPosition;
+			segment.sealed = true;
+
+			int position = segment.ackPosition;
+			while (position + RECORD_HEADER_SIZE <= buffer.capacity())
+			{
+				int length = buffer.getInt(position);
+				if (length == 0)
+					break;
+				if (length < 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()
+						|| buffer.getInt(position + 4) != checksum(buffer, position + RECORD_HEADER_SIZE, length))
+				{
+					segment.corrupt = true;
+					break;
+				}
+				position += RECORD_HEADER_SIZE + length;
+				segment.pendingPayloads++;
+			}
+			segment.writePosition = position;
+			return segment;
+		}
+
+		private int capacity()
+		{
+			return buffer.capacity();
+		}
+
+		/**
+		 * Writes the payload and its checksum before its length so a payload is never seen partly written.
+		 */
+		private void append(byte[] payload, boolean sync)
+		{
+			ByteBuffer view = buffer.duplicate();
+			view.position(writePosition + RECORD_HEADER_SIZE);
+			view.put(payload);
+			buffer.putInt(writePosition + 4, checksum(buffer, writePosition + RECORD_HEADER_SIZE, payload.length));
+			buffer.putInt(writePosition, payload.length);
+			writePosition += RECORD_HEADER_SIZE + payload.length;
+			if (sync)
+				buffer.force();
+		}
+
+		private byte[] read(int position)
+		{
+			byte[] payload = new byte[buffer.getInt(position)];
+			ByteBuffer view = buffer.duplicate();
+			view.position(position + RECORD_HEADER_SIZE);
+			view.get(payload);
+			return payload;
+		}
+
+		private void acknowledge(int position)
+		{
+			ackPosition = position;
+			buffer.putLong(ACK_OFFSET, position);
+		}
+
+		private void seal()
+		{
+			sealed = true;
+			buffer.force();
+		}
+
+		private static int checksum(ByteBuffer buffer, int position, int length)
+		{
+			ByteBuffer view = buffer.duplicate();
+			view.position(position);
+			view.limit(position + length);
+			CRC32 crc = new CRC32();
+			crc.update(view);
+			return (int) crc.getValue();
+		}
+	}
+
+	/**
+	 * Configures a {@link MetricSpool}.
+	 */
+	public static class Builder
+	{
+		private final Path directory;
+		private final Consumer<byte[]> sender;
+		private int segmentSize = 64 * 1024 * 1024;
+		private long maxSpoolBytes = 1024L * 1024 * 1024;
+		private boolean syncOnWrite;
+		private long replayBytesPerSecond;
+		private long initialBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+		private long maxBackoffNanos = TimeUnit.MINUTES.toNanos(1);
+		private Consumer<RuntimeException> errorHandler = exception -> {};
+
+		private Builder(Path directory, Consumer<byte[]> sender)
+		{
+			this.directory = requireNonNull(directory, "directory cannot be null");
+			this.sender = requireNonNull(sender, "sender cannot be null");
+		}
+
+		/**
+		 * Size of each segment file. The default is 64MB. A payload larger than a segment gets a segment of its own.
+		 *
+		 * @param segmentSize segment size in bytes
+		 * @return the builder
+		 */
+		public Builder setSegmentSize(int segmentSize)
+		{
+			checkArgument(segmentSize >= 4096, "segmentSize must be at least 4096");
+			this.segmentSize = segmentSize;
+			return this;
+		}
+
+		/**
+		 * Maximum disk space used by the segment files. Pushes that would need more space fail with an
+		 * {@link IllegalStateException}. The default is 1GB.
+		 *
+		 * @param maxSpoolBytes disk quota in bytes
+		 * @return the builder
+		 */
+		public Builder setMaxSpoolBytes(long maxSpoolBytes)
+		{
+			checkArgument(maxSpoolBytes > 0, "maxSpoolBytes must be greater than 0");
+			this.maxSpoolBytes = maxSpoolBytes;
+			return this;
+		}
+
+		/**
+		 * Forces every payload to disk before the push returns, so payloads also survive a crash of the operating
+		 * system. The default only protects against a crash of the process.
+		 *
+		 * @param syncOnWrite true to force each payload to disk
+		 * @return the builder
+		 */
+		public Builder setSyncOnWrite(boolean syncOnWrite)
+		{
+			this.syncOnWrite = syncOnWrite;
+			return this;
+		}
+
+		/**
+		 * Limits how fast spooled payloads are replayed so a recovering cluster is not overloaded. By default the
+		 * replay is not limited.
+		 *
+		 * @param replayBytesPerSecond maximum bytes replayed per second
+		 * @return the builder
+		 */
+		public Builder setReplayRate(long replayBytesPerSecond)
+		{
+			checkArgument(replayBytesPerSecond > 0, "replayBytesPerSecond must be greater than 0");
+			this.replayBytesPerSecond = replayBytesPerSecond;
+			return this;
+		}
+
+		/**
+		 * Time to wait before retrying a failed replay. The time doubles after each failure up to the maximum. The
+		 * defaults are 1 second and 1 minute.
+		 *
+		 * @param initial time before the first retry
+		 * @param max     maximum time between retries
+		 * @param unit    unit of the times
+		 * @return the builder
+		 */
+		public Builder setRetryBackoff(long initial, long max, TimeUnit unit)
+		{
+			checkArgument(initial > 0, "initial must be greater than 0");
+			checkArgument(max >= initial, "max must not be less than initial");
+			requireNonNull(unit, "unit cannot be null");
+			this.initialBackoffNanos = unit.toNanos(initial);
+			this.maxBackoffNanos = unit.toNanos(max);
+			return this;
+		}
+
+		/**
+		 * Receives the errors of the replay and of opening the spool. The default ignores them. Exceptions thrown by
+		 * the handler during the replay are passed to the uncaught exception handler of the replay thread.
+		 *
+		 * @param errorHandler error handler
+		 * @return the builder
+		 */
+		public Builder setErrorHandler(Consumer<RuntimeException> errorHandler)
+		{
+			this.errorHandler = requireNonNull(errorHandler, "errorHandler cannot be null");
+			return this;
+		}
+
+		/**
+		 * Opens the spool and starts replaying the payloads left by a previous instance.
+		 *
+		 * @return the spool
+		 * @throws IOException if the directory or its segment files cannot be read
+		 */
+		public MetricSpool build() throws IOException
+		{
+			return new MetricSpool(this);
+		}
+	}
+}
@@ -0,0 +1,824 @@
+package org.kairosdb.client;
+
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.kairosdb.client.instrumentation.ClientInstrumentation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Exceptions.reportUncaught;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+import static org.kairosdb.client.util.Preconditions.checkState;
+
+/**
+ * Sends metrics to KairosDB using the Telnet protocol from a background thread.
+ * <br>
+ * <br>
+ * {@link #putMetrics(MetricBuilder)} formats the data points as putm lines and copies them into a bounded ring
+ * buffer; it never waits for the network. A dedicated I/O thread writes the buffer to a {@link SocketChannel}. When
+ * the connection fails the error is passed to the error handler and the thread reconnects with exponential backoff,
+ * resending any line that was only partly written. Data points are kept in the buffer while KairosDB is unreachable,
+ * and once the buffer is full the overflow policy decides whether callers wait, data points are dropped or an
+ * exception is thrown.
+ * <br>
+ * <br>
+ * As with {@link TelnetClient}, KairosDB does not acknowledge the lines it receives. Lines written to the socket just
+ * before a connection breaks may be lost. Use the HTTP client if delivery must be guaranteed.
+ * <br>
+ * <br>
+ * The client is thread-safe. The lines of a single call to putMetrics are not interleaved with the lines of other
+ * calls unless they do not fit into the buffer at once.
+ */
+public class NioTelnetClient implements Closeable
+{
+	/**
+	 * What happens when metrics are put while the buffer is full.
+	 */
+	public enum OverflowPolicy
+	{
+		/**
+		 * The caller waits until the I/O thread has made room in the buffer.
+		 */
+		BLOCK,
+		/**
+		 * The data points that do not fit are discarded.
+		 */
+		DROP_NEWEST,
+		/**
+		 * An IllegalStateException is thrown and the data points that do not fit are discarded.
+		 */
+		FAIL
+	}
+
+	private static final int MAX_CHUNK_SIZE = 64 * 1024;
+	private static final long ABORT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final byte NEWLINE = '\n';
+	private static final ThreadLocal<PutLineEncoder> ENCODER =
+			ThreadLocal.withInitial(() -> new PutLineEncoder(PutLineEncoder.PUTM, MAX_CHUNK_SIZE + 1024));
+
+	private final String host;
+	private final int port;
+	private final int capacity;
+	private final int chunkSize;
+	private final OverflowPolicy overflowPolicy;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final int connectTimeoutMillis;
+	private final long closeTimeoutNanos;
+	private final Consumer<IOException> errorHandler;
+	private final ClientInstrumentation instrumentation;
+
+	private final ByteBuffer ring;
+	private final ByteBuffer readView;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition flushed = lock.newCondition();
+	private final Thread ioThread;
+	// The channel the I/O thread is connecting or writing to, closed by close() to abort a write that blocks
+	private volatile SocketChannel activeChannel;
+
+	// Positions in the buffer as ever increasing byte counts. Bytes before head have been written up to the end of
+	// their line, bytes between head and sendPosition belong to a line that has been partly written.
+	private long head;
+	private long sendPosition;
+	private long tail;
+
+	private boolean closed;
+	private long closeDeadline;
+	private boolean terminated;
+	private boolean connected;
+	private long connects;
+	private long acceptedDataPoints;
+	private long droppedDataPoints;
+	private long sentBytes;
+
+	private NioTelnetClient(Builder builder)
+	{
+		host = builder.host;
+		port = builder.port;
+		capacity = builder.bufferSize;
+		chunkSize = Math.min(MAX_CHUNK_SIZE, capacity);
+		overflowPolicy = builder.overflowPolicy;
+		initialBackoffNanos = builder.initialBackoffNanos;
+		maxBackoffNanos = builder.maxBackoffNanos;
+		connectTimeoutMillis = builder.connectTimeoutMillis;
+		closeTimeoutNanos = builder.closeTimeoutNanos;
+		errorHandler = builder.errorHandler;
+		instrumentation = builder.instrumentation;
+
+		ring = ByteBuffer.allocateDirect(capacity);
+		readView = ring.duplicate();
+
+		ioThread = new Thread(this::run, "kairosdb-telnet-io");
+		ioThread.setDaemon(true);
+		ioThread.start();
+	}
+
+	/**
+	 * Returns a builder for a client that connects to the given KairosDB server.
+	 *
+	 * @param host KairosDB host
+	 * @param port KairosDB telnet port
+	 * @return client builder
+	 */
+	public static Builder builder(String host, int port)
+	{
+		return new Builder(host, port);
+	}
+
+	/**
+	 * Adds the data points of all metrics in the builder to the buffer using the putm command.
+	 *
+	 * @param builder metrics to send
+	 * @throws IllegalStateException if the client is closed or the buffer is full and the overflow policy is FAIL
+	 */
+	public void putMetrics(MetricBuilder builder)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		putMetrics(builder.getMetrics());
+	}
+
+	/**
+	 * Adds the data points of the metrics to the buffer using the putm command.
+	 */
+	void putMetrics(List<Metric> metrics)
+	{
+		long start = System.nanoTime();
+		PutLineEncoder encoder = ENCODER.get();
+		encoder.clear();
+		int chunkDataPoints = 0;
+		int dataPoints = 0;
+		long bytes = 0;
+
+		for (Metric metric : metrics)
+		{
+			encoder.setMetric(metric);
+			for (int i = 0; i < metric.getDataPointCount(); i++)
+			{
+				int lineStart = encoder.getLength();
+				encoder.encode(metric, i);
+				if (encoder.getLength() > chunkSize)
+				{
+					// Pass on the complete lines and keep the new one for the next chunk
+					if (lineStart > 0)
+					{
+						append(encoder.getBuffer(), lineStart, chunkDataPoints);
+						bytes += lineStart;
+						encoder.discard(lineStart);
+						chunkDataPoints = 0;
+					}
+					checkArgument(encoder.getLength() <= chunkSize, "Line for metric " + metric.getName() + " is larger than the buffer");
+				}
+				chunkDataPoints++;
+				dataPoints++;
+			}
+		}
+		if (encoder.getLength() > 0)
+		{
+			append(encoder.getBuffer(), encoder.getLength(), chunkDataPoints);
+			bytes += encoder.getLength();
+		}
+
+		instrumentation.telnetMetricsWritten(dataPoints, bytes, System.nanoTime() - start);
+	}
+
+	/**
+	 * Waits until all data points put before this call have been written to the socket.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalStateException if the client was closed before the data points could be written
+	 */
+	public void flush() throws InterruptedException
+	{
+		lock.lock();
+		try
+		{
+			long target = tail;
+			while (head < target)
+			{
+				checkState(!terminated, "Client is closed");
+				flushed.await();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until all data points put before this call have been written to the socket or the timeout expires.
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit    unit of the timeout
+	 * @return true if the data points were written, false if the timeout expired or the client was closed first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean flush(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long remaining = unit.toNanos(timeout);
+		lock.lock();
+		try
+		{
+			long target = tail;
+			while (head < target)
+			{
+				if (terminated || remaining <= 0)
+					return false;
+				remaining = flushed.awaitNanos(remaining);
+			}
+			return true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops accepting metrics, waits up to the close timeout for the buffer to be written and closes the connection.
+	 * Data points that could not be written in time are discarded. If a write still blocks when the timeout has
+	 * expired, for example because KairosDB stopped reading, the connection is closed to abort it.
+	 */
+	@Override
+	public void close()
+	{
+		long deadline;
+		lock.lock();
+		try
+		{
+			if (closed)
+				return;
+			closed = true;
+			closeDeadline = System.nanoTime() + closeTimeoutNanos;
+			deadline = closeDeadline;
+			notEmpty.signal();
+			notFull.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		boolean interrupted = false;
+		boolean aborting = false;
+		while (ioThread.isAlive())
+		{
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+			{
+				if (remaining <= -ABORT_TIMEOUT_NANOS)
+					break;
+
+				// The I/O thread stops once the deadline has passed unless it is blocked in the channel
+				aborting = true;
+				closeQuietly(activeChannel);
+			}
+
+			try
+			{
+				ioThread.join(aborting ? 10 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes waiting to be written.
+	 *
+	 * @return number of buffered bytes
+	 */
+	public long getBufferedBytes()
+	{
+		lock.lock();
+		try
+		{
+			return tail - head;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of data points that have been added to the buffer.
+	 *
+	 * @return number of accepted data points
+	 */
+	public long getAcceptedDataPoints()
+	{
+		lock.lock();
+		try
+		{
+			return acceptedDataPoints;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written to the socket, including lines that were resent after a reconnect.
+	 *
+	 * @return number of bytes sent
+	 */
+	public long getSentBytes()
+	{
+		lock.lock();
+		try
+		{
+			return sentBytes;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of data points discarded because the buffer was full or the client was closed before they
+	 * could be written.
+	 *
+	 * @return number of dropped data points
+	 */
+	public long getDroppedDataPoints()
+	{
+		lock.lock();
+		try
+		{
+			return droppedDataPoints;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of connections that have been established, including reconnects.
+	 *
+	 * @return number of connections
+	 */
+	public long getConnects()
+	{
+		lock.lock();
+		try
+		{
+			return connects;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public boolean isConnected()
+	{
+		lock.lock();
+		try
+		{
+			return connected;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void append(byte[] data, int length, int dataPoints)
+	{
+		lock.lock();
+		try
+		{
+			checkOpen();
+			while (capacity - (tail - head) < length)
+			{
+				switch (overflowPolicy)
+				{
+					case BLOCK:
+						notFull.awaitUninterruptibly();
+						checkOpen();
+						break;
+					case DROP_NEWEST:
+						droppedDataPoints += dataPoints;
+						return;
+					case FAIL:
+						droppedDataPoints += dataPoints;
+						throw new IllegalStateException("Buffer is full (" + capacity + " bytes)");
+				}
+			}
+
+			// Copy into the ring, wrapping around at the end
+			ByteBuffer target = ring.duplicate();
+			int start = (int) (tail % capacity);
+			int firstPart = Math.min(length, capacity - start);
+			target.position(start);
+			target.put(data, 0, firstPart);
+			if (firstPart < length)
+			{
+				target.position(0);
+				target.put(data, firstPart, length - firstPart);
+			}
+
+			boolean wasEmpty = tail == sendPosition;
+			tail += length;
+			acceptedDataPoints += dataPoints;
+			if (wasEmpty)
+			{
+				notEmpty.signal();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called with the lock held.
+	 */
+	private void checkOpen()
+	{
+		checkState(!closed, "Client is closed");
+		// Nothing would ever be written or make room in the buffer
+		checkState(!terminated, "I/O thread has terminated");
+	}
+
+	private void run()
+	{
+		SocketChannel channel = null;
+		long backoffNanos = initialBackoffNanos;
+		try
+		{
+			while (true)
+			{
+				if (channel == null)
+				{
+					if (shouldStop())
+						return;
+					try
+					{
+						channel = connect();
+						backoffNanos = initialBackoffNanos;
+					}
+					catch (IOException e)
+					{
+						handleError(e);
+						waitForReconnect(backoffNanos);
+						backoffNanos = Math.min(backoffNanos * 2, maxBackoffNanos);
+						continue;
+					}
+				}
+
+				long position;
+				lock.lock();
+				try
+				{
+					while (sendPosition == tail && !closed)
+					{
+						notEmpty.awaitUninterruptibly();
+					}
+					if (shouldStop())
+						return;
+
+					position = sendPosition;
+					int start = (int) (position % capacity);
+					int length = (int) Math.min(tail - position, capacity - start);
+					readView.clear();
+					readView.position(start).limit(start + length);
+				}
+				finally
+				{
+					lock.unlock();
+				}
+
+				try
+				{
+					int written = channel.write(readView);
+					advance(position, written);
+				}
+				catch (IOException e)
+				{
+					closeQuietly(channel);
+					channel = null;
+					lock.lock();
+					try
+					{
+						// Resend the line that was cut off
+						connected = false;
+						sendPosition = head;
+					}
+					finally
+					{
+						lock.unlock();
+					}
+					handleError(e);
+				}
+			}
+		}
+		finally
+		{
+			closeQuietly(channel);
+			lock.lock();
+			try
+			{
+				droppedDataPoints += countLines(head, tail);
+				head = tail;
+				sendPosition = tail;
+				connected = false;
+				terminated = true;
+				flushed.signalAll();
+				notFull.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the client has been closed and either everything has been written or the close timeout has
+	 * expired. Must be called with the lock held.
+	 */
+	private boolean shouldStop()
+	{
+		if (!closed)
+			return false;
+		return sendPosition == tail || System.nanoTime() - closeDeadline >= 0;
+	}
+
+	private SocketChannel connect() throws IOException
+	{
+		SocketChannel channel = SocketChannel.open();
+		activeChannel = channel;
+		try
+		{
+			channel.configureBlocking(true);
+			channel.socket().connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+		}
+		catch (IOException e)
+		{
+			closeQuietly(channel);
+			throw e;
+		}
+
+		lock.lock();
+		try
+		{
+			connected = true;
+			connects++;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return channel;
+	}
+
+	private void waitForReconnect(long backoffNanos)
+	{
+		lock.lock();
+		try
+		{
+			long remaining = backoffNanos;
+			while (remaining > 0 && !shouldStop())
+			{
+				try
+				{
+					remaining = notEmpty.awaitNanos(remaining);
+				}
+				catch (InterruptedException ignored)
+				{
+					// Only close() stops the I/O thread
+				}
+				if (closed)
+				{
+					// Wait no longer than the close deadline
+					remaining = Math.min(remaining, closeDeadline - System.nanoTime());
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void advance(long position, int written)
+	{
+		// Space can only be reused up to the end of the last line that was written completely
+		long lineEnd = -1;
+		for (long i = position + written - 1; i >= position; i--)
+		{
+			if (ring.get((int) (i % capacity)) == NEWLINE)
+			{
+				lineEnd = i + 1;
+				break;
+			}
+		}
+
+		lock.lock();
+		try
+		{
+			sendPosition = position + written;
+			sentBytes += written;
+			if (lineEnd > head)
+			{
+				head = lineEnd;
+				notFull.signalAll();
+				flushed.signalAll();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private long countLines(long from, long to)
+	{
+		long lines = 0;
+		for (long i = from; i < to; i++)
+		{
+			if (ring.get((int) (i % capacity)) == NEWLINE)
+				lines++;
+		}
+		return lines;
+	}
+
+	private void handleError(IOException exception)
+	{
+		try
+		{
+			errorHandler.accept(exception);
+		}
+		catch (Throwable e)
+		{
+			// The I/O thread must keep running
+			reportUncaught(e);
+		}
+	}
+
+	private static void closeQuietly(SocketChannel channel)
+	{
+		if (channel == null)
+			return;
+		try
+		{
+			channel.close();
+		}
+		catch (IOException ignored)
+		{
+			// The connection is being discarded
+		}
+	}
+
+	/**
+	 * Configures a {@link NioTelnetClient}.
+	 */
+	public static class Builder
+	{
+		private final String host;
+		private final int port;
+		private int bufferSize = 8 * 1024 * 1024;
+		private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+		private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(30);
+		private int connectTimeoutMillis = 10_000;
+		private long closeTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+		private Consumer<IOException> errorHandler = exception -> {};
+		private ClientInstrumentation instrumentation = ClientInstrumentation.NOOP;
+
+		private Builder(String host, int port)
+		{
+			this.host = checkNotNullOrEmpty(host, "host cannot be null or empty");
+			checkArgument(port > 0 && port <= 65535, "port must be between 1 and 65535");
+			this.port = port;
+		}
+
+		/**
+		 * Size of the buffer that holds the lines waiting to be written. The default is 8 MB.
+		 *
+		 * @param bufferSize buffer size in bytes
+		 * @return the builder
+		 */
+		public Builder setBufferSize(int bufferSize)
+		{
+			checkArgument(bufferSize >= 1024, "bufferSize must be at least 1024 bytes");
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		/**
+		 * What to do when the buffer is full. The default is to block.
+		 *
+		 * @param overflowPolicy overflow policy
+		 * @return the builder
+		 */
+		public Builder setOverflowPolicy(OverflowPolicy overflowPolicy)
+		{
+			this.overflowPolicy = requireNonNull(overflowPolicy, "overflowPolicy cannot be null");
+			return this;
+		}
+
+		/**
+		 * How long to wait before reconnecting. The wait doubles after each failed attempt up to the maximum. The
+		 * defaults are 100 milliseconds and 30 seconds.
+		 *
+		 * @param initialBackoff wait after the first failure
+		 * @param maxBackoff     longest wait
+		 * @param unit           unit of the waits
+		 * @return the builder
+		 */
+		public Builder setReconnectBackoff(long initialBackoff, long maxBackoff, TimeUnit unit)
+		{
+			requireNonNull(unit, "unit cannot be null");
+			checkArgument(initialBackoff > 0, "initialBackoff must be greater than 0");
+			checkArgument(maxBackoff >= initialBackoff, "maxBackoff cannot be less than initialBackoff");
+			this.initialBackoffNanos = unit.toNanos(initialBackoff);
+			this.maxBackoffNanos = unit.toNanos(maxBackoff);
+			return this;
+		}
+
+		/**
+		 * How long to wait for a connection to be established. The default is 10 seconds.
+		 *
+		 * @param timeout connect timeout
+		 * @param unit    unit of the timeout
+		 * @return the builder
+		 */
+		public Builder setConnectTimeout(long timeout, TimeUnit unit)
+		{
+			checkArgument(timeout > 0, "timeout must be greater than 0");
+			this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, requireNonNull(unit, "unit cannot be null").toMillis(timeout));
+			return this;
+		}
+
+		/**
+		 * How long {@link NioTelnetClient#close()} waits for buffered data points to be written. The default is 10
+		 * seconds.
+		 *
+		 * @param timeout close timeout
+		 * @param unit    unit of the timeout
+		 * @return the builder
+		 */
+		public Builder setCloseTimeout(long timeout, TimeUnit unit)
+		{
+			checkArgument(timeout >= 0, "timeout cannot be negative");
+			this.closeTimeoutNanos = requireNonNull(unit, "unit cannot be null").toNanos(timeout);
+			return this;
+		}
+
+		/**
+		 * Called from the I/O thread when connecting or writing fails. Exceptions thrown by the handler are passed to
+		 * the uncaught exception handler of the I/O thread.
+		 *
+		 * @param errorHandler error handler
+		 * @return the builder
+		 */
+		public Builder setErrorHandler(Consumer<IOException> errorHandler)
+		{
+			this.errorHandler = requireNonNull(errorHandler, "errorHandler cannot be null");
+			return this;
+		}
+
+		/**
+		 * Instrumentation that is told about the metrics put into the buffer.
+		 *
+		 * @param instrumentation instrumentation to use
+		 * @return the builder
+		 */
+		public Builder setInstrumentation(ClientInstrumentation instrumentation)
+		{
+			this.instrumentation = requireNonNull(instrumentation, "instrumentation cannot be null");
+			return this;
+		}
+
+		public NioTelnetClient build()
+		{
+			return new NioTelnetClient(this);
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package org.kairosdb.client;
+
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.QueryMetric;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryResult;
+import org.kairosdb.client.response.QueryResultMerger;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Runs the metrics of a query as separate requests in parallel and merges the responses. KairosDB answers a query with
+ * many metrics only after the slowest metric is done; sent separately, the metrics are processed concurrently by the
+ * connection pool of the client, or by different nodes when used with a {@link ClusterClient}.
+ * <br>
+ * <br>
+ * The merged response contains one {@link QueryResult} per metric in the order the metrics were added to the query,
+ * the same as a response to the whole query. At most the configured number of requests are in flight at once, shared
+ * by all callers of the executor.
+ * <br>
+ * <br>
+ * When a shard size is set, the time range of a query is also split into shards of that size (see
+ * {@link QueryBuilder#splitByTime(long)}), which keeps long queries from timing out and lets each shard be processed
+ * as soon as it arrives with {@link #query(QueryBuilder, Consumer)}.
+ */
+public class ParallelQueryExecutor implements Closeable
+{
+	private final Client client;
+	private final ExecutorService executor;
+	private final int parallelism;
+	private final long shardMillis;
+
+	private ParallelQueryExecutor(Builder builder)
+	{
+		client = builder.client;
+		parallelism = builder.parallelism;
+		shardMillis = builder.shardMillis;
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(builder.parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "kairosdb-query-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns a builder for an executor that sends the requests with the given client.
+	 *
+	 * @param client client used for the requests
+	 * @return executor builder
+	 */
+	public static Builder builder(Client client)
+	{
+		return new Builder(client);
+	}
+
+	/**
+	 * Queries each metric and time shard of the builder in a separate request and returns the combined response. The
+	 * data points of the shards of a metric are returned in the order of the metric. If any request fails, the others
+	 * are cancelled and the failure is thrown.
+	 *
+	 * @param builder query to run
+	 * @return response with the results of every metric
+	 */
+	public QueryResponse query(QueryBuilder builder)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		List<QueryBuilder> shards = splitByTime(builder);
+		if (shards.size() == 1)
+		{
+			return shards.get(0).getMetrics().size() <= 1 ? client.query(shards.get(0)) : await(submit(shards.get(0)));
+		}
+
+		List<QueryResponse> responses = new ArrayList<>(shards.size());
+		query(shards, responses::add);
+
+		List<QueryMetric> metrics = builder.getMetrics();
+		List<QueryResult> results = new ArrayList<>(metrics.size());
+		for (int i = 0; i < metrics.size(); i++)
+		{
+			List<QueryResult> metricResults = new ArrayList<>(responses.size());
+			for (QueryResponse response : responses)
+			{
+				metricResults.add(response.getQueries().get(i));
+			}
+			if (metrics.get(i).getOrder() == QueryMetric.Order.DESCENDING)
+				Collections.reverse(metricResults);
+			results.add(QueryResultMerger.merge(metricResults));
+		}
+		return new QueryResponse(results);
+	}
+
+	/**
+	 * Queries each metric and time shard of the builder in a separate request and passes the response of each shard to
+	 * the consumer, in time order, once it and all earlier shards have arrived. Only a limited number of shards are
+	 * requested ahead of the consumer so a long range is never held in memory at once. Each response has one result per
+	 * metric. If any request fails, the others are cancelled and the failure is thrown.
+	 *
+	 * @param builder  query to run
+	 * @param consumer receives the response of each shard on the calling thread
+	 */
+	public void query(QueryBuilder builder, Consumer<QueryResponse> consumer)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		requireNonNull(consumer, "consumer cannot be null");
+		query(splitByTime(builder), consumer);
+	}
+
+	private void query(List<QueryBuilder> shards, Consumer<QueryResponse> consumer)
+	{
+		Deque<List<Future<QueryResponse>>> pending = new ArrayDeque<>();
+		int next = 0;
+		try
+		{
+			while (next < shards.size() || !pending.isEmpty())
+			{
+				while (next < shards.size() && pending.size() < parallelism)
+				{
+					pending.add(submit(shards.get(next++)));
+				}
+				consumer.accept(await(pending.peek()));
+				pending.remove();
+			}
+		}
+		finally
+		{
+			for (List<Future<QueryResponse>> futures : pending)
+			{
+				cancel(futures);
+			}
+		}
+	}
+
+	private List<QueryBuilder> splitByTime(QueryBuilder builder)
+	{
+		return shardMillis > 0 ? builder.splitByTime(shardMillis) : Collections.singletonList(builder);
+	}
+
+	private List<Future<QueryResponse>> submit(QueryBuilder shard)
+	{
+		List<QueryBuilder> queries = shard.getMetrics().size() <= 1 ? Collections.singletonList(shard) : shard.splitByMetric();
+		List<Future<QueryResponse>> futures = new ArrayList<>(queries.size());
+		for (QueryBuilder query : queries)
+		{
+			futures.add(executor.submit(() -> client.query(query)));
+		}
+		return futures;
+	}
+
+	private static QueryResponse await(List<Future<QueryResponse>> futures)
+	{
+		List<QueryResult> results = new ArrayList<>(futures.size());
+		try
+		{
+			for (Future<QueryResponse> future : futures)
+			{
+				results.addAll(future.get().getQueries());
+			}
+		}
+		catch (ExecutionException e)
+		{
+			cancel(futures);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+		catch (InterruptedException e)
+		{
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for query results", e);
+		}
+
+		return new QueryResponse(results);
+	}
+
+	/**
+	 * Stops the threads of the executor. The client is not closed.
+	 */
+	@Override
+	public void close()
+	{
+		executor.shutdownNow();
+	}
+
+	private static void cancel(List<Future<QueryResponse>> futures)
+	{
+		for (Future<QueryResponse> future : futures)
+		{
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Configures a {@link ParallelQueryExecutor}.
+	 */
+	public static class Builder
+	{
+		private final Client client;
+		private int parallelism = 8;
+		private long shardMillis;
+
+		private Builder(Client client)
+		{
+			this.client = requireNonNull(client, "client cannot be null");
+		}
+
+		/**
+		 * Maximum number of requests in flight at once. The default is 8. Keep it at or below the number of
+		 * connections the client may open to a KairosDB host.
+		 *
+		 * @param parallelism maximum concurrent requests
+		 * @return the builder
+		 */
+		public Builder setParallelism(int parallelism)
+		{
+			checkArgument(parallelism > 0, "parallelism must be greater than 0");
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Splits the time range of each query into shards of about this size. The size is rounded up to a multiple of
+		 * the sampling of the aggregators. By default queries are not split by time.
+		 *
+		 * @param shardSize size of each shard
+		 * @param unit      unit of the size
+		 * @return the builder
+		 */
+		public Builder setShardSize(long shardSize, TimeUnit unit)
+		{
+			checkArgument(shardSize > 0, "shardSize must be greater than 0");
+			requireNonNull(unit, "unit cannot be null");
+			this.shardMillis = unit.toMillis(shardSize);
+			return this;
+		}
+
+		public ParallelQueryExecutor build()
+		{
+			return new ParallelQueryExecutor(this);
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package org.kairosdb.client;
+
+import org.kairosdb.client.builder.Metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Encodes data points as Telnet put or putm lines directly into a reusable byte buffer.
+ * <br>
+ * <br>
+ * The command and metric name and the tags are encoded once per metric. For each data point only the timestamp and
+ * value are converted, without creating any objects for long values and for double values with up to
+ * {@value #MAX_FRACTION_DIGITS} fraction digits. Other doubles and custom values fall back to their string
+ * representation.
+ * <br>
+ * <br>
+ * Instances are not thread-safe.
+ */
+class PutLineEncoder
+{
+	static final String PUT = "put";
+	static final String PUTM = "putm";
+
+	private static final int MAX_FRACTION_DIGITS = 8;
+	private static final double MAX_EXACT_DOUBLE = 9007199254740992.0; // 2^53
+	private static final long[] POWERS_OF_TEN = {
+			1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+			10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+			1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+	};
+
+	private final String command;
+	private final ByteArray prefix = new ByteArray(64);
+	private final ByteArray suffix = new ByteArray(64);
+	private final ByteArray buffer;
+
+	PutLineEncoder(String command, int initialCapacity)
+	{
+		this.command = command;
+		buffer = new ByteArray(initialCapacity);
+	}
+
+	/**
+	 * Encodes the command, name and tags of the metric whose data points are encoded next.
+	 *
+	 * @param metric metric to encode
+	 */
+	void setMetric(Metric metric)
+	{
+		prefix.clear();
+		prefix.writeString(command);
+		prefix.write((byte) ' ');
+		prefix.writeString(metric.getName());
+		prefix.write((byte) ' ');
+
+		suffix.clear();
+		for (Map.Entry<String, String> tag : metric.getTags().entrySet())
+		{
+			suffix.write((byte) ' ');
+			suffix.writeString(tag.getKey());
+			suffix.write((byte) '=');
+			suffix.writeString(tag.getValue());
+		}
+		suffix.write((byte) '\n');
+	}
+
+	/**
+	 * Appends a line for a data point of the metric passed to {@link #setMetric(Metric)}.
+	 *
+	 * @param metric metric that contains the data point
+	 * @param index  index of the data point
+	 */
+	void encode(Metric metric, int index)
+	{
+		buffer.write(prefix);
+		writeLong(metric.getTimestamp(index));
+		buffer.write((byte) ' ');
+		if (metric.isLongValue(index))
+		{
+			writeLong(metric.getLongValue(index));
+		}
+		else if (metric.isDoubleValue(index))
+		{
+			writeDouble(metric.getDoubleValue(index));
+		}
+		else
+		{
+			buffer.writeString(String.valueOf(metric.getValue(index)));
+		}
+		buffer.write(suffix);
+	}
+
+	/**
+	 * Returns the buffer holding the encoded lines. Only the first {@link #getLength()} bytes are valid.
+	 *
+	 * @return encoded lines
+	 */
+	byte[] getBuffer()
+	{
+		return buffer.bytes;
+	}
+
+	int getLength()
+	{
+		return buffer.length;
+	}
+
+	void clear()
+	{
+		buffer.clear();
+	}
+
+	/**
+	 * Removes the first bytes of the buffer, keeping the lines after them.
+	 *
+	 * @param count number of bytes to remove
+	 */
+	void discard(int count)
+	{
+		System.arraycopy(buffer.bytes, count, buffer.bytes, 0, buffer.length - count);
+		buffer.length -= count;
+	}
+
+	private void writeLong(long value)
+	{
+		if (value == Long.MIN_VALUE)
+		{
+			buffer.writeString("-9223372036854775808");
+			return;
+		}
+
+		buffer.ensureCapacity(20);
+		if (value < 0)
+		{
+			buffer.bytes[buffer.length++] = '-';
+			value = -value;
+		}
+		writeDigits(value, digitCount(value));
+	}
+
+	/**
+	 * Writes a double so that it is read back as the same double and always contains a decimal point or exponent,
+	 * which is how KairosDB tells doubles from longs.
+	 */
+	private void writeDouble(double value)
+	{
+		double abs = Math.abs(value);
+		if (abs >= 1e-3 && abs < MAX_EXACT_DOUBLE)
+		{
+			if (abs == Math.rint(abs))
+			{
+				writeFixed(value < 0, (long) abs, 0);
+				return;
+			}
+
+			if (abs < 1e7)
+			{
+				// Find the fewest fraction digits that represent the value exactly. The division is exact for both
+				// operands, so if it gives back the value the decimal string parses to the same double.
+				for (int digits = 1; digits <= MAX_FRACTION_DIGITS; digits++)
+				{
+					long scaled = (long) Math.rint(abs * POWERS_OF_TEN[digits]);
+					if (scaled / (double) POWERS_OF_TEN[digits] == abs)
+					{
+						writeFixed(value < 0, scaled, digits);
+						return;
+					}
+				}
+			}
+		}
+		else if (value == 0)
+		{
+			buffer.writeString(Double.doubleToRawLongBits(value) < 0 ? "-0.0" : "0.0");
+			return;
+		}
+
+		buffer.writeString(Double.toString(value));
+	}
+
+	private void writeFixed(boolean negative, long scaled, int fractionDigits)
+	{
+		buffer.ensureCapacity(22);
+		if (negative)
+		{
+			buffer.bytes[buffer.length++] = '-';
+		}
+
+		if (fractionDigits == 0)
+		{
+			writeDigits(scaled, digitCount(scaled));
+			buffer.bytes[buffer.length++] = '.';
+			buffer.bytes[buffer.length++] = '0';
+		}
+		else
+		{
+			long integerPart = scaled / POWERS_OF_TEN[fractionDigits];
+			writeDigits(integerPart, digitCount(integerPart));
+			buffer.bytes[buffer.length++] = '.';
+			writeDigits(scaled - integerPart * POWERS_OF_TEN[fractionDigits], fractionDigits);
+		}
+	}
+
+	/**
+	 * Writes a non-negative value as exactly the given number of digits, padding with leading zeros.
+	 */
+	private void writeDigits(long value, int digits)
+	{
+		byte[] bytes = buffer.bytes;
+		int position = buffer.length + digits;
+		for (int i = 0; i < digits; i++)
+		{
+			bytes[--position] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		buffer.length += digits;
+	}
+
+	private static int digitCount(long value)
+	{
+		int digits = 1;
+		while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits])
+		{
+			digits++;
+		}
+		return digits;
+	}
+
+	private static class ByteArray
+	{
+		private byte[] bytes;
+		private int length;
+
+		private ByteArray(int initialCapacity)
+		{
+			bytes = new byte[Math.max(16, initialCapacity)];
+		}
+
+		private void clear()
+		{
+			length = 0;
+		}
+
+		private void write(byte b)
+		{
+			ensureCapacity(1);
+			bytes[length++] = b;
+		}
+
+		private void write(ByteArray other)
+		{
+			ensureCapacity(other.length);
+			System.arraycopy(other.bytes, 0, bytes, length, other.length);
+			length += other.length;
+		}
+
+		private void writeString(String value)
+		{
+			int size = value.length();
+			ensureCapacity(size);
+			for (int i = 0; i < size; i++)
+			{
+				char c = value.charAt(i);
+				if (c >= 0x80)
+				{
+					// Not ASCII, encode the whole string as UTF-8
+					byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+					ensureCapacity(encoded.length);
+					System.arraycopy(encoded, 0, bytes, length, encoded.length);
+					length += encoded.length;
+					return;
+				}
+			}
+			for (int i = 0; i < size; i++)
+			{
+				bytes[length++] = (byte) value.charAt(i);
+			}
+		}
+
+		private void ensureCapacity(int additional)
+		{
+			if (length + additional > bytes.length)
+			{
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + additional));
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package org.kairosdb.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryResult;
+import org.kairosdb.client.response.Result;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * In-process cache of query responses in front of {@link Client#query(QueryBuilder)}. Dashboards often send the same
+ * query many times a minute; {@link QueryBuilder#setCacheTime(int)} avoids reading the data again on the server but
+ * each request still travels to KairosDB and back.
+ * <br>
+ * <br>
+ * Responses are keyed on the JSON of the query with the properties of every object in sorted order, so queries that
+ * only differ in the order tags or properties were set share an entry. Entries expire after their time to live and
+ * the least recently used entries are evicted once the cached responses hold more than the maximum number of data
+ * points. When several threads ask for the same query at once, only one request is sent and the others wait for its
+ * response. Failed queries are not cached.
+ * <br>
+ * <br>
+ * Cached responses are shared between callers and must not be modified.
+ */
+public class QueryCache
+{
+	private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Client client;
+	private final Cache<String, Entry> cache;
+	private final long timeToLiveNanos;
+	private final AtomicLong expiredHits = new AtomicLong();
+	private final AtomicLong nextSweepNanos = new AtomicLong(System.nanoTime());
+
+	private QueryCache(Builder builder)
+	{
+		client = builder.client;
+		timeToLiveNanos = builder.timeToLiveNanos;
+		// Guava divides the maximum weight between its segments; a single segment lets one large response use the
+		// whole limit. Reads do not lock, and loads are dominated by the request to KairosDB.
+		cache = CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(builder.maxDataPoints)
+				.weigher((String key, Entry entry) -> entry.weight)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Returns a builder for a cache that sends queries with the given client.
+	 *
+	 * @param client client used for queries that are not cached
+	 * @return cache builder
+	 */
+	public static Builder builder(Client client)
+	{
+		return new Builder(client);
+	}
+
+	/**
+	 * Returns the cached response to the query or queries KairosDB if there is none. The response is cached for the
+	 * default time to live.
+	 *
+	 * @param builder query to run
+	 * @return response to the query
+	 */
+	public QueryResponse query(QueryBuilder builder)
+	{
+		return query(builder, timeToLiveNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the cached response to the query or queries KairosDB if there is none. A response that is added to the
+	 * cache by this call expires after the given time.
+	 *
+	 * @param builder    query to run
+	 * @param timeToLive how long a new response is cached
+	 * @param unit       unit of the time to live
+	 * @return response to the query
+	 */
+	public QueryResponse query(QueryBuilder builder, long timeToLive, TimeUnit unit)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		checkArgument(timeToLive > 0, "timeToLive must be greater than 0");
+		requireNonNull(unit, "unit cannot be null");
+
+		String key = normalize(builder.build());
+		long timeToLiveNanos = unit.toNanos(timeToLive);
+		removeExpired();
+		try
+		{
+			while (true)
+			{
+				Entry entry = cache.get(key, () -> load(builder, timeToLiveNanos));
+				if (!entry.isExpired(System.nanoTime()))
+					return entry.response;
+
+				expiredHits.incrementAndGet();
+				cache.asMap().remove(key, entry);
+			}
+		}
+		catch (ExecutionException | UncheckedExecutionException | ExecutionError e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Removes the cached response of the query.
+	 *
+	 * @param builder query to remove
+	 */
+	public void invalidate(QueryBuilder builder)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		cache.invalidate(normalize(builder.build()));
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public void invalidateAll()
+	{
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Returns the number of cached responses, including expired responses that have not been removed yet.
+	 *
+	 * @return number of cached responses
+	 */
+	public long size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Returns the hit, miss, load and eviction counts of the cache. A query that waited for the response of an
+	 * identical query already in progress counts as a hit. Finding an expired response does not count as a hit.
+	 *
+	 * @return cache statistics
+	 */
+	public CacheStats getStats()
+	{
+		return cache.stats().minus(new CacheStats(expiredHits.get(), 0, 0, 0, 0, 0));
+	}
+
+	private Entry load(QueryBuilder builder, long timeToLiveNanos)
+	{
+		QueryResponse response = client.query(builder);
+		return new Entry(response, System.nanoTime() + timeToLiveNanos, countDataPoints(response));
+	}
+
+	/**
+	 * Responses are only removed by eviction or when found expired. Clears the expired ones, at most once a second,
+	 * so they do not push out live entries.
+	 */
+	private void removeExpired()
+	{
+		long now = System.nanoTime();
+		long next = nextSweepNanos.get();
+		if (now - next < 0 || !nextSweepNanos.compareAndSet(next, now + SWEEP_INTERVAL_NANOS))
+			return;
+
+		cache.asMap().values().removeIf(entry -> entry.isExpired(now));
+	}
+
+	private static int countDataPoints(QueryResponse response)
+	{
+		long count = 1;
+		for (QueryResult queryResult : response.getQueries())
+		{
+			if (queryResult.getResults() == null)
+				continue;
+			for (Result result : queryResult.getResults())
+			{
+				count += result.getNumericSeries() != null ? result.getNumericSeries().size() : result.getDataPoints().size();
+			}
+		}
+		return (int) Math.min(count, Integer.MAX_VALUE);
+	}
+
+	static String normalize(String json)
+	{
+		return sortProperties(JsonParser.parseString(json)).toString();
+	}
+
+	private static JsonElement sortProperties(JsonElement element)
+	{
+		if (element.isJsonObject())
+		{
+			Map<String, JsonElement> properties = new TreeMap<>();
+			for (Map.Entry<String, JsonElement> property : element.getAsJsonObject().entrySet())
+			{
+				properties.put(property.getKey(), sortProperties(property.getValue()));
+			}
+
+			JsonObject sorted = new JsonObject();
+			properties.forEach(sorted::add);
+			return sorted;
+		}
+		if (element.isJsonArray())
+		{
+			JsonArray sorted = new JsonArray();
+			for (JsonElement item : element.getAsJsonArray())
+			{
+				sorted.add(sortProperties(item));
+			}
+			return sorted;
+		}
+		return element;
+	}
+
+	private static class Entry
+	{
+		private final QueryResponse response;
+		private final long expiresAt;
+		private final int weight;
+
+		private Entry(QueryResponse response, long expiresAt, int weight)
+		{
+			this.response = response;
+			this.expiresAt = expiresAt;
+			this.weight = weight;
+		}
+
+		private boolean isExpired(long now)
+		{
+			return now - expiresAt >= 0;
+		}
+	}
+
+	/**
+	 * Configures a {@link QueryCache}.
+	 */
+	public static class Builder
+	{
+		private final Client client;
+		private long maxDataPoints = 1_000_000;
+		private long timeToLiveNanos = TimeUnit.SECONDS.toNanos(30);
+
+		private Builder(Client client)
+		{
+			this.client = requireNonNull(client, "client cannot be null");
+		}
+
+		/**
+		 * Maximum number of data points held by the cached responses. The default is 1,000,000. Each response counts
+		 * as at least one data point.
+		 *
+		 * @param maxDataPoints maximum number of cached data points
+		 * @return the builder
+		 */
+		public Builder setMaxDataPoints(long maxDataPoints)
+		{
+			checkArgument(maxDataPoints > 0, "maxDataPoints must be greater than 0");
+			this.maxDataPoints = maxDataPoints;
+			return this;
+		}
+
+		/**
+		 * Default time a response is cached. The default is 30 seconds.
+		 *
+		 * @param timeToLive time a response is cached
+		 * @param unit       unit of the time
+		 * @return the builder
+		 */
+		public Builder setTimeToLive(long timeToLive, TimeUnit unit)
+		{
+			checkArgument(timeToLive > 0, "timeToLive must be greater than 0");
+			requireNonNull(unit, "unit cannot be null");
+			this.timeToLiveNanos = unit.toNanos(timeToLive);
+			return this;
+		}
+
+		public QueryCache build()
+		{
+			return new QueryCache(this);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.kairosdb.client;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.EntityBuilder;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import static org.apache.http.HttpHeaders.*;
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
+import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+
+/**
+ * Creates the HTTP requests sent to a KairosDB server. Shared by the blocking and the asynchronous clients so both
+ * send exactly the same requests.
+ */
+class RequestFactory
+{
+	static final String PATH_ROLLUPS = "/api/v1/rollups/";
+	static final String PATH_METRIC_NAMES = "/api/v1/metricnames";
+	static final String PATH_STATUS = "/api/v1/health/status";
+	static final String PATH_CHECK = "/api/v1/health/check";
+	static final String PATH_VERSION = "/api/v1/version";
+	static final String PATH_QUERY = "/api/v1/datapoints/query";
+	static final String PATH_QUERY_TAGS = "/api/v1/datapoints/query/tags";
+	static final String PATH_DELETE = "/api/v1/datapoints/delete";
+	static final String PATH_DATAPOINTS = "/api/v1/datapoints";
+	static final String PATH_METRIC = "/api/v1/metric/";
+
+	private final String url;
+	private volatile String acceptEncoding = Compression.DEFAULT.getAcceptEncoding();
+
+	RequestFactory(String url) throws MalformedURLException
+	{
+		this.url = checkNotNullOrEmpty(url, "url cannot be null");
+		new URL(url); // validate url
+	}
+
+	String getUrl()
+	{
+		return url;
+	}
+
+	/**
+	 * Sets the content codings every request accepts for its response.
+	 */
+	void setAcceptEncoding(String acceptEncoding)
+	{
+		this.acceptEncoding = checkNotNullOrEmpty(acceptEncoding, "acceptEncoding cannot be null");
+	}
+
+	HttpPost createPost(String path, String json)
+	{
+		HttpPost post = new HttpPost(createURI(path));
+		post.addHeader(CONTENT_TYPE, APPLICATION_JSON.toString());
+		post.addHeader(ACCEPT_ENCODING, acceptEncoding);
+		post.setEntity(EntityBuilder.create()
+				.setContentType(APPLICATION_JSON)
+				.setText(json)
+				.build());
+
+		return post;
+	}
+
+	HttpPost createPost(String path, HttpEntity entity)
+	{
+		HttpPost post = new HttpPost(createURI(path));
+		post.addHeader(CONTENT_TYPE, APPLICATION_JSON.toString());
+		post.addHeader(ACCEPT_ENCODING, acceptEncoding);
+		if (entity.getContentEncoding() != null)
+		{
+			post.addHeader(entity.getContentEncoding());
+		}
+		post.setEntity(entity);
+
+		return post;
+	}
+
+	HttpGet createGet(String path)
+	{
+		HttpGet get = new HttpGet(createURI(path));
+		get.addHeader(ACCEPT, APPLICATION_JSON.toString());
+		get.addHeader(ACCEPT_ENCODING, acceptEncoding);
+
+		return get;
+	}
+
+	HttpDelete createDelete(String path)
+	{
+		HttpDelete delete = new HttpDelete(createURI(path));
+		delete.addHeader(ACCEPT, APPLICATION_JSON.toString());
+		delete.addHeader(ACCEPT_ENCODING, acceptEncoding);
+
+		return delete;
+	}
+
+	private URI createURI(String path)
+	{
+		try
+		{
+			return new URI(url + path);
+		}
+		catch (URISyntaxException e)
+		{
+			throw new IllegalArgumentException("Invalid URI", e);
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package org.kairosdb.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.kairosdb.client.instrumentation.RequestEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.RequestFactory.PATH_QUERY;
+import static org.kairosdb.client.RequestFactory.PATH_QUERY_TAGS;
+import static org.kairosdb.client.RequestFactory.PATH_ROLLUPS;
+
+/**
+ * Sends the requests of an {@link HttpClient} according to a {@link RetryPolicy} and keeps the retry budget of the
+ * client. The budget is counted in thousandths of a retry.
+ */
+class RequestRetrier implements Closeable
+{
+	private static final long TOKEN = 1000;
+
+	private final RetryPolicy policy;
+	private final long deposit;
+	private final long maxBudget;
+	private final AtomicLong budget;
+	private final ExecutorService hedgeExecutor;
+
+	RequestRetrier(RetryPolicy policy)
+	{
+		this.policy = requireNonNull(policy, "policy cannot be null");
+		deposit = Math.round(policy.getBudgetRatio() * TOKEN);
+		maxBudget = policy.getMaxBudget() * TOKEN;
+		budget = new AtomicLong(maxBudget);
+		if (policy.getHedgeDelayNanos() > 0)
+		{
+			hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "kairosdb-hedged-request");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		else
+		{
+			hedgeExecutor = null;
+		}
+	}
+
+	RetryPolicy getPolicy()
+	{
+		return policy;
+	}
+
+	/**
+	 * Returns the number of retries left in the budget.
+	 */
+	double getBudget()
+	{
+		return (double) budget.get() / TOKEN;
+	}
+
+	/**
+	 * Sends the request until it succeeds, fails with an error that is not retried, or runs out of attempts or
+	 * budget. Responses with a retryable status code are returned once no retry is left.
+	 */
+	HttpResponse execute(CloseableHttpClient client, HttpUriRequest request, RequestEvent.Builder event) throws IOException
+	{
+		budget.accumulateAndGet(deposit, (current, added) -> Math.min(maxBudget, current + added));
+		boolean idempotent = isIdempotent(request);
+		boolean hedged = hedgeExecutor != null && isRead(request);
+
+		for (int attempt = 1; ; attempt++)
+		{
+			event.setAttempts(attempt);
+			HttpResponse response;
+			try
+			{
+				response = hedged ? executeHedged(client, request) : client.execute(request);
+			}
+			catch (IOException e)
+			{
+				// A refused connection means the request was never sent
+				boolean retryable = idempotent || e instanceof ConnectException;
+				if (!retryable || Thread.currentThread().isInterrupted() || !canRetry(attempt))
+					throw e;
+				sleep(policy.getBackoffNanos(attempt));
+				continue;
+			}
+
+			if (!idempotent || !policy.isRetryableStatusCode(response.getStatusLine().getStatusCode()) || !canRetry(attempt))
+				return response;
+
+			long backoff = Math.max(policy.getBackoffNanos(attempt), Math.min(getRetryAfterNanos(response), policy.getMaxBackoffNanos()));
+			EntityUtils.consumeQuietly(response.getEntity());
+			sleep(backoff);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		if (hedgeExecutor != null)
+			hedgeExecutor.shutdownNow();
+	}
+
+	private boolean canRetry(int attempt)
+	{
+		return attempt < policy.getMaxAttempts() && tryAcquireRetry();
+	}
+
+	private boolean tryAcquireRetry()
+	{
+		long current;
+		do
+		{
+			current = budget.get();
+			if (current < TOKEN)
+				return false;
+		}
+		while (!budget.compareAndSet(current, current - TOKEN));
+		return true;
+	}
+
+	/**
+	 * Sends a copy of the request and, if it has not completed within the hedge delay, a second copy. Returns the
+	 * first successful response and aborts the other request, or throws the failure of the first copy if both fail.
+	 * Copies are sent so the original request is never aborted.
+	 */
+	private HttpResponse executeHedged(CloseableHttpClient client, HttpUriRequest request) throws IOException
+	{
+		HttpUriRequest primaryRequest = RequestBuilder.copy(request).build();
+		CompletableFuture<HttpResponse> primary = send(client, primaryRequest);
+		waitUntilDone(primary, policy.getHedgeDelayNanos(), primaryRequest);
+		if (primary.isDone() || !tryAcquireRetry())
+		{
+			waitUntilDone(primary, Long.MAX_VALUE, primaryRequest);
+			return getResponse(primary);
+		}
+
+		HttpUriRequest hedgeRequest = RequestBuilder.copy(request).build();
+		CompletableFuture<HttpResponse> hedge = send(client, hedgeRequest);
+		waitUntilDone(CompletableFuture.anyOf(primary, hedge), Long.MAX_VALUE, primaryRequest, hedgeRequest);
+		if (!isSuccessful(primary) && !isSuccessful(hedge))
+			waitUntilDone(CompletableFuture.allOf(primary, hedge), Long.MAX_VALUE, primaryRequest, hedgeRequest);
+
+		if (isSuccessful(primary) || !isSuccessful(hedge))
+		{
+			discard(hedge, hedgeRequest);
+			return getResponse(primary);
+		}
+		discard(primary, primaryRequest);
+		return getResponse(hedge);
+	}
+
+	private CompletableFuture<HttpResponse> send(CloseableHttpClient client, HttpUriRequest request)
+	{
+		CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+		hedgeExecutor.execute(() -> {
+			try
+			{
+				future.complete(client.execute(request));
+			}
+			catch (Throwable e)
+			{
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	private static void waitUntilDone(Future<?> future, long timeoutNanos, HttpUriRequest... requests) throws InterruptedIOException
+	{
+		try
+		{
+			future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			for (HttpUriRequest request : requests)
+			{
+				request.abort();
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a response");
+		}
+		catch (ExecutionException | TimeoutException e)
+		{
+			// The caller checks how the future completed
+		}
+	}
+
+	private static boolean isSuccessful(CompletableFuture<?> future)
+	{
+		return future.isDone() && !future.isCompletedExceptionally();
+	}
+
+	private static HttpResponse getResponse(CompletableFuture<HttpResponse> future) throws IOException
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw e;
+		}
+	}
+
+	private static void discard(CompletableFuture<HttpResponse> future, HttpUriRequest request)
+	{
+		request.abort();
+		future.thenAccept(HttpClientUtils::closeQuietly);
+	}
+
+	private static void sleep(long nanos) throws InterruptedIOException
+	{
+		try
+		{
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry");
+		}
+	}
+
+	/**
+	 * Returns the delay of a Retry-After header given in seconds, or 0 if there is none.
+	 */
+	private static long getRetryAfterNanos(HttpResponse response)
+	{
+		Header header = response.getFirstHeader("Retry-After");
+		if (header == null)
+			return 0;
+		try
+		{
+			return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(header.getValue().trim())));
+		}
+		catch (NumberFormatException e)
+		{
+			// HTTP dates are not supported
+			return 0;
+		}
+	}
+
+	/**
+	 * Creating a roll-up task twice creates two tasks. Every other request has the same effect when it is repeated.
+	 */
+	static boolean isIdempotent(HttpUriRequest request)
+	{
+		return !(HttpPost.METHOD_NAME.equals(request.getMethod()) && request.getURI().getPath().endsWith(PATH_ROLLUPS));
+	}
+
+	/**
+	 * Queries and GET requests only read data, so they can be sent twice at the same time.
+	 */
+	static boolean isRead(HttpUriRequest request)
+	{
+		String path = request.getURI().getPath();
+		return HttpGet.METHOD_NAME.equals(request.getMethod()) || path.endsWith(PATH_QUERY) || path.endsWith(PATH_QUERY_TAGS);
+	}
+}
@@ -0,0 +1,238 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Settings for retrying failed requests of an {@link HttpClient}.
+ * <pre>
+ *     RetryPolicy policy = RetryPolicy.builder()
+ *         .setMaxAttempts(4)
+ *         .setBackoff(100, 5000, TimeUnit.MILLISECONDS)
+ *         .setHedgeDelay(200, TimeUnit.MILLISECONDS)
+ *         .build();
+ *     client.setRetryPolicy(policy);
+ * </pre>
+ * Requests are retried when they fail with an I/O error or receive one of the retryable status codes. Before each
+ * retry the client waits a random time between zero and the backoff, which doubles after each attempt, so clients
+ * that failed together do not retry together. A Retry-After header sent with the response raises the wait up to the
+ * maximum backoff. Creating a roll-up task is not idempotent and is only retried if the connection was refused.
+ * <br>
+ * <br>
+ * Each client has a retry budget so retries cannot multiply the load on a struggling server. Every request adds a
+ * fraction of a token to the budget and every retry or hedged request takes a whole token. Once the budget is empty,
+ * failures are returned to the caller without retrying until enough requests have been made to refill it.
+ * <br>
+ * <br>
+ * If a hedge delay is set, a query or GET request that has not completed within the delay is sent a second time and
+ * the first response is used. This cuts the latency of requests that hit a slow server, such as one in a garbage
+ * collection pause, at the cost of the extra requests allowed by the budget.
+ */
+public class RetryPolicy
+{
+	private final int maxAttempts;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final Set<Integer> retryableStatusCodes;
+	private final double budgetRatio;
+	private final int maxBudget;
+	private final long hedgeDelayNanos;
+
+	private RetryPolicy(Builder builder)
+	{
+		maxAttempts = builder.maxAttempts;
+		initialBackoffNanos = builder.initialBackoffNanos;
+		maxBackoffNanos = builder.maxBackoffNanos;
+		retryableStatusCodes = builder.retryableStatusCodes;
+		budgetRatio = builder.budgetRatio;
+		maxBudget = builder.maxBudget;
+		hedgeDelayNanos = builder.hedgeDelayNanos;
+	}
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	public int getMaxAttempts()
+	{
+		return maxAttempts;
+	}
+
+	public long getInitialBackoffNanos()
+	{
+		return initialBackoffNanos;
+	}
+
+	public long getMaxBackoffNanos()
+	{
+		return maxBackoffNanos;
+	}
+
+	public Set<Integer> getRetryableStatusCodes()
+	{
+		return retryableStatusCodes;
+	}
+
+	public boolean isRetryableStatusCode(int statusCode)
+	{
+		return retryableStatusCodes.contains(statusCode);
+	}
+
+	/**
+	 * Returns the fraction of a retry that each request adds to the retry budget.
+	 *
+	 * @return budget ratio
+	 */
+	public double getBudgetRatio()
+	{
+		return budgetRatio;
+	}
+
+	/**
+	 * Returns the number of retries the budget holds when it is full. A new client starts with a full budget.
+	 *
+	 * @return maximum budget
+	 */
+	public int getMaxBudget()
+	{
+		return maxBudget;
+	}
+
+	/**
+	 * Returns how long a query waits before it is sent a second time.
+	 *
+	 * @return hedge delay in nanoseconds, 0 if requests are not hedged
+	 */
+	public long getHedgeDelayNanos()
+	{
+		return hedgeDelayNanos;
+	}
+
+	/**
+	 * Returns the time to wait before the retry that follows the given attempt.
+	 *
+	 * @param attempt number of the attempt that failed, starting at 1
+	 * @return random time between 0 and the backoff of the attempt
+	 */
+	public long getBackoffNanos(int attempt)
+	{
+		checkArgument(attempt > 0, "attempt must be greater than 0");
+		long backoff = initialBackoffNanos << Math.min(attempt - 1, 62);
+		if (backoff <= 0 || backoff > maxBackoffNanos)
+			backoff = maxBackoffNanos;
+		return ThreadLocalRandom.current().nextLong(backoff + 1);
+	}
+
+	/**
+	 * Builds a {@link RetryPolicy}.
+	 */
+	public static class Builder
+	{
+		private int maxAttempts = 3;
+		private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(10);
+		private Set<Integer> retryableStatusCodes = ImmutableSet.of(429, 502, 503, 504);
+		private double budgetRatio = 0.1;
+		private int maxBudget = 10;
+		private long hedgeDelayNanos;
+
+		private Builder()
+		{
+		}
+
+		/**
+		 * Maximum number of times a request is sent, including the first time. The default is 3.
+		 *
+		 * @param maxAttempts maximum attempts per request
+		 * @return the builder
+		 */
+		public Builder setMaxAttempts(int maxAttempts)
+		{
+			checkArgument(maxAttempts > 0, "maxAttempts must be greater than 0");
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Backoff before the first retry and the maximum it doubles up to. The defaults are 100 milliseconds and 10
+		 * seconds.
+		 *
+		 * @param initial backoff before the first retry
+		 * @param max     maximum backoff
+		 * @param unit    unit of the times
+		 * @return the builder
+		 */
+		public Builder setBackoff(long initial, long max, TimeUnit unit)
+		{
+			checkArgument(initial > 0, "initial must be greater than 0");
+			checkArgument(max >= initial, "max must not be less than initial");
+			requireNonNull(unit, "unit cannot be null");
+			this.initialBackoffNanos = unit.toNanos(initial);
+			this.maxBackoffNanos = unit.toNanos(max);
+			return this;
+		}
+
+		/**
+		 * HTTP status codes that are retried. The defaults are 429, 502, 503 and 504.
+		 *
+		 * @param statusCodes retryable status codes
+		 * @return the builder
+		 */
+		public Builder setRetryableStatusCodes(int... statusCodes)
+		{
+			requireNonNull(statusCodes, "statusCodes cannot be null");
+			ImmutableSet.Builder<Integer> codes = ImmutableSet.builder();
+			for (int statusCode : statusCodes)
+			{
+				checkArgument(statusCode >= 100 && statusCode < 600, "Invalid status code " + statusCode);
+				codes.add(statusCode);
+			}
+			this.retryableStatusCodes = codes.build();
+			return this;
+		}
+
+		/**
+		 * Size of the retry budget. Each request adds the ratio to the budget, up to the maximum, so in the long run
+		 * at most that fraction of requests is retried. The defaults are 0.1 and 10.
+		 *
+		 * @param ratio     fraction of a retry added by each request
+		 * @param maxBudget maximum number of retries held by the budget
+		 * @return the builder
+		 */
+		public Builder setRetryBudget(double ratio, int maxBudget)
+		{
+			checkArgument(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+			checkArgument(maxBudget >= 0, "maxBudget cannot be negative");
+			this.budgetRatio = ratio;
+			this.maxBudget = maxBudget;
+			return this;
+		}
+
+		/**
+		 * How long a query or GET request waits for a response before it is sent a second time. Zero disables hedged
+		 * requests, which is the default.
+		 *
+		 * @param delay time before the request is sent again
+		 * @param unit  unit of the time
+		 * @return the builder
+		 */
+		public Builder setHedgeDelay(long delay, TimeUnit unit)
+		{
+			checkArgument(delay >= 0, "delay cannot be negative");
+			this.hedgeDelayNanos = requireNonNull(unit, "unit cannot be null").toNanos(delay);
+			return this;
+		}
+
+		public RetryPolicy build()
+		{
+			return new RetryPolicy(this);
+		}
+	}
+}
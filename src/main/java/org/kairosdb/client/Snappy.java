@@ -0,0 +1,257 @@
+package org.kairosdb.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses blocks in the Snappy format. The compressor finds matches of at least four bytes with
+ * a single hash table lookup per position and gives up quickly on data that does not compress, favouring speed over
+ * compression ratio like the reference implementation.
+ * <br>
+ * <br>
+ * Blocks are limited to 64 KiB by the framing format, so every match offset fits in two bytes.
+ */
+final class Snappy
+{
+	static final int MAX_BLOCK_SIZE = 64 * 1024;
+	static final int HASH_TABLE_SIZE = 1 << 14;
+
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_SHIFT = 32 - 14;
+
+	private Snappy()
+	{
+	}
+
+	static int maxCompressedLength(int length)
+	{
+		return 32 + length + length / 6;
+	}
+
+	/**
+	 * Compresses a block of at most {@link #MAX_BLOCK_SIZE} bytes.
+	 *
+	 * @param table hash table of {@link #HASH_TABLE_SIZE} entries, overwritten by the call
+	 * @return number of bytes written to the output
+	 */
+	static int compress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset, int[] table)
+	{
+		int op = writeVarint(output, outputOffset, length);
+		int end = inputOffset + length;
+		int literalStart = inputOffset;
+
+		if (length >= MIN_MATCH)
+		{
+			Arrays.fill(table, -1);
+			int limit = end - MIN_MATCH;
+			int position = inputOffset;
+			// Steps grow after every 32 misses so incompressible data is skipped quickly
+			int skip = 32;
+			while (position <= limit)
+			{
+				int value = readInt(input, position);
+				int hash = (value * 0x1e35a7bd) >>> HASH_SHIFT;
+				int candidate = table[hash];
+				table[hash] = position;
+
+				if (candidate >= 0 && readInt(input, candidate) == value)
+				{
+					op = writeLiteral(input, literalStart, position - literalStart, output, op);
+					int matchLength = MIN_MATCH;
+					while (position + matchLength < end && input[candidate + matchLength] == input[position + matchLength])
+					{
+						matchLength++;
+					}
+					op = writeCopy(output, op, position - candidate, matchLength);
+					position += matchLength;
+					literalStart = position;
+					skip = 32;
+				}
+				else
+				{
+					position += skip++ >> 5;
+				}
+			}
+		}
+
+		op = writeLiteral(input, literalStart, end - literalStart, output, op);
+		return op - outputOffset;
+	}
+
+	/**
+	 * Decompresses a block into the output array, which must be large enough for the whole block.
+	 *
+	 * @return number of bytes written to the output
+	 * @throws IOException if the block is corrupt or does not fit into the output
+	 */
+	static int uncompress(byte[] input, int inputOffset, int length, byte[] output) throws IOException
+	{
+		int end = inputOffset + length;
+		int ip = inputOffset;
+
+		int expected = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			if (ip >= end || shift > 28)
+				throw corrupt();
+			int b = input[ip++] & 0xff;
+			expected |= (b & 0x7f) << shift;
+			if (b < 0x80)
+				break;
+		}
+		if (expected < 0 || expected > output.length)
+			throw new IOException("Snappy block is larger than " + output.length + " bytes");
+
+		int op = 0;
+		while (ip < end)
+		{
+			int tag = input[ip++] & 0xff;
+			int copyLength;
+			int offset;
+			switch (tag & 3)
+			{
+				case 0:
+					int literalLength = tag >>> 2;
+					if (literalLength >= 60)
+					{
+						int bytes = literalLength - 59;
+						if (bytes > end - ip)
+							throw corrupt();
+						literalLength = 0;
+						for (int i = 0; i < bytes; i++)
+						{
+							literalLength |= (input[ip++] & 0xff) << (8 * i);
+						}
+					}
+					literalLength++;
+					if (literalLength <= 0 || literalLength > end - ip || literalLength > expected - op)
+						throw corrupt();
+					System.arraycopy(input, ip, output, op, literalLength);
+					ip += literalLength;
+					op += literalLength;
+					continue;
+				case 1:
+					if (ip >= end)
+						throw corrupt();
+					copyLength = 4 + ((tag >>> 2) & 7);
+					offset = ((tag >>> 5) << 8) | (input[ip++] & 0xff);
+					break;
+				case 2:
+					if (2 > end - ip)
+						throw corrupt();
+					copyLength = 1 + (tag >>> 2);
+					offset = (input[ip] & 0xff) | (input[ip + 1] & 0xff) << 8;
+					ip += 2;
+					break;
+				default:
+					if (4 > end - ip)
+						throw corrupt();
+					copyLength = 1 + (tag >>> 2);
+					offset = readInt(input, ip);
+					ip += 4;
+					break;
+			}
+
+			if (offset <= 0 || offset > op || copyLength > expected - op)
+				throw corrupt();
+			if (offset >= copyLength)
+			{
+				System.arraycopy(output, op - offset, output, op, copyLength);
+			}
+			else
+			{
+				// Overlapping copies repeat the last offset bytes
+				for (int i = 0; i < copyLength; i++)
+				{
+					output[op + i] = output[op - offset + i];
+				}
+			}
+			op += copyLength;
+		}
+
+		if (op != expected)
+			throw corrupt();
+		return op;
+	}
+
+	private static int writeLiteral(byte[] input, int offset, int length, byte[] output, int op)
+	{
+		if (length == 0)
+			return op;
+
+		int n = length - 1;
+		if (n < 60)
+		{
+			output[op++] = (byte) (n << 2);
+		}
+		else if (n < 1 << 8)
+		{
+			output[op++] = (byte) (60 << 2);
+			output[op++] = (byte) n;
+		}
+		else
+		{
+			// Blocks are at most 64 KiB so the length fits in two bytes
+			output[op++] = (byte) (61 << 2);
+			output[op++] = (byte) n;
+			output[op++] = (byte) (n >>> 8);
+		}
+		System.arraycopy(input, offset, output, op, length);
+		return op + length;
+	}
+
+	private static int writeCopy(byte[] output, int op, int offset, int length)
+	{
+		// Copies are at most 64 bytes long. The last one keeps at least four bytes so it can use the short form.
+		while (length >= 68)
+		{
+			op = writeCopy2(output, op, offset, 64);
+			length -= 64;
+		}
+		if (length > 64)
+		{
+			op = writeCopy2(output, op, offset, 60);
+			length -= 60;
+		}
+
+		if (length <= 11 && offset < 2048)
+		{
+			output[op++] = (byte) (1 | ((length - 4) << 2) | ((offset >>> 8) << 5));
+			output[op++] = (byte) offset;
+			return op;
+		}
+		return writeCopy2(output, op, offset, length);
+	}
+
+	private static int writeCopy2(byte[] output, int op, int offset, int length)
+	{
+		output[op++] = (byte) (2 | ((length - 1) << 2));
+		output[op++] = (byte) offset;
+		output[op++] = (byte) (offset >>> 8);
+		return op;
+	}
+
+	private static int writeVarint(byte[] output, int op, int value)
+	{
+		while ((value & ~0x7f) != 0)
+		{
+			output[op++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		output[op++] = (byte) value;
+		return op;
+	}
+
+	private static int readInt(byte[] input, int offset)
+	{
+		return (input[offset] & 0xff)
+				| (input[offset + 1] & 0xff) << 8
+				| (input[offset + 2] & 0xff) << 16
+				| (input[offset + 3] & 0xff) << 24;
+	}
+
+	private static IOException corrupt()
+	{
+		return new IOException("Corrupt Snappy block");
+	}
+}
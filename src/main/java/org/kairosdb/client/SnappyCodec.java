@@ -0,0 +1,42 @@
+package org.kairosdb.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Snappy framing format as the "x-snappy-framed" content coding.
+ */
+class SnappyCodec implements ContentCodec
+{
+	static final String ENCODING = "x-snappy-framed";
+	static final SnappyCodec INSTANCE = new SnappyCodec();
+
+	private SnappyCodec()
+	{
+	}
+
+	@Override
+	public String getEncoding()
+	{
+		return ENCODING;
+	}
+
+	@Override
+	public OutputStream encode(OutputStream out) throws IOException
+	{
+		return new SnappyFramedOutputStream(out);
+	}
+
+	@Override
+	public InputStream decode(InputStream in)
+	{
+		return new SnappyFramedInputStream(in);
+	}
+
+	@Override
+	public String toString()
+	{
+		return ENCODING;
+	}
+}
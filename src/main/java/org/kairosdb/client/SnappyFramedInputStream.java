@@ -0,0 +1,140 @@
+package org.kairosdb.client;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import static org.kairosdb.client.Snappy.MAX_BLOCK_SIZE;
+import static org.kairosdb.client.SnappyFramedOutputStream.COMPRESSED_CHUNK;
+import static org.kairosdb.client.SnappyFramedOutputStream.STREAM_IDENTIFIER;
+import static org.kairosdb.client.SnappyFramedOutputStream.UNCOMPRESSED_CHUNK;
+import static org.kairosdb.client.SnappyFramedOutputStream.mask;
+
+/**
+ * Reads data in the Snappy framing format and verifies the checksum of every chunk. Padding and skippable chunks are
+ * ignored.
+ */
+class SnappyFramedInputStream extends InputStream
+{
+	private static final int STREAM_IDENTIFIER_CHUNK = 0xff;
+	private static final int PADDING_CHUNK = 0xfe;
+	private static final int MIN_SKIPPABLE_CHUNK = 0x80;
+
+	private final InputStream in;
+	private final CRC32C crc = new CRC32C();
+	private final byte[] chunkHeader = new byte[4];
+	private final byte[] chunk = new byte[Snappy.maxCompressedLength(MAX_BLOCK_SIZE) + 4];
+	private final byte[] block = new byte[MAX_BLOCK_SIZE];
+	private boolean identified;
+	private int position;
+	private int limit;
+
+	SnappyFramedInputStream(InputStream in)
+	{
+		this.in = in;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (position == limit && !readChunk())
+			return -1;
+		return block[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+		if (position == limit && !readChunk())
+			return -1;
+		int count = Math.min(len, limit - position);
+		System.arraycopy(block, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available()
+	{
+		return limit - position;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	/**
+	 * Reads chunks until one with data is found.
+	 *
+	 * @return false at the end of the stream
+	 */
+	private boolean readChunk() throws IOException
+	{
+		while (true)
+		{
+			int type = in.read();
+			if (type == -1)
+				return false;
+			ByteStreams.readFully(in, chunkHeader, 0, 3);
+			int length = (chunkHeader[0] & 0xff) | (chunkHeader[1] & 0xff) << 8 | (chunkHeader[2] & 0xff) << 16;
+
+			if (!identified && type != STREAM_IDENTIFIER_CHUNK)
+				throw new IOException("Snappy stream does not start with the stream identifier");
+
+			if (type == STREAM_IDENTIFIER_CHUNK)
+			{
+				if (length != STREAM_IDENTIFIER.length - 4)
+					throw new IOException("Invalid Snappy stream identifier");
+				ByteStreams.readFully(in, chunk, 0, length);
+				if (!Arrays.equals(chunk, 0, length, STREAM_IDENTIFIER, 4, STREAM_IDENTIFIER.length))
+					throw new IOException("Invalid Snappy stream identifier");
+				identified = true;
+			}
+			else if (type == COMPRESSED_CHUNK || type == UNCOMPRESSED_CHUNK)
+			{
+				if (length < 4 || length > chunk.length)
+					throw new IOException("Invalid Snappy chunk length " + length);
+				ByteStreams.readFully(in, chunk, 0, length);
+				int checksum = (chunk[0] & 0xff) | (chunk[1] & 0xff) << 8 | (chunk[2] & 0xff) << 16 | (chunk[3] & 0xff) << 24;
+
+				int blockLength;
+				if (type == COMPRESSED_CHUNK)
+				{
+					blockLength = Snappy.uncompress(chunk, 4, length - 4, block);
+				}
+				else
+				{
+					if (length - 4 > MAX_BLOCK_SIZE)
+						throw new IOException("Invalid Snappy chunk length " + length);
+					System.arraycopy(chunk, 4, block, 0, length - 4);
+					blockLength = length - 4;
+				}
+
+				// Only a verified block may be read, also by reads after a checksum failure
+				crc.reset();
+				crc.update(block, 0, blockLength);
+				if (mask((int) crc.getValue()) != checksum)
+					throw new IOException("Snappy chunk checksum mismatch");
+				position = 0;
+				limit = blockLength;
+				if (limit > 0)
+					return true;
+			}
+			else if (type >= MIN_SKIPPABLE_CHUNK || type == PADDING_CHUNK)
+			{
+				ByteStreams.skipFully(in, length);
+			}
+			else
+			{
+				throw new IOException("Unsupported Snappy chunk type " + type);
+			}
+		}
+	}
+}
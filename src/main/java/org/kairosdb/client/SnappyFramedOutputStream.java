@@ -0,0 +1,164 @@
+package org.kairosdb.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32C;
+
+import static org.kairosdb.client.Snappy.MAX_BLOCK_SIZE;
+
+/**
+ * Writes data in the Snappy framing format. The data is split into blocks of 64 KiB, each written as a compressed
+ * chunk, or uncompressed if compression saves too little, with a masked CRC-32C of the uncompressed data.
+ * <br>
+ * <br>
+ * The block buffers are reused by later streams of the same thread. Closing the stream writes the last block and
+ * hands the buffers back, but leaves the underlying stream open. It must be closed also when writing failed.
+ */
+class SnappyFramedOutputStream extends OutputStream
+{
+	static final byte[] STREAM_IDENTIFIER = {(byte) 0xff, 6, 0, 0, 's', 'N', 'a', 'P', 'p', 'Y'};
+	static final int COMPRESSED_CHUNK = 0x00;
+	static final int UNCOMPRESSED_CHUNK = 0x01;
+
+	// Blocks that compress to more than this share of their size are written uncompressed
+	private static final double MAX_COMPRESSION_RATIO = 0.875;
+
+	private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<>();
+
+	private final OutputStream out;
+	private final Buffers buffers;
+	private final CRC32C crc = new CRC32C();
+	private final byte[] chunkHeader = new byte[8];
+	private int position;
+	private boolean closed;
+
+	SnappyFramedOutputStream(OutputStream out) throws IOException
+	{
+		this.out = out;
+		Buffers buffers = BUFFERS.get();
+		if (buffers == null)
+		{
+			buffers = new Buffers();
+		}
+		else
+		{
+			BUFFERS.remove();
+		}
+		this.buffers = buffers;
+		out.write(STREAM_IDENTIFIER);
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		ensureOpen();
+		if (position == MAX_BLOCK_SIZE)
+		{
+			writeBlock();
+		}
+		buffers.block[position++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		ensureOpen();
+		while (len > 0)
+		{
+			if (position == MAX_BLOCK_SIZE)
+			{
+				writeBlock();
+			}
+			int count = Math.min(len, MAX_BLOCK_SIZE - position);
+			System.arraycopy(b, off, buffers.block, position, count);
+			position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		ensureOpen();
+		writeBlock();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		closed = true;
+		try
+		{
+			writeBlock();
+		}
+		finally
+		{
+			if (BUFFERS.get() == null)
+			{
+				BUFFERS.set(buffers);
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException
+	{
+		// The buffers may already be in use by another stream of this thread
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+
+	private void writeBlock() throws IOException
+	{
+		if (position == 0)
+			return;
+
+		crc.reset();
+		crc.update(buffers.block, 0, position);
+		int checksum = mask((int) crc.getValue());
+
+		int compressedLength = Snappy.compress(buffers.block, 0, position, buffers.compressed, 0, buffers.table);
+		if (compressedLength <= position * MAX_COMPRESSION_RATIO)
+		{
+			writeChunk(COMPRESSED_CHUNK, checksum, buffers.compressed, compressedLength);
+		}
+		else
+		{
+			writeChunk(UNCOMPRESSED_CHUNK, checksum, buffers.block, position);
+		}
+		position = 0;
+	}
+
+	private void writeChunk(int type, int checksum, byte[] data, int length) throws IOException
+	{
+		int chunkLength = length + 4;
+		chunkHeader[0] = (byte) type;
+		chunkHeader[1] = (byte) chunkLength;
+		chunkHeader[2] = (byte) (chunkLength >>> 8);
+		chunkHeader[3] = (byte) (chunkLength >>> 16);
+		chunkHeader[4] = (byte) checksum;
+		chunkHeader[5] = (byte) (checksum >>> 8);
+		chunkHeader[6] = (byte) (checksum >>> 16);
+		chunkHeader[7] = (byte) (checksum >>> 24);
+		out.write(chunkHeader);
+		out.write(data, 0, length);
+	}
+
+	/**
+	 * Masks a CRC as required by the framing format, so that the CRC of data containing CRCs stays effective.
+	 */
+	static int mask(int crc)
+	{
+		return ((crc >>> 15) | (crc << 17)) + 0xa282ead8;
+	}
+
+	private static class Buffers
+	{
+		private final byte[] block = new byte[MAX_BLOCK_SIZE];
+		private final byte[] compressed = new byte[Snappy.maxCompressedLength(MAX_BLOCK_SIZE)];
+		private final int[] table = new int[Snappy.HASH_TABLE_SIZE];
+	}
+}
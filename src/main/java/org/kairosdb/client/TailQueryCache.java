@@ -0,0 +1,318 @@
+package org.kairosdb.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.kairosdb.client.builder.Aggregator;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.QueryMetric;
+import org.kairosdb.client.builder.aggregator.SamplingAggregator;
+import org.kairosdb.client.response.NumericSeries;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryResult;
+import org.kairosdb.client.response.QueryResultMerger;
+import org.kairosdb.client.response.Result;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Cache for queries over a window relative to now, such as the last hour shown on a dashboard. Each refresh of such a
+ * query reads the whole window again although only the last few seconds changed. This cache keeps the data points of
+ * the previous refresh and only requests the data points that were written since, so the cost of a refresh depends on
+ * the time since the last refresh rather than on the size of the window.
+ * <br>
+ * <br>
+ * The data points of a refresh are kept up to the last aggregation bucket boundary before the end of the window, minus
+ * the refetch window. The next refresh requests everything from that boundary to the new end of the window, drops the
+ * kept data points that fell out of the window and, if the start of the window is in the middle of a bucket, requests
+ * that partial bucket again. Data points older than the refetch window are assumed not to change, so set it to the
+ * time it takes for late data points to arrive.
+ * <br>
+ * <br>
+ * Only queries with a relative start time and, optionally, a relative end time are refreshed incrementally. Each of
+ * their sampling aggregators must be aligned to the sampling or to a start time and use start time alignment for its
+ * timestamps, and {@link QueryBuilder#getSplitTime(long)} must allow the query to be split. Metrics in descending order
+ * are not supported. All other queries are sent to the client unchanged.
+ */
+public class TailQueryCache
+{
+	private final Client client;
+	private final long refetchMillis;
+	private final Cache<String, Tail> tails;
+	private final AtomicLong fullQueries = new AtomicLong();
+	private final AtomicLong incrementalQueries = new AtomicLong();
+
+	private TailQueryCache(Builder builder)
+	{
+		client = builder.client;
+		refetchMillis = builder.refetchMillis;
+		tails = CacheBuilder.newBuilder()
+				.maximumSize(builder.maxQueries)
+				.expireAfterAccess(Duration.ofNanos(builder.expireAfterAccessNanos))
+				.build();
+	}
+
+	/**
+	 * Returns a builder for a cache that sends queries with the given client.
+	 *
+	 * @param client client used for queries
+	 * @return cache builder
+	 */
+	public static Builder builder(Client client)
+	{
+		return new Builder(client);
+	}
+
+	/**
+	 * Returns the response to the query, requesting only the data points that are not cached.
+	 *
+	 * @param builder query to run
+	 * @return response to the query
+	 */
+	public QueryResponse query(QueryBuilder builder)
+	{
+		return query(builder, System.currentTimeMillis());
+	}
+
+	QueryResponse query(QueryBuilder builder, long now)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		if (!isIncremental(builder, now))
+		{
+			return client.query(builder);
+		}
+
+		Tail tail;
+		try
+		{
+			tail = tails.get(QueryCache.normalize(builder.build()), Tail::new);
+		}
+		catch (ExecutionException | UncheckedExecutionException | ExecutionError e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		synchronized (tail)
+		{
+			return refresh(tail, builder, now);
+		}
+	}
+
+	/**
+	 * Removes the cached data points of all queries.
+	 */
+	public void invalidateAll()
+	{
+		tails.invalidateAll();
+	}
+
+	/**
+	 * Returns the number of refreshes that requested the whole window.
+	 *
+	 * @return number of full queries
+	 */
+	public long getFullQueryCount()
+	{
+		return fullQueries.get();
+	}
+
+	/**
+	 * Returns the number of refreshes that only requested the data points that were not cached.
+	 *
+	 * @return number of incremental queries
+	 */
+	public long getIncrementalQueryCount()
+	{
+		return incrementalQueries.get();
+	}
+
+	private QueryResponse refresh(Tail tail, QueryBuilder builder, long now)
+	{
+		long windowStart = builder.getStartRelative().getTimeRelativeTo(now);
+		long windowEnd = builder.getEndRelative() != null ? builder.getEndRelative().getTimeRelativeTo(now) : now;
+		long stableUntil = builder.getSplitTime(windowEnd - refetchMillis);
+
+		List<QueryResult> results = null;
+		if (tail.results != null && tail.fetchedUntil > windowStart && tail.fetchedUntil <= windowEnd)
+			results = refreshIncrementally(tail, builder, windowStart, windowEnd);
+		if (results == null)
+		{
+			results = client.query(builder.withTimeRange(windowStart, windowEnd)).getQueries();
+			fullQueries.incrementAndGet();
+		}
+
+		List<QueryResult> stable = new ArrayList<>(results.size());
+		for (QueryResult result : results)
+		{
+			stable.add(QueryResultMerger.slice(result, windowStart, stableUntil));
+		}
+		tail.results = stable;
+		tail.fetchedUntil = Math.max(stableUntil, windowStart);
+
+		return new QueryResponse(results);
+	}
+
+	/**
+	 * Returns the results of the window from the kept data points and the data points requested since, or null if the
+	 * whole window has to be requested.
+	 */
+	private List<QueryResult> refreshIncrementally(Tail tail, QueryBuilder builder, long windowStart, long windowEnd)
+	{
+		int metricCount = builder.getMetrics().size();
+		List<QueryResult> kept = new ArrayList<>(metricCount);
+		long keptStart = tail.fetchedUntil;
+		for (QueryResult result : tail.results)
+		{
+			QueryResult slice = QueryResultMerger.slice(result, windowStart, tail.fetchedUntil);
+			keptStart = Math.min(keptStart, getFirstTimestamp(slice));
+			kept.add(slice);
+		}
+
+		// A bucket that is only partly in the window was not kept; request that part of the window again
+		List<QueryResult> head = null;
+		if (builder.getSplitTime(windowStart) != windowStart)
+		{
+			long headEnd = builder.getSplitTime(keptStart);
+			if (headEnd <= windowStart)
+				return null;
+			head = client.query(builder.withTimeRange(windowStart, headEnd - 1)).getQueries();
+		}
+
+		List<QueryResult> delta = client.query(builder.withTimeRange(tail.fetchedUntil, windowEnd)).getQueries();
+		incrementalQueries.incrementAndGet();
+
+		List<QueryResult> results = new ArrayList<>(metricCount);
+		for (int i = 0; i < metricCount; i++)
+		{
+			List<QueryResult> parts = new ArrayList<>(3);
+			if (head != null)
+				parts.add(head.get(i));
+			parts.add(kept.get(i));
+			parts.add(delta.get(i));
+			results.add(QueryResultMerger.merge(parts));
+		}
+		return results;
+	}
+
+	private boolean isIncremental(QueryBuilder builder, long now)
+	{
+		if (builder.getStartRelative() == null || builder.getEndAbsolute() != null)
+			return false;
+
+		for (QueryMetric metric : builder.getMetrics())
+		{
+			if (metric.getOrder() == QueryMetric.Order.DESCENDING)
+				return false;
+			for (Aggregator aggregator : metric.getAggregators())
+			{
+				if (aggregator instanceof SamplingAggregator && !((SamplingAggregator) aggregator).isAlignStartTime())
+					return false;
+			}
+		}
+
+		return builder.getSplitTime(now) != null;
+	}
+
+	private static long getFirstTimestamp(QueryResult queryResult)
+	{
+		long first = Long.MAX_VALUE;
+		for (Result result : queryResult.getResults())
+		{
+			NumericSeries series = result.getNumericSeries();
+			if (series != null)
+			{
+				if (series.size() > 0)
+					first = Math.min(first, series.getTimestamp(0));
+			}
+			else
+			{
+				List<DataPoint> dataPoints = result.getDataPoints();
+				if (!dataPoints.isEmpty())
+					first = Math.min(first, dataPoints.get(0).getTimestamp());
+			}
+		}
+		return first;
+	}
+
+	private static class Tail
+	{
+		private List<QueryResult> results;
+		private long fetchedUntil;
+	}
+
+	/**
+	 * Configures a {@link TailQueryCache}.
+	 */
+	public static class Builder
+	{
+		private final Client client;
+		private long maxQueries = 1000;
+		private long expireAfterAccessNanos = TimeUnit.MINUTES.toNanos(10);
+		private long refetchMillis;
+
+		private Builder(Client client)
+		{
+			this.client = requireNonNull(client, "client cannot be null");
+		}
+
+		/**
+		 * Maximum number of queries whose data points are kept. The default is 1000.
+		 *
+		 * @param maxQueries maximum number of cached queries
+		 * @return the builder
+		 */
+		public Builder setMaxQueries(long maxQueries)
+		{
+			checkArgument(maxQueries > 0, "maxQueries must be greater than 0");
+			this.maxQueries = maxQueries;
+			return this;
+		}
+
+		/**
+		 * Time after which the data points of a query that has not been refreshed are removed. The default is 10
+		 * minutes.
+		 *
+		 * @param expireAfterAccess time since the last refresh
+		 * @param unit              unit of the time
+		 * @return the builder
+		 */
+		public Builder setExpireAfterAccess(long expireAfterAccess, TimeUnit unit)
+		{
+			checkArgument(expireAfterAccess > 0, "expireAfterAccess must be greater than 0");
+			requireNonNull(unit, "unit cannot be null");
+			this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+			return this;
+		}
+
+		/**
+		 * Data points newer than this are requested again on every refresh, so data points that arrive late are not
+		 * missed. The default is 0.
+		 *
+		 * @param refetch age below which data points are requested again
+		 * @param unit    unit of the age
+		 * @return the builder
+		 */
+		public Builder setRefetchWindow(long refetch, TimeUnit unit)
+		{
+			checkArgument(refetch >= 0, "refetch cannot be negative");
+			requireNonNull(unit, "unit cannot be null");
+			this.refetchMillis = unit.toMillis(refetch);
+			return this;
+		}
+
+		public TailQueryCache build()
+		{
+			return new TailQueryCache(this);
+		}
+	}
+}
@@ -1,13 +1,15 @@
 package org.kairosdb.client;
 
-import org.kairosdb.client.builder.*;
+import com.google.common.io.CountingOutputStream;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.kairosdb.client.instrumentation.ClientInstrumentation;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.net.Socket;
-import java.util.List;
-import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * Communicates with KairosDB using the Telnet protocol. Only pushing of metrics is supported. Querying must be done
@@ -19,13 +21,28 @@ import java.util.Map;
  */
 public class TelnetClient
 {
+	private static final int FLUSH_THRESHOLD = 8192;
+
 	private Socket socket;
-	private PrintWriter writer;
+	private CountingOutputStream socketStream;
+	private final PutLineEncoder putEncoder = new PutLineEncoder(PutLineEncoder.PUT, FLUSH_THRESHOLD + 1024);
+	private final PutLineEncoder putmEncoder = new PutLineEncoder(PutLineEncoder.PUTM, FLUSH_THRESHOLD + 1024);
+	private volatile ClientInstrumentation instrumentation = ClientInstrumentation.NOOP;
 
 	public TelnetClient(String host, int port) throws IOException
 	{
 		socket = new Socket(host, port);
-		writer = new PrintWriter(new BufferedOutputStream(socket.getOutputStream()));
+		socketStream = new CountingOutputStream(socket.getOutputStream());
+	}
+
+	/**
+	 * Sets the instrumentation that is told about the metrics written by the client. By default nothing is recorded.
+	 *
+	 * @param instrumentation instrumentation to use
+	 */
+	public void setInstrumentation(ClientInstrumentation instrumentation)
+	{
+		this.instrumentation = requireNonNull(instrumentation, "instrumentation cannot be null");
 	}
 
 	/**
@@ -35,56 +52,23 @@ public class TelnetClient
 	 * Sends metrics from the builder to the Kairos server.
 	 *
 	 * @param builder metrics builder
+	 * @throws UncheckedIOException if the metrics could not be written to the socket
 	 */
 	@Deprecated
 	public void pushMetrics(MetricBuilder builder)
 	{
-		List<Metric> metrics = builder.getMetrics();
-		for (Metric metric : metrics)
-		{
-			StringBuilder tags = new StringBuilder();
-			for (Map.Entry<String, String> tag : metric.getTags().entrySet())
-			{
-				tags.append(" ").append(tag.getKey()).append("=").append(tag.getValue());
-			}
-
-			for (DataPoint dataPoint : metric.getDataPoints())
-			{
-				StringBuilder sb = new StringBuilder();
-				sb.append("put ").append(metric.getName()).append(" ")
-						.append(dataPoint.getTimestamp()).append(" ")
-						.append(dataPoint.getValue())
-						.append(tags.toString());
-
-				writer.println(sb.toString());
-			}
-		}
-		writer.flush();
+		writeMetrics(builder, putEncoder);
 	}
 
+	/**
+	 * Sends metrics from the builder to the Kairos server using the putm command.
+	 *
+	 * @param builder metrics builder
+	 * @throws UncheckedIOException if the metrics could not be written to the socket
+	 */
 	public void putMetrics(MetricBuilder builder)
 	{
-		List<Metric> metrics = builder.getMetrics();
-		for (Metric metric : metrics)
-		{
-			StringBuilder tags = new StringBuilder();
-			for (Map.Entry<String, String> tag : metric.getTags().entrySet())
-			{
-				tags.append(" ").append(tag.getKey()).append("=").append(tag.getValue());
-			}
-
-			for (DataPoint dataPoint : metric.getDataPoints())
-			{
-				StringBuilder sb = new StringBuilder();
-				sb.append("putm ").append(metric.getName()).append(" ")
-						.append(dataPoint.getTimestamp()).append(" ")
-						.append(dataPoint.getValue())
-						.append(tags.toString());
-
-				writer.println(sb.toString());
-			}
-		}
-		writer.flush();
+		writeMetrics(builder, putmEncoder);
 	}
 
 	/**
@@ -96,4 +80,43 @@ public class TelnetClient
 	{
 		socket.close();
 	}
+
+	private synchronized void writeMetrics(MetricBuilder builder, PutLineEncoder encoder)
+	{
+		long start = System.nanoTime();
+		long bytesBefore = socketStream.getCount();
+		int dataPoints = 0;
+
+		try
+		{
+			encoder.clear();
+			for (Metric metric : builder.getMetrics())
+			{
+				encoder.setMetric(metric);
+				int count = metric.getDataPointCount();
+				for (int i = 0; i < count; i++)
+				{
+					encoder.encode(metric, i);
+					if (encoder.getLength() >= FLUSH_THRESHOLD)
+					{
+						socketStream.write(encoder.getBuffer(), 0, encoder.getLength());
+						encoder.clear();
+					}
+				}
+				dataPoints += count;
+			}
+			socketStream.write(encoder.getBuffer(), 0, encoder.getLength());
+			socketStream.flush();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		finally
+		{
+			encoder.clear();
+		}
+
+		instrumentation.telnetMetricsWritten(dataPoints, socketStream.getCount() - bytesBefore, System.nanoTime() - start);
+	}
 }
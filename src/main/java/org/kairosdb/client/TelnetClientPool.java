@@ -0,0 +1,230 @@
+package org.kairosdb.client;
+
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Spreads metrics over several Telnet connections to KairosDB so that many threads can send data points in parallel.
+ * Each connection is a {@link NioTelnetClient} with its own buffer and I/O thread, configured by the client builder
+ * passed to {@link #builder(NioTelnetClient.Builder)}.
+ * <br>
+ * <br>
+ * With {@link Distribution#SERIES_HASH} every series, a metric name together with its tags, is always sent over the
+ * same connection, so the data points of a series arrive in the order they were put. With
+ * {@link Distribution#ROUND_ROBIN} each call to {@link #putMetrics(MetricBuilder)} goes to the next connection, which
+ * spreads the load evenly but may reorder data points of the same series that are put by different calls.
+ * <br>
+ * <br>
+ * The pool is thread-safe.
+ */
+public class TelnetClientPool implements Closeable
+{
+	/**
+	 * How metrics are assigned to connections.
+	 */
+	public enum Distribution
+	{
+		/**
+		 * All metrics of a call go to the next connection in turn.
+		 */
+		ROUND_ROBIN,
+		/**
+		 * Each metric goes to a connection chosen by the hash of its name and tags.
+		 */
+		SERIES_HASH
+	}
+
+	private final List<NioTelnetClient> clients;
+	private final Distribution distribution;
+	private final AtomicInteger nextClient = new AtomicInteger();
+
+	private TelnetClientPool(Builder builder)
+	{
+		distribution = builder.distribution;
+		List<NioTelnetClient> clients = new ArrayList<>(builder.connections);
+		for (int i = 0; i < builder.connections; i++)
+		{
+			clients.add(builder.clientBuilder.build());
+		}
+		this.clients = Collections.unmodifiableList(clients);
+	}
+
+	/**
+	 * Returns a builder for a pool whose connections are created by the given client builder.
+	 *
+	 * @param clientBuilder builder used to create each connection
+	 * @return pool builder
+	 */
+	public static Builder builder(NioTelnetClient.Builder clientBuilder)
+	{
+		return new Builder(clientBuilder);
+	}
+
+	/**
+	 * Adds the data points of all metrics in the builder to the buffers of the connections.
+	 *
+	 * @param builder metrics to send
+	 * @throws IllegalStateException if the pool is closed or a buffer is full and the overflow policy is FAIL
+	 */
+	public void putMetrics(MetricBuilder builder)
+	{
+		requireNonNull(builder, "builder cannot be null");
+		List<Metric> metrics = builder.getMetrics();
+		int size = clients.size();
+
+		if (distribution == Distribution.ROUND_ROBIN || size == 1)
+		{
+			clients.get(Math.floorMod(nextClient.getAndIncrement(), size)).putMetrics(metrics);
+			return;
+		}
+
+		List<List<Metric>> partitions = new ArrayList<>(Collections.nCopies(size, null));
+		for (Metric metric : metrics)
+		{
+			int index = getConnectionIndex(metric, size);
+			if (partitions.get(index) == null)
+			{
+				partitions.set(index, new ArrayList<>());
+			}
+			partitions.get(index).add(metric);
+		}
+		for (int i = 0; i < size; i++)
+		{
+			if (partitions.get(i) != null)
+			{
+				clients.get(i).putMetrics(partitions.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Waits until all data points put before this call have been written by every connection.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalStateException if the pool was closed before the data points could be written
+	 */
+	public void flush() throws InterruptedException
+	{
+		for (NioTelnetClient client : clients)
+		{
+			client.flush();
+		}
+	}
+
+	/**
+	 * Waits until all data points put before this call have been written by every connection or the timeout expires.
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit    unit of the timeout
+	 * @return true if the data points were written, false if the timeout expired or the pool was closed first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean flush(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (NioTelnetClient client : clients)
+		{
+			if (!client.flush(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Closes every connection. Each connection waits up to its close timeout for its buffer to be written; the
+	 * connections keep writing in the background while the others are being closed.
+	 */
+	@Override
+	public void close()
+	{
+		for (NioTelnetClient client : clients)
+		{
+			client.close();
+		}
+	}
+
+	public int getConnectionCount()
+	{
+		return clients.size();
+	}
+
+	/**
+	 * Returns a snapshot of the counters of every connection, ordered by connection index.
+	 *
+	 * @return connection statistics
+	 */
+	public List<TelnetConnectionStats> getConnectionStats()
+	{
+		List<TelnetConnectionStats> stats = new ArrayList<>(clients.size());
+		for (int i = 0; i < clients.size(); i++)
+		{
+			stats.add(new TelnetConnectionStats(i, clients.get(i)));
+		}
+		return stats;
+	}
+
+	/**
+	 * Returns the connection that the series of the metric is assigned to.
+	 */
+	static int getConnectionIndex(Metric metric, int connections)
+	{
+		int hash = 31 * metric.getName().hashCode() + metric.getTags().hashCode();
+		hash ^= hash >>> 16;
+		return Math.floorMod(hash, connections);
+	}
+
+	/**
+	 * Configures a {@link TelnetClientPool}.
+	 */
+	public static class Builder
+	{
+		private final NioTelnetClient.Builder clientBuilder;
+		private int connections = 4;
+		private Distribution distribution = Distribution.SERIES_HASH;
+
+		private Builder(NioTelnetClient.Builder clientBuilder)
+		{
+			this.clientBuilder = requireNonNull(clientBuilder, "clientBuilder cannot be null");
+		}
+
+		/**
+		 * Number of connections to open. The default is 4.
+		 *
+		 * @param connections number of connections
+		 * @return the builder
+		 */
+		public Builder setConnections(int connections)
+		{
+			checkArgument(connections > 0, "connections must be greater than 0");
+			this.connections = connections;
+			return this;
+		}
+
+		/**
+		 * How metrics are assigned to connections. The default is {@link Distribution#SERIES_HASH}.
+		 *
+		 * @param distribution distribution to use
+		 * @return the builder
+		 */
+		public Builder setDistribution(Distribution distribution)
+		{
+			this.distribution = requireNonNull(distribution, "distribution cannot be null");
+			return this;
+		}
+
+		public TelnetClientPool build()
+		{
+			return new TelnetClientPool(this);
+		}
+	}
+}
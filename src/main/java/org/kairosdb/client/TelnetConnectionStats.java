@@ -0,0 +1,106 @@
+package org.kairosdb.client;
+
+/**
+ * Counters of one connection of a {@link TelnetClientPool}. The counters only ever increase, so throughput is
+ * calculated from the difference between two snapshots.
+ */
+public class TelnetConnectionStats
+{
+	private final int index;
+	private final boolean connected;
+	private final long connects;
+	private final long acceptedDataPoints;
+	private final long droppedDataPoints;
+	private final long sentBytes;
+	private final long bufferedBytes;
+
+	TelnetConnectionStats(int index, NioTelnetClient client)
+	{
+		this.index = index;
+		connected = client.isConnected();
+		connects = client.getConnects();
+		acceptedDataPoints = client.getAcceptedDataPoints();
+		droppedDataPoints = client.getDroppedDataPoints();
+		sentBytes = client.getSentBytes();
+		bufferedBytes = client.getBufferedBytes();
+	}
+
+	/**
+	 * Returns the position of the connection in the pool.
+	 *
+	 * @return connection index
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	public boolean isConnected()
+	{
+		return connected;
+	}
+
+	/**
+	 * Returns the number of times the connection has been established, including reconnects.
+	 *
+	 * @return number of connections
+	 */
+	public long getConnects()
+	{
+		return connects;
+	}
+
+	/**
+	 * Returns the number of data points that have been added to the buffer of the connection.
+	 *
+	 * @return number of accepted data points
+	 */
+	public long getAcceptedDataPoints()
+	{
+		return acceptedDataPoints;
+	}
+
+	/**
+	 * Returns the number of data points discarded because the buffer was full or the pool was closed.
+	 *
+	 * @return number of dropped data points
+	 */
+	public long getDroppedDataPoints()
+	{
+		return droppedDataPoints;
+	}
+
+	/**
+	 * Returns the number of bytes written to the socket.
+	 *
+	 * @return number of bytes sent
+	 */
+	public long getSentBytes()
+	{
+		return sentBytes;
+	}
+
+	/**
+	 * Returns the number of bytes waiting to be written when the snapshot was taken.
+	 *
+	 * @return number of buffered bytes
+	 */
+	public long getBufferedBytes()
+	{
+		return bufferedBytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TelnetConnectionStats{" +
+				"index=" + index +
+				", connected=" + connected +
+				", connects=" + connects +
+				", acceptedDataPoints=" + acceptedDataPoints +
+				", droppedDataPoints=" + droppedDataPoints +
+				", sentBytes=" + sentBytes +
+				", bufferedBytes=" + bufferedBytes +
+				'}';
+	}
+}
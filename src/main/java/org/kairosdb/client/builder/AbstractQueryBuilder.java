@@ -34,30 +34,31 @@ public abstract class AbstractQueryBuilder<B extends AbstractQueryBuilder<B>>
 	}
 
 	/**
-	 * Builds Gson used by this implementation
+	 * Returns the Gson used by this implementation. Gson is thread-safe, so implementations should return a shared
+	 * instance rather than creating one for every builder.
 	 */
 	protected abstract Gson buildGson();
 
 	/**
 	 * Returns the absolute range start time.
 	 *
-	 * @return absolute range start time
+	 * @return absolute range start time or null if not set
 	 */
 	@SuppressWarnings("WeakerAccess")
 	public Date getStartAbsolute()
 	{
-		return new Date(startAbsolute);
+		return startAbsolute != null ? new Date(startAbsolute) : null;
 	}
 
 	/**
 	 * Returns the absolute range end time.
 	 *
-	 * @return absolute range end time
+	 * @return absolute range end time or null if not set
 	 */
 	@SuppressWarnings("WeakerAccess")
 	public Date getEndAbsolute()
 	{
-		return new Date(endAbsolute);
+		return endAbsolute != null ? new Date(endAbsolute) : null;
 	}
 
 	/**
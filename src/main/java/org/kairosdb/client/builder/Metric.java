@@ -15,8 +15,6 @@
  */
 package org.kairosdb.client.builder;
 
-import com.google.gson.annotations.SerializedName;
-
 import java.util.*;
 
 import static java.util.Objects.requireNonNull;
@@ -28,16 +26,33 @@ import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
  * and a value that is either a long or double and optionally contains tags. Tags are labels that can be added to better
  * identify the metric. For example, if the measurement was done on server1 then you might add a tag named "host"
  * with a value of "server1". Note that a metric must have at least one tag.
+ * <br>
+ * <br>
+ * Long and double values are stored in primitive arrays so adding a data point does not allocate. Data points are
+ * only created when {@link #getDataPoints()} is accessed. The index based accessors such as {@link #getTimestamp(int)}
+ * and {@link #getLongValue(int)} read the arrays directly.
  */
 public class Metric
 {
+	private static final byte LONG_VALUE = 0;
+	private static final byte DOUBLE_VALUE = 1;
+	private static final byte OBJECT_VALUE = 2;
+
+	private static final int INITIAL_CAPACITY = 8;
+	private static final long[] EMPTY_LONGS = new long[0];
+	private static final byte[] EMPTY_BYTES = new byte[0];
+
 	private String name;
 	private Map<String, String> tags = new HashMap<String, String>();
 	private String type;
 	private int ttl;
 
-	@SerializedName("datapoints")
-	private List<DataPoint> dataPoints = new ArrayList<DataPoint>();
+	// Data point columns. Double values are stored as their raw long bits, other values in objectValues.
+	private long[] timestamps = EMPTY_LONGS;
+	private long[] values = EMPTY_LONGS;
+	private byte[] valueTypes = EMPTY_BYTES;
+	private Object[] objectValues;
+	private int size;
 
 	protected Metric(String name)
 	{
@@ -88,7 +103,8 @@ public class Metric
 	 */
 	public Metric addDataPoint(long timestamp, long value)
 	{
-		dataPoints.add(new DataPoint(timestamp, value));
+		int index = nextIndex(timestamp, LONG_VALUE);
+		values[index] = value;
 		return this;
 	}
 
@@ -105,7 +121,12 @@ public class Metric
 
 	public Metric addDataPoint(long timestamp, Object value)
 	{
-		dataPoints.add(new DataPoint(timestamp, value));
+		int index = nextIndex(timestamp, OBJECT_VALUE);
+		if (objectValues == null)
+		{
+			objectValues = new Object[timestamps.length];
+		}
+		objectValues[index] = value;
 		return this;
 	}
 
@@ -118,7 +139,8 @@ public class Metric
 	 */
 	public Metric addDataPoint(long timestamp, double value)
 	{
-		dataPoints.add(new DataPoint(timestamp, value));
+		int index = nextIndex(timestamp, DOUBLE_VALUE);
+		values[index] = Double.doubleToRawLongBits(value);
 		return this;
 	}
 
@@ -147,6 +169,22 @@ public class Metric
 		return this;
 	}
 
+	/**
+	 * Removes all data points from the metric. The name, tags and TTL are kept, as are the arrays that held the data
+	 * points, so the metric can be refilled without allocating.
+	 *
+	 * @return the metric
+	 */
+	public Metric clearDataPoints()
+	{
+		if (objectValues != null)
+		{
+			Arrays.fill(objectValues, 0, size, null);
+		}
+		size = 0;
+		return this;
+	}
+
 	/**
 	 * Returns the time-to-live. If zero, the metric lives forever.
 	 * @return time to live
@@ -156,9 +194,112 @@ public class Metric
 		return ttl;
 	}
 
+	/**
+	 * Returns a read-only view of the data points. Each data point is created when it is accessed.
+	 *
+	 * @return data points of the metric
+	 */
 	public List<DataPoint> getDataPoints()
 	{
-		return Collections.unmodifiableList(dataPoints);
+		return new DataPointView();
+	}
+
+	/**
+	 * Returns the number of data points added to the metric.
+	 *
+	 * @return number of data points
+	 */
+	public int getDataPointCount()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the timestamp of a data point.
+	 *
+	 * @param index index of the data point
+	 * @return timestamp of the data point
+	 */
+	public long getTimestamp(int index)
+	{
+		checkIndex(index);
+		return timestamps[index];
+	}
+
+	/**
+	 * Returns true if the data point was added as a long.
+	 *
+	 * @param index index of the data point
+	 * @return true if the value is a long
+	 */
+	public boolean isLongValue(int index)
+	{
+		checkIndex(index);
+		return valueTypes[index] == LONG_VALUE;
+	}
+
+	/**
+	 * Returns true if the data point was added as a double.
+	 *
+	 * @param index index of the data point
+	 * @return true if the value is a double
+	 */
+	public boolean isDoubleValue(int index)
+	{
+		checkIndex(index);
+		return valueTypes[index] == DOUBLE_VALUE;
+	}
+
+	/**
+	 * Returns the value of a data point that was added as a long.
+	 *
+	 * @param index index of the data point
+	 * @return value of the data point
+	 * @throws IllegalStateException if the value is not a long
+	 */
+	public long getLongValue(int index)
+	{
+		if (!isLongValue(index))
+		{
+			throw new IllegalStateException("Data point " + index + " is not a long");
+		}
+		return values[index];
+	}
+
+	/**
+	 * Returns the value of a data point that was added as a double.
+	 *
+	 * @param index index of the data point
+	 * @return value of the data point
+	 * @throws IllegalStateException if the value is not a double
+	 */
+	public double getDoubleValue(int index)
+	{
+		if (!isDoubleValue(index))
+		{
+			throw new IllegalStateException("Data point " + index + " is not a double");
+		}
+		return Double.longBitsToDouble(values[index]);
+	}
+
+	/**
+	 * Returns the value of a data point. Long and double values are boxed.
+	 *
+	 * @param index index of the data point
+	 * @return value of the data point
+	 */
+	public Object getValue(int index)
+	{
+		checkIndex(index);
+		switch (valueTypes[index])
+		{
+			case LONG_VALUE:
+				return values[index];
+			case DOUBLE_VALUE:
+				return Double.longBitsToDouble(values[index]);
+			default:
+				return objectValues[index];
+		}
 	}
 
 	/**
@@ -191,6 +332,31 @@ public class Metric
 		return type;
 	}
 
+	private int nextIndex(long timestamp, byte valueType)
+	{
+		if (size == timestamps.length)
+		{
+			int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			values = Arrays.copyOf(values, capacity);
+			valueTypes = Arrays.copyOf(valueTypes, capacity);
+			if (objectValues != null)
+			{
+				objectValues = Arrays.copyOf(objectValues, capacity);
+			}
+		}
+		timestamps[size] = timestamp;
+		valueTypes[size] = valueType;
+		return size++;
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
 
 	@Override
 	public boolean equals(Object o)
@@ -198,12 +364,27 @@ public class Metric
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Metric metric = (Metric) o;
-		return ttl == metric.ttl && Objects.equals(name, metric.name) && Objects.equals(tags, metric.tags) && Objects.equals(type, metric.type) && Objects.equals(dataPoints, metric.dataPoints);
+		return ttl == metric.ttl && Objects.equals(name, metric.name) && Objects.equals(tags, metric.tags) && Objects.equals(type, metric.type) && Objects.equals(getDataPoints(), metric.getDataPoints());
 	}
 
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(name, tags, type, ttl, dataPoints);
+		return Objects.hash(name, tags, type, ttl, getDataPoints());
+	}
+
+	private class DataPointView extends AbstractList<DataPoint> implements RandomAccess
+	{
+		@Override
+		public DataPoint get(int index)
+		{
+			return new DataPoint(getTimestamp(index), getValue(index));
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
 	}
 }
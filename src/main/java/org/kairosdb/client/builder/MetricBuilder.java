@@ -17,12 +17,19 @@ package org.kairosdb.client.builder;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import org.kairosdb.client.builder.aggregator.CustomAggregator;
 import org.kairosdb.client.builder.grouper.CustomGrouper;
 import org.kairosdb.client.serializer.CustomAggregatorSerializer;
 import org.kairosdb.client.serializer.CustomGrouperSerializer;
 import org.kairosdb.client.serializer.DataPointSerializer;
+import org.kairosdb.client.serializer.MetricSerializer;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,20 +37,28 @@ import static org.kairosdb.client.util.Preconditions.checkState;
 
 /**
  * Builder used to create the JSON to push metrics to KairosDB.
+ * <br>
+ * <br>
+ * A builder can be reused for metrics that are pushed repeatedly. Keep the Metric objects returned by
+ * {@link #addMetric(String)} and call {@link #reset()} after each push; the metrics and the arrays holding their data
+ * points are reused, so refilling the builder does not allocate once the arrays have grown to the batch size.
  */
 public class MetricBuilder
 {
+	private static final Type METRIC_LIST_TYPE = new TypeToken<List<Metric>>(){}.getType();
+
+	private static final Gson mapper = new GsonBuilder()
+			.registerTypeAdapter(CustomAggregator.class, new CustomAggregatorSerializer())
+			.registerTypeAdapter(CustomGrouper.class, new CustomGrouperSerializer())
+			.registerTypeAdapter(DataPoint.class, new DataPointSerializer())
+			.registerTypeAdapterFactory(new MetricSerializer())
+			.create();
+
 	private List<Metric> metrics = new ArrayList<>();
-	private transient Gson mapper;
 	private boolean useCompression = false;
 
 	private MetricBuilder()
 	{
-		GsonBuilder builder = new GsonBuilder();
-		builder.registerTypeAdapter(CustomAggregator.class, new CustomAggregatorSerializer());
-		builder.registerTypeAdapter(CustomGrouper.class, new CustomGrouperSerializer());
-		builder.registerTypeAdapter(DataPoint.class, new DataPointSerializer());
-		mapper = builder.create();
 	}
 
 	/**
@@ -93,6 +108,36 @@ public class MetricBuilder
 		return metrics;
 	}
 
+	/**
+	 * Removes the data points of all metrics so the builder can be filled again. The metrics, their tags and the
+	 * arrays holding the data points are kept. Metrics that receive no new data points are sent with an empty list
+	 * of data points, which KairosDB ignores.
+	 * <br>
+	 * <br>
+	 * A builder must not be reset while it is being pushed.
+	 *
+	 * @return this builder
+	 */
+	public MetricBuilder reset()
+	{
+		for (Metric metric : metrics)
+		{
+			metric.clearDataPoints();
+		}
+		return this;
+	}
+
+	/**
+	 * Removes all metrics from the builder.
+	 *
+	 * @return this builder
+	 */
+	public MetricBuilder clear()
+	{
+		metrics.clear();
+		return this;
+	}
+
 	/**
 	 * Sets the compression flag for http post.
 	 * @param compressionEnabled compresss post data
@@ -115,12 +160,46 @@ public class MetricBuilder
 	 * @return JSON
 	 */
 	public String build()
+	{
+		validate();
+		return mapper.toJson(metrics);
+	}
+
+	/**
+	 * Writes the JSON built by the builder to the writer. Unlike {@link #build()}, the JSON is never held in memory
+	 * as a whole, which makes this suitable for streaming large batches directly to the server.
+	 *
+	 * @param writer writer the JSON is written to. The writer is flushed but not closed.
+	 * @throws IOException if the writer fails
+	 */
+	public void write(Writer writer) throws IOException
+	{
+		validate();
+		JsonWriter jsonWriter = mapper.newJsonWriter(writer);
+		try
+		{
+			mapper.toJson(metrics, METRIC_LIST_TYPE, jsonWriter);
+		}
+		catch (JsonIOException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
+		}
+		jsonWriter.flush();
+	}
+
+	/**
+	 * Verifies that the metrics can be sent to KairosDB.
+	 *
+	 * @throws IllegalStateException if a metric does not have any tags
+	 */
+	public void validate()
 	{
 		for (Metric metric : metrics)
 		{
 			// verify that there is at least one tag for each metric
 			checkState(metric.getTags().size() > 0, metric.getName() + " must contain at least one tag.");
 		}
-		return mapper.toJson(metrics);
 	}
 }
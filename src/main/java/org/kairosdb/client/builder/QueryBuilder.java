@@ -1,15 +1,20 @@
 package org.kairosdb.client.builder;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.SerializedName;
 import org.kairosdb.client.builder.aggregator.CustomAggregator;
+import org.kairosdb.client.builder.aggregator.SamplingAggregator;
 import org.kairosdb.client.builder.grouper.CustomGrouper;
+import org.kairosdb.client.builder.grouper.TimeGrouper;
 import org.kairosdb.client.serializer.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
 
 import static java.util.Objects.requireNonNull;
@@ -32,6 +37,20 @@ import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
 @SuppressWarnings("UnusedDeclaration")
 public class QueryBuilder extends AbstractQueryBuilder<QueryBuilder>
 {
+	private static final Gson GSON = new GsonBuilder()
+			.registerTypeAdapter(CustomAggregator.class, new CustomAggregatorSerializer())
+			.registerTypeAdapter(CustomGrouper.class, new CustomGrouperSerializer())
+			.registerTypeAdapter(ListMultimap.class, new ListMultiMapSerializer())
+			.registerTypeAdapter(QueryMetric.Order.class, new OrderSerializer())
+			.registerTypeAdapter(TimeZone.class, new TimeZoneSerializer())
+			.create();
+
+	/**
+	 * Aggregators that transform each data point on its own, so a query that uses them returns the same data points
+	 * whether or not it is split by time.
+	 */
+	private static final Set<String> POINTWISE_AGGREGATORS = ImmutableSet.of("div", "scale", "filter");
+
 	@SerializedName("cache_time")
 	private int cacheTime;
 
@@ -48,14 +67,7 @@ public class QueryBuilder extends AbstractQueryBuilder<QueryBuilder>
 	@Override
 	protected Gson buildGson()
 	{
-		GsonBuilder builder = new GsonBuilder();
-		builder.registerTypeAdapter(CustomAggregator.class, new CustomAggregatorSerializer());
-		builder.registerTypeAdapter(CustomGrouper.class, new CustomGrouperSerializer());
-		builder.registerTypeAdapter(ListMultimap.class, new ListMultiMapSerializer());
-		builder.registerTypeAdapter(QueryMetric.Order.class, new OrderSerializer());
-		builder.registerTypeAdapter(TimeZone.class, new TimeZoneSerializer());
-
-		return builder.create();
+		return GSON;
 	}
 
 	/**
@@ -130,6 +142,235 @@ public class QueryBuilder extends AbstractQueryBuilder<QueryBuilder>
 		return metrics;
 	}
 
+	/**
+	 * Returns one query for each metric of this query. Each query has the same time range, cache time and time zone as
+	 * this query. The metrics are shared, not copied.
+	 *
+	 * @return queries in the order of the metrics
+	 */
+	public List<QueryBuilder> splitByMetric()
+	{
+		List<QueryBuilder> queries = new ArrayList<>(metrics.size());
+		for (QueryMetric metric : metrics)
+		{
+			QueryBuilder query = copyWithoutMetrics();
+			query.metrics.add(metric);
+			queries.add(query);
+		}
+		return queries;
+	}
+
+	/**
+	 * Splits the time range of this query into consecutive queries of about the given size. The boundaries between the
+	 * queries are aligned to the sampling of the aggregators so no aggregation bucket is divided between two queries;
+	 * the size is rounded up to a multiple of the sampling if needed. Relative times are resolved against the current
+	 * time.
+	 * <br>
+	 * <br>
+	 * A query is returned whole, as the only element of the list, if splitting it could change the result. This is
+	 * the case when a metric has a limit, is grouped by time, or uses an aggregator that depends on data points outside
+	 * its bucket or on calendar months and years, such as rate, diff or a custom aggregator.
+	 *
+	 * @param shardMillis size of each query's time range in milliseconds
+	 * @return queries in time order, sharing the metrics of this query
+	 */
+	public List<QueryBuilder> splitByTime(long shardMillis)
+	{
+		return splitByTime(shardMillis, System.currentTimeMillis());
+	}
+
+	List<QueryBuilder> splitByTime(long shardMillis, long now)
+	{
+		checkArgument(shardMillis > 0, "shardMillis must be greater than 0");
+		validate();
+
+		long start = startAbsolute != null ? startAbsolute : startRelative.getTimeRelativeTo(now);
+		long end = now;
+		if (endAbsolute != null)
+			end = endAbsolute;
+		else if (endRelative != null)
+			end = endRelative.getTimeRelativeTo(now);
+
+		long[] alignment = getAlignment(start);
+		if (alignment == null)
+			return Collections.singletonList(withTimeRange(start, end));
+
+		long origin = alignment[0];
+		long period = alignment[1];
+		long step = ((shardMillis + period - 1) / period) * period;
+
+		List<QueryBuilder> queries = new ArrayList<>();
+		long shardStart = start;
+		long boundary = start + step - Math.floorMod(start - origin, step);
+		while (boundary <= end)
+		{
+			queries.add(withTimeRange(shardStart, boundary - 1));
+			shardStart = boundary;
+			boundary += step;
+		}
+		queries.add(withTimeRange(shardStart, end));
+		return queries;
+	}
+
+	/**
+	 * Returns the latest time at or before the given time at which this query can be split without dividing an
+	 * aggregation bucket, whatever the start time of the query. Returns null if the query cannot be split or if its
+	 * buckets are counted from the start time of the query, because the sampling aggregators are not aligned or
+	 * their aligned sampling is longer than one unit.
+	 *
+	 * @param time time in milliseconds
+	 * @return split time in milliseconds or null
+	 */
+	public Long getSplitTime(long time)
+	{
+		long[] alignment = getAlignment(time);
+		if (alignment == null || (alignment[2] != 0 && alignment[1] > 1))
+			return null;
+		return time - Math.floorMod(time - alignment[0], alignment[1]);
+	}
+
+	/**
+	 * Returns the origin and period that the boundaries of a split must follow and 1 if the origin is the start time,
+	 * or null if the query cannot be split.
+	 */
+	private long[] getAlignment(long start)
+	{
+		long origin = start;
+		long period = 1;
+		boolean sampled = false;
+		boolean fromStart = false;
+
+		for (QueryMetric metric : metrics)
+		{
+			if (metric.getLimit() != null)
+				return null;
+			for (Grouper grouper : metric.getGroupers())
+			{
+				if (grouper instanceof TimeGrouper)
+					return null;
+			}
+
+			for (Aggregator aggregator : metric.getAggregators())
+			{
+				if (aggregator instanceof CustomAggregator && POINTWISE_AGGREGATORS.contains(aggregator.getName()))
+					continue;
+				if (!(aggregator instanceof SamplingAggregator))
+					return null;
+
+				SamplingAggregator sampling = (SamplingAggregator) aggregator;
+				long samplingMillis = toMillis(sampling.getValue(), sampling.getUnit());
+				if (samplingMillis <= 0)
+					return null;
+
+				long samplingOrigin = start;
+				boolean samplingFromStart = false;
+				if (sampling.isAlignSampling())
+				{
+					// KairosDB truncates the start time to the sampling unit in the time zone of the query and counts
+					// the buckets from there. Days and weeks are not a fixed number of milliseconds in every time zone.
+					if (sampling.getUnit().compareTo(TimeUnit.HOURS) > 0)
+						return null;
+					long unitMillis = toMillis(1, sampling.getUnit());
+					long truncatedStart = start - Math.floorMod(start + getTimeZone().getOffset(start), unitMillis);
+					// Buckets of one unit fall on the same times whatever the start, longer ones depend on it
+					samplingFromStart = sampling.getValue() != 1;
+					samplingOrigin = samplingFromStart ? truncatedStart : Math.floorMod(truncatedStart, unitMillis);
+				}
+				else if ((sampling.isAlignStartTime() || sampling.isAlignEndTime()) && sampling.getStartTimeAlignmentStartTime() > 0)
+				{
+					samplingOrigin = sampling.getStartTimeAlignmentStartTime();
+				}
+				else
+				{
+					samplingFromStart = true;
+				}
+				fromStart |= samplingFromStart;
+
+				if (!sampled)
+				{
+					origin = samplingOrigin;
+					period = samplingMillis;
+					sampled = true;
+				}
+				else
+				{
+					if (Math.floorMod(samplingOrigin - origin, samplingMillis) != 0)
+						return null;
+					period = lcm(period, samplingMillis);
+				}
+			}
+		}
+
+		return new long[]{origin, period, fromStart ? 1 : 0};
+	}
+
+	private static long toMillis(long value, TimeUnit unit)
+	{
+		switch (unit)
+		{
+			case MILLISECONDS:
+				return value;
+			case SECONDS:
+				return value * 1000L;
+			case MINUTES:
+				return value * 60_000L;
+			case HOURS:
+				return value * 3_600_000L;
+			case DAYS:
+				return value * 86_400_000L;
+			case WEEKS:
+				return value * 604_800_000L;
+			default:
+				// Months and years vary in length
+				return 0;
+		}
+	}
+
+	private static long lcm(long a, long b)
+	{
+		long x = a;
+		long y = b;
+		while (y != 0)
+		{
+			long t = x % y;
+			x = y;
+			y = t;
+		}
+		return a / x * b;
+	}
+
+	/**
+	 * Returns a copy of this query over the given absolute time range. The copy has the same cache time and time zone
+	 * and shares the metrics of this query.
+	 *
+	 * @param start start time in milliseconds
+	 * @param end   end time in milliseconds, inclusive
+	 * @return copy of the query
+	 */
+	public QueryBuilder withTimeRange(long start, long end)
+	{
+		checkArgument(start <= end, "start must not be after end");
+		QueryBuilder query = copyWithoutMetrics();
+		query.startAbsolute = start;
+		query.endAbsolute = end;
+		query.startRelative = null;
+		query.endRelative = null;
+		query.metrics.addAll(metrics);
+		return query;
+	}
+
+	private QueryBuilder copyWithoutMetrics()
+	{
+		QueryBuilder query = new QueryBuilder();
+		query.startAbsolute = startAbsolute;
+		query.endAbsolute = endAbsolute;
+		query.startRelative = startRelative;
+		query.endRelative = endRelative;
+		query.cacheTime = cacheTime;
+		query.timeZone = timeZone;
+		return query;
+	}
+
 	/**
 	 * Returns the time zone. The default time zone is UTC.
 	 *
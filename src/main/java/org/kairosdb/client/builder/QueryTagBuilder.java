@@ -26,6 +26,10 @@ import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
  */
 public class QueryTagBuilder extends AbstractQueryBuilder<QueryTagBuilder>
 {
+	private static final Gson GSON = new GsonBuilder()
+			.registerTypeAdapter(ListMultimap.class, new ListMultiMapSerializer())
+			.create();
+
 	private List<QueryTagMetric> metrics = new ArrayList<QueryTagMetric>();
 
 	private QueryTagBuilder()
@@ -36,9 +40,7 @@ public class QueryTagBuilder extends AbstractQueryBuilder<QueryTagBuilder>
 	@Override
 	protected Gson buildGson()
 	{
-		GsonBuilder builder = new GsonBuilder();
-		builder.registerTypeAdapter(ListMultimap.class, new ListMultiMapSerializer());
-		return builder.create();
+		return GSON;
 	}
 
 	/**
@@ -18,7 +18,13 @@ import static org.kairosdb.client.util.Preconditions.checkState;
 
 public class RollupBuilder
 {
-    private final transient Gson mapper;
+    private static final Gson mapper = new GsonBuilder()
+            .registerTypeAdapter(CustomAggregator.class, new CustomAggregatorSerializer())
+            .registerTypeAdapter(CustomGrouper.class, new CustomGrouperSerializer())
+            .registerTypeAdapter(ListMultimap.class, new ListMultiMapSerializer())
+            .registerTypeAdapter(QueryMetric.Order.class, new OrderSerializer())
+            .registerTypeAdapter(TimeZone.class, new TimeZoneSerializer())
+            .create();
 
     @SuppressWarnings({"FieldCanBeLocal", "unused"})
     private final String name;
@@ -33,15 +39,6 @@ public class RollupBuilder
     {
         this.name = checkNotNullOrEmpty(name, "name cannot be null or empty");
         this.executionInterval = requireNonNull(executionInterval, "executionInterval cannot be null");
-
-        GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(CustomAggregator.class, new CustomAggregatorSerializer());
-        builder.registerTypeAdapter(CustomGrouper.class, new CustomGrouperSerializer());
-        builder.registerTypeAdapter(ListMultimap.class, new ListMultiMapSerializer());
-        builder.registerTypeAdapter(QueryMetric.Order.class, new OrderSerializer());
-        builder.registerTypeAdapter(TimeZone.class, new TimeZoneSerializer());
-
-        mapper = builder.create();
     }
 
     /**
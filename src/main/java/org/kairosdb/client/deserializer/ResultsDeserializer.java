@@ -5,6 +5,7 @@ import com.google.gson.reflect.TypeToken;
 import org.kairosdb.client.DataPointTypeRegistry;
 import org.kairosdb.client.builder.DataPoint;
 import org.kairosdb.client.response.GroupResult;
+import org.kairosdb.client.response.NumericSeries;
 import org.kairosdb.client.response.Result;
 import org.kairosdb.client.response.grouping.DefaultGroupResult;
 
@@ -62,6 +63,19 @@ public class ResultsDeserializer implements JsonDeserializer<Result>
 			checkState(dataPointValueClass != null, "type: " + type + " is not registered to a custom data type.");
 
 			JsonArray array = (JsonArray) json.getAsJsonObject().get("values");
+			if (dataPointValueClass.equals(Number.class))
+			{
+				// Numbers are stored as primitives rather than as one object per data point
+				NumericSeries.Builder series = NumericSeries.builder();
+				for (JsonElement element : array)
+				{
+					JsonArray pair = element.getAsJsonArray();
+					JsonElement value = pair.get(1);
+					series.add(pair.get(0).getAsLong(), value.isJsonNull() ? null : value.getAsNumber());
+				}
+				return new Result(name, tags, series.build(), groupResults);
+			}
+
 			for (JsonElement element : array)
 			{
 				JsonArray pair = element.getAsJsonArray();
@@ -0,0 +1,37 @@
+package org.kairosdb.client.instrumentation;
+
+/**
+ * Receives measurements of the requests made by a client. Implementations are called on the thread that made the
+ * request, after the response has been handled, so they must be thread-safe and should return quickly.
+ * <br>
+ * <br>
+ * All methods do nothing by default. {@link #NOOP} is used unless an instrumentation is set on the client;
+ * {@link HistogramInstrumentation} keeps latency histograms and totals per endpoint.
+ */
+public interface ClientInstrumentation
+{
+	ClientInstrumentation NOOP = new ClientInstrumentation()
+	{
+	};
+
+	/**
+	 * Called when an HTTP request has completed, whether it succeeded or failed.
+	 *
+	 * @param event measurements of the request
+	 */
+	default void requestCompleted(RequestEvent event)
+	{
+	}
+
+	/**
+	 * Called when metrics have been written by the Telnet client. The Telnet protocol has no responses so the time
+	 * is the time spent formatting the lines and writing them to the socket.
+	 *
+	 * @param dataPoints number of data points written
+	 * @param bytes      number of bytes written to the socket
+	 * @param nanos      time spent writing
+	 */
+	default void telnetMetricsWritten(int dataPoints, long bytes, long nanos)
+	{
+	}
+}
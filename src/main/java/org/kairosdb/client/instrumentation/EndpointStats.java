@@ -0,0 +1,141 @@
+package org.kairosdb.client.instrumentation;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of the requests made to one endpoint. Collected by {@link HistogramInstrumentation}.
+ */
+public class EndpointStats
+{
+	private final Histogram latency = new Histogram();
+	private final Histogram serializationTime = new Histogram();
+	private final Histogram networkTime = new Histogram();
+	private final Histogram requestSize = new Histogram();
+	private final LongAdder requestBytes = new LongAdder();
+	private final LongAdder requestBytesOnWire = new LongAdder();
+	private final LongAdder responseBytes = new LongAdder();
+	private final LongAdder dataPoints = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+	void record(RequestEvent event)
+	{
+		latency.record(event.getTotalNanos());
+		serializationTime.record(event.getSerializationNanos());
+		networkTime.record(event.getNetworkNanos());
+		requestSize.record(event.getRequestBytesOnWire());
+		requestBytes.add(event.getRequestBytes());
+		requestBytesOnWire.add(event.getRequestBytesOnWire());
+		responseBytes.add(event.getResponseBytes());
+		dataPoints.add(event.getDataPoints());
+		if (event.isFailed())
+		{
+			failures.increment();
+		}
+		if (event.getStatusCode() != -1)
+		{
+			statusCodes.computeIfAbsent(event.getStatusCode(), code -> new LongAdder()).increment();
+		}
+	}
+
+	/**
+	 * Returns the total time of the requests in nanoseconds.
+	 *
+	 * @return latency histogram
+	 */
+	public Histogram getLatency()
+	{
+		return latency;
+	}
+
+	/**
+	 * Returns the time spent serializing request bodies in nanoseconds.
+	 *
+	 * @return serialization time histogram
+	 */
+	public Histogram getSerializationTime()
+	{
+		return serializationTime;
+	}
+
+	/**
+	 * Returns the time spent sending requests and reading responses in nanoseconds.
+	 *
+	 * @return network time histogram
+	 */
+	public Histogram getNetworkTime()
+	{
+		return networkTime;
+	}
+
+	/**
+	 * Returns the size of the request bodies as sent, in bytes.
+	 *
+	 * @return request size histogram
+	 */
+	public Histogram getRequestSize()
+	{
+		return requestSize;
+	}
+
+	public long getRequestCount()
+	{
+		return latency.getCount();
+	}
+
+	public long getRequestBytes()
+	{
+		return requestBytes.sum();
+	}
+
+	public long getRequestBytesOnWire()
+	{
+		return requestBytesOnWire.sum();
+	}
+
+	public long getResponseBytes()
+	{
+		return responseBytes.sum();
+	}
+
+	public long getDataPoints()
+	{
+		return dataPoints.sum();
+	}
+
+	public long getFailures()
+	{
+		return failures.sum();
+	}
+
+	/**
+	 * Returns the number of responses received for each status code.
+	 *
+	 * @return count by status code
+	 */
+	public Map<Integer, Long> getStatusCodes()
+	{
+		ImmutableSortedMap.Builder<Integer, Long> builder = ImmutableSortedMap.naturalOrder();
+		statusCodes.forEach((code, count) -> builder.put(code, count.sum()));
+		return builder.build();
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("latency", latency)
+				.add("requestBytes", getRequestBytes())
+				.add("requestBytesOnWire", getRequestBytesOnWire())
+				.add("responseBytes", getResponseBytes())
+				.add("dataPoints", getDataPoints())
+				.add("failures", getFailures())
+				.add("statusCodes", getStatusCodes())
+				.toString();
+	}
+}
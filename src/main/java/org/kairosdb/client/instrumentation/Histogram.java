@@ -0,0 +1,166 @@
+package org.kairosdb.client.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+
+/**
+ * Lock-free histogram of non-negative long values, such as latencies in nanoseconds or payload sizes in bytes.
+ * <br>
+ * <br>
+ * Like an HDR histogram, values are counted in buckets whose width grows with the magnitude of the value: values
+ * below 128 are counted exactly and larger values are grouped into 64 buckets per power of two, so every recorded
+ * value is reported with a relative error of less than 1.6%. The histogram has a fixed size of about 30KB no matter
+ * how many values are recorded, and recording a value is a single atomic increment.
+ * <br>
+ * <br>
+ * Values can be recorded from any number of threads. Reads are not atomic with respect to concurrent writes, so a
+ * percentile read while values are recorded reflects some but not necessarily all of the concurrent writes.
+ */
+public class Histogram
+{
+	private static final int EXACT_BUCKETS = 128;
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// The highest bit of a positive long is bit 62, which gives 62 - SUB_BUCKET_BITS groups above the exact buckets
+	private static final int BUCKET_COUNT = EXACT_BUCKETS + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value value to record, must not be negative
+	 */
+	public void record(long value)
+	{
+		checkArgument(value >= 0, "value must not be negative");
+		counts.incrementAndGet(bucketIndex(value));
+		count.increment();
+		sum.add(value);
+
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value))
+		{
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 *
+	 * @return number of values
+	 */
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * Returns the sum of all recorded values.
+	 *
+	 * @return sum of the values
+	 */
+	public long getSum()
+	{
+		return sum.sum();
+	}
+
+	/**
+	 * Returns the largest recorded value.
+	 *
+	 * @return largest value or 0 if no value has been recorded
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the recorded values.
+	 *
+	 * @return mean or 0 if no value has been recorded
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+		return count == 0 ? 0 : (double) getSum() / count;
+	}
+
+	/**
+	 * Returns the value below which the given percentage of the recorded values fall. The value returned is the
+	 * highest value counted in the same bucket, but never more than the largest recorded value.
+	 *
+	 * @param percentile percentile between 0 and 100
+	 * @return value at the percentile or 0 if no value has been recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+		{
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= target)
+			{
+				return Math.min(highestValueInBucket(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int bucketIndex(long value)
+	{
+		if (value < EXACT_BUCKETS)
+		{
+			return (int) value;
+		}
+		// Keep the top 7 bits of the value, the leading one bit selects the bucket group
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+		return EXACT_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long highestValueInBucket(int index)
+	{
+		if (index < EXACT_BUCKETS)
+		{
+			return index;
+		}
+		int shift = (index - EXACT_BUCKETS) / SUB_BUCKETS + 1;
+		long top = (index - EXACT_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		// For the last bucket this overflows to Long.MIN_VALUE, minus one gives Long.MAX_VALUE
+		return ((top + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Histogram{" +
+				"count=" + getCount() +
+				", mean=" + getMean() +
+				", p50=" + getValueAtPercentile(50) +
+				", p99=" + getValueAtPercentile(99) +
+				", max=" + getMax() +
+				'}';
+	}
+}
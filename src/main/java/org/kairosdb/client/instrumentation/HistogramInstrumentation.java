@@ -0,0 +1,81 @@
+package org.kairosdb.client.instrumentation;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation that keeps latency and size histograms and totals for every endpoint. Recording does not take
+ * any locks so a single instance can be shared by all clients of an application.
+ * <pre>
+ *     HistogramInstrumentation instrumentation = new HistogramInstrumentation();
+ *     client.setInstrumentation(instrumentation);
+ *     ...
+ *     EndpointStats query = instrumentation.getEndpointStats("/api/v1/datapoints/query");
+ *     long p99 = query.getLatency().getValueAtPercentile(99);
+ * </pre>
+ */
+public class HistogramInstrumentation implements ClientInstrumentation
+{
+	private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+	private final Histogram telnetWriteTime = new Histogram();
+	private final LongAdder telnetDataPoints = new LongAdder();
+	private final LongAdder telnetBytes = new LongAdder();
+
+	@Override
+	public void requestCompleted(RequestEvent event)
+	{
+		endpoints.computeIfAbsent(event.getEndpoint(), endpoint -> new EndpointStats()).record(event);
+	}
+
+	@Override
+	public void telnetMetricsWritten(int dataPoints, long bytes, long nanos)
+	{
+		telnetWriteTime.record(nanos);
+		telnetDataPoints.add(dataPoints);
+		telnetBytes.add(bytes);
+	}
+
+	/**
+	 * Returns the measurements of an endpoint.
+	 *
+	 * @param endpoint endpoint path, for example /api/v1/datapoints
+	 * @return measurements or null if no request has been made to the endpoint
+	 */
+	public EndpointStats getEndpointStats(String endpoint)
+	{
+		return endpoints.get(endpoint);
+	}
+
+	/**
+	 * Returns the measurements of all endpoints that requests have been made to.
+	 *
+	 * @return measurements by endpoint path
+	 */
+	public Map<String, EndpointStats> getEndpointStats()
+	{
+		return ImmutableSortedMap.copyOf(endpoints);
+	}
+
+	/**
+	 * Returns the time spent writing metrics with the Telnet client in nanoseconds.
+	 *
+	 * @return write time histogram
+	 */
+	public Histogram getTelnetWriteTime()
+	{
+		return telnetWriteTime;
+	}
+
+	public long getTelnetDataPoints()
+	{
+		return telnetDataPoints.sum();
+	}
+
+	public long getTelnetBytes()
+	{
+		return telnetBytes.sum();
+	}
+}
@@ -0,0 +1,255 @@
+package org.kairosdb.client.instrumentation;
+
+import com.google.common.base.MoreObjects;
+
+import static org.kairosdb.client.util.Preconditions.checkNotNullOrEmpty;
+
+/**
+ * Describes a completed HTTP request made by the client.
+ * <br>
+ * <br>
+ * The request is made up of serializing the body, sending it and reading the response. For requests whose body is
+ * built in memory, such as queries, {@link #getSerializationNanos()} is the time spent creating the JSON. Pushed
+ * metrics are serialized while they are sent, so for those it is the time spent writing the body to the connection,
+ * including compression. {@link #getNetworkNanos()} is the remainder of the request.
+ */
+public class RequestEvent
+{
+	private final String endpoint;
+	private final String method;
+	private final int statusCode;
+	private final Throwable failure;
+	private final int dataPoints;
+	private final long requestBytes;
+	private final long requestBytesOnWire;
+	private final long responseBytes;
+	private final long serializationNanos;
+	private final long totalNanos;
+	private final int attempts;
+
+	private RequestEvent(Builder builder)
+	{
+		endpoint = builder.endpoint;
+		method = builder.method;
+		statusCode = builder.statusCode;
+		failure = builder.failure;
+		dataPoints = builder.dataPoints;
+		requestBytes = builder.requestBytes;
+		requestBytesOnWire = builder.requestBytesOnWire;
+		responseBytes = builder.responseBytes;
+		serializationNanos = builder.serializationNanos;
+		totalNanos = builder.totalNanos;
+		attempts = builder.attempts;
+	}
+
+	/**
+	 * Returns a builder for an event.
+	 *
+	 * @param endpoint path of the API endpoint without any ids, for example /api/v1/datapoints/query
+	 * @param method   HTTP method
+	 * @return event builder
+	 */
+	public static Builder builder(String endpoint, String method)
+	{
+		return new Builder(endpoint, method);
+	}
+
+	/**
+	 * Returns the path of the API endpoint. Ids that are part of the path, such as the id of a roll-up task or a
+	 * metric name, are not included.
+	 *
+	 * @return endpoint path
+	 */
+	public String getEndpoint()
+	{
+		return endpoint;
+	}
+
+	public String getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * Returns the HTTP status code of the response.
+	 *
+	 * @return status code or -1 if no response was received
+	 */
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	/**
+	 * Returns the exception the request failed with.
+	 *
+	 * @return exception or null if the request succeeded
+	 */
+	public Throwable getFailure()
+	{
+		return failure;
+	}
+
+	public boolean isFailed()
+	{
+		return failure != null;
+	}
+
+	/**
+	 * Returns the number of data points that were pushed.
+	 *
+	 * @return number of data points, 0 for requests that do not push data points
+	 */
+	public int getDataPoints()
+	{
+		return dataPoints;
+	}
+
+	/**
+	 * Returns the size of the request body before compression.
+	 *
+	 * @return number of bytes
+	 */
+	public long getRequestBytes()
+	{
+		return requestBytes;
+	}
+
+	/**
+	 * Returns the size of the request body as it was sent, after compression.
+	 *
+	 * @return number of bytes
+	 */
+	public long getRequestBytesOnWire()
+	{
+		return requestBytesOnWire;
+	}
+
+	/**
+	 * Returns the size of the response body that was read, after decompression.
+	 *
+	 * @return number of bytes
+	 */
+	public long getResponseBytes()
+	{
+		return responseBytes;
+	}
+
+	public long getSerializationNanos()
+	{
+		return serializationNanos;
+	}
+
+	public long getNetworkNanos()
+	{
+		return Math.max(0, totalNanos - serializationNanos);
+	}
+
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	/**
+	 * Returns the number of times the request was sent, including retries. A hedged request counts as one attempt.
+	 *
+	 * @return number of attempts
+	 */
+	public int getAttempts()
+	{
+		return attempts;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("endpoint", endpoint)
+				.add("method", method)
+				.add("statusCode", statusCode)
+				.add("failure", failure)
+				.add("dataPoints", dataPoints)
+				.add("requestBytes", requestBytes)
+				.add("requestBytesOnWire", requestBytesOnWire)
+				.add("responseBytes", responseBytes)
+				.add("serializationNanos", serializationNanos)
+				.add("totalNanos", totalNanos)
+				.add("attempts", attempts)
+				.toString();
+	}
+
+	public static class Builder
+	{
+		private final String endpoint;
+		private final String method;
+		private int statusCode = -1;
+		private Throwable failure;
+		private int dataPoints;
+		private long requestBytes;
+		private long requestBytesOnWire;
+		private long responseBytes;
+		private long serializationNanos;
+		private long totalNanos;
+		private int attempts = 1;
+
+		private Builder(String endpoint, String method)
+		{
+			this.endpoint = checkNotNullOrEmpty(endpoint, "endpoint cannot be null or empty");
+			this.method = checkNotNullOrEmpty(method, "method cannot be null or empty");
+		}
+
+		public Builder setStatusCode(int statusCode)
+		{
+			this.statusCode = statusCode;
+			return this;
+		}
+
+		public Builder setFailure(Throwable failure)
+		{
+			this.failure = failure;
+			return this;
+		}
+
+		public Builder setDataPoints(int dataPoints)
+		{
+			this.dataPoints = dataPoints;
+			return this;
+		}
+
+		public Builder setRequestBytes(long requestBytes, long requestBytesOnWire)
+		{
+			this.requestBytes = requestBytes;
+			this.requestBytesOnWire = requestBytesOnWire;
+			return this;
+		}
+
+		public Builder setResponseBytes(long responseBytes)
+		{
+			this.responseBytes = responseBytes;
+			return this;
+		}
+
+		public Builder setSerializationNanos(long serializationNanos)
+		{
+			this.serializationNanos = serializationNanos;
+			return this;
+		}
+
+		public Builder setTotalNanos(long totalNanos)
+		{
+			this.totalNanos = totalNanos;
+			return this;
+		}
+
+		public Builder setAttempts(int attempts)
+		{
+			this.attempts = attempts;
+			return this;
+		}
+
+		public RequestEvent build()
+		{
+			return new RequestEvent(this);
+		}
+	}
+}
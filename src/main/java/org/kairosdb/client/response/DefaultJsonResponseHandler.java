@@ -24,7 +24,10 @@ import static org.kairosdb.client.util.Exceptions.propagate;
 public class DefaultJsonResponseHandler<T> implements JsonResponseHandler
 {
 	private static final MediaType MEDIA_TYPE_JSON = MediaType.create("application", "json");
-	private final Set<Integer> successfulResponseCodes;
+	private static final Set<Integer> successfulResponseCodes = ImmutableSet.of(200, 204);
+
+	// Used by handlers created without a registry. It is never modified so its mapper can be shared.
+	static final DataPointTypeRegistry DEFAULT_TYPE_REGISTRY = new DataPointTypeRegistry();
 
 	private final JsonMapper mapper;
 	private final Type type;
@@ -32,13 +35,13 @@ public class DefaultJsonResponseHandler<T> implements JsonResponseHandler
 	@SuppressWarnings({"unused", "WeakerAccess"})
 	public DefaultJsonResponseHandler(Class<T> clazz)
 	{
-		this(clazz, new DataPointTypeRegistry());
+		this(clazz, DEFAULT_TYPE_REGISTRY);
 	}
 
 	@SuppressWarnings({"WeakerAccess", "unused"})
 	public DefaultJsonResponseHandler(Type type)
 	{
-		this(type, new DataPointTypeRegistry());
+		this(type, DEFAULT_TYPE_REGISTRY);
 	}
 
 	public DefaultJsonResponseHandler(Class<T> clazz, DataPointTypeRegistry typeRegistry)
@@ -48,12 +51,33 @@ public class DefaultJsonResponseHandler<T> implements JsonResponseHandler
 
 	public DefaultJsonResponseHandler(Type type, DataPointTypeRegistry typeRegistry)
 	{
-		requireNonNull(typeRegistry, "typeRegistry must not be null");
-		mapper = new JsonMapper(typeRegistry);
-		successfulResponseCodes = ImmutableSet.of(200, 204);
+		mapper = JsonMapper.getInstance(requireNonNull(typeRegistry, "typeRegistry must not be null"));
 		this.type = requireNonNull(type, "type must not be null");
 	}
 
+	/**
+	 * Returns the JSON mapper used to parse responses.
+	 *
+	 * @return JSON mapper
+	 */
+	protected JsonMapper getMapper()
+	{
+		return mapper;
+	}
+
+	/**
+	 * Parses the body of a successful response. Subclasses may override this to process the response while it is
+	 * being read instead of creating an object for the whole response.
+	 *
+	 * @param reader response body
+	 * @return parsed response
+	 * @throws IOException if the response cannot be read
+	 */
+	protected T readResponse(Reader reader) throws IOException
+	{
+		return mapper.fromJson(reader, type);
+	}
+
 	@Override
 	public Object handleException(HttpUriRequest request, Exception exception) throws RuntimeException
 	{
@@ -103,7 +127,7 @@ public class DefaultJsonResponseHandler<T> implements JsonResponseHandler
 			}
 			else
 			{
-				return mapper.fromJson(reader, type);
+				return readResponse(reader);
 			}
 		}
 		catch (IOException e)
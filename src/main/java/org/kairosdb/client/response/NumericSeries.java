@@ -0,0 +1,335 @@
+package org.kairosdb.client.response;
+
+import org.kairosdb.client.builder.DataPoint;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static org.kairosdb.client.util.Preconditions.checkArgument;
+import static org.kairosdb.client.util.Preconditions.checkState;
+
+/**
+ * Numeric data points of a query result stored as primitive arrays. The timestamps are kept in a <code>long[]</code>
+ * and the values in a <code>long[]</code> if every value is an integer or a <code>double[]</code> otherwise. This
+ * uses 16 bytes per data point instead of the 40 or more bytes of a {@link DataPoint} and its boxed value, and the
+ * arrays can be iterated without any allocation.
+ * <br>
+ * <br>
+ * Null values are supported. They are reported by {@link #isNull(int)} and stored as 0 or {@link Double#NaN}.
+ */
+public class NumericSeries
+{
+	private final long[] timestamps;
+	private final long[] longValues;
+	private final double[] doubleValues;
+	private final BitSet nulls;
+
+	private NumericSeries(long[] timestamps, long[] longValues, double[] doubleValues, BitSet nulls)
+	{
+		this.timestamps = timestamps;
+		this.longValues = longValues;
+		this.doubleValues = doubleValues;
+		this.nulls = nulls;
+	}
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	/**
+	 * Returns the number of data points in the series.
+	 *
+	 * @return number of data points
+	 */
+	public int size()
+	{
+		return timestamps.length;
+	}
+
+	/**
+	 * Returns true if every value in the series is an integer and the values are stored as longs.
+	 *
+	 * @return true if the values are stored as longs, false if they are stored as doubles
+	 */
+	public boolean isIntegral()
+	{
+		return longValues != null;
+	}
+
+	public long getTimestamp(int index)
+	{
+		return timestamps[index];
+	}
+
+	public boolean isNull(int index)
+	{
+		return nulls != null && nulls.get(index);
+	}
+
+	/**
+	 * Returns the value at the given index as a long. Floating point values are truncated.
+	 *
+	 * @param index index of the data point
+	 * @return value of the data point
+	 */
+	public long getLong(int index)
+	{
+		return longValues != null ? longValues[index] : (long) doubleValues[index];
+	}
+
+	/**
+	 * Returns the value at the given index as a double.
+	 *
+	 * @param index index of the data point
+	 * @return value of the data point
+	 */
+	public double getDouble(int index)
+	{
+		return longValues != null ? (double) longValues[index] : doubleValues[index];
+	}
+
+	/**
+	 * Returns the timestamps of the data points. The array is the storage of the series and must not be modified.
+	 *
+	 * @return timestamps in the order returned by the server
+	 */
+	public long[] getTimestamps()
+	{
+		return timestamps;
+	}
+
+	/**
+	 * Returns the values of an integral series. The array is the storage of the series and must not be modified.
+	 *
+	 * @return values of the data points
+	 * @throws IllegalStateException if the series contains floating point values
+	 */
+	public long[] getLongValues()
+	{
+		checkState(longValues != null, "Series contains floating point values");
+		return longValues;
+	}
+
+	/**
+	 * Returns the values of a floating point series. The array is the storage of the series and must not be modified.
+	 *
+	 * @return values of the data points
+	 * @throws IllegalStateException if the series is integral
+	 */
+	public double[] getDoubleValues()
+	{
+		checkState(doubleValues != null, "Series contains integer values, use getLongValues()");
+		return doubleValues;
+	}
+
+	/**
+	 * Returns a read-only view of the series as data points. Each data point is created when it is accessed; integer
+	 * values are returned as Long and floating point values as Double.
+	 *
+	 * @return data points of the series
+	 */
+	public List<DataPoint> asDataPoints()
+	{
+		return new DataPointView();
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		return asDataPoints().equals(((NumericSeries) o).asDataPoints());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return asDataPoints().hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return asDataPoints().toString();
+	}
+
+	private class DataPointView extends AbstractList<DataPoint> implements RandomAccess
+	{
+		@Override
+		public DataPoint get(int index)
+		{
+			Object value;
+			if (isNull(index))
+			{
+				value = null;
+			}
+			else if (longValues != null)
+			{
+				value = longValues[index];
+			}
+			else
+			{
+				value = doubleValues[index];
+			}
+			return new DataPoint(timestamps[index], value);
+		}
+
+		@Override
+		public int size()
+		{
+			return timestamps.length;
+		}
+	}
+
+	/**
+	 * Builds a series one data point at a time. The values are stored as longs until the first floating point
+	 * value is added, at which point all values are converted to doubles.
+	 */
+	public static class Builder
+	{
+		private static final int INITIAL_CAPACITY = 16;
+
+		private long[] timestamps = new long[INITIAL_CAPACITY];
+		private long[] longValues = new long[INITIAL_CAPACITY];
+		private double[] doubleValues;
+		private BitSet nulls;
+		private int size;
+
+		private Builder()
+		{
+		}
+
+		public Builder add(long timestamp, long value)
+		{
+			int index = nextIndex(timestamp);
+			if (longValues != null)
+			{
+				longValues[index] = value;
+			}
+			else
+			{
+				doubleValues[index] = value;
+			}
+			return this;
+		}
+
+		public Builder add(long timestamp, double value)
+		{
+			if (longValues != null)
+			{
+				convertToDoubles();
+			}
+			doubleValues[nextIndex(timestamp)] = value;
+			return this;
+		}
+
+		/**
+		 * Adds a data point whose value is any kind of number. Values that are not Long, Integer, Short, Byte, Double
+		 * or Float are converted using their string representation, so a value that is written as an integer is
+		 * stored as a long.
+		 *
+		 * @param timestamp data point timestamp
+		 * @param value     data point value, may be null
+		 * @return this builder
+		 */
+		public Builder add(long timestamp, Number value)
+		{
+			if (value == null)
+			{
+				return addNull(timestamp);
+			}
+			if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			{
+				return add(timestamp, value.longValue());
+			}
+			if (value instanceof Double || value instanceof Float)
+			{
+				return add(timestamp, value.doubleValue());
+			}
+
+			String text = value.toString();
+			if (isInteger(text))
+			{
+				try
+				{
+					return add(timestamp, Long.parseLong(text));
+				}
+				catch (NumberFormatException ignored)
+				{
+					// Too large for a long
+				}
+			}
+			return add(timestamp, Double.parseDouble(text));
+		}
+
+		public Builder addNull(long timestamp)
+		{
+			int index = nextIndex(timestamp);
+			if (doubleValues != null)
+			{
+				doubleValues[index] = Double.NaN;
+			}
+			if (nulls == null)
+			{
+				nulls = new BitSet();
+			}
+			nulls.set(index);
+			return this;
+		}
+
+		public NumericSeries build()
+		{
+			return new NumericSeries(
+					Arrays.copyOf(timestamps, size),
+					longValues != null ? Arrays.copyOf(longValues, size) : null,
+					doubleValues != null ? Arrays.copyOf(doubleValues, size) : null,
+					nulls != null ? (BitSet) nulls.clone() : null);
+		}
+
+		private int nextIndex(long timestamp)
+		{
+			checkArgument(size < Integer.MAX_VALUE - 8, "Series is too large");
+			if (size == timestamps.length)
+			{
+				int capacity = (int) Math.min((long) size * 2, Integer.MAX_VALUE - 8);
+				timestamps = Arrays.copyOf(timestamps, capacity);
+				if (longValues != null)
+				{
+					longValues = Arrays.copyOf(longValues, capacity);
+				}
+				else
+				{
+					doubleValues = Arrays.copyOf(doubleValues, capacity);
+				}
+			}
+			timestamps[size] = timestamp;
+			return size++;
+		}
+
+		private void convertToDoubles()
+		{
+			doubleValues = new double[longValues.length];
+			for (int i = 0; i < size; i++)
+			{
+				doubleValues[i] = nulls != null && nulls.get(i) ? Double.NaN : longValues[i];
+			}
+			longValues = null;
+		}
+
+		private static boolean isInteger(String value)
+		{
+			for (int i = 0; i < value.length(); i++)
+			{
+				char c = value.charAt(i);
+				if (c == '.' || c == 'e' || c == 'E')
+					return false;
+			}
+			return true;
+		}
+	}
+}
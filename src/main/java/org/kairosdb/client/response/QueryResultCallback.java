@@ -0,0 +1,78 @@
+package org.kairosdb.client.response;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives the results of a query one piece at a time as the response is read by a {@link StreamingQueryHandler}.
+ * <br>
+ * <br>
+ * For every result, {@link #startResult} is called with the name, tags and group-by information before any of its
+ * data points are delivered. Numeric data points are passed as primitives; the default implementations of the
+ * primitive methods box the value and call {@link #dataPoint(long, Object)}.
+ */
+public interface QueryResultCallback
+{
+	/**
+	 * Called when a new query of the response begins. Queries are delivered in the order of the metrics in the
+	 * query builder.
+	 */
+	default void startQuery()
+	{
+	}
+
+	/**
+	 * Called when a new result begins.
+	 *
+	 * @param name         metric name
+	 * @param tags         tags of the data points in the result
+	 * @param groupResults how the data points of the result were grouped
+	 */
+	void startResult(String name, Map<String, List<String>> tags, List<GroupResult> groupResults);
+
+	/**
+	 * Called for every data point of the current result whose value is not a number.
+	 *
+	 * @param timestamp data point timestamp
+	 * @param value     data point value
+	 */
+	void dataPoint(long timestamp, Object value);
+
+	/**
+	 * Called for every data point of the current result whose value is an integer.
+	 *
+	 * @param timestamp data point timestamp
+	 * @param value     data point value
+	 */
+	default void dataPoint(long timestamp, long value)
+	{
+		dataPoint(timestamp, (Object) value);
+	}
+
+	/**
+	 * Called for every data point of the current result whose value is a floating point number.
+	 *
+	 * @param timestamp data point timestamp
+	 * @param value     data point value
+	 */
+	default void dataPoint(long timestamp, double value)
+	{
+		dataPoint(timestamp, (Object) value);
+	}
+
+	/**
+	 * Called after the last data point of the current result.
+	 */
+	default void endResult()
+	{
+	}
+
+	/**
+	 * Called after the last result of the current query.
+	 *
+	 * @param sampleSize number of data points returned by the query prior to aggregation
+	 */
+	default void endQuery(long sampleSize)
+	{
+	}
+}
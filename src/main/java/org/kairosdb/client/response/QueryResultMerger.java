@@ -0,0 +1,192 @@
+package org.kairosdb.client.response;
+
+import org.kairosdb.client.builder.DataPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Combines the results of the same metric queried over consecutive time ranges into a single result, as if the metric
+ * had been queried over the whole range at once.
+ * <br>
+ * <br>
+ * Results of the different time ranges are matched by metric name and group-by values. The data points of matching
+ * results are concatenated in the order the query results are given and their tags are combined. Results without data
+ * points are dropped, unless no time range returned any data points.
+ * <br>
+ * <br>
+ * {@link #slice(QueryResult, long, long)} does the opposite and keeps only the data points of a time range.
+ */
+public class QueryResultMerger
+{
+	private QueryResultMerger()
+	{
+	}
+
+	/**
+	 * Merges the results of one metric queried over consecutive time ranges.
+	 *
+	 * @param queryResults results of each time range, in the order their data points are returned
+	 * @return merged result
+	 */
+	public static QueryResult merge(List<QueryResult> queryResults)
+	{
+		requireNonNull(queryResults, "queryResults cannot be null");
+		if (queryResults.size() == 1)
+			return queryResults.get(0);
+
+		Map<List<Object>, List<Result>> groups = new LinkedHashMap<>();
+		Result empty = null;
+		long sampleSize = 0;
+		for (QueryResult queryResult : queryResults)
+		{
+			sampleSize += queryResult.getSampleSize();
+			if (queryResult.getResults() == null)
+				continue;
+
+			for (Result result : queryResult.getResults())
+			{
+				if (result.getDataPoints().isEmpty())
+				{
+					if (empty == null)
+						empty = result;
+					continue;
+				}
+
+				List<Object> key = Arrays.asList(result.getName(), result.getGroupResults());
+				groups.computeIfAbsent(key, k -> new ArrayList<>()).add(result);
+			}
+		}
+
+		List<Result> results = new ArrayList<>(groups.size());
+		for (List<Result> group : groups.values())
+		{
+			results.add(mergeResults(group));
+		}
+		if (results.isEmpty() && empty != null)
+			results.add(empty);
+
+		return new QueryResult(results, sampleSize);
+	}
+
+	/**
+	 * Returns a copy of the query result with only the data points whose timestamp is at or after the start and before
+	 * the end. The sample size is reduced in proportion to the data points removed.
+	 *
+	 * @param queryResult result to slice
+	 * @param start       start of the range in milliseconds, inclusive
+	 * @param end         end of the range in milliseconds, exclusive
+	 * @return sliced result
+	 */
+	public static QueryResult slice(QueryResult queryResult, long start, long end)
+	{
+		requireNonNull(queryResult, "queryResult cannot be null");
+		if (queryResult.getResults() == null)
+			return queryResult;
+
+		List<Result> results = new ArrayList<>(queryResult.getResults().size());
+		long total = 0;
+		long kept = 0;
+		for (Result result : queryResult.getResults())
+		{
+			NumericSeries series = result.getNumericSeries();
+			Result slice;
+			if (series != null)
+			{
+				NumericSeries.Builder builder = NumericSeries.builder();
+				for (int i = 0; i < series.size(); i++)
+				{
+					long timestamp = series.getTimestamp(i);
+					if (timestamp < start || timestamp >= end)
+						continue;
+					if (series.isNull(i))
+						builder.addNull(timestamp);
+					else if (series.isIntegral())
+						builder.add(timestamp, series.getLong(i));
+					else
+						builder.add(timestamp, series.getDouble(i));
+				}
+				NumericSeries sliced = builder.build();
+				total += series.size();
+				kept += sliced.size();
+				slice = new Result(result.getName(), result.getTags(), sliced, result.getGroupResults());
+			}
+			else
+			{
+				List<DataPoint> dataPoints = new ArrayList<>();
+				for (DataPoint dataPoint : result.getDataPoints())
+				{
+					if (dataPoint.getTimestamp() >= start && dataPoint.getTimestamp() < end)
+						dataPoints.add(dataPoint);
+				}
+				total += result.getDataPoints().size();
+				kept += dataPoints.size();
+				slice = new Result(result.getName(), result.getTags(), dataPoints, result.getGroupResults());
+			}
+			results.add(slice);
+		}
+
+		long sampleSize = total == 0 ? 0 : Math.round((double) queryResult.getSampleSize() * kept / total);
+		return new QueryResult(results, sampleSize);
+	}
+
+	private static Result mergeResults(List<Result> results)
+	{
+		Result first = results.get(0);
+		if (results.size() == 1)
+			return first;
+
+		Map<String, Set<String>> tagValues = new LinkedHashMap<>();
+		boolean numeric = true;
+		for (Result result : results)
+		{
+			for (Map.Entry<String, List<String>> tag : result.getTags().entrySet())
+			{
+				tagValues.computeIfAbsent(tag.getKey(), k -> new LinkedHashSet<>()).addAll(tag.getValue());
+			}
+			numeric &= result.getNumericSeries() != null;
+		}
+
+		Map<String, List<String>> tags = new LinkedHashMap<>();
+		for (Map.Entry<String, Set<String>> tag : tagValues.entrySet())
+		{
+			tags.put(tag.getKey(), new ArrayList<>(tag.getValue()));
+		}
+
+		if (numeric)
+			return new Result(first.getName(), tags, mergeSeries(results), first.getGroupResults());
+
+		List<DataPoint> dataPoints = new ArrayList<>();
+		for (Result result : results)
+		{
+			dataPoints.addAll(result.getDataPoints());
+		}
+		return new Result(first.getName(), tags, dataPoints, first.getGroupResults());
+	}
+
+	private static NumericSeries mergeSeries(List<Result> results)
+	{
+		NumericSeries.Builder builder = NumericSeries.builder();
+		for (Result result : results)
+		{
+			NumericSeries series = result.getNumericSeries();
+			for (int i = 0; i < series.size(); i++)
+			{
+				if (series.isNull(i))
+					builder.addNull(series.getTimestamp(i));
+				else if (series.isIntegral())
+					builder.add(series.getTimestamp(i), series.getLong(i));
+				else
+					builder.add(series.getTimestamp(i), series.getDouble(i));
+			}
+		}
+		return builder.build();
+	}
+}
@@ -1,6 +1,6 @@
 package org.kairosdb.client.response;
 
-import org.apache.commons.lang3.NotImplementedException;
+import com.google.common.io.CountingInputStream;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 
@@ -10,6 +10,7 @@ import java.io.InputStream;
 public class ResponseHelper
 {
 	private final HttpResponse response;
+	private CountingInputStream inputStream;
 
 	public ResponseHelper(HttpResponse response)
 	{
@@ -50,15 +51,25 @@ public class ResponseHelper
 		return builder.build();
 	}*/
 
+	/**
+	 * Returns the number of bytes read from the stream returned by {@link #getInputStream()}. If the response was
+	 * compressed this is the size after decompression.
+	 *
+	 * @return number of bytes read
+	 */
 	public long getBytesRead()
 	{
-		throw new NotImplementedException();
+		return inputStream != null ? inputStream.getCount() : 0;
 	}
 
 	public InputStream getInputStream() throws IOException
 	{
-		if (response.getEntity() != null)
-			return response.getEntity().getContent();
-		return null;
+		if (inputStream == null)
+		{
+			if (response.getEntity() == null)
+				return null;
+			inputStream = new CountingInputStream(response.getEntity().getContent());
+		}
+		return inputStream;
 	}
 }
@@ -23,8 +23,14 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * Query Results. This is the results of a single query.
+ * <br>
+ * <br>
+ * Numeric results are stored as a {@link NumericSeries}, which is available from {@link #getNumericSeries()}.
+ * {@link #getDataPoints()} then returns a view that creates the data points as they are accessed.
  */
 public class Result
 {
@@ -37,6 +43,8 @@ public class Result
 	@SerializedName("group_by")
 	private List<GroupResult> groupResults;
 
+	private transient NumericSeries numericSeries;
+
 	public Result(String name,
 	               Map<String, List<String>> tags,
 	               List<DataPoint> dataPoints,
@@ -48,6 +56,17 @@ public class Result
 		this.dataPoints = dataPoints;
 	}
 
+	public Result(String name,
+	              Map<String, List<String>> tags,
+	              NumericSeries numericSeries,
+	              List<GroupResult> groupResults)
+	{
+		this.name = name;
+		this.tags = tags;
+		this.groupResults = groupResults;
+		this.numericSeries = requireNonNull(numericSeries, "numericSeries cannot be null");
+	}
+
 	public String getName()
 	{
 		return name;
@@ -55,9 +74,23 @@ public class Result
 
 	public List<DataPoint> getDataPoints()
 	{
+		if (numericSeries != null)
+		{
+			return numericSeries.asDataPoints();
+		}
 		return dataPoints != null ? dataPoints : Collections.EMPTY_LIST;
 	}
 
+	/**
+	 * Returns the data points of a numeric result as primitive arrays.
+	 *
+	 * @return numeric data points or null if the result is not numeric
+	 */
+	public NumericSeries getNumericSeries()
+	{
+		return numericSeries;
+	}
+
 	public Map<String, List<String>> getTags()
 	{
 		return tags != null ? tags : Collections.emptyMap();
@@ -79,7 +112,7 @@ public class Result
 
 		if (!name.equals(result.name)) return false;
 		if (!tags.equals(result.tags)) return false;
-		if (!dataPoints.equals(result.dataPoints)) return false;
+		if (!getDataPoints().equals(result.getDataPoints())) return false;
 		return groupResults.equals(result.groupResults);
 
 	}
@@ -89,7 +122,7 @@ public class Result
 	{
 		int result = name.hashCode();
 		result = 31 * result + tags.hashCode();
-		result = 31 * result + dataPoints.hashCode();
+		result = 31 * result + getDataPoints().hashCode();
 		result = 31 * result + groupResults.hashCode();
 		return result;
 	}
@@ -100,7 +133,7 @@ public class Result
 		return MoreObjects.toStringHelper(this)
 				.add("name", name)
 				.add("tags", tags)
-				.add("dataPoints", dataPoints)
+				.add("dataPoints", getDataPoints())
 				.add("groupResults", groupResults)
 				.toString();
 	}
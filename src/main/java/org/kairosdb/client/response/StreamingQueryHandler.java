@@ -0,0 +1,387 @@
+package org.kairosdb.client.response;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.kairosdb.client.DataPointTypeRegistry;
+import org.kairosdb.client.JsonMapper;
+import org.kairosdb.client.response.grouping.DefaultGroupResult;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+import static org.kairosdb.client.util.Preconditions.checkState;
+
+/**
+ * Response handler that reads a query response as a stream and passes each result and data point to a
+ * {@link QueryResultCallback} as soon as it has been read. Unlike {@link DefaultJsonResponseHandler}, neither the
+ * response nor the data points of a result are ever held in memory, so responses of any size can be processed.
+ * <br>
+ * <br>
+ * The handler is passed to {@link org.kairosdb.client.Client#query(org.kairosdb.client.builder.QueryBuilder, JsonResponseHandler)}:
+ * <pre>
+ *     client.query(builder, new StreamingQueryHandler(callback, client.getTypeRegistry()));
+ * </pre>
+ * KairosDB writes the name, group-by and tags of a result before its values. Should the values arrive before any of
+ * them they are kept until the rest of the result has been read, so the callback always receives the complete
+ * result before the data points.
+ */
+public class StreamingQueryHandler extends DefaultJsonResponseHandler<Void>
+{
+	private static final Type TAGS_TYPE = new TypeToken<Map<String, List<String>>>(){}.getType();
+	private static final Type GROUP_RESULTS_TYPE = new TypeToken<List<GroupResult>>(){}.getType();
+
+	private final QueryResultCallback callback;
+	private final DataPointTypeRegistry typeRegistry;
+
+	@SuppressWarnings("unused")
+	public StreamingQueryHandler(QueryResultCallback callback)
+	{
+		this(callback, DEFAULT_TYPE_REGISTRY);
+	}
+
+	public StreamingQueryHandler(QueryResultCallback callback, DataPointTypeRegistry typeRegistry)
+	{
+		super(Void.class, typeRegistry);
+		this.callback = requireNonNull(callback, "callback must not be null");
+		this.typeRegistry = typeRegistry;
+	}
+
+	@Override
+	protected Void readResponse(Reader in) throws IOException
+	{
+		JsonReader reader = new SyntaxCheckingReader(in);
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			if (reader.nextName().equals("queries"))
+			{
+				readQueries(reader);
+			}
+			else
+			{
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return null;
+	}
+
+	private void readQueries(JsonReader reader) throws IOException
+	{
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			callback.startQuery();
+			long sampleSize = 0;
+
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				switch (reader.nextName())
+				{
+					case "sample_size":
+						sampleSize = reader.nextLong();
+						break;
+					case "results":
+						readResults(reader);
+						break;
+					default:
+						reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			callback.endQuery(sampleSize);
+		}
+		reader.endArray();
+	}
+
+	private void readResults(JsonReader reader) throws IOException
+	{
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			readResult(reader);
+		}
+		reader.endArray();
+	}
+
+	private void readResult(JsonReader reader) throws IOException
+	{
+		JsonMapper mapper = getMapper();
+		String name = null;
+		Map<String, List<String>> tags = null;
+		List<GroupResult> groupResults = null;
+		String bufferedValues = null;
+		boolean started = false;
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "name":
+					name = reader.nextString();
+					break;
+				case "tags":
+					tags = mapper.fromJson(reader, TAGS_TYPE);
+					break;
+				case "group_by":
+					groupResults = mapper.fromJson(reader, GROUP_RESULTS_TYPE);
+					break;
+				case "values":
+					if (name != null && tags != null && groupResults != null)
+					{
+						startResult(name, tags, groupResults);
+						started = true;
+						readValues(reader, getValueClass(groupResults));
+					}
+					else
+					{
+						// Values arrived before the rest of the result, keep them until it has been read
+						bufferedValues = JsonParser.parseReader(reader).toString();
+					}
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (!started)
+		{
+			checkState(bufferedValues == null || groupResults != null, "Missing group_by, the values of " + name + " cannot be typed");
+			startResult(name, tags, groupResults);
+			if (bufferedValues != null)
+			{
+				readValues(new JsonReader(new StringReader(bufferedValues)), getValueClass(groupResults));
+			}
+		}
+		callback.endResult();
+	}
+
+	private void startResult(String name, Map<String, List<String>> tags, List<GroupResult> groupResults)
+	{
+		checkState(name != null, "Missing name");
+		callback.startResult(name,
+				tags != null ? tags : Collections.emptyMap(),
+				groupResults != null ? groupResults : Collections.emptyList());
+	}
+
+	private Class<?> getValueClass(List<GroupResult> groupResults)
+	{
+		String type = null;
+		for (GroupResult groupResult : groupResults)
+		{
+			if (groupResult.getName().equals("type"))
+			{
+				type = ((DefaultGroupResult) groupResult).getType();
+			}
+		}
+		checkState(type != null, "Missing type");
+
+		Class<?> dataPointValueClass = typeRegistry.getDataPointValueClass(type);
+		checkState(dataPointValueClass != null, "type: " + type + " is not registered to a custom data type.");
+		return dataPointValueClass;
+	}
+
+	private void readValues(JsonReader reader, Class<?> valueClass) throws IOException
+	{
+		boolean numeric = valueClass.equals(Number.class);
+
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			reader.beginArray();
+			long timestamp = reader.nextLong();
+			if (numeric)
+			{
+				readNumber(reader, timestamp);
+			}
+			else
+			{
+				callback.dataPoint(timestamp, getMapper().fromJson(reader, valueClass));
+			}
+			reader.endArray();
+		}
+		reader.endArray();
+	}
+
+	private void readNumber(JsonReader reader, long timestamp) throws IOException
+	{
+		if (reader.peek() == JsonToken.NULL)
+		{
+			reader.nextNull();
+			callback.dataPoint(timestamp, null);
+			return;
+		}
+
+		String value = reader.nextString();
+		if (isInteger(value))
+		{
+			long longValue;
+			try
+			{
+				longValue = Long.parseLong(value);
+			}
+			catch (NumberFormatException e)
+			{
+				// Too large for a long
+				callback.dataPoint(timestamp, parseDouble(value));
+				return;
+			}
+			callback.dataPoint(timestamp, longValue);
+			return;
+		}
+		callback.dataPoint(timestamp, parseDouble(value));
+	}
+
+	private static double parseDouble(String value)
+	{
+		try
+		{
+			return Double.parseDouble(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new JsonSyntaxException("Invalid data point value: " + value, e);
+		}
+	}
+
+	private static boolean isInteger(String value)
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if (c == '.' || c == 'e' || c == 'E')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reports a response that does not have the expected structure as a {@link JsonSyntaxException}, like Gson does.
+	 * Exceptions of the callback pass through unchanged.
+	 */
+	private static class SyntaxCheckingReader extends JsonReader
+	{
+		private SyntaxCheckingReader(Reader in)
+		{
+			super(in);
+		}
+
+		@Override
+		public void beginArray() throws IOException
+		{
+			try
+			{
+				super.beginArray();
+			}
+			catch (IllegalStateException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		@Override
+		public void endArray() throws IOException
+		{
+			try
+			{
+				super.endArray();
+			}
+			catch (IllegalStateException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		@Override
+		public void beginObject() throws IOException
+		{
+			try
+			{
+				super.beginObject();
+			}
+			catch (IllegalStateException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		@Override
+		public void endObject() throws IOException
+		{
+			try
+			{
+				super.endObject();
+			}
+			catch (IllegalStateException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		@Override
+		public String nextName() throws IOException
+		{
+			try
+			{
+				return super.nextName();
+			}
+			catch (IllegalStateException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		@Override
+		public String nextString() throws IOException
+		{
+			try
+			{
+				return super.nextString();
+			}
+			catch (IllegalStateException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		@Override
+		public long nextLong() throws IOException
+		{
+			try
+			{
+				return super.nextLong();
+			}
+			catch (IllegalStateException | NumberFormatException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		@Override
+		public void nextNull() throws IOException
+		{
+			try
+			{
+				super.nextNull();
+			}
+			catch (IllegalStateException e)
+			{
+				throw new JsonSyntaxException(e);
+			}
+		}
+	}
+}
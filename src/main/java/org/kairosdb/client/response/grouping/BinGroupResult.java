@@ -1,5 +1,6 @@
 package org.kairosdb.client.response.grouping;
 
+import com.google.common.base.MoreObjects;
 import com.google.gson.annotations.SerializedName;
 import org.kairosdb.client.response.GroupResult;
 
@@ -46,4 +47,35 @@ public class BinGroupResult extends GroupResult
 	{
 		return group.get("bin_number");
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (!(o instanceof BinGroupResult)) return false;
+		if (!super.equals(o)) return false;
+
+		BinGroupResult that = (BinGroupResult) o;
+
+		if (!bins.equals(that.bins)) return false;
+		return group.equals(that.group);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = super.hashCode();
+		result = 31 * result + bins.hashCode();
+		result = 31 * result + group.hashCode();
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("bins", bins)
+				.add("group", group)
+				.toString();
+	}
 }
\ No newline at end of file
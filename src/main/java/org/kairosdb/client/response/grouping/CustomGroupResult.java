@@ -1,5 +1,6 @@
 package org.kairosdb.client.response.grouping;
 
+import com.google.common.base.MoreObjects;
 import org.kairosdb.client.response.GroupResult;
 
 import java.util.Map;
@@ -18,4 +19,32 @@ public class CustomGroupResult extends GroupResult
 	{
 		return properties;
 	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (!(o instanceof CustomGroupResult)) return false;
+		if (!super.equals(o)) return false;
+
+		CustomGroupResult that = (CustomGroupResult) o;
+
+		return properties.equals(that.properties);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = super.hashCode();
+		result = 31 * result + properties.hashCode();
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("properties", properties)
+				.toString();
+	}
 }
@@ -0,0 +1,109 @@
+package org.kairosdb.client.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.kairosdb.client.builder.Metric;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Used by the JSON parser to serialize a Metric. Long and double values are written straight from the primitive
+ * arrays of the metric without creating a DataPoint or boxing the value.
+ */
+public class MetricSerializer implements TypeAdapterFactory
+{
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+	{
+		if (!Metric.class.isAssignableFrom(type.getRawType()))
+		{
+			return null;
+		}
+		return (TypeAdapter<T>) new MetricAdapter(gson);
+	}
+
+	private static class MetricAdapter extends TypeAdapter<Metric>
+	{
+		private final Gson gson;
+
+		private MetricAdapter(Gson gson)
+		{
+			this.gson = gson;
+		}
+
+		@Override
+		public void write(JsonWriter out, Metric metric) throws IOException
+		{
+			if (metric == null)
+			{
+				out.nullValue();
+				return;
+			}
+
+			out.beginObject();
+			out.name("name").value(metric.getName());
+
+			out.name("tags").beginObject();
+			for (Map.Entry<String, String> tag : metric.getTags().entrySet())
+			{
+				out.name(tag.getKey()).value(tag.getValue());
+			}
+			out.endObject();
+
+			if (metric.getType() != null)
+			{
+				out.name("type").value(metric.getType());
+			}
+			out.name("ttl").value(metric.getTtl());
+
+			out.name("datapoints").beginArray();
+			int count = metric.getDataPointCount();
+			for (int i = 0; i < count; i++)
+			{
+				out.beginArray();
+				out.value(metric.getTimestamp(i));
+				if (metric.isLongValue(i))
+				{
+					out.value(metric.getLongValue(i));
+				}
+				else if (metric.isDoubleValue(i))
+				{
+					out.value(metric.getDoubleValue(i));
+				}
+				else
+				{
+					writeObject(out, metric.getValue(i));
+				}
+				out.endArray();
+			}
+			out.endArray();
+
+			out.endObject();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void writeObject(JsonWriter out, Object value) throws IOException
+		{
+			if (value == null)
+			{
+				out.nullValue();
+			}
+			else
+			{
+				((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(out, value);
+			}
+		}
+
+		@Override
+		public Metric read(JsonReader in)
+		{
+			throw new UnsupportedOperationException("Metrics cannot be deserialized");
+		}
+	}
+}
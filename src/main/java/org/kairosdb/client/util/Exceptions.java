@@ -2,6 +2,7 @@ package org.kairosdb.client.util;
 
 import com.google.common.base.Throwables;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.kairosdb.client.response.UnexpectedResponseException;
 
 import java.io.IOException;
 import java.net.ConnectException;
@@ -18,4 +19,40 @@ public class Exceptions
 		}
 		throw Throwables.propagate(exception);
 	}
+
+	/**
+	 * Returns true if a request failed because of the server or the connection to it rather than because of the
+	 * request itself, so the same request may succeed later or on another server. These are responses with a 5xx
+	 * status code and I/O errors.
+	 */
+	public static boolean isServerFailure(Throwable exception)
+	{
+		if (exception instanceof UnexpectedResponseException)
+			return ((UnexpectedResponseException) exception).getStatusCode() >= 500;
+		return getCause(exception, IOException.class) != null;
+	}
+
+	/**
+	 * Returns the first exception of the given type in the cause chain of the exception, starting with the
+	 * exception itself, or null if there is none.
+	 */
+	public static <E extends Throwable> E getCause(Throwable exception, Class<E> type)
+	{
+		for (Throwable cause = exception; cause != null; cause = cause.getCause())
+		{
+			if (type.isInstance(cause))
+				return type.cast(cause);
+		}
+		return null;
+	}
+
+	/**
+	 * Passes an exception that cannot be handled otherwise, such as one thrown by a user supplied error handler, to
+	 * the uncaught exception handler of the current thread without ending the thread.
+	 */
+	public static void reportUncaught(Throwable exception)
+	{
+		Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, exception);
+	}
 }
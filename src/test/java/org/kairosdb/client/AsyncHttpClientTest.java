@@ -0,0 +1,200 @@
+package org.kairosdb.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.AggregatorFactory;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.UnexpectedResponseException;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.apache.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncHttpClientTest
+{
+	private CloseableHttpAsyncClient mockClient;
+	private AsyncHttpClient client;
+	private JsonMapper mapper;
+
+	@BeforeEach
+	public void setup() throws IOException
+	{
+		mapper = new JsonMapper(new DataPointTypeRegistry());
+		mockClient = mock(CloseableHttpAsyncClient.class);
+
+		client = new AsyncHttpClient(mockClient, "http://localhost");
+	}
+
+	@Test
+	public void test_constructor_startsClient()
+	{
+		verify(mockClient).start();
+	}
+
+	@Test
+	public void test_constructor_invalid_url()
+	{
+		assertThrows(java.net.MalformedURLException.class, () -> new AsyncHttpClient(mockClient, "foo"));
+	}
+
+	@Test
+	public void test_getMetricNames() throws Exception
+	{
+		respondWith(mockResponse(200, "{\"results\":[\"metric1\",\"metric2\"]}"));
+
+		List<String> metricNames = client.getMetricNames().get();
+
+		assertThat(metricNames, hasItems("metric1", "metric2"));
+	}
+
+	@Test
+	public void test_query() throws Exception
+	{
+		String expectedResponseJson = Resources.toString(Resources.getResource("response_valid.json"), Charsets.UTF_8);
+		QueryResponse expectedResponse = mapper.fromJson(expectedResponseJson, QueryResponse.class);
+		respondWith(mockResponse(200, expectedResponseJson));
+
+		QueryBuilder builder = QueryBuilder.getInstance();
+		builder.setStart(1, TimeUnit.HOURS);
+		builder.addMetric("archive_search").addAggregator(AggregatorFactory.createAverageAggregator(1, TimeUnit.MINUTES));
+
+		QueryResponse queryResponse = client.query(builder).get();
+
+		assertThat(queryResponse, equalTo(expectedResponse));
+	}
+
+	@Test
+	public void test_pushMetrics_returns_400() throws Exception
+	{
+		respondWith(mockResponse(400, "{\"errors\": [\"This is an expected error\"]}"));
+
+		MetricBuilder builder = MetricBuilder.getInstance();
+		builder.addMetric("metric1").addTag("host", "server1").addDataPoint(1, 10);
+
+		CompletableFuture<Void> future = client.pushMetrics(builder);
+
+		ExecutionException e = assertThrows(ExecutionException.class, future::get);
+		assertThat(e.getCause(), instanceOf(UnexpectedResponseException.class));
+		assertThat(e.getCause().getMessage(), containsString("Errors: This is an expected error"));
+	}
+
+	@Test
+	public void test_invalidBuilders_completeExceptionally()
+	{
+		MetricBuilder metricBuilder = MetricBuilder.getInstance();
+		metricBuilder.addMetric("metric1").addDataPoint(1, 10);
+
+		CompletableFuture<Void> push = client.pushMetrics(metricBuilder);
+		CompletableFuture<QueryResponse> query = client.query(QueryBuilder.getInstance());
+
+		ExecutionException e = assertThrows(ExecutionException.class, push::get);
+		assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+		assertThrows(ExecutionException.class, query::get);
+	}
+
+	@Test
+	public void test_statusCheck_connectionRefused()
+	{
+		when(mockClient.execute(any(HttpUriRequest.class), any(FutureCallback.class))).thenAnswer(invocation -> {
+			FutureCallback<HttpResponse> callback = invocation.getArgument(1);
+			callback.failed(new ConnectException("Connection refused"));
+			return null;
+		});
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> client.getStatusCheck().get());
+		assertThat(e.getCause().getMessage(), containsString("Server refused connection"));
+	}
+
+	@Test
+	public void test_statusCheck() throws Exception
+	{
+		respondWith(mockResponse(204, null));
+
+		assertThat(client.getStatusCheck().get(), equalTo(204));
+	}
+
+	@Test
+	public void test_query_acceptsCompressedResponse() throws Exception
+	{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = ContentCodec.gzip().encode(compressed))
+		{
+			out.write("{\"results\":[\"metric1\",\"metric2\"]}".getBytes(Charsets.UTF_8));
+		}
+		ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), APPLICATION_JSON);
+		entity.setContentEncoding("gzip");
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setHeader(CONTENT_TYPE, APPLICATION_JSON.toString());
+		response.setEntity(entity);
+		respondWith(response);
+
+		List<String> metricNames = client.getMetricNames().get();
+
+		assertThat(metricNames, hasItems("metric1", "metric2"));
+		ArgumentCaptor<HttpUriRequest> request = ArgumentCaptor.forClass(HttpUriRequest.class);
+		verify(mockClient).execute(request.capture(), any(FutureCallback.class));
+		assertThat(request.getValue().getFirstHeader(ACCEPT_ENCODING).getValue(), equalTo("gzip, deflate"));
+	}
+
+	private void respondWith(HttpResponse response)
+	{
+		when(mockClient.execute(any(HttpUriRequest.class), any(FutureCallback.class))).thenAnswer(invocation -> {
+			FutureCallback<HttpResponse> callback = invocation.getArgument(1);
+			callback.completed(response);
+			return null;
+		});
+	}
+
+	private HttpResponse mockResponse(int statusCode, String json) throws IOException
+	{
+		HttpResponse mockResponse = mock(HttpResponse.class);
+		Header header = mock(Header.class);
+		when(header.getValue()).thenReturn(APPLICATION_JSON.toString());
+		when(mockResponse.getFirstHeader(CONTENT_TYPE)).thenReturn(header);
+		when(mockResponse.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, "reason"));
+
+		if (json != null)
+		{
+			HttpEntity mockEntity = mock(HttpEntity.class);
+			when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(json.getBytes(Charsets.UTF_8)));
+			when(mockResponse.getEntity()).thenReturn(mockEntity);
+		}
+
+		return mockResponse;
+	}
+}
@@ -0,0 +1,228 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.BatchingMetricWriter.OverflowPolicy;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class BatchingMetricWriterTest
+{
+	private static final Map<String, String> TAGS = ImmutableMap.of("host", "server1");
+
+	private Client mockClient;
+	private List<MetricBuilder> pushed;
+
+	@BeforeEach
+	public void setup()
+	{
+		mockClient = mock(Client.class);
+		pushed = new CopyOnWriteArrayList<>();
+		doAnswer(invocation -> pushed.add(invocation.getArgument(0))).when(mockClient).pushMetrics(any(MetricBuilder.class));
+	}
+
+	@Test
+	public void test_close_flushesBufferedDataPoints()
+	{
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient)
+				.setLinger(1, TimeUnit.HOURS)
+				.build();
+
+		writer.add("metric1", TAGS, 1, 10);
+		writer.add("metric1", TAGS, 2, 2.5);
+		writer.add("metric2", TAGS, 3, 30);
+		writer.close();
+
+		assertThat(pushed).hasSize(1);
+		List<Metric> metrics = pushed.get(0).getMetrics();
+		assertThat(metrics).hasSize(2);
+		assertThat(metrics.get(0).getName()).isEqualTo("metric1");
+		assertThat(metrics.get(0).getDataPoints()).hasSize(2);
+		assertThat(metrics.get(1).getName()).isEqualTo("metric2");
+		assertThat(writer.getSentDataPoints()).isEqualTo(3);
+	}
+
+	@Test
+	public void test_batchSizeThreshold() throws InterruptedException
+	{
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient)
+				.setMaxBatchPoints(2)
+				.setLinger(1, TimeUnit.HOURS)
+				.build();
+
+		for (int i = 0; i < 5; i++)
+		{
+			writer.add("metric1", TAGS, i, i);
+		}
+		writer.flush();
+
+		assertThat(pushed).hasSize(3);
+		assertThat(pushed.get(0).getMetrics().get(0).getDataPoints()).hasSize(2);
+		assertThat(pushed.get(2).getMetrics().get(0).getDataPoints()).hasSize(1);
+		writer.close();
+	}
+
+	@Test
+	public void test_linger() throws InterruptedException
+	{
+		CountDownLatch latch = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			latch.countDown();
+			return null;
+		}).when(mockClient).pushMetrics(any(MetricBuilder.class));
+
+		try (BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient)
+				.setLinger(10, TimeUnit.MILLISECONDS)
+				.build())
+		{
+			writer.add("metric1", TAGS, 1, 1);
+
+			assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+		}
+	}
+
+	@Test
+	public void test_dropOldest()
+	{
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient)
+				.setMaxBatchPoints(2)
+				.setMaxBufferedPoints(2)
+				.setLinger(1, TimeUnit.HOURS)
+				.setOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+				.build();
+		blockPushes();
+
+		writer.add("metric1", TAGS, 1, 1);
+		writer.add("metric1", TAGS, 2, 2);
+		waitForEmptyBuffer(writer); // first batch is in flight
+		writer.add("metric1", TAGS, 3, 3);
+		writer.add("metric1", TAGS, 4, 4);
+		writer.add("metric1", TAGS, 5, 5);
+
+		assertThat(writer.getDroppedDataPoints()).isEqualTo(1);
+		assertThat(writer.getBufferedDataPoints()).isEqualTo(2);
+	}
+
+	@Test
+	public void test_fail()
+	{
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient)
+				.setMaxBatchPoints(1)
+				.setMaxBufferedPoints(1)
+				.setLinger(1, TimeUnit.HOURS)
+				.setOverflowPolicy(OverflowPolicy.FAIL)
+				.build();
+		blockPushes();
+
+		writer.add("metric1", TAGS, 1, 1);
+		waitForEmptyBuffer(writer); // first batch is in flight
+		writer.add("metric1", TAGS, 2, 2);
+
+		assertThrows(IllegalStateException.class, () -> writer.add("metric1", TAGS, 3, 3));
+		assertThat(writer.getDroppedDataPoints()).isEqualTo(1);
+	}
+
+	@Test
+	public void test_errorHandler()
+	{
+		RuntimeException exception = new RuntimeException("Expected exception");
+		doThrow(exception).when(mockClient).pushMetrics(any(MetricBuilder.class));
+		AtomicReference<RuntimeException> handled = new AtomicReference<>();
+
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient)
+				.setErrorHandler((builder, e) -> handled.set(e))
+				.build();
+		writer.add("metric1", TAGS, 1, 1);
+		writer.close();
+
+		assertThat(handled.get()).isSameAs(exception);
+		assertThat(writer.getFailedBatches()).isEqualTo(1);
+	}
+
+	@Test
+	public void test_flush_returnsWhenErrorHandlerThrows() throws InterruptedException
+	{
+		doThrow(new RuntimeException("Expected exception")).when(mockClient).pushMetrics(any(MetricBuilder.class));
+
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient)
+				.setErrorHandler((builder, e) -> {
+					throw new IllegalStateException("Handler failed");
+				})
+				.build();
+		writer.add("metric1", TAGS, 1, 1);
+		writer.flush();
+		writer.add("metric1", TAGS, 2, 2);
+		writer.flush();
+		writer.close();
+
+		assertThat(writer.getFailedBatches()).isEqualTo(2);
+	}
+
+	@Test
+	public void test_flush_returnsWhenPushThrowsError() throws InterruptedException
+	{
+		doThrow(new AssertionError("Expected error")).doAnswer(invocation -> pushed.add(invocation.getArgument(0)))
+				.when(mockClient).pushMetrics(any(MetricBuilder.class));
+
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient).build();
+		writer.add("metric1", TAGS, 1, 1);
+		writer.flush();
+		writer.add("metric1", TAGS, 2, 2);
+		writer.flush();
+		writer.close();
+
+		assertThat(writer.getFailedBatches()).isEqualTo(1);
+		assertThat(pushed).hasSize(1);
+	}
+
+	@Test
+	public void test_add_noTags_invalid()
+	{
+		try (BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient).build())
+		{
+			assertThrows(IllegalArgumentException.class, () -> writer.add("metric1", ImmutableMap.of(), 1, 1));
+		}
+	}
+
+	@Test
+	public void test_add_afterClose_invalid()
+	{
+		BatchingMetricWriter writer = BatchingMetricWriter.builder(mockClient).build();
+		writer.close();
+
+		assertThrows(IllegalStateException.class, () -> writer.add("metric1", TAGS, 1, 1));
+	}
+
+	private void blockPushes()
+	{
+		CountDownLatch never = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			never.await();
+			return null;
+		}).when(mockClient).pushMetrics(any(MetricBuilder.class));
+	}
+
+	private void waitForEmptyBuffer(BatchingMetricWriter writer)
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while (writer.getBufferedDataPoints() > 0 && System.currentTimeMillis() < deadline)
+		{
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.response.DefaultJsonResponseHandler;
+import org.kairosdb.client.response.ResponseHelper;
+import org.kairosdb.client.response.UnexpectedResponseException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClusterClientTest
+{
+	private static final String NODE1 = "http://node1:8080";
+	private static final String NODE2 = "http://node2:8080";
+
+	private CloseableHttpClient mockClient;
+	private ClusterClient client;
+	private Map<String, Integer> statusByHost;
+	private Map<String, AtomicInteger> requestsByHost;
+
+	@BeforeEach
+	public void setup() throws IOException
+	{
+		statusByHost = new ConcurrentHashMap<>();
+		requestsByHost = new ConcurrentHashMap<>();
+		HttpClientBuilder mockClientBuilder = mock(HttpClientBuilder.class);
+		mockClient = mock(CloseableHttpClient.class);
+		when(mockClientBuilder.build()).thenReturn(mockClient);
+		when(mockClient.execute(any())).thenAnswer(invocation -> respond(invocation.getArgument(0)));
+
+		client = ClusterClient.builder(ImmutableList.of(NODE1, NODE2))
+				.setHttpClientBuilder(mockClientBuilder)
+				.setHealthCheckInterval(0, java.util.concurrent.TimeUnit.SECONDS)
+				.build();
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException
+	{
+		client.close();
+	}
+
+	@Test
+	public void test_requestsAreSpreadOverNodes()
+	{
+		for (int i = 0; i < 50; i++)
+		{
+			assertThat(client.getVersion()).isEqualTo("KairosDB 1.3.0");
+		}
+
+		assertThat(requestsByHost.get("node1").get()).isGreaterThan(0);
+		assertThat(requestsByHost.get("node2").get()).isGreaterThan(0);
+	}
+
+	@Test
+	public void test_getVersion_failsOverWhenNodeIsDown()
+	{
+		statusByHost.put("node1", -1);
+
+		for (int i = 0; i < 10; i++)
+		{
+			assertThat(client.getVersion()).isEqualTo("KairosDB 1.3.0");
+		}
+		assertThat(client.getHealthyNodes()).containsExactly(NODE2);
+	}
+
+	@Test
+	public void test_query_failsOverOnServerError()
+	{
+		statusByHost.put("node2", 503);
+
+		for (int i = 0; i < 10; i++)
+		{
+			assertThat(client.query(createQuery()).getQueries()).isEmpty();
+		}
+		assertThat(client.getHealthyNodes()).containsExactly(NODE1);
+	}
+
+	@Test
+	public void test_pushMetrics_notRetriedAfterServerError()
+	{
+		statusByHost.put("node1", 500);
+		statusByHost.put("node2", 500);
+
+		assertThrows(UnexpectedResponseException.class, () -> client.pushMetrics(createMetrics()));
+
+		assertThat(totalRequests()).isEqualTo(1);
+	}
+
+	@Test
+	public void test_pushMetrics_retriedWhenConnectionRefused()
+	{
+		statusByHost.put("node1", -1);
+
+		for (int i = 0; i < 10; i++)
+		{
+			client.pushMetrics(createMetrics());
+		}
+		assertThat(requestsByHost.get("node2").get()).isEqualTo(10);
+	}
+
+	@Test
+	public void test_allNodesDown()
+	{
+		statusByHost.put("node1", -1);
+		statusByHost.put("node2", -1);
+
+		RuntimeException exception = assertThrows(RuntimeException.class, () -> client.getVersion());
+
+		assertThat(exception.getCause()).isInstanceOf(ConnectException.class);
+		assertThat(exception.getSuppressed()).hasSize(1);
+		assertThat(client.getHealthyNodes()).isEmpty();
+	}
+
+	@Test
+	public void test_checkHealth_restoresNode()
+	{
+		statusByHost.put("node1", -1);
+		client.checkHealth();
+		assertThat(client.getHealthyNodes()).containsExactly(NODE2);
+
+		statusByHost.remove("node1");
+		client.checkHealth();
+		assertThat(client.getHealthyNodes()).containsExactly(NODE1, NODE2);
+	}
+
+	@Test
+	public void test_query_customHandlerNotRetriedAfterItWasCalled()
+	{
+		AtomicInteger calls = new AtomicInteger();
+		DefaultJsonResponseHandler<Void> handler = new DefaultJsonResponseHandler<Void>(Void.class)
+		{
+			@Override
+			public Void handle(HttpUriRequest request, ResponseHelper response)
+			{
+				calls.incrementAndGet();
+				throw new RuntimeException("Error reading JSON response from server", new IOException("Connection reset"));
+			}
+		};
+
+		assertThrows(RuntimeException.class, () -> client.query(createQuery(), handler));
+
+		assertThat(calls.get()).isEqualTo(1);
+		assertThat(totalRequests()).isEqualTo(1);
+	}
+
+	@Test
+	public void test_builder_invalidUrl()
+	{
+		assertThrows(MalformedURLException.class, () -> ClusterClient.builder(ImmutableList.of(NODE1, "foo")).build());
+		assertThrows(IllegalArgumentException.class, () -> ClusterClient.builder(ImmutableList.of()));
+	}
+
+	private CloseableHttpResponse respond(HttpUriRequest request) throws IOException
+	{
+		String host = request.getURI().getHost();
+		requestsByHost.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+
+		int status = statusByHost.getOrDefault(host, 0);
+		if (status == -1)
+			throw new ConnectException("Connection refused");
+
+		String path = request.getURI().getPath();
+		if (status == 0)
+		{
+			if (path.endsWith("/version"))
+				return response(200, "{\"version\": \"KairosDB 1.3.0\"}");
+			if (path.endsWith("/query"))
+				return response(200, "{\"queries\": []}");
+			status = 204;
+		}
+		return response(status, null);
+	}
+
+	private static CloseableHttpResponse response(int status, String json)
+	{
+		CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+		when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, status, "Status " + status));
+		when(response.getFirstHeader(CONTENT_TYPE)).thenReturn(new BasicHeader(CONTENT_TYPE, ContentType.APPLICATION_JSON.toString()));
+		if (json != null)
+		{
+			when(response.getEntity()).thenReturn(new StringEntity(json, ContentType.APPLICATION_JSON));
+		}
+		return response;
+	}
+
+	private int totalRequests()
+	{
+		int total = 0;
+		for (AtomicInteger requests : requestsByHost.values())
+		{
+			total += requests.get();
+		}
+		return total;
+	}
+
+	private static QueryBuilder createQuery()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance();
+		builder.setStart(1, TimeUnit.HOURS).addMetric("metric1");
+		return builder;
+	}
+
+	private static MetricBuilder createMetrics()
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		builder.addMetric("metric1").addTag("host", "server1").addDataPoint(1, 10);
+		return builder;
+	}
+}
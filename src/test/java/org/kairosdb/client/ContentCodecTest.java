@@ -0,0 +1,225 @@
+package org.kairosdb.client;
+
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ContentCodecTest
+{
+	private static final ContentCodec[] CODECS = {ContentCodec.gzip(), ContentCodec.deflate(), ContentCodec.snappy()};
+
+	@Test
+	public void test_roundTrip() throws IOException
+	{
+		byte[] json = createJson(5000);
+		byte[] random = new byte[200_000];
+		new Random(1).nextBytes(random);
+
+		for (ContentCodec codec : CODECS)
+		{
+			for (byte[] data : Arrays.asList(new byte[0], "x".getBytes(StandardCharsets.UTF_8), json, random))
+			{
+				byte[] encoded = encode(codec, data);
+				assertThat(decode(codec, encoded)).as(codec.toString()).isEqualTo(data);
+			}
+			assertThat(encode(codec, json).length).as(codec.toString()).isLessThan(json.length / 3);
+		}
+	}
+
+	@Test
+	public void test_encode_leavesStreamOpen() throws IOException
+	{
+		for (ContentCodec codec : CODECS)
+		{
+			ClosedCheckingOutputStream out = new ClosedCheckingOutputStream();
+			codec.encode(out).close();
+			assertThat(out.closed).as(codec.toString()).isFalse();
+		}
+	}
+
+	@Test
+	public void test_snappy_singleByteWrites() throws IOException
+	{
+		byte[] data = createJson(3000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (OutputStream encoder = ContentCodec.snappy().encode(out))
+		{
+			for (byte b : data)
+			{
+				encoder.write(b);
+			}
+		}
+
+		assertThat(out.toByteArray()).isEqualTo(encode(ContentCodec.snappy(), data));
+	}
+
+	@Test
+	public void test_snappy_incompressibleDataWrittenUncompressed() throws IOException
+	{
+		byte[] random = new byte[1000];
+		new Random(1).nextBytes(random);
+
+		byte[] encoded = encode(ContentCodec.snappy(), random);
+
+		assertThat(encoded[10]).isEqualTo((byte) SnappyFramedOutputStream.UNCOMPRESSED_CHUNK);
+		assertThat(encoded.length).isEqualTo(10 + 8 + random.length);
+	}
+
+	@Test
+	public void test_snappy_decodesHandEncodedStream() throws IOException
+	{
+		byte[] data = "abcabcabcabc".getBytes(StandardCharsets.UTF_8);
+		// Length 12, literal "abc", copy of 9 bytes at offset 3
+		byte[] block = {12, 0x08, 'a', 'b', 'c', 0x15, 0x03};
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(SnappyFramedOutputStream.STREAM_IDENTIFIER);
+		// Skippable chunk that must be ignored
+		stream.write(new byte[]{(byte) 0x80, 2, 0, 0, 1, 2});
+		stream.write(new byte[]{0, (byte) (block.length + 4), 0, 0});
+		writeIntLE(stream, SnappyFramedOutputStream.mask(crc32c(data)));
+		stream.write(block);
+
+		assertThat(decode(ContentCodec.snappy(), stream.toByteArray())).isEqualTo(data);
+	}
+
+	@Test
+	public void test_snappy_checksumMismatch()
+	{
+		byte[] encoded = encode(ContentCodec.snappy(), createJson(100));
+		encoded[14]++;
+
+		IOException e = assertThrows(IOException.class, () -> decode(ContentCodec.snappy(), encoded));
+		assertThat(e).hasMessageContaining("checksum");
+	}
+
+	@Test
+	public void test_snappy_readAfterChecksumMismatch() throws IOException
+	{
+		byte[] encoded = encode(ContentCodec.snappy(), createJson(100));
+		encoded[14]++;
+
+		try (InputStream decoder = ContentCodec.snappy().decode(new ByteArrayInputStream(encoded)))
+		{
+			assertThrows(IOException.class, decoder::read);
+			assertThat(decoder.read()).isEqualTo(-1);
+		}
+	}
+
+	@Test
+	public void test_writeAfterClose_invalid() throws IOException
+	{
+		for (ContentCodec codec : CODECS)
+		{
+			OutputStream encoder = codec.encode(new ByteArrayOutputStream());
+			encoder.close();
+
+			assertThrows(IOException.class, () -> encoder.write(1), codec.toString());
+			assertThrows(IOException.class, () -> encoder.write(new byte[10], 0, 10), codec.toString());
+			assertThrows(IOException.class, encoder::flush, codec.toString());
+			if (encoder instanceof DeflaterOutputStream)
+			{
+				assertThrows(IOException.class, ((DeflaterOutputStream) encoder)::finish, codec.toString());
+			}
+		}
+
+		// A finish after close must not have touched the Deflater the next stream of the thread reuses
+		for (ContentCodec codec : CODECS)
+		{
+			byte[] data = createJson(100);
+			assertThat(decode(codec, encode(codec, data))).isEqualTo(data);
+		}
+	}
+
+	@Test
+	public void test_snappy_missingStreamIdentifier()
+	{
+		byte[] encoded = encode(ContentCodec.snappy(), createJson(100));
+
+		assertThrows(IOException.class, () -> decode(ContentCodec.snappy(), Arrays.copyOfRange(encoded, 10, encoded.length)));
+	}
+
+	@Test
+	public void test_crc32c()
+	{
+		// Check value of CRC-32C
+		assertThat(crc32c("123456789".getBytes(StandardCharsets.UTF_8))).isEqualTo(0xe3069283);
+	}
+
+	@Test
+	public void test_level_invalid()
+	{
+		assertThrows(IllegalArgumentException.class, () -> ContentCodec.gzip(0));
+		assertThrows(IllegalArgumentException.class, () -> ContentCodec.deflate(10));
+	}
+
+	private static byte[] encode(ContentCodec codec, byte[] data)
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (OutputStream encoder = codec.encode(out))
+			{
+				encoder.write(data);
+			}
+			return out.toByteArray();
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	private static byte[] decode(ContentCodec codec, byte[] data) throws IOException
+	{
+		return ByteStreams.toByteArray(codec.decode(new ByteArrayInputStream(data)));
+	}
+
+	private static byte[] createJson(int dataPoints)
+	{
+		StringBuilder json = new StringBuilder("[{\"name\":\"metric1\",\"tags\":{\"host\":\"server1\"},\"datapoints\":[");
+		for (int i = 0; i < dataPoints; i++)
+		{
+			json.append(i == 0 ? "" : ",").append('[').append(1_500_000_000_000L + i * 1000L).append(',').append(i % 100).append(']');
+		}
+		return json.append("]}]").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int crc32c(byte[] data)
+	{
+		CRC32C crc = new CRC32C();
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private static void writeIntLE(ByteArrayOutputStream out, int value)
+	{
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private static class ClosedCheckingOutputStream extends ByteArrayOutputStream
+	{
+		private boolean closed;
+
+		@Override
+		public void close()
+		{
+			closed = true;
+		}
+	}
+}
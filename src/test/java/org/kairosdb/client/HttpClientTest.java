@@ -21,6 +21,7 @@ import com.google.common.io.Resources;
 import com.google.common.reflect.TypeToken;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -31,11 +32,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.kairosdb.client.HttpClient.RollupTaskResponse;
 import org.kairosdb.client.builder.*;
+import org.kairosdb.client.instrumentation.EndpointStats;
+import org.kairosdb.client.instrumentation.HistogramInstrumentation;
 import org.kairosdb.client.response.QueryResponse;
 import org.kairosdb.client.response.QueryTagResponse;
 import org.kairosdb.client.response.UnexpectedResponseException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
@@ -127,6 +131,19 @@ public class HttpClientTest
 		assertThat(e.getMessage(), containsString("Errors: This is an expected error"));
 	}
 
+	@Test
+	public void test_getMetricNames_retriesUnavailable() throws IOException
+	{
+		HttpEntity mockEntity = mock(HttpEntity.class);
+		when(mockEntity.getContent()).thenReturn(toMetricNameStream("metric1"));
+		CloseableHttpResponse unavailable = mockResponse(503);
+		CloseableHttpResponse mockResponse = mockResponse(200, mockEntity);
+		when(mockClient.execute(any())).thenReturn(unavailable, mockResponse);
+		client.setRetryPolicy(RetryPolicy.builder().setBackoff(1, 1, java.util.concurrent.TimeUnit.MILLISECONDS).build());
+
+		assertThat(client.getMetricNames(), hasItems("metric1"));
+	}
+
 	@Test
 	public void test_createRollup() throws IOException
 	{
@@ -265,6 +282,76 @@ public class HttpClientTest
 		assertThat(queryResponse, equalTo(expectedResponse));
 	}
 
+	@Test
+	public void test_instrumentation_query() throws IOException
+	{
+		HistogramInstrumentation instrumentation = new HistogramInstrumentation();
+		client.setInstrumentation(instrumentation);
+		String json = Resources.toString(Resources.getResource("response_valid.json"), Charsets.UTF_8);
+
+		QueryBuilder builder = QueryBuilder.getInstance();
+		builder.setStart(1, TimeUnit.HOURS);
+		builder.addMetric("archive_search");
+
+		HttpEntity mockEntity = mock(HttpEntity.class);
+		when(mockEntity.getContent()).thenReturn(toJsonStream(json));
+		CloseableHttpResponse mockResponse = mockResponse(200, mockEntity);
+		when(mockClient.execute(any())).thenReturn(mockResponse);
+
+		client.query(builder);
+
+		EndpointStats stats = instrumentation.getEndpointStats("/api/v1/datapoints/query");
+		assertThat(stats.getRequestCount(), equalTo(1L));
+		assertThat(stats.getStatusCodes().get(200), equalTo(1L));
+		assertThat(stats.getRequestBytes(), equalTo((long) builder.build().length()));
+		assertThat(stats.getResponseBytes(), equalTo((long) json.getBytes().length));
+		assertThat(stats.getFailures(), equalTo(0L));
+	}
+
+	@Test
+	public void test_instrumentation_pushMetrics() throws IOException
+	{
+		HistogramInstrumentation instrumentation = new HistogramInstrumentation();
+		client.setInstrumentation(instrumentation);
+
+		MetricBuilder builder = MetricBuilder.getInstance();
+		builder.setCompression(true);
+		Metric metric = builder.addMetric("metric1").addTag("host", "a");
+		for (int i = 0; i < 100; i++)
+		{
+			metric.addDataPoint(i, 10L);
+		}
+
+		CloseableHttpResponse mockResponse = mockResponse(204);
+		when(mockClient.execute(any())).thenAnswer(invocation -> {
+			// Send the request body as the real client would
+			((HttpEntityEnclosingRequest) invocation.getArguments()[0]).getEntity().writeTo(new ByteArrayOutputStream());
+			return mockResponse;
+		});
+
+		client.pushMetrics(builder);
+
+		EndpointStats stats = instrumentation.getEndpointStats("/api/v1/datapoints");
+		assertThat(stats.getDataPoints(), equalTo(100L));
+		assertThat(stats.getRequestBytes(), equalTo((long) builder.build().length()));
+		assertThat(stats.getRequestBytesOnWire() < stats.getRequestBytes(), equalTo(true));
+		assertThat(stats.getStatusCodes().get(204), equalTo(1L));
+	}
+
+	@Test
+	public void test_instrumentation_failure() throws IOException
+	{
+		HistogramInstrumentation instrumentation = new HistogramInstrumentation();
+		client.setInstrumentation(instrumentation);
+		when(mockClient.execute(any())).thenThrow(new IOException("expected"));
+
+		assertThrows(RuntimeException.class, () -> client.getRollupTask("1234"));
+
+		EndpointStats stats = instrumentation.getEndpointStats("/api/v1/rollups/");
+		assertThat(stats.getFailures(), equalTo(1L));
+		assertThat(stats.getStatusCodes().isEmpty(), equalTo(true));
+	}
+
 	private String appendId(String id, String json)
 	{
 		return json.replace("\"name\"", "\"id\":\"" + id + "\", \"name\"");
@@ -341,6 +428,8 @@ public class HttpClientTest
 				return new TestStatusLine(statusCode, "OK");
 			case 400:
 				return new TestStatusLine(statusCode, "Bad Request");
+			case 503:
+				return new TestStatusLine(statusCode, "Service Unavailable");
 			default:
 				throw new IllegalArgumentException("Invalid status code");
 		}
@@ -0,0 +1,111 @@
+package org.kairosdb.client;
+
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.response.UnexpectedResponseException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IngestLimiterTest
+{
+	@Test
+	public void test_limit_increasesWhilePushesSucceed()
+	{
+		IngestLimiter limiter = IngestLimiter.builder().setInitialLimit(2).build();
+
+		for (int i = 0; i < 20; i++)
+		{
+			long first = limiter.acquire(0);
+			long second = limiter.acquire(0);
+			limiter.release(first, null);
+			limiter.release(second, null);
+		}
+
+		assertThat(limiter.getLimit()).isGreaterThan(2);
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void test_limit_decreasesOnOverload()
+	{
+		IngestLimiter limiter = IngestLimiter.builder().setInitialLimit(10).setBackoffRatio(0.5).build();
+
+		limiter.release(limiter.acquire(0), new UnexpectedResponseException("Too Many Requests", null, 429, "Too Many Requests", null));
+		assertThat(limiter.getLimit()).isEqualTo(5);
+
+		limiter.release(limiter.acquire(0), new RuntimeException(new SocketTimeoutException()));
+		assertThat(limiter.getLimit()).isEqualTo(2);
+
+		limiter.release(limiter.acquire(0), new UnexpectedResponseException("Bad Request", null, 400, "Bad Request", null));
+		assertThat(limiter.getLimit()).isEqualTo(2);
+		assertThat(limiter.getDecreaseCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void test_limit_decreasesOncePerOverload()
+	{
+		IngestLimiter limiter = IngestLimiter.builder().setInitialLimit(10).setBackoffRatio(0.5).build();
+		RuntimeException failure = new UnexpectedResponseException("Service Unavailable", null, 503, "Service Unavailable", null);
+
+		long first = limiter.acquire(0);
+		long second = limiter.acquire(0);
+		limiter.release(first, failure);
+		limiter.release(second, failure);
+
+		assertThat(limiter.getLimit()).isEqualTo(5);
+		assertThat(limiter.getDecreaseCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void test_limit_decreasesOnSlowPush() throws InterruptedException
+	{
+		IngestLimiter limiter = IngestLimiter.builder()
+				.setInitialLimit(10)
+				.setBackoffRatio(0.5)
+				.setLatencyThreshold(1, TimeUnit.MILLISECONDS)
+				.build();
+
+		long start = limiter.acquire(0);
+		Thread.sleep(5);
+		limiter.release(start, null);
+
+		assertThat(limiter.getLimit()).isEqualTo(5);
+	}
+
+	@Test
+	public void test_acquire_waitsForRelease() throws InterruptedException
+	{
+		IngestLimiter limiter = IngestLimiter.builder().setInitialLimit(1).build();
+		long start = limiter.acquire(0);
+		CountDownLatch acquired = new CountDownLatch(1);
+
+		Thread thread = new Thread(() -> {
+			limiter.acquire(0);
+			acquired.countDown();
+		});
+		thread.start();
+
+		assertThat(acquired.await(50, TimeUnit.MILLISECONDS)).isFalse();
+		limiter.release(start, null);
+		assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+		thread.join();
+	}
+
+	@Test
+	public void test_acquire_limitsDataPointsPerSecond()
+	{
+		IngestLimiter limiter = IngestLimiter.builder().setMaxDataPointsPerSecond(1000).build();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < 3; i++)
+		{
+			limiter.release(limiter.acquire(250), null);
+		}
+
+		// The first push is allowed immediately, the other two wait for their data points
+		assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(400));
+	}
+}
@@ -0,0 +1,61 @@
+package org.kairosdb.client;
+
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.response.Result;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonMapperTest
+{
+	@Test
+	public void test_getInstance_sharedPerRegistry()
+	{
+		DataPointTypeRegistry registry = new DataPointTypeRegistry();
+
+		assertThat(JsonMapper.getInstance(registry)).isSameAs(JsonMapper.getInstance(registry));
+		assertThat(JsonMapper.getInstance(registry)).isNotSameAs(JsonMapper.getInstance(new DataPointTypeRegistry()));
+	}
+
+	@Test
+	public void test_getInstance_heldOnlyByRegistry()
+	{
+		DataPointTypeRegistry registry = new DataPointTypeRegistry();
+
+		// No static state may keep a registry or its mapper alive
+		assertThat(Arrays.stream(JsonMapper.class.getDeclaredFields()).noneMatch(field -> Modifier.isStatic(field.getModifiers()))).isTrue();
+		assertThat(JsonMapper.getInstance(registry)).isSameAs(registry.getJsonMapper());
+	}
+
+	@Test
+	public void test_getInstance_seesTypesRegisteredLater()
+	{
+		DataPointTypeRegistry registry = new DataPointTypeRegistry();
+		JsonMapper mapper = JsonMapper.getInstance(registry);
+		registry.registerCustomDataType("complex", Complex.class);
+
+		Result result = mapper.fromJson("{\"name\":\"m\",\"tags\":{},\"group_by\":[{\"name\":\"type\",\"type\":\"complex\"}]," +
+				"\"values\":[[1,{\"real\":2,\"imaginary\":3}]]}", Result.class);
+
+		assertThat(result.getDataPoints().get(0).getValue()).isInstanceOf(Complex.class);
+	}
+
+	@Test
+	public void test_registerTwice_invalid()
+	{
+		DataPointTypeRegistry registry = new DataPointTypeRegistry();
+		registry.registerCustomDataType("complex", Complex.class);
+
+		assertThrows(IllegalArgumentException.class, () -> registry.registerCustomDataType("complex", Complex.class));
+	}
+
+	@SuppressWarnings("unused")
+	private static class Complex
+	{
+		private long real;
+		private long imaginary;
+	}
+}
@@ -0,0 +1,134 @@
+package org.kairosdb.client;
+
+import org.apache.http.config.SocketConfig;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class KairosClientConfigTest
+{
+	@Test
+	public void test_defaults()
+	{
+		KairosClientConfig config = KairosClientConfig.builder().build();
+
+		assertThat(config.getMaxConnectionsPerRoute()).isEqualTo(100);
+		assertThat(config.getMaxConnections()).isEqualTo(200);
+		assertThat(config.isTcpNoDelay()).isTrue();
+		assertThat(config.getIdleConnectionTimeoutMillis()).isEqualTo(30_000);
+		assertThat(config.getSocketTimeoutMillis()).isEqualTo(60_000);
+	}
+
+	@Test
+	public void test_compressionThreshold()
+	{
+		Compression compression = KairosClientConfig.builder()
+				.setCompressionLevel(1)
+				.setCompressionThreshold(10_000)
+				.build()
+				.createCompression();
+		MetricBuilder small = MetricBuilder.getInstance();
+		small.addMetric("metric1").addTag("host", "server1").addDataPoint(1, 1);
+		MetricBuilder large = MetricBuilder.getInstance();
+		Metric metric = large.addMetric("metric1").addTag("host", "server1");
+		for (int i = 0; i < 1000; i++)
+		{
+			metric.addDataPoint(i, i);
+		}
+
+		assertThat(compression.getCodec().toString()).isEqualTo("gzip(1)");
+		assertThat(compression.isEnabled(small)).isFalse();
+		assertThat(compression.isEnabled(large)).isTrue();
+		small.setCompression(true);
+		assertThat(compression.isEnabled(small)).isTrue();
+	}
+
+	@Test
+	public void test_codecs()
+	{
+		KairosClientConfig config = KairosClientConfig.builder()
+				.setCompressionCodec(ContentCodec.snappy())
+				.setAcceptedCodecs(ContentCodec.snappy(), ContentCodec.gzip(), ContentCodec.gzip(1))
+				.build();
+		Compression compression = config.createCompression();
+
+		assertThat(compression.getCodec()).isSameAs(ContentCodec.snappy());
+		assertThat(compression.getAcceptEncoding()).isEqualTo("x-snappy-framed, gzip");
+		assertThat(compression.createDecoderRegistry()).containsOnlyKeys("x-snappy-framed", "gzip");
+		assertThat(KairosClientConfig.builder().build().createCompression().getAcceptEncoding()).isEqualTo("gzip, deflate");
+		assertThrows(IllegalArgumentException.class, () -> KairosClientConfig.builder().setAcceptedCodecs());
+	}
+
+	@Test
+	public void test_createConnectionManager()
+	{
+		KairosClientConfig config = KairosClientConfig.builder()
+				.setMaxConnectionsPerRoute(25)
+				.setMaxConnections(50)
+				.setSocketTimeout(5, TimeUnit.SECONDS)
+				.setTcpNoDelay(false)
+				.setSendBufferSize(128 * 1024)
+				.setValidateAfterInactivity(500, TimeUnit.MILLISECONDS)
+				.build();
+
+		PoolingHttpClientConnectionManager connectionManager = config.createConnectionManager();
+
+		assertThat(connectionManager.getDefaultMaxPerRoute()).isEqualTo(25);
+		assertThat(connectionManager.getMaxTotal()).isEqualTo(50);
+		assertThat(connectionManager.getValidateAfterInactivity()).isEqualTo(500);
+		SocketConfig socketConfig = connectionManager.getDefaultSocketConfig();
+		assertThat(socketConfig.getSoTimeout()).isEqualTo(5000);
+		assertThat(socketConfig.isTcpNoDelay()).isFalse();
+		assertThat(socketConfig.getSndBufSize()).isEqualTo(128 * 1024);
+		connectionManager.close();
+	}
+
+	@Test
+	public void test_httpClient_connectionPoolStats() throws IOException
+	{
+		KairosClientConfig config = KairosClientConfig.builder()
+				.setMaxConnectionsPerRoute(10)
+				.setMaxConnections(20)
+				.build();
+
+		try (HttpClient client = new HttpClient(config, "http://localhost:8080"))
+		{
+			PoolStats stats = client.getConnectionPoolStats();
+
+			assertThat(stats.getMax()).isEqualTo(20);
+			assertThat(stats.getLeased()).isEqualTo(0);
+		}
+	}
+
+	@Test
+	public void test_httpClient_connectionPoolStats_notAvailableForBuilder() throws IOException
+	{
+		try (HttpClient client = new HttpClient(HttpClientBuilder.create(), "http://localhost:8080"))
+		{
+			assertThrows(IllegalStateException.class, client::getConnectionPoolStats);
+		}
+	}
+
+	@Test
+	public void test_maxConnectionsPerRoute_greaterThanMaxConnections_invalid()
+	{
+		assertThrows(IllegalArgumentException.class, () -> KairosClientConfig.builder()
+				.setMaxConnectionsPerRoute(300)
+				.build());
+	}
+
+	@Test
+	public void test_negativeTimeout_invalid()
+	{
+		assertThrows(IllegalArgumentException.class, () -> KairosClientConfig.builder().setConnectTimeout(-1, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,145 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.QueryTagBuilder;
+import org.kairosdb.client.response.QueryTagResponse;
+import org.kairosdb.client.response.TagQueryResult;
+import org.kairosdb.client.response.TagResult;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetadataCacheTest
+{
+	private Client mockClient;
+	private MetadataCache cache;
+	private List<RuntimeException> errors;
+
+	@BeforeEach
+	public void setup()
+	{
+		mockClient = mock(Client.class);
+		when(mockClient.getMetricNames()).thenReturn(ImmutableList.of("sys.cpu.user", "app.requests", "sys.cpu.system", "sys.memory.free"));
+		when(mockClient.queryTags(any(QueryTagBuilder.class))).thenReturn(new QueryTagResponse(ImmutableList.of(
+				new TagQueryResult(ImmutableList.of(new TagResult("sys.cpu.user", ImmutableMap.of(
+						"host", ImmutableList.of("server2", "server1", "db1"),
+						"dc", ImmutableList.of("east"))))))));
+
+		errors = new CopyOnWriteArrayList<>();
+		cache = MetadataCache.builder(mockClient)
+				.setRefreshInterval(1, TimeUnit.HOURS)
+				.setErrorHandler(errors::add)
+				.build();
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		cache.close();
+	}
+
+	@Test
+	public void test_findMetricNames()
+	{
+		assertThat(cache.findMetricNames("sys.cpu", 10)).containsExactly("sys.cpu.system", "sys.cpu.user");
+		assertThat(cache.findMetricNames("sys.", 2)).containsExactly("sys.cpu.system", "sys.cpu.user");
+		assertThat(cache.findMetricNames("zzz", 10)).isEmpty();
+		assertThat(cache.getMetricNames()).containsExactly("app.requests", "sys.cpu.system", "sys.cpu.user", "sys.memory.free");
+
+		verify(mockClient, times(1)).getMetricNames();
+	}
+
+	@Test
+	public void test_findMetricNamesContaining()
+	{
+		assertThat(cache.findMetricNamesContaining("cpu", 10)).containsExactly("sys.cpu.system", "sys.cpu.user");
+		assertThat(cache.findMetricNamesContaining("e", 1)).containsExactly("app.requests");
+	}
+
+	@Test
+	public void test_tags()
+	{
+		assertThat(cache.getTagNames("sys.cpu.user")).containsExactly("dc", "host");
+		assertThat(cache.findTagValues("sys.cpu.user", "host", "server", 10)).containsExactly("server1", "server2");
+		assertThat(cache.findTagValues("sys.cpu.user", "host", "", 10)).containsExactly("db1", "server1", "server2");
+		assertThat(cache.findTagValues("sys.cpu.user", "unknown", "", 10)).isEmpty();
+
+		verify(mockClient, times(1)).queryTags(any(QueryTagBuilder.class));
+	}
+
+	@Test
+	public void test_refresh()
+	{
+		cache.getMetricNames();
+		when(mockClient.getMetricNames()).thenReturn(ImmutableList.of("new.metric"));
+
+		cache.refresh();
+
+		assertThat(cache.getMetricNames()).containsExactly("new.metric");
+	}
+
+	@Test
+	public void test_backgroundRefresh_keepsNamesOnFailure() throws InterruptedException
+	{
+		cache.close();
+		cache = MetadataCache.builder(mockClient)
+				.setRefreshInterval(20, TimeUnit.MILLISECONDS)
+				.setErrorHandler(errors::add)
+				.build();
+		cache.getMetricNames();
+		when(mockClient.getMetricNames()).thenThrow(new IllegalStateException("unavailable"));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (errors.isEmpty() && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+
+		assertThat(errors).isNotEmpty();
+		assertThat(cache.findMetricNames("app", 10)).containsExactly("app.requests");
+	}
+
+	@Test
+	public void test_backgroundRefresh_continuesWhenErrorHandlerThrows() throws InterruptedException
+	{
+		cache.close();
+		cache = MetadataCache.builder(mockClient)
+				.setRefreshInterval(20, TimeUnit.MILLISECONDS)
+				.setErrorHandler(e -> {
+					errors.add(e);
+					throw new IllegalStateException("handler failed");
+				})
+				.build();
+		cache.getMetricNames();
+		when(mockClient.getMetricNames()).thenThrow(new IllegalStateException("unavailable"));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (errors.size() < 2 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+
+		assertThat(errors.size()).isGreaterThanOrEqualTo(2);
+	}
+
+	@Test
+	public void test_initialLoadFailure()
+	{
+		when(mockClient.getMetricNames()).thenThrow(new IllegalStateException("unavailable"));
+
+		assertThrows(IllegalStateException.class, () -> cache.findMetricNames("sys", 10));
+	}
+}
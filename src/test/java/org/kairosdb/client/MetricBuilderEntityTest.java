@@ -0,0 +1,139 @@
+package org.kairosdb.client;
+
+import com.google.common.io.ByteStreams;
+import org.apache.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricBuilderEntityTest
+{
+	@Test
+	public void test_writeTo() throws IOException
+	{
+		MetricBuilder builder = createBuilder();
+		MetricBuilderEntity entity = new MetricBuilderEntity(builder, null);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(builder.build());
+		assertThat(entity.isChunked()).isTrue();
+		assertThat(entity.getContentLength()).isEqualTo(-1);
+		assertThat(entity.getContentEncoding()).isNull();
+	}
+
+	@Test
+	public void test_writeTo_compressed() throws IOException
+	{
+		MetricBuilder builder = createBuilder();
+		MetricBuilderEntity entity = new MetricBuilderEntity(builder, ContentCodec.gzip());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+
+		byte[] uncompressed = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+		assertThat(new String(uncompressed, StandardCharsets.UTF_8)).isEqualTo(builder.build());
+		assertThat(entity.getContentEncoding().getValue()).isEqualTo("gzip");
+	}
+
+	@Test
+	public void test_writeTo_compressionLevel() throws IOException
+	{
+		MetricBuilder builder = createLargeBuilder();
+
+		byte[] fastest = write(new MetricBuilderEntity(builder, ContentCodec.gzip(1)));
+		byte[] smallest = write(new MetricBuilderEntity(builder, ContentCodec.gzip(9)));
+
+		assertThat(smallest.length).isLessThan(fastest.length);
+		assertThat(decompress(fastest)).isEqualTo(builder.build());
+		assertThat(decompress(smallest)).isEqualTo(builder.build());
+	}
+
+	@Test
+	public void test_writeTo_reusedDeflaterMatchesGzipOutputStream() throws IOException
+	{
+		MetricBuilder builder = createLargeBuilder();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(expected))
+		{
+			gzip.write(builder.build().getBytes(StandardCharsets.UTF_8));
+		}
+
+		MetricBuilderEntity entity = new MetricBuilderEntity(builder, ContentCodec.gzip());
+
+		// The second write uses the Deflater released by the first
+		assertThat(write(entity)).isEqualTo(expected.toByteArray());
+		assertThat(write(entity)).isEqualTo(expected.toByteArray());
+	}
+
+	@Test
+	public void test_toBufferedEntity() throws IOException
+	{
+		MetricBuilder builder = createBuilder();
+
+		HttpEntity entity = new MetricBuilderEntity(builder, ContentCodec.gzip()).toBufferedEntity();
+
+		assertThat(entity.getContentLength()).isGreaterThan(0);
+		assertThat(entity.getContentEncoding().getValue()).isEqualTo("gzip");
+		assertThat(decompress(ByteStreams.toByteArray(entity.getContent()))).isEqualTo(builder.build());
+	}
+
+	@Test
+	public void test_repeatable() throws IOException
+	{
+		MetricBuilderEntity entity = new MetricBuilderEntity(createBuilder(), null);
+
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		entity.writeTo(first);
+		byte[] second = ByteStreams.toByteArray(entity.getContent());
+
+		assertThat(entity.isRepeatable()).isTrue();
+		assertThat(second).isEqualTo(first.toByteArray());
+	}
+
+	private static byte[] write(MetricBuilderEntity entity) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		return out.toByteArray();
+	}
+
+	private static String decompress(byte[] compressed) throws IOException
+	{
+		return new String(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))), StandardCharsets.UTF_8);
+	}
+
+	private MetricBuilder createLargeBuilder()
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		Metric metric = builder.addMetric("metric1").addTag("host", "server1");
+		for (int i = 0; i < 10_000; i++)
+		{
+			metric.addDataPoint(1_600_000_000_000L + i * 1000L, (i * 7919) % 1000);
+		}
+		return builder;
+	}
+
+	private MetricBuilder createBuilder()
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		builder.addMetric("metric1")
+				.addTag("host", "server1")
+				.addDataPoint(1, 10)
+				.addDataPoint(2, 2.5);
+		builder.addMetric("metric2")
+				.addTag("host", "server2")
+				.addDataPoint(3, "text");
+		return builder;
+	}
+}
@@ -0,0 +1,246 @@
+package org.kairosdb.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kairosdb.client.builder.MetricBuilder;
+import org.kairosdb.client.response.UnexpectedResponseException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MetricSpoolTest
+{
+	@TempDir
+	Path directory;
+
+	private List<String> sent;
+	private List<RuntimeException> errors;
+	private volatile boolean down;
+	private MetricSpool spool;
+
+	@BeforeEach
+	public void setup()
+	{
+		sent = new CopyOnWriteArrayList<>();
+		errors = new CopyOnWriteArrayList<>();
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		if (spool != null)
+			spool.close();
+	}
+
+	@Test
+	public void test_push_sendsDirectly() throws IOException
+	{
+		spool = createSpool().build();
+
+		spool.pushMetrics(metrics("metric1"));
+
+		assertThat(sent).hasSize(1);
+		assertThat(sent.get(0)).contains("metric1");
+		assertThat(spool.getSpooledPayloads()).isEqualTo(0);
+		assertThat(segmentFiles()).isEmpty();
+	}
+
+	@Test
+	public void test_push_replaysInOrderAfterOutage() throws IOException, InterruptedException
+	{
+		spool = createSpool().setSegmentSize(4096).build();
+		down = true;
+
+		for (int i = 0; i < 100; i++)
+		{
+			spool.push(payload(i));
+		}
+
+		assertThat(spool.getSpooledPayloads()).isEqualTo(100);
+		assertThat(segmentFiles().size()).isGreaterThan(1);
+
+		down = false;
+		waitFor(() -> spool.getPendingPayloads() == 0);
+
+		assertThat(sent).containsExactlyElementsOf(payloads(0, 100));
+		assertThat(spool.getReplayedPayloads()).isEqualTo(100);
+		assertThat(errors).isNotEmpty();
+		assertThat(segmentFiles()).hasSize(1);
+	}
+
+	@Test
+	public void test_push_appendsBehindPendingPayloads() throws IOException, InterruptedException
+	{
+		spool = createSpool().build();
+		down = true;
+		spool.push(payload(0));
+		down = false;
+		spool.push(payload(1));
+
+		waitFor(() -> spool.getPendingPayloads() == 0);
+
+		assertThat(sent).containsExactlyElementsOf(payloads(0, 2));
+	}
+
+	@Test
+	public void test_replay_continuesWhenErrorHandlerThrows() throws IOException, InterruptedException
+	{
+		spool = createSpool()
+				.setErrorHandler(e -> {
+					errors.add(e);
+					throw new IllegalStateException("handler failed");
+				})
+				.build();
+		down = true;
+		spool.push(payload(0));
+
+		waitFor(() -> errors.size() >= 2);
+		down = false;
+		waitFor(() -> spool.getPendingPayloads() == 0);
+
+		assertThat(sent).containsExactlyElementsOf(payloads(0, 1));
+	}
+
+	@Test
+	public void test_reopen_replaysRemainingPayloads() throws IOException, InterruptedException
+	{
+		spool = createSpool().setSegmentSize(4096).build();
+		down = true;
+		for (int i = 0; i < 50; i++)
+		{
+			spool.push(payload(i));
+		}
+		spool.close();
+
+		down = false;
+		spool = createSpool().build();
+		assertThat(spool.getPendingPayloads()).isEqualTo(50);
+		waitFor(() -> spool.getPendingPayloads() == 0);
+
+		assertThat(sent).containsExactlyElementsOf(payloads(0, 50));
+		spool.close();
+		assertThat(segmentFiles()).isEmpty();
+	}
+
+	@Test
+	public void test_reopen_stopsAtCorruptRecord() throws IOException, InterruptedException
+	{
+		spool = createSpool().build();
+		down = true;
+		for (int i = 0; i < 3; i++)
+		{
+			spool.push(payload(i));
+		}
+		spool.close();
+
+		// Flip a byte of the second payload
+		int recordSize = 8 + payload(0).length;
+		try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw"))
+		{
+			long position = 16 + recordSize + 8;
+			file.seek(position);
+			int value = file.read();
+			file.seek(position);
+			file.write(value ^ 0xFF);
+		}
+
+		down = false;
+		spool = createSpool().build();
+		waitFor(() -> spool.getPendingPayloads() == 0);
+
+		assertThat(spool.getCorruptSegments()).isEqualTo(1);
+		assertThat(sent).containsExactlyElementsOf(payloads(0, 1));
+	}
+
+	@Test
+	public void test_push_quotaExceeded() throws IOException
+	{
+		spool = createSpool().setSegmentSize(4096).setMaxSpoolBytes(8192).build();
+		down = true;
+
+		IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
+			for (int i = 0; i < 1000; i++)
+			{
+				spool.push(payload(i));
+			}
+		});
+
+		assertThat(exception).hasMessageContaining("quota");
+		assertThat(spool.getRejectedPayloads()).isEqualTo(1);
+		assertThat(spool.getSpoolBytes()).isEqualTo(8192);
+	}
+
+	@Test
+	public void test_push_clientErrorIsNotSpooled() throws IOException
+	{
+		spool = MetricSpool.builder(directory, json -> {
+			throw new UnexpectedResponseException("Bad Request", null, 400, "Bad Request", null);
+		}).build();
+
+		assertThrows(UnexpectedResponseException.class, () -> spool.push(payload(0)));
+		assertThat(spool.getPendingPayloads()).isEqualTo(0);
+	}
+
+	private MetricSpool.Builder createSpool()
+	{
+		return MetricSpool.builder(directory, json -> {
+			if (down)
+				throw new RuntimeException(new ConnectException("Connection refused"));
+			sent.add(new String(json, StandardCharsets.UTF_8));
+		})
+				.setRetryBackoff(1, 5, TimeUnit.MILLISECONDS)
+				.setErrorHandler(errors::add);
+	}
+
+	private List<Path> segmentFiles() throws IOException
+	{
+		try (Stream<Path> files = Files.list(directory))
+		{
+			return files.sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static MetricBuilder metrics(String name)
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		builder.addMetric(name).addTag("host", "server1").addDataPoint(1, 10);
+		return builder;
+	}
+
+	private static byte[] payload(int index)
+	{
+		return String.format("[{\"name\":\"metric%04d\",\"datapoints\":[[1,1]]}]", index).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> payloads(int from, int to)
+	{
+		return Stream.iterate(from, i -> i + 1).limit(to - from)
+				.map(i -> new String(payload(i), StandardCharsets.UTF_8))
+				.collect(Collectors.toList());
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertThat(condition.getAsBoolean()).isTrue();
+	}
+}
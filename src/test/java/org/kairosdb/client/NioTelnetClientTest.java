@@ -0,0 +1,331 @@
+package org.kairosdb.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.NioTelnetClient.OverflowPolicy;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class NioTelnetClientTest
+{
+	private ServerSocket serverSocket;
+	private List<String> lines;
+	private List<IOException> errors;
+	private Thread serverThread;
+
+	@BeforeEach
+	public void setup() throws IOException
+	{
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		lines = new CopyOnWriteArrayList<>();
+		errors = new CopyOnWriteArrayList<>();
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException, InterruptedException
+	{
+		serverSocket.close();
+		if (serverThread != null)
+		{
+			serverThread.join(5000);
+		}
+	}
+
+	@Test
+	public void test_putMetrics_writesPutmLines() throws InterruptedException
+	{
+		startServer(false);
+		try (NioTelnetClient client = newClient().build())
+		{
+			client.putMetrics(createBuilder(1, 3));
+			assertThat(client.flush(10, TimeUnit.SECONDS)).isTrue();
+
+			waitForLines(3);
+			assertThat(lines).containsExactly(
+					"putm metric1 1 1 host=server1",
+					"putm metric1 2 2 host=server1",
+					"putm metric1 3 3 host=server1");
+			assertThat(client.getBufferedBytes()).isEqualTo(0);
+			assertThat(client.isConnected()).isTrue();
+		}
+	}
+
+	@Test
+	public void test_reconnectsAfterConnectionIsClosed() throws InterruptedException
+	{
+		startServer(true);
+		try (NioTelnetClient client = newClient().build())
+		{
+			// The first connection is closed by the server, keep writing until a later connection receives data
+			long timestamp = 1;
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (lines.isEmpty() && System.nanoTime() < deadline)
+			{
+				client.putMetrics(createBuilder(timestamp++, 1));
+				client.flush(100, TimeUnit.MILLISECONDS);
+			}
+
+			assertThat(lines).isNotEmpty();
+			assertThat(client.getConnects()).isGreaterThan(1);
+			assertThat(errors).isNotEmpty();
+		}
+	}
+
+	@Test
+	public void test_buffersWhileServerIsDown() throws IOException, InterruptedException
+	{
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		try (NioTelnetClient client = NioTelnetClient.builder("localhost", port)
+				.setReconnectBackoff(10, 50, TimeUnit.MILLISECONDS)
+				.setErrorHandler(errors::add)
+				.build())
+		{
+			client.putMetrics(createBuilder(1, 2));
+			assertThat(client.flush(200, TimeUnit.MILLISECONDS)).isFalse();
+			assertThat(client.getBufferedBytes()).isGreaterThan(0);
+			assertThat(errors).isNotEmpty();
+
+			serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+			startServer(false);
+
+			assertThat(client.flush(10, TimeUnit.SECONDS)).isTrue();
+			waitForLines(2);
+			assertThat(lines).containsExactly(
+					"putm metric1 1 1 host=server1",
+					"putm metric1 2 2 host=server1");
+		}
+	}
+
+	@Test
+	public void test_keepsRunningWhenErrorHandlerThrows() throws IOException, InterruptedException
+	{
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		try (NioTelnetClient client = NioTelnetClient.builder("localhost", port)
+				.setReconnectBackoff(10, 50, TimeUnit.MILLISECONDS)
+				.setBufferSize(1024)
+				.setErrorHandler(e -> {
+					errors.add(e);
+					throw new IllegalStateException("handler failed");
+				})
+				.build())
+		{
+			client.putMetrics(createBuilder(1, 2));
+			assertThat(client.flush(200, TimeUnit.MILLISECONDS)).isFalse();
+			assertThat(errors.size()).isGreaterThan(1);
+
+			serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+			startServer(false);
+
+			// Fills the buffer more than once, which blocks forever if nothing drains it
+			for (int i = 0; i < 100; i++)
+			{
+				client.putMetrics(createBuilder(3 + i, 1));
+			}
+			assertThat(client.flush(10, TimeUnit.SECONDS)).isTrue();
+			waitForLines(102);
+			assertThat(lines).hasSize(102);
+		}
+	}
+
+	@Test
+	public void test_overflow_dropNewest() throws IOException
+	{
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		try (NioTelnetClient client = NioTelnetClient.builder("localhost", port)
+				.setBufferSize(1024)
+				.setOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+				.setCloseTimeout(0, TimeUnit.MILLISECONDS)
+				.build())
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				client.putMetrics(createBuilder(i, 1));
+			}
+
+			assertThat(client.getBufferedBytes()).isLessThanOrEqualTo(1024);
+			assertThat(client.getDroppedDataPoints()).isGreaterThan(0);
+		}
+	}
+
+	@Test
+	public void test_overflow_fail() throws IOException
+	{
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		try (NioTelnetClient client = NioTelnetClient.builder("localhost", port)
+				.setBufferSize(1024)
+				.setOverflowPolicy(OverflowPolicy.FAIL)
+				.setCloseTimeout(0, TimeUnit.MILLISECONDS)
+				.build())
+		{
+			assertThrows(IllegalStateException.class, () -> {
+				for (int i = 0; i < 100; i++)
+				{
+					client.putMetrics(createBuilder(i, 1));
+				}
+			});
+		}
+	}
+
+	@Test
+	public void test_close_discardsDataPointsThatCannotBeWritten() throws IOException
+	{
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		NioTelnetClient client = NioTelnetClient.builder("localhost", port)
+				.setCloseTimeout(50, TimeUnit.MILLISECONDS)
+				.build();
+		client.putMetrics(createBuilder(1, 5));
+		client.close();
+
+		assertThat(client.getDroppedDataPoints()).isEqualTo(5);
+		assertThat(client.getBufferedBytes()).isEqualTo(0);
+		assertThrows(IllegalStateException.class, () -> client.putMetrics(createBuilder(1, 1)));
+	}
+
+	@Test
+	public void test_close_returnsWhenServerStopsReading() throws IOException, InterruptedException
+	{
+		List<Socket> accepted = new CopyOnWriteArrayList<>();
+		ServerSocket server = serverSocket;
+		serverThread = new Thread(() -> {
+			try
+			{
+				accepted.add(server.accept());
+			}
+			catch (IOException ignored)
+			{
+				// Server socket closed
+			}
+		});
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		NioTelnetClient client = newClient()
+				.setOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+				.setCloseTimeout(100, TimeUnit.MILLISECONDS)
+				.build();
+		try
+		{
+			// Fill the socket buffers until the I/O thread blocks in write
+			long sentBytes = -1;
+			while (sentBytes != client.getSentBytes() || client.getBufferedBytes() == 0)
+			{
+				sentBytes = client.getSentBytes();
+				client.putMetrics(createBuilder(1, 100_000));
+				Thread.sleep(100);
+			}
+
+			assertTimeoutPreemptively(Duration.ofSeconds(5), client::close);
+			assertThat(client.getBufferedBytes()).isEqualTo(0);
+			assertThat(client.getDroppedDataPoints()).isGreaterThan(0);
+		}
+		finally
+		{
+			for (Socket socket : accepted)
+			{
+				socket.close();
+			}
+		}
+	}
+
+	@Test
+	public void test_lineLargerThanBuffer_invalid()
+	{
+		startServer(false);
+		try (NioTelnetClient client = newClient().setBufferSize(1024).build())
+		{
+			MetricBuilder builder = MetricBuilder.getInstance();
+			builder.addMetric("metric1").addTag("host", new String(new char[2000]).replace('\0', 'a')).addDataPoint(1, 1);
+
+			assertThrows(IllegalArgumentException.class, () -> client.putMetrics(builder));
+		}
+	}
+
+	private NioTelnetClient.Builder newClient()
+	{
+		return NioTelnetClient.builder("localhost", serverSocket.getLocalPort())
+				.setReconnectBackoff(10, 50, TimeUnit.MILLISECONDS)
+				.setErrorHandler(errors::add);
+	}
+
+	private static MetricBuilder createBuilder(long firstTimestamp, int count)
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		Metric metric = builder.addMetric("metric1").addTag("host", "server1");
+		for (int i = 0; i < count; i++)
+		{
+			metric.addDataPoint(firstTimestamp + i, firstTimestamp + i);
+		}
+		return builder;
+	}
+
+	/**
+	 * Accepts connections and records the lines received. If closeFirst is true the first connection is closed
+	 * without reading from it.
+	 */
+	private void startServer(boolean closeFirst)
+	{
+		ServerSocket server = serverSocket;
+		serverThread = new Thread(() -> {
+			boolean first = true;
+			while (!server.isClosed())
+			{
+				try (Socket socket = server.accept())
+				{
+					if (first && closeFirst)
+					{
+						first = false;
+						continue;
+					}
+					BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+					String line;
+					while ((line = reader.readLine()) != null)
+					{
+						lines.add(line);
+					}
+				}
+				catch (IOException ignored)
+				{
+					// Server socket closed
+				}
+			}
+		});
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	private void waitForLines(int count) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (lines.size() < count && System.nanoTime() < deadline)
+		{
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.google.common.collect.ImmutableMap;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.QueryMetric;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryResult;
+import org.kairosdb.client.response.Result;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParallelQueryExecutorTest
+{
+	private Client mockClient;
+	private ParallelQueryExecutor executor;
+	private AtomicInteger inFlight;
+	private AtomicInteger maxInFlight;
+	private List<String> failingMetrics;
+
+	@BeforeEach
+	public void setup()
+	{
+		mockClient = mock(Client.class);
+		inFlight = new AtomicInteger();
+		maxInFlight = new AtomicInteger();
+		failingMetrics = new ArrayList<>();
+		when(mockClient.query(any(QueryBuilder.class))).thenAnswer(invocation -> respond(invocation.getArgument(0)));
+
+		executor = ParallelQueryExecutor.builder(mockClient)
+				.setParallelism(3)
+				.build();
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		executor.close();
+	}
+
+	@Test
+	public void test_query_mergesResultsInMetricOrder()
+	{
+		QueryBuilder builder = createQuery(10);
+
+		QueryResponse response = executor.query(builder);
+
+		List<Long> order = new ArrayList<>();
+		for (QueryResult result : response.getQueries())
+		{
+			order.add(result.getSampleSize());
+		}
+		assertThat(order).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+		verify(mockClient, times(10)).query(any(QueryBuilder.class));
+	}
+
+	@Test
+	public void test_query_limitsParallelism()
+	{
+		executor.query(createQuery(12));
+
+		assertThat(maxInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(3);
+	}
+
+	@Test
+	public void test_query_singleMetricIsSentDirectly()
+	{
+		QueryBuilder builder = createQuery(1);
+
+		executor.query(builder);
+
+		verify(mockClient).query(builder);
+	}
+
+	@Test
+	public void test_query_failure()
+	{
+		failingMetrics.add("metric4");
+
+		IllegalStateException exception = assertThrows(IllegalStateException.class, () -> executor.query(createQuery(8)));
+
+		assertThat(exception.getMessage()).isEqualTo("metric4 failed");
+	}
+
+	@Test
+	public void test_query_shardsByTime()
+	{
+		QueryBuilder builder = createShardedQuery();
+		builder.getMetrics().get(1).setOrder(QueryMetric.Order.DESCENDING);
+
+		QueryResponse response;
+		try (ParallelQueryExecutor shardingExecutor = createShardingExecutor())
+		{
+			response = shardingExecutor.query(builder);
+		}
+
+		verify(mockClient, times(8)).query(any(QueryBuilder.class));
+		assertThat(response.getQueries()).hasSize(2);
+		assertThat(response.getQueries().get(0).getResults().get(0).getDataPoints())
+				.extracting(DataPoint::getTimestamp).containsExactly(0L, 1000L, 2000L, 3000L);
+		assertThat(response.getQueries().get(1).getResults().get(0).getDataPoints())
+				.extracting(DataPoint::getTimestamp).containsExactly(3000L, 2000L, 1000L, 0L);
+	}
+
+	@Test
+	public void test_query_streamsShardsInTimeOrder()
+	{
+		List<Long> shardStarts = new ArrayList<>();
+		try (ParallelQueryExecutor shardingExecutor = createShardingExecutor())
+		{
+			shardingExecutor.query(createShardedQuery(), response -> {
+				assertThat(response.getQueries()).hasSize(2);
+				shardStarts.add(response.getQueries().get(1).getResults().get(0).getDataPoints().get(0).getTimestamp());
+			});
+		}
+
+		assertThat(shardStarts).containsExactly(0L, 1000L, 2000L, 3000L);
+		assertThat(maxInFlight.get()).isLessThanOrEqualTo(3);
+	}
+
+	@Test
+	public void test_query_shardFailure()
+	{
+		failingMetrics.add("metric1");
+
+		try (ParallelQueryExecutor shardingExecutor = createShardingExecutor())
+		{
+			assertThrows(IllegalStateException.class, () -> shardingExecutor.query(createShardedQuery()));
+		}
+	}
+
+	private ParallelQueryExecutor createShardingExecutor()
+	{
+		return ParallelQueryExecutor.builder(mockClient)
+				.setParallelism(3)
+				.setShardSize(1, java.util.concurrent.TimeUnit.SECONDS)
+				.build();
+	}
+
+	private static QueryBuilder createShardedQuery()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(0))
+				.setEnd(new Date(3999));
+		builder.addMetric("metric0");
+		builder.addMetric("metric1");
+		return builder;
+	}
+
+	private QueryResponse respond(QueryBuilder query) throws InterruptedException
+	{
+		int current = inFlight.incrementAndGet();
+		maxInFlight.accumulateAndGet(current, Math::max);
+		try
+		{
+			String name = query.getMetrics().get(0).getName();
+			Thread.sleep(20);
+			if (failingMetrics.contains(name))
+				throw new IllegalStateException(name + " failed");
+
+			long index = Long.parseLong(name.substring("metric".length()));
+			if (query.getStartRelative() != null)
+				return new QueryResponse(ImmutableList.of(new QueryResult(ImmutableList.of(), index)));
+
+			DataPoint dataPoint = new DataPoint(query.getStartAbsolute().getTime(), index);
+			Result result = new Result(name, ImmutableMap.of(), ImmutableList.of(dataPoint), ImmutableList.of());
+			return new QueryResponse(ImmutableList.of(new QueryResult(ImmutableList.of(result), 1)));
+		}
+		finally
+		{
+			inFlight.decrementAndGet();
+		}
+	}
+
+	private static QueryBuilder createQuery(int metrics)
+	{
+		QueryBuilder builder = QueryBuilder.getInstance().setStart(1, TimeUnit.HOURS);
+		for (int i = 0; i < metrics; i++)
+		{
+			builder.addMetric("metric" + i);
+		}
+		return builder;
+	}
+}
@@ -0,0 +1,113 @@
+package org.kairosdb.client;
+
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PutLineEncoderTest
+{
+	@Test
+	public void test_encode_longValues()
+	{
+		Metric metric = MetricBuilder.getInstance().addMetric("metric1").addTag("host", "server1");
+		metric.addDataPoint(1, 0);
+		metric.addDataPoint(1500000000000L, -42);
+		metric.addDataPoint(Long.MAX_VALUE, Long.MIN_VALUE);
+
+		assertThat(encode(metric)).isEqualTo(
+				"putm metric1 1 0 host=server1\n" +
+						"putm metric1 1500000000000 -42 host=server1\n" +
+						"putm metric1 9223372036854775807 -9223372036854775808 host=server1\n");
+	}
+
+	@Test
+	public void test_encode_doubleValuesMatchDoubleToString()
+	{
+		double[] values = {0.0, -0.0, 1.0, -1.0, 2.5, 0.1, 0.001, 1234.5678, -99.99, 1.0E-4, 1.0E20, Double.MAX_VALUE,
+				Double.MIN_VALUE, Double.NaN, 1.0 / 3};
+		for (double value : values)
+		{
+			Metric metric = MetricBuilder.getInstance().addMetric("metric1").addTag("host", "server1");
+			metric.addDataPoint(1, value);
+
+			assertThat(encode(metric)).isEqualTo("putm metric1 1 " + value + " host=server1\n");
+		}
+	}
+
+	@Test
+	public void test_encode_doubleValuesRoundTrip()
+	{
+		Random random = new Random(1234);
+		for (int i = 0; i < 100_000; i++)
+		{
+			double value;
+			switch (i % 4)
+			{
+				case 0:
+					value = random.nextDouble() * 100;
+					break;
+				case 1:
+					value = Math.round(random.nextDouble() * 1_000_000) / 100.0;
+					break;
+				case 2:
+					value = (double) random.nextLong();
+					break;
+				default:
+					value = Double.longBitsToDouble(random.nextLong());
+			}
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				continue;
+
+			Metric metric = MetricBuilder.getInstance().addMetric("m").addTag("t", "v");
+			metric.addDataPoint(1, value);
+			String line = encode(metric);
+			String text = line.substring("putm m 1 ".length(), line.length() - " t=v\n".length());
+
+			assertThat(Double.parseDouble(text)).isEqualTo(value);
+			assertThat(text).containsAnyOf(".", "E");
+		}
+	}
+
+	@Test
+	public void test_encode_objectAndNonAsciiValues()
+	{
+		Metric metric = MetricBuilder.getInstance().addMetric("température").addTag("ville", "Zürich");
+		metric.addDataPoint(1, "text");
+
+		assertThat(encode(metric)).isEqualTo("putm température 1 text ville=Zürich\n");
+	}
+
+	@Test
+	public void test_discard_keepsRemainingLines()
+	{
+		Metric metric = MetricBuilder.getInstance().addMetric("metric1").addTag("host", "server1");
+		metric.addDataPoint(1, 10);
+		metric.addDataPoint(2, 20);
+
+		PutLineEncoder encoder = new PutLineEncoder(PutLineEncoder.PUT, 16);
+		encoder.setMetric(metric);
+		encoder.encode(metric, 0);
+		int firstLine = encoder.getLength();
+		encoder.encode(metric, 1);
+		encoder.discard(firstLine);
+
+		assertThat(new String(encoder.getBuffer(), 0, encoder.getLength(), StandardCharsets.UTF_8))
+				.isEqualTo("put metric1 2 20 host=server1\n");
+	}
+
+	private static String encode(Metric metric)
+	{
+		PutLineEncoder encoder = new PutLineEncoder(PutLineEncoder.PUTM, 16);
+		encoder.setMetric(metric);
+		for (int i = 0; i < metric.getDataPointCount(); i++)
+		{
+			encoder.encode(metric, i);
+		}
+		return new String(encoder.getBuffer(), 0, encoder.getLength(), StandardCharsets.UTF_8);
+	}
+}
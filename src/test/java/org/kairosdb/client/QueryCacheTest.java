@@ -0,0 +1,171 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryResult;
+import org.kairosdb.client.response.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueryCacheTest
+{
+	private Client mockClient;
+	private QueryCache cache;
+
+	@BeforeEach
+	public void setup()
+	{
+		mockClient = mock(Client.class);
+		when(mockClient.query(any(QueryBuilder.class))).thenReturn(createResponse(3));
+
+		cache = QueryCache.builder(mockClient).build();
+	}
+
+	@Test
+	public void test_query_cachesResponse()
+	{
+		QueryResponse first = cache.query(createQuery("metric1"));
+		QueryResponse second = cache.query(createQuery("metric1"));
+
+		assertThat(second).isSameAs(first);
+		verify(mockClient, times(1)).query(any(QueryBuilder.class));
+		assertThat(cache.getStats().hitCount()).isEqualTo(1);
+		assertThat(cache.getStats().missCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void test_query_keyIgnoresPropertyOrder()
+	{
+		QueryBuilder first = createQuery("metric1");
+		first.getMetrics().get(0).addTag("host", "server1").addTag("dc", "east");
+		QueryBuilder second = createQuery("metric1");
+		second.getMetrics().get(0).addTag("dc", "east").addTag("host", "server1");
+
+		cache.query(first);
+		cache.query(second);
+		cache.query(createQuery("metric2"));
+
+		verify(mockClient, times(2)).query(any(QueryBuilder.class));
+	}
+
+	@Test
+	public void test_query_expires() throws InterruptedException
+	{
+		cache.query(createQuery("metric1"), 1, java.util.concurrent.TimeUnit.MILLISECONDS);
+		Thread.sleep(5);
+		cache.query(createQuery("metric1"));
+
+		verify(mockClient, times(2)).query(any(QueryBuilder.class));
+		assertThat(cache.getStats().hitCount()).isEqualTo(0);
+		assertThat(cache.getStats().missCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void test_query_evictsByDataPoints()
+	{
+		cache = QueryCache.builder(mockClient).setMaxDataPoints(6).build();
+
+		cache.query(createQuery("metric1"));
+		cache.query(createQuery("metric2"));
+		cache.query(createQuery("metric1"));
+
+		assertThat(cache.size()).isEqualTo(1);
+		assertThat(cache.getStats().evictionCount()).isGreaterThan(0);
+		verify(mockClient, times(3)).query(any(QueryBuilder.class));
+	}
+
+	@Test
+	public void test_query_coalescesConcurrentQueries() throws Exception
+	{
+		CountDownLatch release = new CountDownLatch(1);
+		when(mockClient.query(any(QueryBuilder.class))).thenAnswer(invocation -> {
+			release.await();
+			return createResponse(3);
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<Future<QueryResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++)
+			{
+				futures.add(executor.submit(() -> cache.query(createQuery("metric1"))));
+			}
+			Thread.sleep(50);
+			release.countDown();
+
+			QueryResponse response = futures.get(0).get();
+			for (Future<QueryResponse> future : futures)
+			{
+				assertThat(future.get()).isSameAs(response);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		verify(mockClient, times(1)).query(any(QueryBuilder.class));
+	}
+
+	@Test
+	public void test_query_failureIsNotCached()
+	{
+		when(mockClient.query(any(QueryBuilder.class)))
+				.thenThrow(new IllegalStateException("failed"))
+				.thenReturn(createResponse(1));
+
+		assertThrows(IllegalStateException.class, () -> cache.query(createQuery("metric1")));
+		cache.query(createQuery("metric1"));
+
+		assertThat(cache.size()).isEqualTo(1);
+		verify(mockClient, times(2)).query(any(QueryBuilder.class));
+	}
+
+	@Test
+	public void test_invalidate()
+	{
+		cache.query(createQuery("metric1"));
+		cache.invalidate(createQuery("metric1"));
+		cache.query(createQuery("metric1"));
+
+		verify(mockClient, times(2)).query(any(QueryBuilder.class));
+	}
+
+	private static QueryBuilder createQuery(String metric)
+	{
+		QueryBuilder builder = QueryBuilder.getInstance().setStart(1, TimeUnit.HOURS);
+		builder.addMetric(metric);
+		return builder;
+	}
+
+	private static QueryResponse createResponse(int dataPoints)
+	{
+		List<DataPoint> points = new ArrayList<>();
+		for (int i = 0; i < dataPoints; i++)
+		{
+			points.add(new DataPoint(i, (long) i));
+		}
+		Result result = new Result("metric", ImmutableMap.of(), points, ImmutableList.of());
+		return new QueryResponse(ImmutableList.of(new QueryResult(ImmutableList.of(result), dataPoints)));
+	}
+}
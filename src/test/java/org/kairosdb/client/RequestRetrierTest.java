@@ -0,0 +1,207 @@
+package org.kairosdb.client;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.instrumentation.RequestEvent;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RequestRetrierTest
+{
+	private static final String URL = "http://localhost:8080";
+
+	private CloseableHttpClient mockClient;
+	private RequestRetrier retrier;
+
+	@BeforeEach
+	public void setup()
+	{
+		mockClient = mock(CloseableHttpClient.class);
+		retrier = new RequestRetrier(createPolicy().build());
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		retrier.close();
+	}
+
+	@Test
+	public void test_execute_retriesRetryableStatusCode() throws IOException
+	{
+		CloseableHttpResponse unavailable = response(503);
+		CloseableHttpResponse ok = response(200);
+		when(mockClient.execute(any(HttpUriRequest.class))).thenReturn(unavailable, ok);
+		RequestEvent.Builder event = RequestEvent.builder(RequestFactory.PATH_QUERY, HttpPost.METHOD_NAME);
+
+		HttpResponse response = retrier.execute(mockClient, new HttpPost(URL + RequestFactory.PATH_QUERY), event);
+
+		assertThat(response).isSameAs(ok);
+		assertThat(event.build().getAttempts()).isEqualTo(2);
+	}
+
+	@Test
+	public void test_execute_returnsLastResponseWhenAttemptsRunOut() throws IOException
+	{
+		CloseableHttpResponse unavailable = response(503);
+		when(mockClient.execute(any(HttpUriRequest.class))).thenReturn(unavailable);
+
+		HttpResponse response = retrier.execute(mockClient, new HttpGet(URL + RequestFactory.PATH_VERSION), event());
+
+		assertThat(response).isSameAs(unavailable);
+		verify(mockClient, times(3)).execute(any(HttpUriRequest.class));
+	}
+
+	@Test
+	public void test_execute_doesNotRetryClientError() throws IOException
+	{
+		CloseableHttpResponse badRequest = response(400);
+		when(mockClient.execute(any(HttpUriRequest.class))).thenReturn(badRequest);
+
+		retrier.execute(mockClient, new HttpGet(URL + RequestFactory.PATH_VERSION), event());
+
+		verify(mockClient, times(1)).execute(any(HttpUriRequest.class));
+	}
+
+	@Test
+	public void test_execute_retriesIOException() throws IOException
+	{
+		CloseableHttpResponse ok = response(200);
+		when(mockClient.execute(any(HttpUriRequest.class))).thenThrow(new SocketTimeoutException()).thenReturn(ok);
+
+		assertThat(retrier.execute(mockClient, new HttpPost(URL + RequestFactory.PATH_DATAPOINTS), event())).isSameAs(ok);
+	}
+
+	@Test
+	public void test_execute_createRollupOnlyRetriedIfNotSent() throws IOException
+	{
+		HttpPost createRollup = new HttpPost(URL + RequestFactory.PATH_ROLLUPS);
+		CloseableHttpResponse ok = response(200);
+		when(mockClient.execute(any(HttpUriRequest.class))).thenThrow(new ConnectException()).thenReturn(ok);
+
+		assertThat(retrier.execute(mockClient, createRollup, event())).isSameAs(ok);
+
+		when(mockClient.execute(any(HttpUriRequest.class))).thenThrow(new SocketTimeoutException());
+		assertThrows(SocketTimeoutException.class, () -> retrier.execute(mockClient, createRollup, event()));
+
+		CloseableHttpResponse unavailable = response(503);
+		when(mockClient.execute(any(HttpUriRequest.class))).thenReturn(unavailable);
+		assertThat(retrier.execute(mockClient, createRollup, event())).isSameAs(unavailable);
+
+		verify(mockClient, times(4)).execute(any(HttpUriRequest.class));
+	}
+
+	@Test
+	public void test_execute_stopsRetryingWhenBudgetIsEmpty() throws IOException
+	{
+		retrier = new RequestRetrier(createPolicy().setRetryBudget(0.5, 2).build());
+		when(mockClient.execute(any(HttpUriRequest.class))).thenThrow(new SocketTimeoutException());
+		HttpGet request = new HttpGet(URL + RequestFactory.PATH_VERSION);
+
+		assertThrows(SocketTimeoutException.class, () -> retrier.execute(mockClient, request, event()));
+		assertThrows(SocketTimeoutException.class, () -> retrier.execute(mockClient, request, event()));
+
+		// Two retries from the initial budget, none from the two halves added by the requests
+		verify(mockClient, times(4)).execute(any(HttpUriRequest.class));
+		assertThat(retrier.getBudget()).isEqualTo(0.5);
+	}
+
+	@Test
+	public void test_execute_hedgesSlowQuery() throws IOException, InterruptedException
+	{
+		retrier = new RequestRetrier(createPolicy().setHedgeDelay(20, TimeUnit.MILLISECONDS).build());
+		CountDownLatch aborted = new CountDownLatch(1);
+		CloseableHttpResponse ok = response(200);
+		List<HttpUriRequest> requests = new CopyOnWriteArrayList<>();
+		when(mockClient.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+			HttpUriRequest request = invocation.getArgument(0);
+			requests.add(request);
+			if (requests.size() == 1)
+			{
+				// The first request hangs until it is aborted
+				while (!request.isAborted())
+				{
+					Thread.sleep(1);
+				}
+				aborted.countDown();
+				throw new IOException("Aborted");
+			}
+			return ok;
+		});
+		HttpPost query = new HttpPost(URL + RequestFactory.PATH_QUERY);
+
+		HttpResponse response = retrier.execute(mockClient, query, event());
+
+		assertThat(response).isSameAs(ok);
+		assertThat(requests).hasSize(2);
+		assertThat(requests.get(0)).isNotSameAs(query);
+		assertThat(query.isAborted()).isFalse();
+		assertThat(aborted.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	public void test_execute_doesNotHedgePush() throws IOException
+	{
+		retrier = new RequestRetrier(createPolicy().setHedgeDelay(1, TimeUnit.NANOSECONDS).build());
+		HttpPost push = new HttpPost(URL + RequestFactory.PATH_DATAPOINTS);
+		CloseableHttpResponse noContent = response(204);
+		when(mockClient.execute(push)).thenReturn(noContent);
+
+		retrier.execute(mockClient, push, event());
+
+		verify(mockClient, times(1)).execute(any(HttpUriRequest.class));
+	}
+
+	@Test
+	public void test_backoff()
+	{
+		RetryPolicy policy = RetryPolicy.builder().setBackoff(100, 1000, TimeUnit.MILLISECONDS).build();
+
+		for (int i = 0; i < 100; i++)
+		{
+			assertThat(policy.getBackoffNanos(1)).isBetween(0L, TimeUnit.MILLISECONDS.toNanos(100));
+			assertThat(policy.getBackoffNanos(3)).isBetween(0L, TimeUnit.MILLISECONDS.toNanos(400));
+			assertThat(policy.getBackoffNanos(100)).isBetween(0L, TimeUnit.MILLISECONDS.toNanos(1000));
+		}
+	}
+
+	private static RetryPolicy.Builder createPolicy()
+	{
+		return RetryPolicy.builder().setBackoff(1, 2, TimeUnit.MILLISECONDS);
+	}
+
+	private static RequestEvent.Builder event()
+	{
+		return RequestEvent.builder(RequestFactory.PATH_QUERY, HttpPost.METHOD_NAME);
+	}
+
+	private static CloseableHttpResponse response(int statusCode)
+	{
+		CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+		when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, ""));
+		return response;
+	}
+}
@@ -0,0 +1,169 @@
+package org.kairosdb.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.AggregatorFactory;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.builder.QueryBuilder;
+import org.kairosdb.client.builder.TimeUnit;
+import org.kairosdb.client.response.QueryResponse;
+import org.kairosdb.client.response.QueryResult;
+import org.kairosdb.client.response.Result;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TailQueryCacheTest
+{
+	private Client mockClient;
+	private TailQueryCache cache;
+	private List<long[]> requestedRanges;
+
+	@BeforeEach
+	public void setup()
+	{
+		mockClient = mock(Client.class);
+		requestedRanges = new ArrayList<>();
+		when(mockClient.query(any(QueryBuilder.class))).thenAnswer(invocation -> respond(invocation.getArgument(0)));
+
+		cache = TailQueryCache.builder(mockClient).build();
+	}
+
+	@Test
+	public void test_query_requestsOnlyNewDataPoints()
+	{
+		QueryBuilder query = createAggregatedQuery();
+
+		QueryResponse first = cache.query(query, 100_500);
+		QueryResponse second = cache.query(query, 103_200);
+
+		assertThat(timestamps(first)).isEqualTo(timestamps(respond(query.withTimeRange(40_500, 100_500))));
+		assertThat(timestamps(second)).isEqualTo(timestamps(respond(query.withTimeRange(43_200, 103_200))));
+		assertThat(cache.getFullQueryCount()).isEqualTo(1);
+		assertThat(cache.getIncrementalQueryCount()).isEqualTo(1);
+
+		// Full window, the partial bucket at the start of the window and the data points since the last refresh
+		assertThat(requestedRanges.subList(0, 3)).containsExactly(
+				new long[]{40_500, 100_500},
+				new long[]{43_200, 43_999},
+				new long[]{100_000, 103_200});
+	}
+
+	@Test
+	public void test_query_rawDataPoints()
+	{
+		QueryBuilder query = QueryBuilder.getInstance().setStart(1, TimeUnit.MINUTES);
+		query.addMetric("metric1");
+
+		cache.query(query, 100_000);
+		QueryResponse response = cache.query(query, 101_000);
+
+		assertThat(timestamps(response)).isEqualTo(timestamps(respond(query.withTimeRange(41_000, 101_000))));
+		assertThat(requestedRanges.get(1)).containsExactly(100_000, 101_000);
+	}
+
+	@Test
+	public void test_query_refetchWindow()
+	{
+		cache = TailQueryCache.builder(mockClient).setRefetchWindow(5, java.util.concurrent.TimeUnit.SECONDS).build();
+		QueryBuilder query = createAggregatedQuery();
+
+		cache.query(query, 100_000);
+		cache.query(query, 101_000);
+
+		assertThat(requestedRanges.get(1)).containsExactly(95_000, 101_000);
+	}
+
+	@Test
+	public void test_query_windowMovedPastCachedDataPoints()
+	{
+		QueryBuilder query = createAggregatedQuery();
+
+		cache.query(query, 100_000);
+		cache.query(query, 500_000);
+
+		assertThat(cache.getFullQueryCount()).isEqualTo(2);
+		assertThat(cache.getIncrementalQueryCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void test_query_unalignedSamplingIsNotCached()
+	{
+		QueryBuilder query = QueryBuilder.getInstance().setStart(1, TimeUnit.MINUTES);
+		query.addMetric("metric1").addAggregator(AggregatorFactory.createAverageAggregator(1, TimeUnit.SECONDS));
+
+		cache.query(query, 100_000);
+		cache.query(query, 101_000);
+
+		verify(mockClient, times(2)).query(query);
+		assertThat(cache.getFullQueryCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void test_query_absoluteTimesAreNotCached()
+	{
+		QueryBuilder query = QueryBuilder.getInstance().setStart(new Date(0));
+		query.addMetric("metric1");
+
+		cache.query(query, 100_000);
+
+		verify(mockClient).query(query);
+		assertThat(cache.getFullQueryCount()).isEqualTo(0);
+	}
+
+	private static QueryBuilder createAggregatedQuery()
+	{
+		QueryBuilder query = QueryBuilder.getInstance().setStart(1, TimeUnit.MINUTES);
+		query.addMetric("metric1")
+				.addAggregator(AggregatorFactory.createAverageAggregator(1, TimeUnit.SECONDS)
+						.withSamplingAlignment()
+						.withStartTimeAlignment());
+		return query;
+	}
+
+	/**
+	 * Returns a data point per second for aggregated queries, at the start of each bucket, and a data point every 100
+	 * milliseconds for raw queries. Queries with relative times get an empty response.
+	 */
+	private QueryResponse respond(QueryBuilder query)
+	{
+		if (query.getStartAbsolute() == null || query.getEndAbsolute() == null)
+			return new QueryResponse(ImmutableList.of(new QueryResult(ImmutableList.of(), 0)));
+
+		long start = query.getStartAbsolute().getTime();
+		long end = query.getEndAbsolute().getTime();
+		requestedRanges.add(new long[]{start, end});
+
+		boolean aggregated = !query.getMetrics().get(0).getAggregators().isEmpty();
+		long step = aggregated ? 1000 : 100;
+		long first = aggregated ? start - Math.floorMod(start, step) : start + Math.floorMod(-start, step);
+
+		List<DataPoint> dataPoints = new ArrayList<>();
+		for (long timestamp = first; timestamp <= end; timestamp += step)
+		{
+			dataPoints.add(new DataPoint(timestamp, timestamp));
+		}
+		Result result = new Result("metric1", ImmutableMap.of(), dataPoints, ImmutableList.of());
+		return new QueryResponse(ImmutableList.of(new QueryResult(ImmutableList.of(result), dataPoints.size())));
+	}
+
+	private static List<Long> timestamps(QueryResponse response)
+	{
+		List<Long> timestamps = new ArrayList<>();
+		for (DataPoint dataPoint : response.getQueries().get(0).getResults().get(0).getDataPoints())
+		{
+			timestamps.add(dataPoint.getTimestamp());
+		}
+		return timestamps;
+	}
+}
@@ -0,0 +1,207 @@
+package org.kairosdb.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.TelnetClientPool.Distribution;
+import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TelnetClientPoolTest
+{
+	private ServerSocket serverSocket;
+	private List<List<String>> connections;
+	private Thread serverThread;
+
+	@BeforeEach
+	public void setup() throws IOException
+	{
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		connections = new CopyOnWriteArrayList<>();
+		serverThread = new Thread(this::acceptConnections);
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException, InterruptedException
+	{
+		serverSocket.close();
+		serverThread.join(5000);
+	}
+
+	@Test
+	public void test_seriesHash_keepsSeriesOnOneConnection() throws Exception
+	{
+		try (TelnetClientPool pool = newPool(Distribution.SERIES_HASH))
+		{
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int thread = 0; thread < 4; thread++)
+			{
+				futures.add(executor.submit(() -> {
+					for (int batch = 0; batch < 50; batch++)
+					{
+						pool.putMetrics(createBuilder(batch, 20));
+					}
+				}));
+			}
+			for (Future<?> future : futures)
+			{
+				future.get(10, TimeUnit.SECONDS);
+			}
+			executor.shutdown();
+
+			assertThat(pool.flush(10, TimeUnit.SECONDS)).isTrue();
+			waitForLines(4 * 50 * 20);
+
+			// Every series was received on exactly one connection
+			Map<String, Set<Integer>> connectionsBySeries = new HashMap<>();
+			for (int i = 0; i < connections.size(); i++)
+			{
+				for (String line : connections.get(i))
+				{
+					String series = line.split(" ")[1];
+					connectionsBySeries.computeIfAbsent(series, key -> new HashSet<>()).add(i);
+				}
+			}
+			assertThat(connectionsBySeries).hasSize(20);
+			assertThat(connectionsBySeries.values()).allMatch(set -> set.size() == 1);
+			assertThat(totalLines()).isEqualTo(4 * 50 * 20);
+		}
+	}
+
+	@Test
+	public void test_roundRobin_usesEveryConnection() throws InterruptedException
+	{
+		try (TelnetClientPool pool = newPool(Distribution.ROUND_ROBIN))
+		{
+			for (int batch = 0; batch < 8; batch++)
+			{
+				pool.putMetrics(createBuilder(batch, 1));
+			}
+			assertThat(pool.flush(10, TimeUnit.SECONDS)).isTrue();
+
+			List<TelnetConnectionStats> stats = pool.getConnectionStats();
+			assertThat(stats).hasSize(4);
+			for (TelnetConnectionStats connection : stats)
+			{
+				assertThat(connection.getAcceptedDataPoints()).isEqualTo(2);
+				assertThat(connection.getSentBytes()).isGreaterThan(0);
+				assertThat(connection.getBufferedBytes()).isEqualTo(0);
+				assertThat(connection.isConnected()).isTrue();
+			}
+		}
+	}
+
+	@Test
+	public void test_getConnectionIndex_dependsOnNameAndTags()
+	{
+		Metric metric1 = MetricBuilder.getInstance().addMetric("metric1").addTag("host", "a").addTag("dc", "1");
+		Metric metric2 = MetricBuilder.getInstance().addMetric("metric1").addTag("dc", "1").addTag("host", "a");
+
+		assertThat(TelnetClientPool.getConnectionIndex(metric1, 7)).isEqualTo(TelnetClientPool.getConnectionIndex(metric2, 7));
+		assertThat(TelnetClientPool.getConnectionIndex(metric1, 7)).isBetween(0, 6);
+	}
+
+	@Test
+	public void test_connections_invalid()
+	{
+		assertThrows(IllegalArgumentException.class, () -> TelnetClientPool.builder(NioTelnetClient.builder("localhost", 4242)).setConnections(0));
+	}
+
+	private TelnetClientPool newPool(Distribution distribution)
+	{
+		return TelnetClientPool.builder(NioTelnetClient.builder("localhost", serverSocket.getLocalPort()))
+				.setConnections(4)
+				.setDistribution(distribution)
+				.build();
+	}
+
+	private static MetricBuilder createBuilder(long timestamp, int series)
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		for (int i = 0; i < series; i++)
+		{
+			builder.addMetric("metric" + i).addTag("host", "server" + i).addDataPoint(timestamp, i);
+		}
+		return builder;
+	}
+
+	private void acceptConnections()
+	{
+		while (!serverSocket.isClosed())
+		{
+			try
+			{
+				Socket socket = serverSocket.accept();
+				List<String> lines = new CopyOnWriteArrayList<>();
+				connections.add(lines);
+				Thread reader = new Thread(() -> readLines(socket, lines));
+				reader.setDaemon(true);
+				reader.start();
+			}
+			catch (IOException ignored)
+			{
+				// Server socket closed
+			}
+		}
+	}
+
+	private static void readLines(Socket socket, List<String> lines)
+	{
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				lines.add(line);
+			}
+		}
+		catch (IOException ignored)
+		{
+			// Connection closed
+		}
+	}
+
+	private int totalLines()
+	{
+		int total = 0;
+		for (List<String> lines : connections)
+		{
+			total += lines.size();
+		}
+		return total;
+	}
+
+	private void waitForLines(int count) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (totalLines() < count && System.nanoTime() < deadline)
+		{
+			Thread.sleep(10);
+		}
+	}
+}
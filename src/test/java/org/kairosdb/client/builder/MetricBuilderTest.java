@@ -50,6 +50,42 @@ public class MetricBuilderTest
 		assertThat(parser.parse(builder.build()), equalTo(parser.parse(json)));
 	}
 
+	@Test
+	public void test_build_valueTypes()
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		builder.addMetric("metric1", "complex")
+				.addTag("host", "a")
+				.addTtl(30)
+				.addDataPoint(1, 10L)
+				.addDataPoint(2, 2.5)
+				.addDataPoint(3, (Object) null)
+				.addDataPoint(4, new Complex(1, 2))
+				.addDataPoint(5, "text");
+
+		assertThat(builder.build(), equalTo("[{\"name\":\"metric1\",\"tags\":{\"host\":\"a\"},\"type\":\"complex\",\"ttl\":30," +
+				"\"datapoints\":[[1,10],[2,2.5],[3,null],[4,{\"real\":1,\"imaginary\":2}],[5,\"text\"]]}]"));
+	}
+
+	@Test
+	public void test_reset()
+	{
+		MetricBuilder builder = MetricBuilder.getInstance();
+		Metric metric = builder.addMetric("metric1")
+				.addTag("host", "a")
+				.addDataPoint(1, 10L)
+				.addDataPoint(2, "text");
+
+		builder.reset();
+		metric.addDataPoint(3, 2.5);
+
+		assertThat(builder.getMetrics().size(), equalTo(1));
+		assertThat(builder.build(), equalTo("[{\"name\":\"metric1\",\"tags\":{\"host\":\"a\"},\"ttl\":0,\"datapoints\":[[3,2.5]]}]"));
+
+		builder.clear();
+		assertThat(builder.build(), equalTo("[]"));
+	}
+
 	@Test
 	public void test_metricContainsTags() throws IOException
 	{
@@ -130,4 +166,17 @@ public class MetricBuilderTest
 		assert (!builder.isCompressionEnabled());
 	}
 
+
+	@SuppressWarnings("unused")
+	private static class Complex
+	{
+		private final long real;
+		private final long imaginary;
+
+		private Complex(long real, long imaginary)
+		{
+			this.real = real;
+			this.imaginary = imaginary;
+		}
+	}
 }
@@ -17,6 +17,7 @@ package org.kairosdb.client.builder;
 
 import org.junit.jupiter.api.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class MetricTest
@@ -69,4 +70,59 @@ public class MetricTest
 		assertThrows(IllegalArgumentException.class, () ->
 				MetricBuilder.getInstance().addMetric("metric1").addTtl(-1));
 	}
+
+	@Test
+	public void test_dataPoints()
+	{
+		Metric metric = MetricBuilder.getInstance().addMetric("metric1");
+		for (int i = 0; i < 20; i++)
+		{
+			metric.addDataPoint(i, (long) i);
+		}
+		metric.addDataPoint(20, 2.5);
+		metric.addDataPoint(21, "text");
+
+		assertThat(metric.getDataPointCount()).isEqualTo(22);
+		assertThat(metric.getTimestamp(19)).isEqualTo(19);
+		assertThat(metric.getLongValue(19)).isEqualTo(19);
+		assertThat(metric.isDoubleValue(20)).isTrue();
+		assertThat(metric.getDoubleValue(20)).isEqualTo(2.5);
+		assertThat(metric.isLongValue(21)).isFalse();
+		assertThat(metric.isDoubleValue(21)).isFalse();
+		assertThat(metric.getValue(21)).isEqualTo("text");
+		assertThat(metric.getDataPoints()).hasSize(22);
+		assertThat(metric.getDataPoints().get(0)).isEqualTo(new DataPoint(0, 0L));
+		assertThat(metric.getDataPoints().get(20)).isEqualTo(new DataPoint(20, 2.5));
+		assertThat(metric.getDataPoints().get(21)).isEqualTo(new DataPoint(21, "text"));
+	}
+
+	@Test
+	public void test_dataPointAccessors_invalid()
+	{
+		Metric metric = MetricBuilder.getInstance().addMetric("metric1").addDataPoint(1, 2.5);
+
+		assertThrows(IllegalStateException.class, () -> metric.getLongValue(0));
+		assertThrows(IndexOutOfBoundsException.class, () -> metric.getTimestamp(1));
+		assertThrows(UnsupportedOperationException.class, () -> metric.getDataPoints().add(new DataPoint(2, 3L)));
+	}
+
+	@Test
+	public void test_clearDataPoints()
+	{
+		Metric metric = MetricBuilder.getInstance().addMetric("metric1")
+				.addTag("host", "a")
+				.addTtl(5)
+				.addDataPoint(1, "text")
+				.addDataPoint(2, 3L);
+
+		metric.clearDataPoints();
+
+		assertThat(metric.getDataPointCount()).isEqualTo(0);
+		assertThat(metric.getDataPoints()).isEmpty();
+		assertThat(metric.getTags()).containsEntry("host", "a");
+		assertThat(metric.getTtl()).isEqualTo(5);
+
+		metric.addDataPoint(3, 4L);
+		assertThat(metric.getDataPoints()).containsExactly(new DataPoint(3, 4L));
+	}
 }
@@ -18,13 +18,16 @@ package org.kairosdb.client.builder;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.aggregator.SamplingAggregator;
 import org.kairosdb.client.builder.grouper.TagGrouper;
 import org.kairosdb.client.builder.grouper.TimeGrouper;
 import org.kairosdb.client.builder.grouper.ValueGrouper;
 import org.kairosdb.client.testUtils.QueryParser;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -257,6 +260,188 @@ public class QueryBuilderTest
 		assertThrows(NullPointerException.class, () -> QueryBuilder.getInstance().setTimeZone(null));
 	}
 
+	@Test
+	public void test_splitByMetric()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(2, TimeUnit.HOURS)
+				.setEnd(1, TimeUnit.HOURS)
+				.setCacheTime(5000);
+		builder.addMetric("metric1").addTag("host", "server1");
+		builder.addMetric("metric2");
+
+		List<QueryBuilder> queries = builder.splitByMetric();
+
+		assertThat(queries.size(), equalTo(2));
+		assertThat(queries.get(0).getMetrics(), equalTo(Collections.singletonList(builder.getMetrics().get(0))));
+		assertThat(queries.get(1).getMetrics(), equalTo(Collections.singletonList(builder.getMetrics().get(1))));
+		assertThat(queries.get(1).getStartRelative(), equalTo(builder.getStartRelative()));
+		assertThat(queries.get(1).getEndRelative(), equalTo(builder.getEndRelative()));
+		assertThat(queries.get(1).getCacheTime(), equalTo(5000));
+	}
+
+	@Test
+	public void test_splitByTime()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(1000))
+				.setEnd(new Date(10_000));
+		builder.addMetric("metric1");
+
+		List<QueryBuilder> queries = builder.splitByTime(3000);
+
+		assertThat(queries.size(), equalTo(4));
+		assertRange(queries.get(0), 1000, 3999);
+		assertRange(queries.get(1), 4000, 6999);
+		assertRange(queries.get(2), 7000, 9999);
+		assertRange(queries.get(3), 10_000, 10_000);
+		assertThat(queries.get(3).getMetrics(), equalTo(builder.getMetrics()));
+	}
+
+	@Test
+	public void test_splitByTime_alignedToSampling()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(90_000))
+				.setEnd(new Date(300_000));
+		builder.addMetric("metric1")
+				.addAggregator(AggregatorFactory.createAverageAggregator(1, TimeUnit.MINUTES).withSamplingAlignment());
+
+		List<QueryBuilder> queries = builder.splitByTime(100_000);
+
+		assertThat(queries.size(), equalTo(3));
+		assertRange(queries.get(0), 90_000, 119_999);
+		assertRange(queries.get(1), 120_000, 239_999);
+		assertRange(queries.get(2), 240_000, 300_000);
+	}
+
+	@Test
+	public void test_splitByTime_alignedToStartTime()
+	{
+		SamplingAggregator sum = AggregatorFactory.createSumAggregator(10, TimeUnit.SECONDS).withStartTimeAlignment(5000);
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(0))
+				.setEnd(new Date(30_000));
+		builder.addMetric("metric1").addAggregator(sum);
+
+		List<QueryBuilder> queries = builder.splitByTime(10_000);
+
+		assertThat(queries.size(), equalTo(4));
+		assertRange(queries.get(0), 0, 4999);
+		assertRange(queries.get(1), 5000, 14_999);
+		assertRange(queries.get(3), 25_000, 30_000);
+	}
+
+	@Test
+	public void test_splitByTime_relativeTimes()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(2, TimeUnit.HOURS)
+				.setEnd(1, TimeUnit.HOURS);
+		builder.addMetric("metric1");
+
+		List<QueryBuilder> queries = builder.splitByTime(1_800_000, 10_800_000);
+
+		assertThat(queries.size(), equalTo(3));
+		assertRange(queries.get(0), 3_600_000, 5_399_999);
+		assertRange(queries.get(2), 7_200_000, 7_200_000);
+		assertThat(queries.get(0).getStartRelative(), equalTo(null));
+	}
+
+	@Test
+	public void test_splitByTime_notSplittable()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(0))
+				.setEnd(new Date(100_000));
+		builder.addMetric("metric1").addAggregator(AggregatorFactory.createRateAggregator(TimeUnit.SECONDS));
+
+		assertThat(builder.splitByTime(1000).size(), equalTo(1));
+
+		builder = QueryBuilder.getInstance()
+				.setStart(new Date(0))
+				.setEnd(new Date(100_000));
+		builder.addMetric("metric1").setLimit(10);
+
+		List<QueryBuilder> queries = builder.splitByTime(1000);
+
+		assertThat(queries.size(), equalTo(1));
+		assertRange(queries.get(0), 0, 100_000);
+	}
+
+	@Test
+	public void test_splitByTime_incompatibleAlignment()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(0))
+				.setEnd(new Date(100_000));
+		builder.addMetric("metric1")
+				.addAggregator(AggregatorFactory.createSumAggregator(10, TimeUnit.SECONDS).withStartTimeAlignment(3000))
+				.addAggregator(AggregatorFactory.createMaxAggregator(10, TimeUnit.SECONDS).withSamplingAlignment());
+
+		assertThat(builder.splitByTime(20_000).size(), equalTo(1));
+	}
+
+	@Test
+	public void test_getSplitTime()
+	{
+		QueryBuilder builder = QueryBuilder.getInstance().setStart(1, TimeUnit.HOURS);
+		QueryMetric metric = builder.addMetric("metric1");
+
+		assertThat(builder.getSplitTime(12_345), equalTo(12_345L));
+
+		metric.addAggregator(AggregatorFactory.createSumAggregator(1, TimeUnit.MINUTES).withSamplingAlignment());
+		assertThat(builder.getSplitTime(72_345), equalTo(60_000L));
+
+		metric.addAggregator(AggregatorFactory.createMaxAggregator(1, TimeUnit.MINUTES));
+		assertThat(builder.getSplitTime(72_345), equalTo(null));
+	}
+
+	@Test
+	public void test_splitByTime_alignedToSamplingOfSeveralUnits()
+	{
+		// KairosDB counts the 5 minute buckets from the start truncated to the minute, not from the epoch
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(90_000))
+				.setEnd(new Date(1_000_000));
+		builder.addMetric("metric1")
+				.addAggregator(AggregatorFactory.createAverageAggregator(5, TimeUnit.MINUTES).withSamplingAlignment());
+
+		List<QueryBuilder> queries = builder.splitByTime(300_000);
+
+		assertThat(queries.size(), equalTo(4));
+		assertRange(queries.get(0), 90_000, 359_999);
+		assertRange(queries.get(1), 360_000, 659_999);
+		assertRange(queries.get(3), 960_000, 1_000_000);
+		assertThat(builder.getSplitTime(500_000), equalTo(null));
+	}
+
+	@Test
+	public void test_splitByTime_alignedToSamplingInTimeZone()
+	{
+		// Hours start at half past in UTC+05:30
+		QueryBuilder builder = QueryBuilder.getInstance()
+				.setStart(new Date(0))
+				.setEnd(new Date(3 * 3_600_000))
+				.setTimeZone(TimeZone.getTimeZone("Asia/Kolkata"));
+		builder.addMetric("metric1")
+				.addAggregator(AggregatorFactory.createSumAggregator(1, TimeUnit.HOURS).withSamplingAlignment());
+
+		List<QueryBuilder> queries = builder.splitByTime(3_600_000);
+
+		assertThat(queries.size(), equalTo(4));
+		assertRange(queries.get(0), 0, 1_799_999);
+		assertRange(queries.get(1), 1_800_000, 5_399_999);
+		assertRange(queries.get(3), 9_000_000, 10_800_000);
+		assertThat(builder.getSplitTime(4_000_000), equalTo(1_800_000L));
+	}
+
+	private static void assertRange(QueryBuilder query, long start, long end)
+	{
+		assertThat(query.getStartAbsolute().getTime(), equalTo(start));
+		assertThat(query.getEndAbsolute().getTime(), equalTo(end));
+	}
+
 	//@Test
 	public void testSetTimeZoneValid() throws IOException
 	{
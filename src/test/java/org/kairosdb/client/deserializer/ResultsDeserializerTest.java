@@ -0,0 +1,59 @@
+package org.kairosdb.client.deserializer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.DataPointTypeRegistry;
+import org.kairosdb.client.JsonMapper;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.response.NumericSeries;
+import org.kairosdb.client.response.Result;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResultsDeserializerTest
+{
+	private JsonMapper mapper;
+
+	@BeforeEach
+	public void setup()
+	{
+		mapper = new JsonMapper(new DataPointTypeRegistry());
+	}
+
+	@Test
+	public void test_numberType_numericSeries()
+	{
+		Result result = mapper.fromJson("{\"name\":\"m\",\"tags\":{\"host\":[\"a\"]}," +
+				"\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"values\":[[1,10],[2,20],[3,null]]}", Result.class);
+
+		NumericSeries series = result.getNumericSeries();
+		assertThat(series).isNotNull();
+		assertThat(series.isIntegral()).isTrue();
+		assertThat(series.getTimestamps()).containsExactly(1, 2, 3);
+		assertThat(series.getLongValues()).containsExactly(10, 20, 0);
+		assertThat(series.isNull(2)).isTrue();
+		assertThat(result.getDataPoints()).containsExactly(
+				new DataPoint(1, 10L),
+				new DataPoint(2, 20L),
+				new DataPoint(3, null));
+	}
+
+	@Test
+	public void test_numberType_mixedValues()
+	{
+		Result result = mapper.fromJson("{\"name\":\"m\",\"tags\":{}," +
+				"\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"values\":[[1,10],[2,2.5]]}", Result.class);
+
+		assertThat(result.getNumericSeries().getDoubleValues()).containsExactly(10.0, 2.5);
+	}
+
+	@Test
+	public void test_textType_dataPoints()
+	{
+		Result result = mapper.fromJson("{\"name\":\"m\",\"tags\":{}," +
+				"\"group_by\":[{\"name\":\"type\",\"type\":\"text\"}],\"values\":[[1,\"a\"]]}", Result.class);
+
+		assertThat(result.getNumericSeries()).isNull();
+		assertThat(result.getDataPoints()).containsExactly(new DataPoint(1, "a"));
+	}
+}
@@ -0,0 +1,108 @@
+package org.kairosdb.client.instrumentation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HistogramTest
+{
+	@Test
+	public void test_empty()
+	{
+		Histogram histogram = new Histogram();
+
+		assertThat(histogram.getCount()).isEqualTo(0);
+		assertThat(histogram.getMean()).isEqualTo(0.0);
+		assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+	}
+
+	@Test
+	public void test_smallValuesExact()
+	{
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; i++)
+		{
+			histogram.record(i);
+		}
+
+		assertThat(histogram.getCount()).isEqualTo(100);
+		assertThat(histogram.getSum()).isEqualTo(5050);
+		assertThat(histogram.getMax()).isEqualTo(100);
+		assertThat(histogram.getValueAtPercentile(50)).isEqualTo(50);
+		assertThat(histogram.getValueAtPercentile(99)).isEqualTo(99);
+		assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100);
+	}
+
+	@Test
+	public void test_percentileWithinPrecision()
+	{
+		Histogram histogram = new Histogram();
+		List<Long> values = new ArrayList<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; i++)
+		{
+			long value = (long) Math.exp(random.nextDouble() * 25);
+			values.add(value);
+			histogram.record(value);
+		}
+		values.sort(null);
+
+		for (double percentile : new double[]{50, 90, 99, 99.9})
+		{
+			long expected = values.get((int) Math.ceil(percentile / 100 * values.size()) - 1);
+			assertThat((double) histogram.getValueAtPercentile(percentile)).isCloseTo(expected, within(expected * 0.016 + 1));
+		}
+	}
+
+	@Test
+	public void test_bucketBoundaries()
+	{
+		long[] values = {0, 127, 128, 129, 255, 256, 1_000_000_007L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+		for (long value : values)
+		{
+			int index = Histogram.bucketIndex(value);
+			assertThat(Histogram.highestValueInBucket(index)).isGreaterThanOrEqualTo(value);
+			if (index > 0)
+			{
+				assertThat(Histogram.highestValueInBucket(index - 1)).isLessThan(value);
+			}
+		}
+		assertThat(Histogram.highestValueInBucket(Histogram.bucketIndex(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void test_concurrentRecording() throws InterruptedException
+	{
+		Histogram histogram = new Histogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10_000; i++)
+				{
+					histogram.record(i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertThat(histogram.getCount()).isEqualTo(40_000);
+		assertThat(histogram.getMax()).isEqualTo(9_999);
+	}
+
+	@Test
+	public void test_negativeValue_invalid()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new Histogram().record(-1));
+	}
+}
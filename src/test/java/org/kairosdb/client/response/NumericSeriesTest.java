@@ -0,0 +1,91 @@
+package org.kairosdb.client.response;
+
+import com.google.gson.internal.LazilyParsedNumber;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.DataPoint;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NumericSeriesTest
+{
+	@Test
+	public void test_integral()
+	{
+		NumericSeries.Builder builder = NumericSeries.builder();
+		for (int i = 0; i < 100; i++)
+		{
+			builder.add(i * 10L, (long) i);
+		}
+
+		NumericSeries series = builder.build();
+
+		assertThat(series.size()).isEqualTo(100);
+		assertThat(series.isIntegral()).isTrue();
+		assertThat(series.getTimestamps()).hasSize(100);
+		assertThat(series.getLongValues()[99]).isEqualTo(99);
+		assertThat(series.getTimestamp(50)).isEqualTo(500);
+		assertThat(series.getDouble(50)).isEqualTo(50.0);
+		assertThrows(IllegalStateException.class, series::getDoubleValues);
+	}
+
+	@Test
+	public void test_convertsToDoubles()
+	{
+		NumericSeries series = NumericSeries.builder()
+				.add(1, 5L)
+				.addNull(2)
+				.add(3, 2.5)
+				.add(4, 7L)
+				.build();
+
+		assertThat(series.isIntegral()).isFalse();
+		assertThat(series.getDoubleValues()).containsExactly(5.0, Double.NaN, 2.5, 7.0);
+		assertThat(series.isNull(1)).isTrue();
+		assertThat(series.isNull(2)).isFalse();
+		assertThat(series.getLong(2)).isEqualTo(2);
+		assertThrows(IllegalStateException.class, series::getLongValues);
+	}
+
+	@Test
+	public void test_addNumber()
+	{
+		NumericSeries series = NumericSeries.builder()
+				.add(1, new LazilyParsedNumber("12"))
+				.add(2, new LazilyParsedNumber("9223372036854775807"))
+				.add(3, (Number) 3)
+				.build();
+
+		assertThat(series.isIntegral()).isTrue();
+		assertThat(series.getLongValues()).containsExactly(12, Long.MAX_VALUE, 3);
+
+		series = NumericSeries.builder()
+				.add(1, new LazilyParsedNumber("1e3"))
+				.add(2, new BigDecimal("99999999999999999999"))
+				.add(3, (Number) null)
+				.build();
+
+		assertThat(series.isIntegral()).isFalse();
+		assertThat(series.getDouble(0)).isEqualTo(1000.0);
+		assertThat(series.getDouble(1)).isEqualTo(1e20);
+		assertThat(series.isNull(2)).isTrue();
+	}
+
+	@Test
+	public void test_asDataPoints()
+	{
+		NumericSeries series = NumericSeries.builder()
+				.add(1, 5L)
+				.addNull(2)
+				.add(3, 2.5)
+				.build();
+
+		assertThat(series.asDataPoints()).containsExactly(
+				new DataPoint(1, 5.0),
+				new DataPoint(2, null),
+				new DataPoint(3, 2.5));
+		assertThat(NumericSeries.builder().add(1, 5L).build().asDataPoints()).containsExactly(new DataPoint(1, 5L));
+	}
+}
@@ -0,0 +1,118 @@
+package org.kairosdb.client.response;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.response.grouping.BinGroupResult;
+import org.kairosdb.client.response.grouping.DefaultGroupResult;
+import org.kairosdb.client.response.grouping.TagGroupResult;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueryResultMergerTest
+{
+	private static final List<GroupResult> SERVER1 = ImmutableList.of(
+			new TagGroupResult(ImmutableList.of("host"), ImmutableMap.of("host", "server1")),
+			new DefaultGroupResult("type", "number"));
+	private static final List<GroupResult> SERVER2 = ImmutableList.of(
+			new TagGroupResult(ImmutableList.of("host"), ImmutableMap.of("host", "server2")),
+			new DefaultGroupResult("type", "number"));
+
+	@Test
+	public void test_merge_concatenatesMatchingGroups()
+	{
+		QueryResult first = new QueryResult(ImmutableList.of(
+				result(SERVER1, tags("server1", "a"), new DataPoint(1, 1L), new DataPoint(2, 2L)),
+				result(SERVER2, tags("server2", "a"), new DataPoint(1, 10L))), 3);
+		QueryResult second = new QueryResult(ImmutableList.of(
+				result(SERVER2, tags("server2", "b"), new DataPoint(3, 30L)),
+				result(SERVER1, tags("server1", "a"), new DataPoint(3, 3L))), 2);
+
+		QueryResult merged = QueryResultMerger.merge(ImmutableList.of(first, second));
+
+		assertThat(merged.getSampleSize()).isEqualTo(5);
+		assertThat(merged.getResults()).hasSize(2);
+		Result server1 = merged.getResults().get(0);
+		assertThat(server1.getGroupResults()).isEqualTo(SERVER1);
+		assertThat(server1.getDataPoints()).containsExactly(new DataPoint(1, 1L), new DataPoint(2, 2L), new DataPoint(3, 3L));
+		Result server2 = merged.getResults().get(1);
+		assertThat(server2.getDataPoints()).containsExactly(new DataPoint(1, 10L), new DataPoint(3, 30L));
+		assertThat(server2.getTags()).isEqualTo(ImmutableMap.of("host", ImmutableList.of("server2"), "env", ImmutableList.of("a", "b")));
+	}
+
+	@Test
+	public void test_merge_keepsBinsApart()
+	{
+		List<GroupResult> bin0 = ImmutableList.of(new BinGroupResult(ImmutableList.of(10.0), ImmutableMap.of("bin_number", 0)));
+		List<GroupResult> bin1 = ImmutableList.of(new BinGroupResult(ImmutableList.of(10.0), ImmutableMap.of("bin_number", 1)));
+		QueryResult first = new QueryResult(ImmutableList.of(
+				result(bin0, tags("server1", "a"), new DataPoint(1, 1L)),
+				result(bin1, tags("server1", "a"), new DataPoint(2, 20L))), 2);
+		QueryResult second = new QueryResult(ImmutableList.of(
+				result(bin0, tags("server1", "a"), new DataPoint(3, 3L)),
+				result(bin1, tags("server1", "a"), new DataPoint(4, 40L))), 2);
+
+		QueryResult merged = QueryResultMerger.merge(ImmutableList.of(first, second));
+
+		assertThat(merged.getResults()).hasSize(2);
+		assertThat(merged.getResults().get(0).getGroupResults()).isEqualTo(bin0);
+		assertThat(merged.getResults().get(0).getDataPoints()).containsExactly(new DataPoint(1, 1L), new DataPoint(3, 3L));
+		assertThat(merged.getResults().get(1).getGroupResults()).isEqualTo(bin1);
+		assertThat(merged.getResults().get(1).getDataPoints()).containsExactly(new DataPoint(2, 20L), new DataPoint(4, 40L));
+	}
+
+	@Test
+	public void test_merge_numericSeries()
+	{
+		QueryResult first = new QueryResult(ImmutableList.of(new Result("metric1", tags("server1", "a"),
+				NumericSeries.builder().add(1, 1L).add(2, 2L).build(), SERVER1)), 2);
+		QueryResult second = new QueryResult(ImmutableList.of(new Result("metric1", tags("server1", "a"),
+				NumericSeries.builder().addNull(3).add(4, 4.5).build(), SERVER1)), 2);
+
+		QueryResult merged = QueryResultMerger.merge(ImmutableList.of(first, second));
+
+		NumericSeries series = merged.getResults().get(0).getNumericSeries();
+		assertThat(series).isNotNull();
+		assertThat(series.getTimestamps()).containsExactly(1, 2, 3, 4);
+		assertThat(series.isNull(2)).isTrue();
+		assertThat(series.getDouble(3)).isEqualTo(4.5);
+	}
+
+	@Test
+	public void test_merge_dropsEmptyResults()
+	{
+		QueryResult empty = new QueryResult(ImmutableList.of(result(ImmutableList.of(), ImmutableMap.of())), 0);
+		QueryResult data = new QueryResult(ImmutableList.of(result(SERVER1, tags("server1", "a"), new DataPoint(5, 5L))), 1);
+
+		assertThat(QueryResultMerger.merge(ImmutableList.of(empty, data)).getResults()).containsExactly(data.getResults().get(0));
+		assertThat(QueryResultMerger.merge(ImmutableList.of(empty, empty)).getResults()).containsExactly(empty.getResults().get(0));
+	}
+
+	@Test
+	public void test_slice()
+	{
+		QueryResult queryResult = new QueryResult(ImmutableList.of(
+				result(SERVER1, tags("server1", "a"), new DataPoint(1, 1L), new DataPoint(2, 2L), new DataPoint(3, 3L), new DataPoint(4, 4L)),
+				new Result("metric1", tags("server2", "a"), NumericSeries.builder().add(1, 1.5).add(3, 3.5).build(), SERVER2)), 12);
+
+		QueryResult slice = QueryResultMerger.slice(queryResult, 2, 4);
+
+		assertThat(slice.getResults().get(0).getDataPoints()).containsExactly(new DataPoint(2, 2L), new DataPoint(3, 3L));
+		assertThat(slice.getResults().get(1).getNumericSeries().getTimestamps()).containsExactly(3);
+		assertThat(slice.getSampleSize()).isEqualTo(6);
+	}
+
+	private static Result result(List<GroupResult> groupResults, Map<String, List<String>> tags, DataPoint... dataPoints)
+	{
+		return new Result("metric1", tags, ImmutableList.copyOf(dataPoints), groupResults);
+	}
+
+	private static Map<String, List<String>> tags(String host, String env)
+	{
+		return ImmutableMap.of("host", ImmutableList.of(host), "env", ImmutableList.of(env));
+	}
+}
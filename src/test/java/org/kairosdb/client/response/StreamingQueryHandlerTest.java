@@ -0,0 +1,234 @@
+package org.kairosdb.client.response;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kairosdb.client.DataPointTypeRegistry;
+import org.kairosdb.client.JsonMapper;
+import org.kairosdb.client.builder.DataPoint;
+import org.kairosdb.client.builder.DataFormatException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StreamingQueryHandlerTest
+{
+	private HttpUriRequest mockRequest;
+	private ResponseHelper mockResponse;
+	private RecordingCallback callback;
+	private StreamingQueryHandler handler;
+
+	@BeforeEach
+	public void setup()
+	{
+		mockRequest = mock(HttpUriRequest.class);
+		mockResponse = mock(ResponseHelper.class);
+		when(mockResponse.getFirstHeader(CONTENT_TYPE)).thenReturn(APPLICATION_JSON.toString());
+		when(mockResponse.getStatusCode()).thenReturn(200);
+
+		callback = new RecordingCallback();
+		handler = new StreamingQueryHandler(callback, new DataPointTypeRegistry());
+	}
+
+	@Test
+	public void test_matchesDefaultHandler() throws IOException, DataFormatException
+	{
+		String json = Resources.toString(Resources.getResource("response_valid.json"), Charsets.UTF_8);
+		respondWith(json);
+
+		handler.handle(mockRequest, mockResponse);
+
+		QueryResponse expected = new JsonMapper(new DataPointTypeRegistry()).fromJson(json, QueryResponse.class);
+		Result expectedResult = expected.getQueries().get(0).getResults().get(0);
+		assertThat(callback.events).containsExactly("startQuery", "startResult", "long", "long", "long", "endResult", "endQuery");
+		assertThat(callback.name).isEqualTo(expectedResult.getName());
+		assertThat(callback.tags).isEqualTo(expectedResult.getTags());
+		assertThat(callback.groupResults).isEqualTo(expectedResult.getGroupResults());
+		assertThat(callback.dataPoints).hasSize(3);
+		for (int i = 0; i < 3; i++)
+		{
+			assertThat(callback.dataPoints.get(i).getTimestamp()).isEqualTo(expectedResult.getDataPoints().get(i).getTimestamp());
+			assertThat(callback.dataPoints.get(i).longValue()).isEqualTo(expectedResult.getDataPoints().get(i).longValue());
+		}
+	}
+
+	@Test
+	public void test_numbersAndSampleSize()
+	{
+		respondWith("{\"queries\":[{\"sample_size\":7,\"results\":[{\"name\":\"m\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}]," +
+				"\"tags\":{\"host\":[\"a\"]},\"values\":[[1,2.5],[2,9223372036854775807],[3,1e3]]}]}]}");
+
+		handler.handle(mockRequest, mockResponse);
+
+		assertThat(callback.events).containsExactly("startQuery", "startResult", "double", "long", "double", "endResult", "endQuery");
+		assertThat(callback.dataPoints.get(0).getValue()).isEqualTo(2.5);
+		assertThat(callback.dataPoints.get(1).getValue()).isEqualTo(Long.MAX_VALUE);
+		assertThat(callback.dataPoints.get(2).getValue()).isEqualTo(1000.0);
+		assertThat(callback.sampleSize).isEqualTo(7);
+	}
+
+	@Test
+	public void test_valuesBeforeGroupBy()
+	{
+		respondWith("{\"queries\":[{\"results\":[{\"values\":[[1,\"a\"],[2,\"b\"]],\"name\":\"m\"," +
+				"\"tags\":{},\"group_by\":[{\"name\":\"type\",\"type\":\"text\"}]}]}]}");
+
+		handler.handle(mockRequest, mockResponse);
+
+		assertThat(callback.events).containsExactly("startQuery", "startResult", "object", "object", "endResult", "endQuery");
+		assertThat(callback.dataPoints.get(1).getValue()).isEqualTo("b");
+	}
+
+	@Test
+	public void test_tagsAfterValues()
+	{
+		respondWith("{\"queries\":[{\"results\":[{\"name\":\"m\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}]," +
+				"\"values\":[[1,1]],\"tags\":{\"host\":[\"a\"]}}]}]}");
+
+		handler.handle(mockRequest, mockResponse);
+
+		assertThat(callback.events).containsExactly("startQuery", "startResult", "long", "endResult", "endQuery");
+		assertThat(callback.tags).containsEntry("host", List.of("a"));
+	}
+
+	@Test
+	public void test_missingGroupBy_invalid()
+	{
+		respondWith("{\"queries\":[{\"results\":[{\"name\":\"m\",\"tags\":{},\"values\":[[1,1]]}]}]}");
+
+		assertThrows(IllegalStateException.class, () -> handler.handle(mockRequest, mockResponse));
+		assertThat(callback.events).doesNotContain("startResult");
+	}
+
+	@Test
+	public void test_missingType_invalid()
+	{
+		respondWith("{\"queries\":[{\"results\":[{\"name\":\"m\",\"group_by\":[],\"values\":[[1,1]]}]}]}");
+
+		assertThrows(IllegalStateException.class, () -> handler.handle(mockRequest, mockResponse));
+	}
+
+	@Test
+	public void test_callbackExceptionIsNotWrapped()
+	{
+		respondWith("{\"queries\":[{\"results\":[{\"name\":\"m\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}]," +
+				"\"tags\":{},\"values\":[[1,1]]}]}]}");
+		IllegalStateException failure = new IllegalStateException("callback failed");
+		handler = new StreamingQueryHandler(new QueryResultCallback()
+		{
+			@Override
+			public void startResult(String name, Map<String, List<String>> tags, List<GroupResult> groupResults)
+			{
+			}
+
+			@Override
+			public void dataPoint(long timestamp, Object value)
+			{
+				throw failure;
+			}
+		}, new DataPointTypeRegistry());
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> handler.handle(mockRequest, mockResponse));
+		assertThat(e).isSameAs(failure);
+	}
+
+	@Test
+	public void test_invalidValue()
+	{
+		respondWith("{\"queries\":[{\"results\":[{\"name\":\"m\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}]," +
+				"\"tags\":{},\"values\":[[1,\"abc\"]]}]}]}");
+
+		assertThrows(IllegalArgumentException.class, () -> handler.handle(mockRequest, mockResponse));
+	}
+
+	@Test
+	public void test_JsonSyntaxException()
+	{
+		respondWith("{\"queries\":{}}");
+
+		assertThrows(IllegalArgumentException.class, () -> handler.handle(mockRequest, mockResponse));
+	}
+
+	private void respondWith(String json)
+	{
+		try
+		{
+			when(mockResponse.getInputStream()).thenReturn(new ByteArrayInputStream(json.getBytes(Charsets.UTF_8)));
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class RecordingCallback implements QueryResultCallback
+	{
+		private final List<String> events = new ArrayList<>();
+		private final List<DataPoint> dataPoints = new ArrayList<>();
+		private String name;
+		private Map<String, List<String>> tags;
+		private List<GroupResult> groupResults;
+		private long sampleSize;
+
+		@Override
+		public void startQuery()
+		{
+			events.add("startQuery");
+		}
+
+		@Override
+		public void startResult(String name, Map<String, List<String>> tags, List<GroupResult> groupResults)
+		{
+			events.add("startResult");
+			this.name = name;
+			this.tags = tags;
+			this.groupResults = groupResults;
+		}
+
+		@Override
+		public void dataPoint(long timestamp, Object value)
+		{
+			events.add("object");
+			dataPoints.add(new DataPoint(timestamp, value));
+		}
+
+		@Override
+		public void dataPoint(long timestamp, long value)
+		{
+			events.add("long");
+			dataPoints.add(new DataPoint(timestamp, value));
+		}
+
+		@Override
+		public void dataPoint(long timestamp, double value)
+		{
+			events.add("double");
+			dataPoints.add(new DataPoint(timestamp, value));
+		}
+
+		@Override
+		public void endResult()
+		{
+			events.add("endResult");
+		}
+
+		@Override
+		public void endQuery(long sampleSize)
+		{
+			events.add("endQuery");
+			this.sampleSize = sampleSize;
+		}
+	}
+}
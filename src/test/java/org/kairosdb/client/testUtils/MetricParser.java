@@ -1,40 +1,44 @@
 package org.kairosdb.client.testUtils;
 
 import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
-import org.kairosdb.client.builder.DataPoint;
 import org.kairosdb.client.builder.Metric;
+import org.kairosdb.client.builder.MetricBuilder;
 
-import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Map;
 
 public class MetricParser
 {
-	private static final Type listType = new TypeToken<List<Metric>>(){}.getType();
-
-	private final Gson gson;
-
-	public MetricParser()
-	{
-		GsonBuilder gsonBuilder = new GsonBuilder();
-		gsonBuilder.registerTypeAdapter(DataPoint.class, new DataPointDeserializer());
-		gson = gsonBuilder.create();
-	}
-
 	public List<Metric> parse(String json)
 	{
-		return gson.fromJson(json, listType);
-	}
-
-	private class DataPointDeserializer implements JsonDeserializer<DataPoint>
-	{
-		@Override
-		public DataPoint deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException
+		MetricBuilder builder = MetricBuilder.getInstance();
+		for (JsonElement element : JsonParser.parseString(json).getAsJsonArray())
 		{
-			JsonArray array = jsonElement.getAsJsonArray();
-			long timestamp = array.get(0).getAsLong();
-			double value = array.get(1).getAsDouble();
-			return new DataPoint(timestamp, value);
+			JsonObject object = element.getAsJsonObject();
+			Metric metric = object.has("type")
+					? builder.addMetric(object.get("name").getAsString(), object.get("type").getAsString())
+					: builder.addMetric(object.get("name").getAsString());
+
+			if (object.has("tags"))
+			{
+				for (Map.Entry<String, JsonElement> tag : object.getAsJsonObject("tags").entrySet())
+				{
+					metric.addTag(tag.getKey(), tag.getValue().getAsString());
+				}
+			}
+			if (object.has("ttl"))
+			{
+				metric.addTtl(object.get("ttl").getAsInt());
+			}
+			if (object.has("datapoints"))
+			{
+				for (JsonElement dataPoint : object.getAsJsonArray("datapoints"))
+				{
+					JsonArray array = dataPoint.getAsJsonArray();
+					metric.addDataPoint(array.get(0).getAsLong(), array.get(1).getAsDouble());
+				}
+			}
 		}
+		return builder.getMetrics();
 	}
 }